@@ -0,0 +1,115 @@
+package com.seaky.netframe.benchmarks;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParser;
+import com.google.gson.TypeAdapter;
+import com.google.gson.reflect.TypeToken;
+import com.seaky.netframe.build.Cbor;
+import com.seaky.netframe.build.HttpResponse;
+import com.seaky.netframe.build.HttpResponseAdapterFactory;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.BenchmarkParams;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.GzipSink;
+import okio.Okio;
+
+/**
+ * json和CBOR的解析耗时 和GsonConverterFactory、CborConverterFactory一样从字节流解析
+ * 数据大小（原始大小和gzip之后的大小）由Sizes作为辅助计数器和耗时一起输出到结果里
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class BinaryFormatBenchmark {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    @Param({"1", "100", "1000"})
+    public int items;
+
+    private TypeAdapter<HttpResponse<List<EnvelopeDecodeBenchmark.Item>>> mAdapter;
+    private byte[] mJson;
+    private byte[] mCbor;
+    private long mJsonGzip;
+    private long mCborGzip;
+
+    /**
+     * 数据大小(字节)
+     * EVENTS计数器每轮迭代开始前清零，结果是所有测量轮次的和，所以每轮只记1/轮数
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Sizes {
+        public double jsonBytes;
+        public double jsonGzipBytes;
+        public double cborBytes;
+        public double cborGzipBytes;
+        private double mShare;
+
+        @Setup(Level.Trial)
+        public void setUp(BenchmarkParams params) {
+            mShare = 1.0 / params.getMeasurement().getCount();
+        }
+
+        void record(BinaryFormatBenchmark benchmark) {
+            jsonBytes = benchmark.mJson.length * mShare;
+            jsonGzipBytes = benchmark.mJsonGzip * mShare;
+            cborBytes = benchmark.mCbor.length * mShare;
+            cborGzipBytes = benchmark.mCborGzip * mShare;
+        }
+    }
+
+    @Setup
+    public void setUp() throws IOException {
+        Gson gson = new GsonBuilder().registerTypeAdapterFactory(new HttpResponseAdapterFactory()).create();
+        mAdapter = gson.getAdapter(new TypeToken<HttpResponse<List<EnvelopeDecodeBenchmark.Item>>>() {});
+        String json = EnvelopeDecodeBenchmark.payload(items, "statusFirst");
+        mJson = json.getBytes(UTF_8);
+        Buffer cbor = new Buffer();
+        Cbor.write(new JsonParser().parse(json), cbor);
+        mCbor = cbor.readByteArray();
+        mJsonGzip = gzipSize(mJson);
+        mCborGzip = gzipSize(mCbor);
+    }
+
+    @Benchmark
+    public HttpResponse<List<EnvelopeDecodeBenchmark.Item>> json(Sizes sizes) throws IOException {
+        sizes.record(this);
+        Buffer source = new Buffer().write(mJson);
+        return mAdapter.fromJson(new InputStreamReader(source.inputStream(), UTF_8));
+    }
+
+    @Benchmark
+    public HttpResponse<List<EnvelopeDecodeBenchmark.Item>> cbor(Sizes sizes) throws IOException {
+        sizes.record(this);
+        Buffer source = new Buffer().write(mCbor);
+        return mAdapter.fromJsonTree(Cbor.read(source));
+    }
+
+    private static long gzipSize(byte[] bytes) throws IOException {
+        Buffer compressed = new Buffer();
+        BufferedSink sink = Okio.buffer(new GzipSink(compressed));
+        sink.write(bytes);
+        sink.close();
+        return compressed.size();
+    }
+}
@@ -0,0 +1,171 @@
+package com.seaky.netframe.benchmarks;
+
+import com.seaky.netframe.build.DownloadInfo;
+import com.seaky.netframe.core.DownloadTask;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.Okio;
+
+/**
+ * 下载写文件的吞吐量 本地MockWebServer，不受真实网络影响
+ * legacyStream是最早的写法：byteStream + 2KB数组 + FileOutputStream
+ * okioSink是Okio直接writeAll
+ * downloadTask是现在的DownloadTask，分1段和多段（Range并行）
+ * 每次下载的字节数固定，每秒次数 × size 就是吞吐量
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class DownloadCopyBenchmark {
+
+    private static final String ETAG = "\"bench\"";
+
+    //文件大小(MB)
+    @Param({"4", "32"})
+    public int size;
+
+    private byte[] mContent;
+    private MockWebServer mServer;
+    private OkHttpClient mClient;
+    private String mUrl;
+    private File mDir;
+    private File mFile;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        mContent = new byte[size * 1024 * 1024];
+        new Random(42).nextBytes(mContent);
+        mServer = new MockWebServer();
+        mServer.setDispatcher(new RangeDispatcher());
+        mServer.start();
+        mClient = new OkHttpClient();
+        mUrl = mServer.url("/file").toString();
+        mDir = File.createTempFile("netframe", "bench");
+        if (!mDir.delete() || !mDir.mkdirs()) {
+            throw new IOException("can't create " + mDir);
+        }
+        mFile = new File(mDir, "download.bin");
+    }
+
+    //每次都写新文件，不能续传
+    @Setup(Level.Invocation)
+    public void deleteFile() {
+        mFile.delete();
+        //DownloadTask的断点记录 见DownloadCheckpoint
+        new File(mFile.getAbsolutePath() + ".nfdl").delete();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        mServer.shutdown();
+        mClient.dispatcher().executorService().shutdown();
+        mClient.connectionPool().evictAll();
+        File[] files = mDir.listFiles();
+        if (null != files) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        mDir.delete();
+    }
+
+    @Benchmark
+    public long legacyStream() throws IOException {
+        Response response = mClient.newCall(new Request.Builder().url(mUrl).build()).execute();
+        ResponseBody responseBody = response.body();
+        InputStream in = responseBody.byteStream();
+        FileOutputStream fos = new FileOutputStream(mFile, true);
+        try {
+            byte[] buffer = new byte[2048];
+            int length;
+            while ((length = in.read(buffer)) != -1) {
+                fos.write(buffer, 0, length);
+            }
+        } finally {
+            fos.close();
+            responseBody.close();
+        }
+        return mFile.length();
+    }
+
+    @Benchmark
+    public long okioSink() throws IOException {
+        Response response = mClient.newCall(new Request.Builder().url(mUrl).build()).execute();
+        ResponseBody responseBody = response.body();
+        BufferedSink sink = Okio.buffer(Okio.sink(mFile));
+        try {
+            sink.writeAll(responseBody.source());
+        } finally {
+            sink.close();
+            responseBody.close();
+        }
+        return mFile.length();
+    }
+
+    @Benchmark
+    public DownloadInfo downloadTask() throws IOException {
+        return new DownloadTask(mClient, mUrl, mFile, 1).execute();
+    }
+
+    @Benchmark
+    public DownloadInfo downloadTaskSegmented() throws IOException {
+        return new DownloadTask(mClient, mUrl, mFile, 4).execute();
+    }
+
+    @Benchmark
+    public DownloadInfo downloadTaskMapped() throws IOException {
+        DownloadTask task = new DownloadTask(mClient, mUrl, mFile, 4);
+        task.setMemoryMapped(true);
+        return task.execute();
+    }
+
+    private class RangeDispatcher extends Dispatcher {
+
+        @Override
+        public MockResponse dispatch(RecordedRequest request) {
+            String range = request.getHeader("Range");
+            if (range == null) {
+                return new MockResponse()
+                        .setHeader("Accept-Ranges", "bytes")
+                        .setHeader("ETag", ETAG)
+                        .setBody(new Buffer().write(mContent));
+            }
+            String[] bounds = range.substring("bytes=".length()).split("-");
+            int start = Integer.parseInt(bounds[0]);
+            int end = bounds.length > 1 ? Integer.parseInt(bounds[1]) : mContent.length - 1;
+            return new MockResponse()
+                    .setResponseCode(206)
+                    .setHeader("Accept-Ranges", "bytes")
+                    .setHeader("ETag", ETAG)
+                    .setHeader("Content-Range", "bytes " + start + "-" + end + "/" + mContent.length)
+                    .setBody(new Buffer().write(mContent, start, end - start + 1));
+        }
+    }
+}
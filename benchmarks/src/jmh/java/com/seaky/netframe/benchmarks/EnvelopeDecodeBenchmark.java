@@ -0,0 +1,91 @@
+package com.seaky.netframe.benchmarks;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.reflect.TypeToken;
+import com.seaky.netframe.build.HttpResponse;
+import com.seaky.netframe.build.HttpResponseAdapterFactory;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.lang.reflect.Type;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * HttpResponse<T>解析耗时
+ * streaming是HttpFactory里实际用的HttpResponseAdapterFactory，reflective是Gson默认的反射解析，作为对照
+ * 报错的响应（status不是成功码）应该明显比reflective快，因为data直接跳过
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class EnvelopeDecodeBenchmark {
+
+    private static final Type TYPE = new TypeToken<HttpResponse<List<Item>>>() {}.getType();
+
+    //data里的条数 1条是普通接口，1000条是列表接口
+    @Param({"1", "1000"})
+    public int items;
+
+    //statusFirst: 成功，status在前 dataFirst: 成功，data在前 error: 失败，status在前
+    @Param({"statusFirst", "dataFirst", "error"})
+    public String shape;
+
+    private Gson mStreaming;
+    private Gson mReflective;
+    private String mJson;
+
+    @Setup
+    public void setUp() {
+        mStreaming = new GsonBuilder().registerTypeAdapterFactory(new HttpResponseAdapterFactory()).create();
+        mReflective = new Gson();
+        mJson = payload(items, shape);
+    }
+
+    @Benchmark
+    public HttpResponse<List<Item>> streaming() {
+        return mStreaming.fromJson(mJson, TYPE);
+    }
+
+    @Benchmark
+    public HttpResponse<List<Item>> reflective() {
+        return mReflective.fromJson(mJson, TYPE);
+    }
+
+    static String payload(int items, String shape) {
+        StringBuilder data = new StringBuilder("[");
+        for (int i = 0; i < items; i++) {
+            if (i > 0) {
+                data.append(',');
+            }
+            data.append("{\"id\":").append(i)
+                    .append(",\"name\":\"item-").append(i)
+                    .append("\",\"price\":").append(i * 1.5)
+                    .append(",\"tags\":[\"a\",\"b\",\"c\"]}");
+        }
+        data.append(']');
+        switch (shape) {
+            case "dataFirst":
+                return "{\"data\":" + data + ",\"status\":" + HttpResponse.SUCCESS_CODE + "}";
+            case "error":
+                return "{\"status\":500,\"data\":" + data + "}";
+            default:
+                return "{\"status\":" + HttpResponse.SUCCESS_CODE + ",\"data\":" + data + "}";
+        }
+    }
+
+    public static class Item {
+        long id;
+        String name;
+        double price;
+        List<String> tags;
+    }
+}
@@ -0,0 +1,172 @@
+package com.seaky.netframe.benchmarks;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.seaky.netframe.build.HttpResponse;
+import com.seaky.netframe.exception.ApiException;
+import com.seaky.netframe.exception.CircuitOpenException;
+import com.seaky.netframe.exception.ExceptionEngine;
+import com.seaky.netframe.function.ServerResultFunction;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.text.ParseException;
+import java.util.concurrent.TimeUnit;
+
+import retrofit2.HttpException;
+
+/**
+ * 一次失败请求的错误处理开销 看gc.alloc.rate.norm（每次操作分配的字节数）
+ * legacy*是改之前的写法原样搬过来：ServerException带堆栈，printStackTrace，再包一层"-1"，
+ * ApiException带堆栈，instanceof链分类，错误码从字符串解析
+ * current*是现在的ServerResultFunction + ExceptionEngine
+ * 运行 ./gradlew :benchmarks:jmh -Pjmh.include=ErrorAllocation  （build.gradle里已经开了gc profiler）
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ErrorAllocationBenchmark {
+
+    private static final ConnectException CONNECT_ERROR = new ConnectException("failed to connect");
+
+    private ServerResultFunction<Object> mResultFunction;
+    private HttpResponse<?> mFailure;
+    //printStackTrace的输出丢掉，只算格式化堆栈的开销
+    private PrintStream mLog;
+
+    @Setup
+    public void setUp() {
+        mResultFunction = new ServerResultFunction<>();
+        mFailure = new Gson().fromJson("{\"status\":500,\"data\":null}", HttpResponse.class);
+        mLog = new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+            }
+        });
+    }
+
+    //接口返回错误码
+    @Benchmark
+    public Object legacyServerError() {
+        try {
+            legacyResult(mFailure);
+            throw new AssertionError();
+        } catch (Exception e) {
+            return legacyHandle(e);
+        }
+    }
+
+    @Benchmark
+    public ApiException currentServerError() {
+        try {
+            mResultFunction.apply(mFailure);
+            throw new AssertionError();
+        } catch (Exception e) {
+            return ExceptionEngine.handleException(e);
+        }
+    }
+
+    //熔断期间的快速失败 异常在请求线程创建
+    @Benchmark
+    public Object legacyCircuitOpen() {
+        return legacyHandle(new LegacyCircuitOpenException("api.example.com"));
+    }
+
+    @Benchmark
+    public ApiException currentCircuitOpen() {
+        return ExceptionEngine.handleException(new CircuitOpenException("api.example.com"));
+    }
+
+    //OkHttp抛出的异常本身带堆栈，只比较分类部分
+    @Benchmark
+    public Object legacyConnectError() {
+        return legacyHandle(CONNECT_ERROR);
+    }
+
+    @Benchmark
+    public ApiException currentConnectError() {
+        return ExceptionEngine.handleException(CONNECT_ERROR);
+    }
+
+    private Object legacyResult(HttpResponse<?> httpResponse) {
+        try {
+            if (HttpResponse.SUCCESS_CODE == httpResponse.getCode()) {
+                return httpResponse.getData();
+            } else {
+                throw new LegacyServerException(String.valueOf(httpResponse.getCode()), "");
+            }
+        } catch (Exception e) {
+            e.printStackTrace(mLog);
+            throw new LegacyServerException("-1", e.getMessage());
+        }
+    }
+
+    private static LegacyApiException legacyHandle(Throwable e) {
+        LegacyApiException ex;
+        if (e instanceof HttpException) {
+            ex = new LegacyApiException(e, ((HttpException) e).code());
+            ex.msg = "网络错误";
+        } else if (e instanceof LegacyServerException) {
+            LegacyServerException serverExc = (LegacyServerException) e;
+            ex = new LegacyApiException(serverExc, Integer.parseInt(serverExc.code));
+            ex.msg = serverExc.msg;
+        } else if (e instanceof JsonParseException || e instanceof ParseException) {
+            ex = new LegacyApiException(e, ExceptionEngine.ANALYTIC_ERROR);
+            ex.msg = "解析错误";
+        } else if (e instanceof ConnectException) {
+            ex = new LegacyApiException(e, ExceptionEngine.CONNECT_ERROR);
+            ex.msg = "连接失败";
+        } else if (e instanceof SocketTimeoutException) {
+            ex = new LegacyApiException(e, ExceptionEngine.TIME_OUT_ERROR);
+            ex.msg = "网络超时";
+        } else if (e instanceof LegacyCircuitOpenException) {
+            ex = new LegacyApiException(e, ExceptionEngine.CIRCUIT_OPEN_ERROR);
+            ex.msg = "服务暂不可用";
+        } else {
+            ex = new LegacyApiException(e, ExceptionEngine.UN_KNOWN_ERROR);
+            ex.msg = "未知错误";
+        }
+        return ex;
+    }
+
+    private static class LegacyServerException extends RuntimeException {
+        final String code;
+        final String msg;
+
+        LegacyServerException(String code, String msg) {
+            this.code = code;
+            this.msg = msg;
+        }
+    }
+
+    private static class LegacyApiException extends Exception {
+        final int code;
+        String msg;
+
+        LegacyApiException(Throwable throwable, int code) {
+            super(throwable);
+            this.code = code;
+        }
+    }
+
+    private static class LegacyCircuitOpenException extends IOException {
+        LegacyCircuitOpenException(String host) {
+            super("circuit open: " + host);
+        }
+    }
+}
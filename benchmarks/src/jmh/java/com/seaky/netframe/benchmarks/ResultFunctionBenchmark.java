@@ -0,0 +1,90 @@
+package com.seaky.netframe.benchmarks;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.seaky.netframe.build.HttpResponse;
+import com.seaky.netframe.exception.ApiException;
+import com.seaky.netframe.exception.ExceptionEngine;
+import com.seaky.netframe.function.ErrorFunction;
+import com.seaky.netframe.function.ServerResultFunction;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.Observable;
+
+/**
+ * 结果分离和错误分类的开销
+ * 成功路径只是取data，错误路径要抛异常、包装、分类，主要看异常创建（填充堆栈）的成本
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ResultFunctionBenchmark {
+
+    private ServerResultFunction<Object> mResultFunction;
+    private ErrorFunction<Object> mErrorFunction;
+    private HttpResponse<?> mSuccess;
+    private HttpResponse<?> mFailure;
+
+    @Setup
+    public void setUp() {
+        mResultFunction = new ServerResultFunction<>();
+        mErrorFunction = new ErrorFunction<>();
+        Gson gson = new Gson();
+        mSuccess = gson.fromJson("{\"status\":" + HttpResponse.SUCCESS_CODE + ",\"data\":\"ok\"}", HttpResponse.class);
+        mFailure = gson.fromJson("{\"status\":500,\"data\":null}", HttpResponse.class);
+    }
+
+    @Benchmark
+    public Object success() throws Exception {
+        return mResultFunction.apply(mSuccess);
+    }
+
+    //接口返回错误码 ServerResultFunction抛出，再由ExceptionEngine转成ApiException
+    @Benchmark
+    public ApiException serverError() {
+        try {
+            mResultFunction.apply(mFailure);
+            throw new AssertionError();
+        } catch (Exception e) {
+            return ExceptionEngine.handleException(e);
+        }
+    }
+
+    //异常是在请求过程中创建的，这里一起算进去
+    @Benchmark
+    public ApiException connectError() {
+        return ExceptionEngine.handleException(new ConnectException("failed to connect"));
+    }
+
+    @Benchmark
+    public ApiException timeoutError() {
+        return ExceptionEngine.handleException(new SocketTimeoutException("timeout"));
+    }
+
+    @Benchmark
+    public ApiException parseError() {
+        return ExceptionEngine.handleException(new JsonParseException("bad json"));
+    }
+
+    //未知错误要走完所有instanceof分支
+    @Benchmark
+    public ApiException unknownError() {
+        return ExceptionEngine.handleException(new IllegalStateException());
+    }
+
+    @Benchmark
+    public Observable<Object> errorFunction() throws Exception {
+        return mErrorFunction.apply(new ConnectException("failed to connect"));
+    }
+}
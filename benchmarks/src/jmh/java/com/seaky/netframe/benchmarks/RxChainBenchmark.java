@@ -0,0 +1,135 @@
+package com.seaky.netframe.benchmarks;
+
+import com.google.gson.Gson;
+import com.seaky.netframe.build.HttpResponse;
+import com.seaky.netframe.function.ErrorFunction;
+import com.seaky.netframe.function.ServerResultFunction;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.Observable;
+import io.reactivex.Observer;
+import io.reactivex.Scheduler;
+import io.reactivex.disposables.Disposable;
+import io.reactivex.schedulers.Schedulers;
+
+/**
+ * HttpFactory.request里操作符链的开销
+ * 和request一样的顺序：map(结果分离) -> onErrorResumeNext(错误分类) -> subscribeOn(请求线程) -> observeOn(主线程)
+ * JVM上没有主线程，用一个单线程的Scheduler代替；RequestTrace是包内类，这里不包含统计的开销
+ * direct是不经过Rx直接调用，用来扣除结果分离本身的耗时
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class RxChainBenchmark {
+
+    private ServerResultFunction<Object> mResultFunction;
+    private HttpResponse<?> mSuccess;
+    private HttpResponse<?> mFailure;
+    private ExecutorService mNetExecutor;
+    private ExecutorService mMainExecutor;
+    private Scheduler mNetScheduler;
+    private Scheduler mMainScheduler;
+
+    @Setup
+    public void setUp() {
+        mResultFunction = new ServerResultFunction<>();
+        Gson gson = new Gson();
+        mSuccess = gson.fromJson("{\"status\":" + HttpResponse.SUCCESS_CODE + ",\"data\":\"ok\"}", HttpResponse.class);
+        mFailure = gson.fromJson("{\"status\":500,\"data\":null}", HttpResponse.class);
+        mNetExecutor = Executors.newFixedThreadPool(4);
+        mMainExecutor = Executors.newSingleThreadExecutor();
+        mNetScheduler = Schedulers.from(mNetExecutor);
+        mMainScheduler = Schedulers.from(mMainExecutor);
+    }
+
+    @TearDown
+    public void tearDown() {
+        mNetExecutor.shutdownNow();
+        mMainExecutor.shutdownNow();
+    }
+
+    @Benchmark
+    public Object direct() throws Exception {
+        return mResultFunction.apply(mSuccess);
+    }
+
+    //同一个线程里跑完，只有操作符本身的开销
+    @Benchmark
+    public void chainSync(Blackhole blackhole) {
+        pipeline(mSuccess).subscribe(new BlackholeObserver(blackhole, null));
+    }
+
+    @Benchmark
+    public void chainSyncError(Blackhole blackhole) {
+        pipeline(mFailure).subscribe(new BlackholeObserver(blackhole, null));
+    }
+
+    //加上两次切换线程，和真实请求一样
+    @Benchmark
+    public void chainWithThreadHop(Blackhole blackhole) throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(1);
+        pipeline(mSuccess)
+                .subscribeOn(mNetScheduler)
+                .observeOn(mMainScheduler)
+                .subscribe(new BlackholeObserver(blackhole, latch));
+        latch.await();
+    }
+
+    private Observable<Object> pipeline(HttpResponse<?> response) {
+        return Observable.<HttpResponse<?>>just(response)
+                .map(mResultFunction)
+                .onErrorResumeNext(new ErrorFunction<>());
+    }
+
+    private static class BlackholeObserver implements Observer<Object> {
+
+        private final Blackhole mBlackhole;
+        private final CountDownLatch mLatch;
+
+        BlackholeObserver(Blackhole blackhole, CountDownLatch latch) {
+            mBlackhole = blackhole;
+            mLatch = latch;
+        }
+
+        @Override
+        public void onSubscribe(Disposable d) {
+        }
+
+        @Override
+        public void onNext(Object o) {
+            mBlackhole.consume(o);
+        }
+
+        @Override
+        public void onError(Throwable e) {
+            mBlackhole.consume(e);
+            done();
+        }
+
+        @Override
+        public void onComplete() {
+            done();
+        }
+
+        private void done() {
+            if (null != mLatch) {
+                mLatch.countDown();
+            }
+        }
+    }
+}
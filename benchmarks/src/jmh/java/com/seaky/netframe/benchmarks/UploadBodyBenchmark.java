@@ -0,0 +1,118 @@
+package com.seaky.netframe.benchmarks;
+
+import com.seaky.netframe.core.FileRequestBody;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.Okio;
+import okio.Sink;
+import okio.Timeout;
+
+/**
+ * 上传请求体的内存占用 不走网络，请求体直接写进丢弃数据的sink
+ * legacyBytes是原来的写法：整个文件读进byte[]再RequestBody.create
+ * streaming是FileRequestBody，用gc profiler看gc.alloc.rate.norm，应该和文件大小无关
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class UploadBodyBenchmark {
+
+    private static final MediaType TYPE = MediaType.parse("application/octet-stream");
+
+    //文件大小(MB)
+    @Param({"4", "32"})
+    public int size;
+
+    private File mFile;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        byte[] content = new byte[size * 1024 * 1024];
+        new Random(42).nextBytes(content);
+        mFile = File.createTempFile("netframe", "upload");
+        FileOutputStream out = new FileOutputStream(mFile);
+        try {
+            out.write(content);
+        } finally {
+            out.close();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        mFile.delete();
+    }
+
+    @Benchmark
+    public long legacyBytes() throws IOException {
+        byte[] bytes = new byte[(int) mFile.length()];
+        FileInputStream in = new FileInputStream(mFile);
+        try {
+            int read = 0;
+            while (read < bytes.length) {
+                read += in.read(bytes, read, bytes.length - read);
+            }
+        } finally {
+            in.close();
+        }
+        return writeOut(RequestBody.create(TYPE, bytes));
+    }
+
+    @Benchmark
+    public long streaming() throws IOException {
+        return writeOut(new FileRequestBody(mFile, TYPE, null));
+    }
+
+    private static long writeOut(RequestBody body) throws IOException {
+        DiscardSink discard = new DiscardSink();
+        BufferedSink sink = Okio.buffer(discard);
+        body.writeTo(sink);
+        sink.flush();
+        return discard.mWritten;
+    }
+
+    //模拟socket 收到就丢掉
+    private static final class DiscardSink implements Sink {
+        private long mWritten;
+
+        @Override
+        public void write(Buffer source, long byteCount) throws IOException {
+            source.skip(byteCount);
+            mWritten += byteCount;
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public Timeout timeout() {
+            return Timeout.NONE;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -1,15 +1,38 @@
 package com.seaky.netframe;
 
+import android.content.Context;
+
 import androidx.lifecycle.LifecycleOwner;
 
 import com.seaky.netframe.build.DownloadInfo;
 import com.seaky.netframe.build.DownloadObserver;
 import com.seaky.netframe.build.HttpObserver;
 import com.seaky.netframe.build.HttpResponse;
-import com.seaky.netframe.core.ApiService;
+import com.seaky.netframe.build.ProcessObserver;
+import com.seaky.netframe.build.UploadInfo;
+import com.seaky.netframe.build.UploadObserver;
+import com.seaky.netframe.core.CacheStats;
+import com.seaky.netframe.core.CompressionStats;
+import com.seaky.netframe.core.CircuitBreaker;
+import com.seaky.netframe.core.DeferredQueue;
+import com.seaky.netframe.core.DnsStats;
+import com.seaky.netframe.core.DownloadManager;
 import com.seaky.netframe.core.HttpFactory;
+import com.seaky.netframe.core.NetFrameConfig;
+import com.seaky.netframe.core.NetMetrics;
+import com.seaky.netframe.core.NetScheduler;
+import com.seaky.netframe.core.PoolStats;
+import com.seaky.netframe.core.ProgressSampler;
+import com.seaky.netframe.core.SchedulerStats;
+import com.seaky.netframe.core.SingleFlightGroup;
+import com.seaky.netframe.core.WarmUpReport;
+
+import java.io.File;
+import java.util.Map;
 
+import io.reactivex.Flowable;
 import io.reactivex.Observable;
+import io.reactivex.Single;
 
 /**
  *  Api入口
@@ -30,11 +53,56 @@ import io.reactivex.Observable;
 
 public class HttpCenter {
 
+    //下载默认分段数
+    private static final int DOWNLOAD_SEGMENTS = 4;
+
+    /**
+     * 初始化 开启磁盘缓存
+     * 在Application.onCreate中调用
+     */
+    public static void init(Context context) {
+        HttpFactory.init(context);
+    }
+
+    /**
+     * 初始化 使用自定义的并发数、连接池、协议、超时等配置
+     * 在Application.onCreate中调用，要在第一次请求之前
+     */
+    public static void init(Context context, NetFrameConfig config) {
+        HttpFactory.init(context, config);
+    }
+
+    /**
+     * 预热 在Application.onCreate中init之后调用
+     * 在后台线程创建网络相关对象并预解析DNS，preconnect为true时还会预先建好连接
+     * 订阅后才开始执行，返回各阶段耗时
+     */
+    public static Single<WarmUpReport> warmUp(boolean preconnect) {
+        return HttpFactory.warmUp(preconnect);
+    }
 
     public static <T> T getApi(Class<T> api) {
         return HttpFactory.getInstance().create(api);
     }
 
+    /**
+     * 获取其他域名的接口 接口实例按域名缓存，所有域名共用一个OkHttpClient
+     */
+    public static <T> T getApi(String baseUrl, Class<T> api) {
+        return HttpFactory.getInstance().create(baseUrl,api);
+    }
+
+    /**
+     * 运行时把发往baseUrl的请求切到target 例如测试环境、备用域名
+     */
+    public static void switchBaseUrl(String baseUrl, String target) {
+        HttpFactory.getInstance().switchBaseUrl(baseUrl,target);
+    }
+
+    public static void resetBaseUrl(String baseUrl) {
+        HttpFactory.getInstance().resetBaseUrl(baseUrl);
+    }
+
 
     public static <T> void send(Observable<HttpResponse<T>> observable, LifecycleOwner lifecycleOwner, HttpObserver<T> observer) {
         HttpFactory.getInstance().request(observable,lifecycleOwner,observer);
@@ -44,7 +112,198 @@ public class HttpCenter {
         HttpFactory.getInstance().request(observable,observer);
     }
 
+    /**
+     * 按优先级发送请求
+     * INTERACTIVE 用户正在等结果的请求  BACKGROUND 后台同步、预加载，繁忙时会被拒绝
+     */
+    public static <T> void send(Observable<HttpResponse<T>> observable, LifecycleOwner lifecycleOwner,
+                                NetScheduler.Priority priority, HttpObserver<T> observer) {
+        HttpFactory.getInstance().request(observable,lifecycleOwner,priority,observer);
+    }
+
+    public static <T> void send(Observable<HttpResponse<T>> observable, NetScheduler.Priority priority, HttpObserver<T> observer) {
+        HttpFactory.getInstance().request(observable,priority,observer);
+    }
+
+    /**
+     * 发送请求并在后台线程处理结果
+     * ProcessObserver.onProcess在computation线程把接口数据转换成界面需要的数据，onSuccess拿到的是转换后的结果
+     * 不和send重载，T和R相同时ProcessObserver也是HttpObserver<T>，重载会有歧义
+     */
+    public static <T, R> void sendProcessed(Observable<HttpResponse<T>> observable, LifecycleOwner lifecycleOwner, ProcessObserver<T, R> observer) {
+        HttpFactory.getInstance().request(observable,lifecycleOwner,observer);
+    }
+
+    public static <T, R> void sendProcessed(Observable<HttpResponse<T>> observable, LifecycleOwner lifecycleOwner,
+                                            NetScheduler.Priority priority, ProcessObserver<T, R> observer) {
+        HttpFactory.getInstance().request(observable,lifecycleOwner,priority,observer);
+    }
+
+    public static <T, R> void sendProcessed(Observable<HttpResponse<T>> observable, NetScheduler.Priority priority, ProcessObserver<T, R> observer) {
+        HttpFactory.getInstance().request(observable,priority,observer);
+    }
+
+    public static <T, R> void sendProcessed(Observable<HttpResponse<T>> observable, ProcessObserver<T, R> observer) {
+        HttpFactory.getInstance().request(observable,observer);
+    }
+
+    /**
+     * 标记了@CachePolicy的接口的缓存命中情况
+     */
+    public static CacheStats getCacheStats() {
+        return HttpFactory.getInstance().getCacheStats();
+    }
+
+    /**
+     * 请求排队和连接池的使用情况 用来调整NetFrameConfig
+     */
+    public static PoolStats getPoolStats() {
+        return HttpFactory.getInstance().getPoolStats();
+    }
+
+    /**
+     * 域名熔断状态变化 例如熔断时提示用户服务暂不可用
+     */
+    public static Observable<CircuitBreaker.StateEvent> observeCircuitBreaker() {
+        return HttpFactory.getInstance().getCircuitBreaker().observe();
+    }
+
+    public static CircuitBreaker.State getCircuitState(String host) {
+        return HttpFactory.getInstance().getCircuitBreaker().getState(host);
+    }
+
+    /**
+     * 每个接口当前自动计算的超时 ApiService.method -> 超时(ms)
+     */
+    public static Map<String, Long> getTimeouts() {
+        return HttpFactory.getInstance().getTimeouts();
+    }
+
+    /**
+     * 各接口各阶段耗时 接口 -> 阶段 -> p50/p90/p99
+     * 阶段见NetMetrics.Phase：DNS、建连、TLS、首字节、读响应体、解析、结果分离、主线程回调等
+     */
+    public static Map<String, Map<NetMetrics.Phase, NetMetrics.PhaseStats>> getMetrics() {
+        return HttpFactory.getInstance().getNetMetrics().snapshot();
+    }
+
+    //耗时统计导出成json
+    public static String exportMetrics() {
+        return HttpFactory.getInstance().getNetMetrics().export();
+    }
+
+    /**
+     * 网络线程池的排队耗时和活跃线程数
+     */
+    public static SchedulerStats getSchedulerStats() {
+        return HttpFactory.getInstance().getSchedulerStats();
+    }
+
+    /**
+     * DNS缓存命中率和解析耗时
+     */
+    public static DnsStats getDnsStats() {
+        return HttpFactory.getInstance().getDnsStats();
+    }
+
+    /**
+     * 请求体压缩和响应解压省下的流量 接口 -> 统计，需要在NetFrameConfig里开启compression
+     */
+    public static Map<String, CompressionStats> getCompressionStats() {
+        return HttpFactory.getInstance().getCompressionStats();
+    }
+
+    /**
+     * 离线队列重发的结果 送达或被服务端拒绝时各通知一次
+     * 没有调用init时没有离线队列，返回空的Observable
+     */
+    public static Observable<DeferredQueue.DeferredEvent> observeDeferred() {
+        DeferredQueue queue = HttpFactory.getInstance().getDeferredQueue();
+        return null != queue ? queue.observe() : Observable.<DeferredQueue.DeferredEvent>empty();
+    }
+
+    //离线队列里还没送达的请求数
+    public static int getDeferredCount() {
+        DeferredQueue queue = HttpFactory.getInstance().getDeferredQueue();
+        return null != queue ? queue.size() : 0;
+    }
+
+    /**
+     * 立即重发离线队列 网络恢复时会自动重发，一般不用调用
+     */
+    public static void replayDeferred() {
+        DeferredQueue queue = HttpFactory.getInstance().getDeferredQueue();
+        if (null != queue) {
+            queue.replay();
+        }
+    }
+
+    /**
+     * 标记了@SingleFlight的接口合并了多少次请求
+     * getRequestCount 经过合并的请求数  getSavedCount 省掉的网络请求数
+     */
+    public static SingleFlightGroup getSingleFlightStats() {
+        return HttpFactory.getInstance().getSingleFlightGroup();
+    }
+
     public static void download(String url, String savePath, String fileName, DownloadObserver<DownloadInfo> observer) {
-        HttpFactory.getInstance().download(getApi(ApiService.class).downloadFile(url),url,savePath,fileName,observer);
+        download(url,savePath,fileName,DOWNLOAD_SEGMENTS,observer);
+    }
+
+    public static void download(String url, String savePath, String fileName, int segmentCount, DownloadObserver<DownloadInfo> observer) {
+        HttpFactory.getInstance().download(url,savePath,fileName,segmentCount,observer);
+    }
+
+    /**
+     * 排队下载 同时下载的数量有上限，按优先级排队，重复提交会合并
+     * @return  任务id 用于暂停/继续/取消
+     */
+    public static int enqueueDownload(String url, String savePath, String fileName, DownloadManager.Priority priority, DownloadObserver<DownloadInfo> observer) {
+        return HttpFactory.getInstance().getDownloadManager().enqueue(url,savePath,fileName,DOWNLOAD_SEGMENTS,priority,observer);
+    }
+
+    public static void pauseDownload(int id) {
+        HttpFactory.getInstance().getDownloadManager().pause(id);
+    }
+
+    public static void resumeDownload(int id) {
+        HttpFactory.getInstance().getDownloadManager().resume(id);
+    }
+
+    /**
+     * 继续暂停或者失败的下载 失败任务原来的observer已经收到onError，不会再回调，结果通知给这个observer
+     */
+    public static void resumeDownload(int id, DownloadObserver<DownloadInfo> observer) {
+        HttpFactory.getInstance().getDownloadManager().resume(id, observer);
+    }
+
+    public static void cancelDownload(int id) {
+        HttpFactory.getInstance().getDownloadManager().cancel(id);
+    }
+
+    public static Flowable<DownloadInfo> downloadFlowable(String url, String savePath, String fileName) {
+        return HttpFactory.getInstance().downloadFlowable(url,savePath,fileName,DOWNLOAD_SEGMENTS,
+                ProgressSampler.DEFAULT_INTERVAL,ProgressSampler.DEFAULT_STEP);
+    }
+
+    /**
+     * 上传文件 整个文件一次POST，文件边读边发，不会整个读进内存
+     */
+    public static void upload(String url, File file, String contentType, UploadObserver<UploadInfo> observer) {
+        HttpFactory.getInstance().upload(url,file,contentType,0,1,observer);
+    }
+
+    /**
+     * 分片上传 失败后再次调用同样的参数从服务器确认的位置续传，协议见UploadTask
+     * @param chunkSize      分片大小 例如UploadTask.DEFAULT_CHUNK_SIZE
+     * @param parallelism    同时上传的分片数，1为按顺序上传
+     */
+    public static void upload(String url, File file, String contentType, long chunkSize, int parallelism, UploadObserver<UploadInfo> observer) {
+        HttpFactory.getInstance().upload(url,file,contentType,chunkSize,parallelism,observer);
+    }
+
+    public static Flowable<UploadInfo> uploadFlowable(String url, File file, String contentType, long chunkSize, int parallelism) {
+        return HttpFactory.getInstance().uploadFlowable(url,file,contentType,chunkSize,parallelism,
+                ProgressSampler.DEFAULT_INTERVAL,ProgressSampler.DEFAULT_STEP);
     }
 }
@@ -0,0 +1,31 @@
+package com.seaky.netframe.annotation;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ *  使用二进制格式传输
+ *
+ *  标记在ApiService的方法上，请求体和响应都用二进制转换器，默认是CBOR，
+ *  可以在NetFrameConfig.Builder.binaryConverter换成Protobuf、MessagePack等
+ *  请求自动带上对应的Accept，服务器不支持时返回json也能正常解析
+ *  HttpResponse和ServerResultFunction的处理和json一样
+ *
+ *  数据量大的列表接口用，CBOR比json小，解析不用处理文本
+ *
+ *  用法：
+ *       {@code @Binary}
+ *       {@code @GET(QUERY_FEED)}
+ *       {@code Observable<HttpResponse<List<FeedBean>>> getFeed();}
+ *
+ *  Created by Seaky
+ */
+
+@Documented
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Binary {
+}
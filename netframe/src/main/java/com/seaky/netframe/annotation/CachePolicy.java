@@ -0,0 +1,44 @@
+package com.seaky.netframe.annotation;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ *  接口缓存策略
+ *
+ *  标记在ApiService的GET方法上，缓存分两级：
+ *  内存：解析好的HttpResponse对象，命中时不用再走Gson和网络
+ *  磁盘：OkHttp的Cache，保存原始响应，进程重启后仍然有效（需要先调用HttpCenter.init）
+ *
+ *  用法：
+ *       {@code @CachePolicy(mode = CachePolicy.Mode.STALE_WHILE_REVALIDATE, maxAge = 300)}
+ *       {@code @GET(QUERY_CONFIG)}
+ *       {@code Observable<HttpResponse<ConfigBean>> getConfig();}
+ *
+ *  注：内存缓存的对象是共享的，拿到之后不要修改
+ *
+ *  Created by Seaky
+ */
+
+@Documented
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface CachePolicy {
+
+    Mode mode() default Mode.CACHE_FIRST;
+
+    //缓存有效期 秒
+    long maxAge() default 60;
+
+    enum Mode {
+        //有未过期的缓存就用缓存，否则请求网络
+        CACHE_FIRST,
+        //优先请求网络，网络失败时用缓存（不管是否过期）
+        NETWORK_FIRST,
+        //有缓存就先返回缓存，缓存过期的话在后台请求网络更新缓存，下次请求拿到新数据
+        STALE_WHILE_REVALIDATE
+    }
+}
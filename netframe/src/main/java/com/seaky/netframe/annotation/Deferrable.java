@@ -0,0 +1,38 @@
+package com.seaky.netframe.annotation;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ *  离线时延后发送
+ *
+ *  标记在ApiService的写接口上，没有网络或者连不上服务器时，请求存入磁盘上的离线队列，
+ *  回调onFailure，错误码ExceptionEngine.DEFERRED_ERROR；网络恢复后按顺序自动重发
+ *  重发的请求带Idempotency-Key头，服务器按它去重，同一个请求不会被执行两次
+ *  重发结果见HttpCenter.observeDeferred
+ *
+ *  batchUrl不为空时，同一接口连续排队的请求合并成一个POST发到batchUrl（相对接口地址），请求体是
+ *  [{"key":"Idempotency-Key","body":原请求体}, ...]，只合并json请求体
+ *
+ *  用法：
+ *       {@code @Deferrable(batchUrl = "event/batch")}
+ *       {@code @POST(REPORT_EVENT)}
+ *       {@code Observable<HttpResponse<String>> reportEvent(@Body EventBean event);}
+ *
+ *  Created by Seaky
+ */
+
+@Documented
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Deferrable {
+
+    //批量接口地址 为空时逐条发送
+    String batchUrl() default "";
+
+    //一次最多合并多少条
+    int maxBatch() default 20;
+}
@@ -0,0 +1,28 @@
+package com.seaky.netframe.annotation;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ *  不压缩请求体
+ *
+ *  开启了NetFrameConfig.Builder.compression之后，所有ApiService的请求体超过阈值都会压缩
+ *  服务器不支持解压的接口、已经是压缩格式的数据（图片、zip）标记这个注解跳过
+ *  响应仍然由OkHttp默认的gzip处理
+ *
+ *  用法：
+ *       {@code @NoCompress}
+ *       {@code @POST(UPLOAD_IMAGE)}
+ *       {@code Observable<HttpResponse<String>> uploadImage(@Body RequestBody image);}
+ *
+ *  Created by Seaky
+ */
+
+@Documented
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface NoCompress {
+}
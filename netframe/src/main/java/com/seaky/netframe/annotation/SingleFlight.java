@@ -0,0 +1,28 @@
+package com.seaky.netframe.annotation;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ *  合并并发的相同请求
+ *
+ *  标记在ApiService的GET方法上，同一时刻多个地方发起的相同请求（方法、地址、header都相同）
+ *  只会真正请求一次，所有订阅者拿到同一份解析结果
+ *  所有订阅者都取消后，这次请求也会被取消
+ *
+ *  用法：
+ *       {@code @SingleFlight}
+ *       {@code @GET(QUERY_DEMO)}
+ *       {@code Observable<HttpResponse<DemoBean>> getDemo();}
+ *
+ *  Created by Seaky
+ */
+
+@Documented
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface SingleFlight {
+}
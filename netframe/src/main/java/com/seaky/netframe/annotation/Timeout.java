@@ -0,0 +1,32 @@
+package com.seaky.netframe.annotation;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import java.util.concurrent.TimeUnit;
+
+/**
+ *  固定接口的整体超时
+ *
+ *  默认每个接口的超时按它最近的耗时自动计算（见AdaptiveTimeout），
+ *  标记了这个注解的接口不再自动计算，直接使用指定的值
+ *
+ *  用法：
+ *       {@code @Timeout(value = 60, unit = TimeUnit.SECONDS)}
+ *       {@code @POST(EXPORT_REPORT)}
+ *       {@code Observable<HttpResponse<ReportBean>> exportReport();}
+ *
+ *  Created by Seaky
+ */
+
+@Documented
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Timeout {
+
+    long value();
+
+    TimeUnit unit() default TimeUnit.MILLISECONDS;
+}
@@ -0,0 +1,302 @@
+package com.seaky.netframe.build;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonPrimitive;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Map;
+
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.BufferedSource;
+
+/**
+ * CBOR(RFC 8949)和Gson的JsonElement互相转换
+ *
+ * 解析成JsonElement之后交给Gson的TypeAdapter，实体类、HttpResponse的处理都和json一样
+ * 字节串转成数字数组，和Gson默认的byte[]格式一致；tag忽略，只取里面的值
+ * 不依赖第三方库
+ *
+ * Created by Seaky
+ */
+
+public final class Cbor {
+
+    private static final int MAJOR_UNSIGNED = 0;
+    private static final int MAJOR_NEGATIVE = 1;
+    private static final int MAJOR_BYTES = 2;
+    private static final int MAJOR_TEXT = 3;
+    private static final int MAJOR_ARRAY = 4;
+    private static final int MAJOR_MAP = 5;
+    private static final int MAJOR_TAG = 6;
+    private static final int MAJOR_SIMPLE = 7;
+
+    private static final int INDEFINITE = 31;
+    private static final int BREAK = 0xff;
+    private static final int FALSE = 0xf4;
+    private static final int TRUE = 0xf5;
+    private static final int NULL = 0xf6;
+    private static final int UNDEFINED = 0xf7;
+    private static final int HALF = 0xf9;
+    private static final int FLOAT = 0xfa;
+    private static final int DOUBLE = 0xfb;
+
+    private static final BigInteger UNSIGNED_LONG = BigInteger.ONE.shiftLeft(64);
+
+    private Cbor() {
+    }
+
+    /**
+     * 读一个完整的值
+     */
+    public static JsonElement read(BufferedSource source) throws IOException {
+        int initial = source.readByte() & 0xff;
+        if (initial == BREAK) {
+            throw new JsonParseException("unexpected break");
+        }
+        return read(source, initial);
+    }
+
+    private static JsonElement read(BufferedSource source, int initial) throws IOException {
+        int major = initial >>> 5;
+        int info = initial & 0x1f;
+        switch (major) {
+            case MAJOR_UNSIGNED: {
+                long value = readArgument(source, info);
+                return new JsonPrimitive(value >= 0 ? (Number) value : BigInteger.valueOf(value).add(UNSIGNED_LONG));
+            }
+            case MAJOR_NEGATIVE: {
+                long value = readArgument(source, info);
+                return new JsonPrimitive(value >= 0 ? (Number) (-1 - value)
+                        : BigInteger.valueOf(value).add(UNSIGNED_LONG).add(BigInteger.ONE).negate());
+            }
+            case MAJOR_BYTES: {
+                JsonArray array = new JsonArray();
+                if (info == INDEFINITE) {
+                    int chunk;
+                    while ((chunk = source.readByte() & 0xff) != BREAK) {
+                        addBytes(array, source.readByteArray(readChunkLength(source, chunk, MAJOR_BYTES)));
+                    }
+                } else {
+                    addBytes(array, source.readByteArray(readLength(source, info)));
+                }
+                return array;
+            }
+            case MAJOR_TEXT: {
+                if (info != INDEFINITE) {
+                    return new JsonPrimitive(source.readUtf8(readLength(source, info)));
+                }
+                Buffer text = new Buffer();
+                int chunk;
+                while ((chunk = source.readByte() & 0xff) != BREAK) {
+                    source.readFully(text, readChunkLength(source, chunk, MAJOR_TEXT));
+                }
+                return new JsonPrimitive(text.readUtf8());
+            }
+            case MAJOR_ARRAY: {
+                JsonArray array = new JsonArray();
+                if (info == INDEFINITE) {
+                    int next;
+                    while ((next = source.readByte() & 0xff) != BREAK) {
+                        array.add(read(source, next));
+                    }
+                } else {
+                    for (long i = readLength(source, info); i > 0; i--) {
+                        array.add(read(source));
+                    }
+                }
+                return array;
+            }
+            case MAJOR_MAP: {
+                JsonObject object = new JsonObject();
+                if (info == INDEFINITE) {
+                    int next;
+                    while ((next = source.readByte() & 0xff) != BREAK) {
+                        object.add(keyOf(read(source, next)), read(source));
+                    }
+                } else {
+                    for (long i = readLength(source, info); i > 0; i--) {
+                        object.add(keyOf(read(source)), read(source));
+                    }
+                }
+                return object;
+            }
+            case MAJOR_TAG:
+                readArgument(source, info);
+                return read(source);
+            default:
+                return readSimple(source, initial);
+        }
+    }
+
+    private static JsonElement readSimple(BufferedSource source, int initial) throws IOException {
+        switch (initial) {
+            case FALSE:
+                return new JsonPrimitive(false);
+            case TRUE:
+                return new JsonPrimitive(true);
+            case NULL:
+            case UNDEFINED:
+                return JsonNull.INSTANCE;
+            case HALF:
+                return new JsonPrimitive(halfToFloat(source.readShort() & 0xffff));
+            case FLOAT:
+                return new JsonPrimitive(Float.intBitsToFloat(source.readInt()));
+            case DOUBLE:
+                return new JsonPrimitive(Double.longBitsToDouble(source.readLong()));
+            default:
+                throw new JsonParseException("unsupported cbor simple value: " + initial);
+        }
+    }
+
+    private static long readArgument(BufferedSource source, int info) throws IOException {
+        if (info < 24) {
+            return info;
+        }
+        switch (info) {
+            case 24:
+                return source.readByte() & 0xffL;
+            case 25:
+                return source.readShort() & 0xffffL;
+            case 26:
+                return source.readInt() & 0xffffffffL;
+            case 27:
+                return source.readLong();
+            default:
+                throw new JsonParseException("invalid cbor argument: " + info);
+        }
+    }
+
+    private static long readLength(BufferedSource source, int info) throws IOException {
+        long length = readArgument(source, info);
+        if (length < 0 || length > Integer.MAX_VALUE) {
+            throw new JsonParseException("cbor length too large: " + length);
+        }
+        return length;
+    }
+
+    //不定长字节串/字符串的每一段必须是同类型的定长串
+    private static long readChunkLength(BufferedSource source, int chunk, int major) throws IOException {
+        if (chunk >>> 5 != major || (chunk & 0x1f) == INDEFINITE) {
+            throw new JsonParseException("invalid cbor chunk " + chunk + " in indefinite-length type " + major);
+        }
+        return readLength(source, chunk & 0x1f);
+    }
+
+    private static void addBytes(JsonArray array, byte[] bytes) {
+        for (byte b : bytes) {
+            array.add(new JsonPrimitive(b));
+        }
+    }
+
+    //json的key只能是字符串
+    private static String keyOf(JsonElement key) {
+        if (key.isJsonPrimitive()) {
+            return key.getAsString();
+        }
+        throw new JsonParseException("unsupported cbor map key: " + key);
+    }
+
+    private static float halfToFloat(int half) {
+        int exponent = (half >>> 10) & 0x1f;
+        int mantissa = half & 0x3ff;
+        float value;
+        if (exponent == 0) {
+            value = mantissa * (float) Math.pow(2, -24);
+        } else if (exponent == 31) {
+            value = mantissa == 0 ? Float.POSITIVE_INFINITY : Float.NaN;
+        } else {
+            value = (float) ((1 + mantissa / 1024.0) * Math.pow(2, exponent - 15));
+        }
+        return (half & 0x8000) != 0 ? -value : value;
+    }
+
+    /**
+     * 写一个完整的值 数组和对象都用定长格式
+     */
+    public static void write(JsonElement element, BufferedSink sink) throws IOException {
+        if (element == null || element.isJsonNull()) {
+            sink.writeByte(NULL);
+        } else if (element.isJsonObject()) {
+            JsonObject object = element.getAsJsonObject();
+            writeHeader(sink, MAJOR_MAP, object.entrySet().size());
+            for (Map.Entry<String, JsonElement> entry : object.entrySet()) {
+                writeText(sink, entry.getKey());
+                write(entry.getValue(), sink);
+            }
+        } else if (element.isJsonArray()) {
+            JsonArray array = element.getAsJsonArray();
+            writeHeader(sink, MAJOR_ARRAY, array.size());
+            for (JsonElement item : array) {
+                write(item, sink);
+            }
+        } else {
+            JsonPrimitive primitive = element.getAsJsonPrimitive();
+            if (primitive.isBoolean()) {
+                sink.writeByte(primitive.getAsBoolean() ? TRUE : FALSE);
+            } else if (primitive.isNumber()) {
+                writeNumber(sink, primitive.getAsNumber());
+            } else {
+                writeText(sink, primitive.getAsString());
+            }
+        }
+    }
+
+    private static void writeNumber(BufferedSink sink, Number number) throws IOException {
+        if (number instanceof Float) {
+            sink.writeByte(FLOAT).writeInt(Float.floatToIntBits(number.floatValue()));
+        } else if (number instanceof Double || number instanceof BigDecimal) {
+            sink.writeByte(DOUBLE).writeLong(Double.doubleToLongBits(number.doubleValue()));
+        } else if (number instanceof Integer || number instanceof Long
+                || number instanceof Short || number instanceof Byte) {
+            writeLong(sink, number.longValue());
+        } else {
+            //LazilyParsedNumber、BigInteger等 按字面判断是整数还是小数
+            String text = number.toString();
+            if (text.indexOf('.') < 0 && text.indexOf('e') < 0 && text.indexOf('E') < 0) {
+                try {
+                    writeLong(sink, Long.parseLong(text));
+                    return;
+                } catch (NumberFormatException ignored) {
+                    //超出long范围 按double写
+                }
+            }
+            sink.writeByte(DOUBLE).writeLong(Double.doubleToLongBits(number.doubleValue()));
+        }
+    }
+
+    private static void writeLong(BufferedSink sink, long value) throws IOException {
+        if (value >= 0) {
+            writeHeader(sink, MAJOR_UNSIGNED, value);
+        } else {
+            writeHeader(sink, MAJOR_NEGATIVE, -1 - value);
+        }
+    }
+
+    private static void writeText(BufferedSink sink, String text) throws IOException {
+        Buffer utf8 = new Buffer().writeUtf8(text);
+        writeHeader(sink, MAJOR_TEXT, utf8.size());
+        sink.writeAll(utf8);
+    }
+
+    private static void writeHeader(BufferedSink sink, int major, long argument) throws IOException {
+        int type = major << 5;
+        if (argument < 24) {
+            sink.writeByte(type | (int) argument);
+        } else if (argument <= 0xff) {
+            sink.writeByte(type | 24).writeByte((int) argument);
+        } else if (argument <= 0xffff) {
+            sink.writeByte(type | 25).writeShort((int) argument);
+        } else if (argument <= 0xffffffffL) {
+            sink.writeByte(type | 26).writeInt((int) argument);
+        } else {
+            sink.writeByte(type | 27).writeLong(argument);
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.seaky.netframe.build;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.reflect.TypeToken;
+
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import retrofit2.Converter;
+import retrofit2.Retrofit;
+
+/**
+ * CBOR转换器
+ * 用Gson的TypeAdapter做对象和JsonElement之间的转换，CBOR和JsonElement之间由Cbor处理
+ * 所以实体类不用改，HttpResponseAdapterFactory等注册在Gson里的解析规则同样生效
+ *
+ * Created by Seaky
+ */
+
+public class CborConverterFactory extends Converter.Factory {
+
+    public static final String CONTENT_TYPE = "application/cbor";
+    private static final MediaType MEDIA_TYPE = MediaType.parse(CONTENT_TYPE);
+
+    private final Gson mGson;
+
+    public static CborConverterFactory create(Gson gson) {
+        return new CborConverterFactory(gson);
+    }
+
+    private CborConverterFactory(Gson gson) {
+        mGson = gson;
+    }
+
+    @Override
+    public Converter<ResponseBody, ?> responseBodyConverter(Type type, Annotation[] annotations, Retrofit retrofit) {
+        TypeAdapter<?> adapter = mGson.getAdapter(TypeToken.get(type));
+        return new Converter<ResponseBody, Object>() {
+            @Override
+            public Object convert(ResponseBody value) throws IOException {
+                try {
+                    return adapter.fromJsonTree(Cbor.read(value.source()));
+                } finally {
+                    value.close();
+                }
+            }
+        };
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public Converter<?, RequestBody> requestBodyConverter(Type type, Annotation[] parameterAnnotations,
+                                                          Annotation[] methodAnnotations, Retrofit retrofit) {
+        TypeAdapter<Object> adapter = (TypeAdapter<Object>) mGson.getAdapter(TypeToken.get(type));
+        return new Converter<Object, RequestBody>() {
+            @Override
+            public RequestBody convert(Object value) throws IOException {
+                Buffer buffer = new Buffer();
+                Cbor.write(adapter.toJsonTree(value), buffer);
+                return RequestBody.create(MEDIA_TYPE, buffer.readByteString());
+            }
+        };
+    }
+}
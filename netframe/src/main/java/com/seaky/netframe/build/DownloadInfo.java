@@ -6,6 +6,16 @@ public class DownloadInfo {
     private long total;
     private long progress;
     private String filePath;
+    //是否是断点续传
+    private boolean resumed;
+    //续传省下的字节数
+    private long savedBytes;
+    //当前网速 字节/秒
+    private long speed;
+    //预计剩余时间 毫秒，-1为未知
+    private long eta = -1;
+    //是否已经下载完成，false表示这是一次进度通知
+    private boolean finished;
 
 
     public DownloadInfo(){}
@@ -41,4 +51,44 @@ public class DownloadInfo {
     public void setFilePath(String filePath) {
         this.filePath = filePath;
     }
+
+    public boolean isResumed() {
+        return resumed;
+    }
+
+    public void setResumed(boolean resumed) {
+        this.resumed = resumed;
+    }
+
+    public long getSavedBytes() {
+        return savedBytes;
+    }
+
+    public void setSavedBytes(long savedBytes) {
+        this.savedBytes = savedBytes;
+    }
+
+    public long getSpeed() {
+        return speed;
+    }
+
+    public void setSpeed(long speed) {
+        this.speed = speed;
+    }
+
+    public long getEta() {
+        return eta;
+    }
+
+    public void setEta(long eta) {
+        this.eta = eta;
+    }
+
+    public boolean isFinished() {
+        return finished;
+    }
+
+    public void setFinished(boolean finished) {
+        this.finished = finished;
+    }
 }
@@ -10,6 +10,8 @@ import io.reactivex.disposables.Disposable;
 public abstract class DownloadObserver<T> implements Observer<T> {
 
     protected void onStart(){}
+    //下载进度 按需重写
+    protected void onProgress(T t){}
     protected abstract void onFailure(ApiException e);
     protected abstract void onSuccess(T t);
 
@@ -30,7 +32,11 @@ public abstract class DownloadObserver<T> implements Observer<T> {
 
     @Override
     public void onNext(@NonNull T t) {
-        onSuccess(t);
+        if (t instanceof DownloadInfo && !((DownloadInfo) t).isFinished()) {
+            onProgress(t);
+        } else {
+            onSuccess(t);
+        }
     }
 
     @Override
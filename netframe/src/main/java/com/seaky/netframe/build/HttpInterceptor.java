@@ -1,11 +1,22 @@
 package com.seaky.netframe.build;
 
+import com.seaky.netframe.annotation.Binary;
+import com.seaky.netframe.annotation.CachePolicy;
+import com.seaky.netframe.annotation.NoCompress;
+import com.seaky.netframe.core.CircuitBreaker;
+import com.seaky.netframe.core.Compression;
+import com.seaky.netframe.exception.CircuitOpenException;
+
 import java.io.IOException;
+import java.util.Map;
 
 import io.reactivex.annotations.NonNull;
+import okhttp3.CacheControl;
+import okhttp3.HttpUrl;
 import okhttp3.Interceptor;
 import okhttp3.Request;
 import okhttp3.Response;
+import retrofit2.Invocation;
 
 /**
  *  自定义拦截器
@@ -16,6 +27,9 @@ import okhttp3.Response;
 
 public class HttpInterceptor {
 
+    //只接受没过期的缓存 过期或者没有时OkHttp返回504
+    private static final CacheControl ONLY_FRESH_CACHE = new CacheControl.Builder().onlyIfCached().build();
+
     //请求之前添加统一的header
     public static Interceptor headerInterceptor() {
         return new Interceptor() {
@@ -29,5 +43,201 @@ public class HttpInterceptor {
         };
     }
 
+    /**
+     * 运行时切换域名
+     * 请求地址以某个原域名开头时，把这部分替换成新域名
+     * @param redirects   原域名 -> 新域名，可以随时修改
+     */
+    public static Interceptor baseUrlInterceptor(Map<String, String> redirects) {
+        return new Interceptor() {
+            @Override
+            public @NonNull
+            Response intercept(@NonNull Chain chain) throws IOException {
+                Request request = chain.request();
+                if (redirects.isEmpty()) {
+                    return chain.proceed(request);
+                }
+                String url = request.url().toString();
+                for (Map.Entry<String, String> redirect : redirects.entrySet()) {
+                    if (url.startsWith(redirect.getKey())) {
+                        HttpUrl target = HttpUrl.parse(redirect.getValue() + url.substring(redirect.getKey().length()));
+                        if (target != null) {
+                            request = request.newBuilder().url(target).build();
+                        }
+                        break;
+                    }
+                }
+                return chain.proceed(request);
+            }
+        };
+    }
+
+    /**
+     * 磁盘缓存 网络拦截器
+     * 很多接口的响应头不允许缓存，标记了@CachePolicy的接口按注解的有效期改写Cache-Control，
+     * 让OkHttp的Cache按我们的策略存下来
+     */
+    public static Interceptor cacheNetworkInterceptor() {
+        return new Interceptor() {
+            @Override
+            public @NonNull
+            Response intercept(@NonNull Chain chain) throws IOException {
+                Request request = chain.request();
+                Response response = chain.proceed(request);
+                CachePolicy policy = cachePolicyOf(request);
+                if (policy == null || !"GET".equals(request.method()) || !response.isSuccessful()) {
+                    return response;
+                }
+                return response.newBuilder()
+                        .removeHeader("Pragma")
+                        .header("Cache-Control", "public, max-age=" + policy.maxAge())
+                        .build();
+            }
+        };
+    }
+
+    /**
+     * 磁盘缓存 应用拦截器
+     * NETWORK_FIRST的接口先强制走网络，网络失败时改为只读缓存（不管是否过期）
+     * 其他策略按缓存有效期由OkHttp的Cache处理
+     */
+    public static Interceptor cacheInterceptor() {
+        return new Interceptor() {
+            @Override
+            public @NonNull
+            Response intercept(@NonNull Chain chain) throws IOException {
+                Request request = chain.request();
+                CachePolicy policy = cachePolicyOf(request);
+                if (policy == null || policy.mode() != CachePolicy.Mode.NETWORK_FIRST || !"GET".equals(request.method())) {
+                    return chain.proceed(request);
+                }
+                try {
+                    return chain.proceed(request.newBuilder().cacheControl(CacheControl.FORCE_NETWORK).build());
+                } catch (IOException e) {
+                    Response cached = chain.proceed(request.newBuilder().cacheControl(CacheControl.FORCE_CACHE).build());
+                    if (cached.code() == 504) {
+                        //没有缓存 OkHttp返回504
+                        cached.close();
+                        throw e;
+                    }
+                    return cached;
+                }
+            }
+        };
+    }
+
+    /**
+     * 按域名熔断
+     * 放在cacheInterceptor之后，熔断时NETWORK_FIRST的接口还能退回磁盘缓存
+     * 只读缓存的请求不经过网络，不受熔断影响
+     * OkHttp的Cache在这之后，磁盘缓存命中的响应没有访问网络，不计入统计，
+     * 否则故障期间大量缓存命中会冲淡失败率；熔断时没过期的缓存照样返回
+     */
+    public static Interceptor circuitBreakerInterceptor(CircuitBreaker breaker) {
+        return new Interceptor() {
+            @Override
+            public @NonNull
+            Response intercept(@NonNull Chain chain) throws IOException {
+                Request request = chain.request();
+                if (request.cacheControl().onlyIfCached()) {
+                    return chain.proceed(request);
+                }
+                String host = request.url().host();
+                CircuitBreaker.Permit permit = breaker.tryAcquire(host);
+                if (null == permit) {
+                    return cachedOrFail(chain, request, host);
+                }
+                long start = System.nanoTime();
+                Response response;
+                try {
+                    response = chain.proceed(request);
+                } catch (IOException | RuntimeException e) {
+                    if (chain.call().isCanceled()) {
+                        breaker.onCancel(permit);
+                    } else {
+                        breaker.onResult(permit, e, 0, (System.nanoTime() - start) / 1000000);
+                    }
+                    throw e;
+                }
+                if (null == response.networkResponse()) {
+                    breaker.onCancel(permit);
+                } else {
+                    breaker.onResult(permit, null, response.code(), (System.nanoTime() - start) / 1000000);
+                }
+                return response;
+            }
+        };
+    }
+
+    /**
+     * 请求体压缩和响应解压 规则见Compression
+     * 只处理ApiService的请求，标记了@NoCompress的接口和下载等其他请求交给OkHttp默认处理
+     * Range请求不声明压缩，否则分段的偏移量对不上
+     */
+    public static Interceptor compressionInterceptor(Compression compression) {
+        return new Interceptor() {
+            @Override
+            public @NonNull
+            Response intercept(@NonNull Chain chain) throws IOException {
+                Request request = chain.request();
+                Invocation invocation = request.tag(Invocation.class);
+                if (invocation == null || invocation.method().isAnnotationPresent(NoCompress.class)) {
+                    return chain.proceed(request);
+                }
+                if (compression.shouldCompress(request)) {
+                    request = compression.compress(request);
+                }
+                if (request.header("Accept-Encoding") != null || request.header("Range") != null) {
+                    return chain.proceed(request);
+                }
+                //自己声明了Accept-Encoding，OkHttp就不会自动解压gzip，由这里解压
+                request = request.newBuilder().header("Accept-Encoding", Compression.ACCEPT_ENCODING).build();
+                return compression.decompress(request, chain.proceed(request));
+            }
+        };
+    }
 
+    /**
+     * 标记了@Binary的接口声明接受二进制格式，也接受json，服务器不支持时照常返回json
+     * @param contentType   二进制格式的Content-Type，例如application/cbor
+     */
+    public static Interceptor binaryInterceptor(String contentType) {
+        String accept = contentType + ", application/json;q=0.9";
+        return new Interceptor() {
+            @Override
+            public @NonNull
+            Response intercept(@NonNull Chain chain) throws IOException {
+                Request request = chain.request();
+                Invocation invocation = request.tag(Invocation.class);
+                if (invocation == null || !invocation.method().isAnnotationPresent(Binary.class)
+                        || request.header("Accept") != null) {
+                    return chain.proceed(request);
+                }
+                return chain.proceed(request.newBuilder().header("Accept", accept).build());
+            }
+        };
+    }
+
+    //熔断中 只读没过期的磁盘缓存，没有缓存或者要求走网络的请求直接失败
+    private static Response cachedOrFail(Interceptor.Chain chain, Request request, String host) throws IOException {
+        if (!"GET".equals(request.method()) || request.cacheControl().noCache()) {
+            throw new CircuitOpenException(host);
+        }
+        Response cached = chain.proceed(request.newBuilder().cacheControl(ONLY_FRESH_CACHE).build());
+        if (cached.code() == 504) {
+            //没有可用的缓存 OkHttp返回504
+            cached.close();
+            throw new CircuitOpenException(host);
+        }
+        return cached;
+    }
+
+    //ApiService方法上的缓存策略 Retrofit会把调用的方法放在Invocation里
+    private static CachePolicy cachePolicyOf(Request request) {
+        Invocation invocation = request.tag(Invocation.class);
+        if (invocation == null) {
+            return null;
+        }
+        return invocation.method().getAnnotation(CachePolicy.class);
+    }
 }
@@ -20,6 +20,9 @@ import io.reactivex.annotations.NonNull;
 
 public class HttpResponse<T> {
 
+    //接口请求成功的状态码 按需修改自己接口的成功码
+    public static final int SUCCESS_CODE = 100;
+
     @Expose
     private int status;
 
@@ -0,0 +1,112 @@
+package com.seaky.netframe.build;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+
+/**
+ * HttpResponse的流式解析
+ *
+ * Gson默认会反射解析整个HttpResponse，包括data，然后ServerResultFunction才去判断status
+ * 接口报错的时候data往往很大却用不上，白白解析一遍
+ *
+ * 这里在一次JsonReader遍历里完成解析：
+ * status在data前面（绝大多数接口都是这样）：status不是成功码就直接skipValue跳过data
+ * data在status前面：先把data读成JsonElement暂存，等读到status再决定要不要转成T
+ *
+ * 如果接口返回数据格式和字段名不一样，和HttpResponse一起改这里的字段名
+ *
+ * Created by Seaky
+ */
+
+public class HttpResponseAdapterFactory implements TypeAdapterFactory {
+
+    private static final String FIELD_STATUS = "status";
+    private static final String FIELD_DATA = "data";
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+        if (type.getRawType() != HttpResponse.class) {
+            return null;
+        }
+        Type dataType = Object.class;
+        if (type.getType() instanceof ParameterizedType) {
+            dataType = ((ParameterizedType) type.getType()).getActualTypeArguments()[0];
+        }
+        TypeAdapter<Object> dataAdapter = (TypeAdapter<Object>) gson.getAdapter(TypeToken.get(dataType));
+        TypeAdapter<JsonElement> elementAdapter = gson.getAdapter(JsonElement.class);
+        return (TypeAdapter<T>) new HttpResponseAdapter(dataAdapter, elementAdapter);
+    }
+
+
+    private static class HttpResponseAdapter extends TypeAdapter<HttpResponse<Object>> {
+
+        private final TypeAdapter<Object> mDataAdapter;
+        private final TypeAdapter<JsonElement> mElementAdapter;
+
+        private HttpResponseAdapter(TypeAdapter<Object> dataAdapter, TypeAdapter<JsonElement> elementAdapter) {
+            mDataAdapter = dataAdapter;
+            mElementAdapter = elementAdapter;
+        }
+
+        @Override
+        public void write(JsonWriter out, HttpResponse<Object> value) throws IOException {
+            if (value == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            out.name(FIELD_STATUS).value(value.getCode());
+            out.name(FIELD_DATA);
+            mDataAdapter.write(out, value.getData());
+            out.endObject();
+        }
+
+        @Override
+        public HttpResponse<Object> read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            HttpResponse<Object> response = new HttpResponse<>();
+            boolean hasStatus = false;
+            //data先于status出现时暂存的原始数据
+            JsonElement pending = null;
+
+            in.beginObject();
+            while (in.hasNext()) {
+                String name = in.nextName();
+                if (FIELD_STATUS.equals(name)) {
+                    response.setCode(in.nextInt());
+                    hasStatus = true;
+                } else if (FIELD_DATA.equals(name)) {
+                    if (!hasStatus) {
+                        pending = mElementAdapter.read(in);
+                    } else if (response.getCode() == HttpResponse.SUCCESS_CODE) {
+                        response.setData(mDataAdapter.read(in));
+                    } else {
+                        in.skipValue();
+                    }
+                } else {
+                    in.skipValue();
+                }
+            }
+            in.endObject();
+
+            if (pending != null && response.getCode() == HttpResponse.SUCCESS_CODE) {
+                response.setData(mDataAdapter.fromJsonTree(pending));
+            }
+            return response;
+        }
+    }
+}
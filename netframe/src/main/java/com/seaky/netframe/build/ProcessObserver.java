@@ -0,0 +1,26 @@
+package com.seaky.netframe.build;
+
+/**
+ * 带后台处理的Http请求回调
+ * 接口数据T先在computation线程经过onProcess转换成R，再回到主线程onSuccess
+ * 数据转换、排序、DiffUtil之类耗时的操作放在onProcess里，不占主线程
+ *
+ * 绑定了生命周期的请求，页面销毁后还没开始的onProcess不会再执行
+ * onProcess抛出的异常和请求失败一样走onFailure
+ * 用HttpCenter.sendProcessed发送
+ *
+ * Created by Seaky
+ */
+
+public abstract class ProcessObserver<T, R> extends HttpObserver<R> {
+
+    /**
+     * 在computation线程执行 不能返回null
+     */
+    protected abstract R onProcess(T t) throws Exception;
+
+    //由HttpFactory调用
+    public final R process(T t) throws Exception {
+        return onProcess(t);
+    }
+}
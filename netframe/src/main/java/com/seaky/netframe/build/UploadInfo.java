@@ -0,0 +1,104 @@
+package com.seaky.netframe.build;
+
+public class UploadInfo {
+
+    private String url;
+    private String filePath;
+    private long total;
+    private long progress;
+    //是否是断点续传
+    private boolean resumed;
+    //续传时服务器已经收到、不用再传的字节数
+    private long savedBytes;
+    //当前网速 字节/秒
+    private long speed;
+    //预计剩余时间 毫秒，-1为未知
+    private long eta = -1;
+    //是否已经上传完成，false表示这是一次进度通知
+    private boolean finished;
+    //上传完成时服务器返回的响应体
+    private String response;
+
+
+    public UploadInfo(){}
+
+    public String getUrl() {
+        return url;
+    }
+
+    public void setUrl(String url) {
+        this.url = url;
+    }
+
+    public String getFilePath() {
+        return filePath;
+    }
+
+    public void setFilePath(String filePath) {
+        this.filePath = filePath;
+    }
+
+    public long getTotal() {
+        return total;
+    }
+
+    public void setTotal(long total) {
+        this.total = total;
+    }
+
+    public long getProgress() {
+        return progress;
+    }
+
+    public void setProgress(long progress) {
+        this.progress = progress;
+    }
+
+    public boolean isResumed() {
+        return resumed;
+    }
+
+    public void setResumed(boolean resumed) {
+        this.resumed = resumed;
+    }
+
+    public long getSavedBytes() {
+        return savedBytes;
+    }
+
+    public void setSavedBytes(long savedBytes) {
+        this.savedBytes = savedBytes;
+    }
+
+    public long getSpeed() {
+        return speed;
+    }
+
+    public void setSpeed(long speed) {
+        this.speed = speed;
+    }
+
+    public long getEta() {
+        return eta;
+    }
+
+    public void setEta(long eta) {
+        this.eta = eta;
+    }
+
+    public boolean isFinished() {
+        return finished;
+    }
+
+    public void setFinished(boolean finished) {
+        this.finished = finished;
+    }
+
+    public String getResponse() {
+        return response;
+    }
+
+    public void setResponse(String response) {
+        this.response = response;
+    }
+}
@@ -0,0 +1,78 @@
+package com.seaky.netframe.core;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ *  按接口自动计算超时
+ *
+ *  所有接口都是固定10秒超时，50ms的配置接口等太久，很重的报表接口又不够
+ *  每个接口（ApiService的方法）单独统计耗时，超时 = 分位数 × 倍数，限制在[floor, ceiling]之间
+ *  样本少于MIN_SAMPLES时不设置整体超时，只有OkHttpClient的连接/读写超时
+ *  超时的请求按超时时间记录，接口真的变慢了超时会跟着变大，不会一直超时
+ *
+ *  Created by Seaky
+ */
+
+public class AdaptiveTimeout {
+
+    public static final float DEFAULT_PERCENTILE = 0.99f;
+    public static final float DEFAULT_MULTIPLIER = 2f;
+    public static final long DEFAULT_FLOOR = 1000;
+    public static final long DEFAULT_CEILING = 30000;
+    private static final long MIN_SAMPLES = 20;
+
+    private final float mPercentile;
+    private final float mMultiplier;
+    private final long mFloor;
+    private final long mCeiling;
+    //声明成ConcurrentMap：ConcurrentHashMap.keySet()在Java 8编译后返回KeySetView，API 24以下没有这个方法
+    private final ConcurrentMap<String, LatencyHistogram> mHistograms = new ConcurrentHashMap<>();
+
+    public AdaptiveTimeout(float percentile, float multiplier, long floor, long ceiling) {
+        mPercentile = percentile;
+        mMultiplier = multiplier;
+        mFloor = floor;
+        mCeiling = Math.max(floor, ceiling);
+    }
+
+    public void record(String endpoint, long millis) {
+        LatencyHistogram histogram = mHistograms.get(endpoint);
+        if (histogram == null) {
+            histogram = new LatencyHistogram();
+            LatencyHistogram previous = mHistograms.putIfAbsent(endpoint, histogram);
+            if (previous != null) {
+                histogram = previous;
+            }
+        }
+        histogram.record(millis);
+    }
+
+    /**
+     * 接口当前的超时(ms)，样本不够时返回0，表示不设置整体超时
+     */
+    public long timeoutOf(String endpoint) {
+        return timeoutOf(mHistograms.get(endpoint));
+    }
+
+    private long timeoutOf(LatencyHistogram histogram) {
+        if (histogram == null || histogram.getCount() < MIN_SAMPLES) {
+            return 0;
+        }
+        long timeout = (long) (histogram.percentile(mPercentile) * mMultiplier);
+        return Math.max(mFloor, Math.min(mCeiling, timeout));
+    }
+
+    /**
+     * 所有接口当前的超时 接口 -> 超时(ms)
+     */
+    public Map<String, Long> getTimeouts() {
+        Map<String, Long> timeouts = new HashMap<>();
+        for (Map.Entry<String, LatencyHistogram> entry : mHistograms.entrySet()) {
+            timeouts.put(entry.getKey(), timeoutOf(entry.getValue()));
+        }
+        return timeouts;
+    }
+}
@@ -0,0 +1,52 @@
+package com.seaky.netframe.core;
+
+import android.annotation.SuppressLint;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+
+import io.reactivex.Observable;
+import io.reactivex.subjects.BehaviorSubject;
+import io.reactivex.subjects.Subject;
+
+/**
+ *  系统网络状态 监听CONNECTIVITY_ACTION广播
+ *  需要ACCESS_NETWORK_STATE权限，已经在netframe的manifest里声明
+ *
+ *  Created by Seaky
+ */
+
+public class AndroidConnectivity implements Connectivity {
+
+    private final ConnectivityManager mConnectivityManager;
+    private final Subject<Boolean> mState;
+
+    @SuppressWarnings("deprecation")
+    public AndroidConnectivity(Context context) {
+        Context appContext = context.getApplicationContext();
+        mConnectivityManager = (ConnectivityManager) appContext.getSystemService(Context.CONNECTIVITY_SERVICE);
+        mState = BehaviorSubject.createDefault(isConnected()).toSerialized();
+        appContext.registerReceiver(new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                mState.onNext(isConnected());
+            }
+        }, new IntentFilter(ConnectivityManager.CONNECTIVITY_ACTION));
+    }
+
+    @SuppressLint("MissingPermission")
+    @SuppressWarnings("deprecation")
+    @Override
+    public boolean isConnected() {
+        NetworkInfo info = mConnectivityManager.getActiveNetworkInfo();
+        return info != null && info.isConnected();
+    }
+
+    @Override
+    public Observable<Boolean> observe() {
+        return mState.distinctUntilChanged();
+    }
+}
@@ -1,5 +1,6 @@
 package com.seaky.netframe.core;
 
+import com.seaky.netframe.annotation.SingleFlight;
 import com.seaky.netframe.bean.DemoBean;
 import com.seaky.netframe.build.HttpResponse;
 
@@ -13,6 +14,7 @@ public interface ApiService {
 
     public static final String QUERY_DEMO = "api/v2/post/5e777432b8ea09cade05263f";
 
+    @SingleFlight
     @GET(QUERY_DEMO)
     Observable<HttpResponse<DemoBean>> getDemo();
 
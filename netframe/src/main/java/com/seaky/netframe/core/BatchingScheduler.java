@@ -0,0 +1,168 @@
+package com.seaky.netframe.core;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.reactivex.Scheduler;
+import io.reactivex.annotations.NonNull;
+import io.reactivex.disposables.CompositeDisposable;
+import io.reactivex.disposables.Disposable;
+import io.reactivex.disposables.Disposables;
+import io.reactivex.exceptions.Exceptions;
+import io.reactivex.plugins.RxJavaPlugins;
+
+/**
+ *  按帧合并执行的Scheduler
+ *
+ *  observeOn(AndroidSchedulers.mainThread())每个请求的结果都是一个单独的Handler消息，
+ *  一个页面同时发20个请求，回调分散在好几帧里，每次都触发一次界面刷新
+ *  这里把到达的任务先攒起来，由FrameClock在下一帧一次性按到达顺序执行，
+ *  同一帧内完成的请求一起回调，主线程消息和重复布局都会减少
+ *
+ *  只在执行的这一刻开始前到达的任务属于这一帧，执行过程中新到的留到下一帧，不会一直占着主线程
+ *  带延迟的任务先交给delegate计时，时间到了再进入下一帧
+ *
+ *  Created by Seaky
+ */
+
+public class BatchingScheduler extends Scheduler {
+
+    private final FrameClock mClock;
+    private final Scheduler mDelegate;
+    private final ConcurrentLinkedQueue<BatchTask> mPending = new ConcurrentLinkedQueue<>();
+    //已经post了帧回调，还没执行
+    private final AtomicBoolean mFramePosted = new AtomicBoolean();
+    private final Runnable mFlush = this::flush;
+    private final AtomicLong mFrames = new AtomicLong();
+    private final AtomicLong mTasks = new AtomicLong();
+
+    /**
+     * @param clock      帧时钟
+     * @param delegate   带延迟的任务用它计时，一般是AndroidSchedulers.mainThread()
+     */
+    public BatchingScheduler(FrameClock clock, Scheduler delegate) {
+        mClock = clock;
+        mDelegate = delegate;
+    }
+
+    @Override
+    public @NonNull
+    Worker createWorker() {
+        return new BatchWorker();
+    }
+
+    @Override
+    public long now(@NonNull TimeUnit unit) {
+        return mDelegate.now(unit);
+    }
+
+    //执行过的帧数
+    public long getFrameCount() {
+        return mFrames.get();
+    }
+
+    //执行过的任务数 除以帧数就是平均每帧合并了多少个回调
+    public long getTaskCount() {
+        return mTasks.get();
+    }
+
+    private void enqueue(BatchTask task) {
+        mPending.offer(task);
+        if (mFramePosted.compareAndSet(false, true)) {
+            mClock.postFrameCallback(mFlush);
+        }
+    }
+
+    private void flush() {
+        //先复位，执行过程中新到的任务会post下一帧
+        mFramePosted.set(false);
+        mFrames.incrementAndGet();
+        int count = mPending.size();
+        for (int i = 0; i < count; i++) {
+            BatchTask task = mPending.poll();
+            if (null == task) {
+                break;
+            }
+            if (task.execute()) {
+                mTasks.incrementAndGet();
+            }
+        }
+    }
+
+    private final class BatchWorker extends Worker {
+
+        private final CompositeDisposable mDisposables = new CompositeDisposable();
+
+        @Override
+        public @NonNull
+        Disposable schedule(@NonNull Runnable run, long delay, @NonNull TimeUnit unit) {
+            if (mDisposables.isDisposed()) {
+                return Disposables.disposed();
+            }
+            BatchTask task = new BatchTask(RxJavaPlugins.onSchedule(run), mDisposables);
+            mDisposables.add(task);
+            if (delay <= 0) {
+                enqueue(task);
+            } else {
+                task.mTimer = mDelegate.scheduleDirect(() -> enqueue(task), delay, unit);
+            }
+            return task;
+        }
+
+        @Override
+        public void dispose() {
+            mDisposables.dispose();
+        }
+
+        @Override
+        public boolean isDisposed() {
+            return mDisposables.isDisposed();
+        }
+    }
+
+    private static final class BatchTask extends AtomicBoolean implements Disposable {
+
+        private final Runnable mRunnable;
+        private final CompositeDisposable mParent;
+        volatile Disposable mTimer;
+
+        BatchTask(Runnable runnable, CompositeDisposable parent) {
+            mRunnable = runnable;
+            mParent = parent;
+        }
+
+        //已经取消的不执行 返回是否执行了
+        boolean execute() {
+            if (!compareAndSet(false, true)) {
+                return false;
+            }
+            mParent.delete(this);
+            try {
+                mRunnable.run();
+            } catch (Throwable e) {
+                //一个回调出错不影响同一帧的其他回调
+                Exceptions.throwIfFatal(e);
+                RxJavaPlugins.onError(e);
+            }
+            return true;
+        }
+
+        @Override
+        public void dispose() {
+            if (compareAndSet(false, true)) {
+                mParent.delete(this);
+                Disposable timer = mTimer;
+                if (null != timer) {
+                    timer.dispose();
+                }
+            }
+        }
+
+        @Override
+        public boolean isDisposed() {
+            return get();
+        }
+    }
+}
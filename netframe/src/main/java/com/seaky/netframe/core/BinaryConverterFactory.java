@@ -0,0 +1,69 @@
+package com.seaky.netframe.core;
+
+import com.seaky.netframe.annotation.Binary;
+
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okhttp3.ResponseBody;
+import retrofit2.Converter;
+import retrofit2.Retrofit;
+
+/**
+ *  标记了@Binary的接口交给二进制转换器，其他的交给后面的GsonConverterFactory
+ *  服务器不支持二进制格式、返回了json时（看Content-Type）退回json解析
+ *
+ *  Created by Seaky
+ */
+
+class BinaryConverterFactory extends Converter.Factory {
+
+    private final Converter.Factory mBinary;
+
+    BinaryConverterFactory(Converter.Factory binary) {
+        mBinary = binary;
+    }
+
+    @Override
+    public Converter<ResponseBody, ?> responseBodyConverter(Type type, Annotation[] annotations, Retrofit retrofit) {
+        if (!isBinary(annotations)) {
+            return null;
+        }
+        Converter<ResponseBody, ?> binary = mBinary.responseBodyConverter(type, annotations, retrofit);
+        if (binary == null) {
+            return null;
+        }
+        Converter<ResponseBody, ?> json = retrofit.nextResponseBodyConverter(this, type, annotations);
+        return new Converter<ResponseBody, Object>() {
+            @Override
+            public Object convert(ResponseBody body) throws IOException {
+                MediaType contentType = body.contentType();
+                if (contentType != null && contentType.subtype().endsWith("json")) {
+                    return json.convert(body);
+                }
+                return binary.convert(body);
+            }
+        };
+    }
+
+    @Override
+    public Converter<?, RequestBody> requestBodyConverter(Type type, Annotation[] parameterAnnotations,
+                                                          Annotation[] methodAnnotations, Retrofit retrofit) {
+        if (!isBinary(methodAnnotations)) {
+            return null;
+        }
+        return mBinary.requestBodyConverter(type, parameterAnnotations, methodAnnotations, retrofit);
+    }
+
+    private static boolean isBinary(Annotation[] annotations) {
+        for (Annotation annotation : annotations) {
+            if (annotation instanceof Binary) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
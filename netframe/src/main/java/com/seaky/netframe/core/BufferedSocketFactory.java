@@ -0,0 +1,63 @@
+package com.seaky.netframe.core;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+
+import javax.net.SocketFactory;
+
+/**
+ *  设置socket收发缓冲区大小
+ *  缓冲区要在connect之前设置，接收缓冲区超过64K时才能协商TCP窗口扩大
+ *
+ *  Created by Seaky
+ */
+
+class BufferedSocketFactory extends SocketFactory {
+
+    private final SocketFactory mDelegate;
+    private final int mSendBufferSize;
+    private final int mReceiveBufferSize;
+
+    BufferedSocketFactory(SocketFactory delegate, int sendBufferSize, int receiveBufferSize) {
+        mDelegate = delegate;
+        mSendBufferSize = sendBufferSize;
+        mReceiveBufferSize = receiveBufferSize;
+    }
+
+    //OkHttp用这个方法创建未连接的socket
+    @Override
+    public Socket createSocket() throws IOException {
+        return configure(mDelegate.createSocket());
+    }
+
+    @Override
+    public Socket createSocket(String host, int port) throws IOException {
+        return configure(mDelegate.createSocket(host, port));
+    }
+
+    @Override
+    public Socket createSocket(String host, int port, InetAddress localHost, int localPort) throws IOException {
+        return configure(mDelegate.createSocket(host, port, localHost, localPort));
+    }
+
+    @Override
+    public Socket createSocket(InetAddress host, int port) throws IOException {
+        return configure(mDelegate.createSocket(host, port));
+    }
+
+    @Override
+    public Socket createSocket(InetAddress address, int port, InetAddress localAddress, int localPort) throws IOException {
+        return configure(mDelegate.createSocket(address, port, localAddress, localPort));
+    }
+
+    private Socket configure(Socket socket) throws IOException {
+        if (mSendBufferSize > 0) {
+            socket.setSendBufferSize(mSendBufferSize);
+        }
+        if (mReceiveBufferSize > 0) {
+            socket.setReceiveBufferSize(mReceiveBufferSize);
+        }
+        return socket;
+    }
+}
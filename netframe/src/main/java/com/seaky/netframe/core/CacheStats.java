@@ -0,0 +1,80 @@
+package com.seaky.netframe.core;
+
+/**
+ *  缓存统计快照
+ *
+ *  Created by Seaky
+ */
+
+public class CacheStats {
+
+    private final long memoryHitCount;
+    private final long memoryStaleHitCount;
+    private final long memoryMissCount;
+    private final long memoryEvictionCount;
+    private final int memorySize;
+    private final int diskRequestCount;
+    private final int diskHitCount;
+    private final int diskNetworkCount;
+
+    CacheStats(long memoryHitCount, long memoryStaleHitCount, long memoryMissCount, long memoryEvictionCount,
+               int memorySize, int diskRequestCount, int diskHitCount, int diskNetworkCount) {
+        this.memoryHitCount = memoryHitCount;
+        this.memoryStaleHitCount = memoryStaleHitCount;
+        this.memoryMissCount = memoryMissCount;
+        this.memoryEvictionCount = memoryEvictionCount;
+        this.memorySize = memorySize;
+        this.diskRequestCount = diskRequestCount;
+        this.diskHitCount = diskHitCount;
+        this.diskNetworkCount = diskNetworkCount;
+    }
+
+    //内存缓存命中数（未过期）
+    public long getMemoryHitCount() {
+        return memoryHitCount;
+    }
+
+    //内存缓存命中了过期数据的次数
+    public long getMemoryStaleHitCount() {
+        return memoryStaleHitCount;
+    }
+
+    public long getMemoryMissCount() {
+        return memoryMissCount;
+    }
+
+    public long getMemoryEvictionCount() {
+        return memoryEvictionCount;
+    }
+
+    public int getMemorySize() {
+        return memorySize;
+    }
+
+    //经过磁盘缓存的请求数
+    public int getDiskRequestCount() {
+        return diskRequestCount;
+    }
+
+    //磁盘缓存命中数
+    public int getDiskHitCount() {
+        return diskHitCount;
+    }
+
+    //实际走了网络的请求数
+    public int getDiskNetworkCount() {
+        return diskNetworkCount;
+    }
+
+    @Override
+    public String toString() {
+        return "CacheStats{memoryHit=" + memoryHitCount
+                + ", memoryStaleHit=" + memoryStaleHitCount
+                + ", memoryMiss=" + memoryMissCount
+                + ", memoryEviction=" + memoryEvictionCount
+                + ", memorySize=" + memorySize
+                + ", diskRequest=" + diskRequestCount
+                + ", diskHit=" + diskHitCount
+                + ", diskNetwork=" + diskNetworkCount + "}";
+    }
+}
@@ -0,0 +1,41 @@
+package com.seaky.netframe.core;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.view.Choreographer;
+
+/**
+ *  跟随屏幕刷新的帧时钟 回调在下一次VSYNC绘制之前执行
+ *
+ *  Choreographer是线程相关的，只能在主线程获取
+ *  在后台线程第一次调用时先post到主线程获取，之后postFrameCallback本身是线程安全的
+ *
+ *  Created by Seaky
+ */
+
+public class ChoreographerFrameClock implements FrameClock {
+
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private volatile Choreographer mChoreographer;
+
+    @Override
+    public void postFrameCallback(Runnable callback) {
+        Choreographer choreographer = mChoreographer;
+        if (null != choreographer) {
+            post(choreographer, callback);
+        } else if (Looper.myLooper() == Looper.getMainLooper()) {
+            post(obtain(), callback);
+        } else {
+            mMainHandler.post(() -> post(obtain(), callback));
+        }
+    }
+
+    private Choreographer obtain() {
+        mChoreographer = Choreographer.getInstance();
+        return mChoreographer;
+    }
+
+    private static void post(Choreographer choreographer, Runnable callback) {
+        choreographer.postFrameCallback(frameTimeNanos -> callback.run());
+    }
+}
@@ -0,0 +1,296 @@
+package com.seaky.netframe.core;
+
+import com.seaky.netframe.exception.ExceptionEngine;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import io.reactivex.Observable;
+import io.reactivex.subjects.PublishSubject;
+import io.reactivex.subjects.Subject;
+
+/**
+ *  按域名熔断
+ *
+ *  后台出问题的时候每个页面还在不停地发请求，每个都要等满超时，线程堆满，界面卡住
+ *  每个域名单独统计最近WINDOW次请求：
+ *  CLOSED     正常放行，失败率或者慢请求比例超过阈值后熔断
+ *  OPEN       直接失败，错误码ExceptionEngine.CIRCUIT_OPEN_ERROR，不占线程也不用等超时
+ *  HALF_OPEN  熔断openMillis之后放PROBES个探测请求过去，都成功就恢复，有一个失败继续熔断
+ *
+ *  失败指ExceptionEngine分类为CONNECT_ERROR、TIME_OUT_ERROR的异常和5xx响应，
+ *  4xx、解析错误等说明服务器还能正常响应，不算失败
+ *  每次放行返回一个Permit，记下放行时的状态，状态变了之后才结束的请求不计入统计，
+ *  例如熔断前放行的慢请求在半开时才返回，不会被当成探测请求
+ *
+ *  Created by Seaky
+ */
+
+public class CircuitBreaker {
+
+    public static final float DEFAULT_FAILURE_RATE = 0.5f;
+    public static final float DEFAULT_SLOW_CALL_RATE = 0.8f;
+    public static final long DEFAULT_SLOW_CALL_MILLIS = 3000;
+    public static final long DEFAULT_OPEN_MILLIS = 10000;
+    //统计窗口 最近多少次请求
+    private static final int WINDOW = 20;
+    //窗口内至少有这么多次请求才计算比例
+    private static final int MIN_CALLS = 10;
+    //半开状态放行的探测请求数
+    private static final int PROBES = 3;
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    /**
+     * 一次放行 请求结束后交回onResult或者onCancel
+     */
+    public static final class Permit {
+        final String host;
+        final State state;
+        //放行时的状态序号 每次状态变化加1
+        final long generation;
+
+        Permit(String host, State state, long generation) {
+            this.host = host;
+            this.state = state;
+            this.generation = generation;
+        }
+
+        public String getHost() {
+            return host;
+        }
+
+        //放行时的状态 CLOSED或者HALF_OPEN
+        public State getState() {
+            return state;
+        }
+    }
+
+    /**
+     * 状态变化事件
+     */
+    public static class StateEvent {
+        private final String host;
+        private final State from;
+        private final State to;
+
+        StateEvent(String host, State from, State to) {
+            this.host = host;
+            this.from = from;
+            this.to = to;
+        }
+
+        public String getHost() {
+            return host;
+        }
+
+        public State getFrom() {
+            return from;
+        }
+
+        public State getTo() {
+            return to;
+        }
+
+        @Override
+        public String toString() {
+            return "StateEvent{" + host + ": " + from + " -> " + to + "}";
+        }
+    }
+
+    private final float mFailureRate;
+    private final float mSlowCallRate;
+    private final long mSlowCallMillis;
+    private final long mOpenMillis;
+    private final Map<String, HostState> mHosts = new HashMap<>();
+    private final Subject<StateEvent> mEvents = PublishSubject.<StateEvent>create().toSerialized();
+
+    public CircuitBreaker(float failureRate, float slowCallRate, long slowCallMillis, long openMillis) {
+        mFailureRate = failureRate;
+        mSlowCallRate = slowCallRate;
+        mSlowCallMillis = slowCallMillis;
+        mOpenMillis = openMillis;
+    }
+
+    /**
+     * 请求前调用
+     * @return null表示熔断中，应该直接失败
+     */
+    public Permit tryAcquire(String host) {
+        StateEvent event = null;
+        Permit permit = null;
+        synchronized (this) {
+            HostState state = stateOf(host);
+            if (state.state == State.OPEN && now() >= state.openUntil) {
+                event = transition(host, state, State.HALF_OPEN);
+            }
+            switch (state.state) {
+                case CLOSED:
+                    permit = new Permit(host, State.CLOSED, state.generation);
+                    break;
+                case HALF_OPEN:
+                    if (state.probing < PROBES) {
+                        state.probing++;
+                        permit = new Permit(host, State.HALF_OPEN, state.generation);
+                    }
+                    break;
+                case OPEN:
+                default:
+                    break;
+            }
+        }
+        publish(event);
+        return permit;
+    }
+
+    /**
+     * 请求结束后调用
+     * @param permit         tryAcquire返回的放行
+     * @param error          失败时的异常，成功时为null
+     * @param code           HTTP状态码，没有响应时传0
+     * @param durationMillis 请求耗时
+     */
+    public void onResult(Permit permit, Throwable error, int code, long durationMillis) {
+        boolean failure = code >= 500 || (error != null && isFailure(error));
+        boolean slow = durationMillis >= mSlowCallMillis;
+        String host = permit.host;
+        StateEvent event = null;
+        synchronized (this) {
+            HostState state = stateOf(host);
+            if (permit.generation != state.generation) {
+                //放行之后状态已经变了 结果不代表现在的状态
+                return;
+            }
+            switch (state.state) {
+                case CLOSED:
+                    state.record(failure, slow);
+                    if (state.count >= MIN_CALLS
+                            && (state.failures >= state.count * mFailureRate || state.slowCalls >= state.count * mSlowCallRate)) {
+                        event = transition(host, state, State.OPEN);
+                    }
+                    break;
+                case HALF_OPEN:
+                    state.probing = Math.max(0, state.probing - 1);
+                    if (failure || slow) {
+                        event = transition(host, state, State.OPEN);
+                    } else if (++state.probeSuccesses >= PROBES) {
+                        event = transition(host, state, State.CLOSED);
+                    }
+                    break;
+                case OPEN:
+                default:
+                    break;
+            }
+        }
+        publish(event);
+    }
+
+    /**
+     * 请求被取消或者由磁盘缓存返回 不计入统计，只归还探测名额
+     */
+    public synchronized void onCancel(Permit permit) {
+        HostState state = stateOf(permit.host);
+        if (permit.generation == state.generation && state.state == State.HALF_OPEN) {
+            state.probing = Math.max(0, state.probing - 1);
+        }
+    }
+
+    public synchronized State getState(String host) {
+        HostState state = mHosts.get(host);
+        return state == null ? State.CLOSED : state.state;
+    }
+
+    /**
+     * 状态变化 在发生变化的线程回调
+     */
+    public Observable<StateEvent> observe() {
+        return mEvents.hide();
+    }
+
+    private static boolean isFailure(Throwable error) {
+        int code = ExceptionEngine.codeOf(error);
+        return code == ExceptionEngine.CONNECT_ERROR || code == ExceptionEngine.TIME_OUT_ERROR;
+    }
+
+    private HostState stateOf(String host) {
+        HostState state = mHosts.get(host);
+        if (state == null) {
+            state = new HostState();
+            mHosts.put(host, state);
+        }
+        return state;
+    }
+
+    private StateEvent transition(String host, HostState state, State to) {
+        State from = state.state;
+        state.state = to;
+        state.generation++;
+        state.probing = 0;
+        state.probeSuccesses = 0;
+        if (to == State.OPEN) {
+            state.openUntil = now() + mOpenMillis;
+        } else if (to == State.CLOSED) {
+            state.reset();
+        }
+        return new StateEvent(host, from, to);
+    }
+
+    private void publish(StateEvent event) {
+        if (event != null) {
+            mEvents.onNext(event);
+        }
+    }
+
+    long now() {
+        return System.nanoTime() / 1000000;
+    }
+
+    /**
+     * 一个域名的状态 环形窗口记录最近WINDOW次请求的结果
+     */
+    private static class HostState {
+        State state = State.CLOSED;
+        final boolean[] failed = new boolean[WINDOW];
+        final boolean[] slowed = new boolean[WINDOW];
+        int next;
+        int count;
+        int failures;
+        int slowCalls;
+        long openUntil;
+        long generation;
+        int probing;
+        int probeSuccesses;
+
+        void record(boolean failure, boolean slow) {
+            if (count == WINDOW) {
+                //挤掉最旧的一次
+                if (failed[next]) {
+                    failures--;
+                }
+                if (slowed[next]) {
+                    slowCalls--;
+                }
+            } else {
+                count++;
+            }
+            failed[next] = failure;
+            slowed[next] = slow;
+            if (failure) {
+                failures++;
+            }
+            if (slow) {
+                slowCalls++;
+            }
+            next = (next + 1) % WINDOW;
+        }
+
+        void reset() {
+            next = 0;
+            count = 0;
+            failures = 0;
+            slowCalls = 0;
+        }
+    }
+}
@@ -0,0 +1,259 @@
+package com.seaky.netframe.core;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import io.reactivex.annotations.NonNull;
+import okhttp3.MediaType;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.BufferedSource;
+import okio.DeflaterSink;
+import okio.ForwardingSink;
+import okio.ForwardingSource;
+import okio.GzipSink;
+import okio.GzipSource;
+import okio.InflaterSource;
+import okio.Okio;
+import okio.Sink;
+import okio.Source;
+
+/**
+ *  请求体压缩和响应解压
+ *
+ *  请求体边写边压缩，不会先把整个请求体读进内存，压缩后长度未知，用chunked发送
+ *  长度已知且小于阈值的请求体不压缩，压缩头和CPU开销比省下的还多；长度未知的（流式）都压缩
+ *  响应声明接受gzip和deflate，自己解压，这样才能统计实际接收的字节数
+ *  brotli在OkHttp3和Android上都没有可用的实现，没有支持
+ *
+ *  按接口统计压缩前后的字节数，见getStats，用来判断压缩是否划算
+ *  拦截器见HttpInterceptor.compressionInterceptor
+ *
+ *  Created by Seaky
+ */
+
+public class Compression {
+
+    public enum Encoding {
+        GZIP("gzip"),
+        //zlib格式 HTTP的deflate
+        DEFLATE("deflate");
+
+        private final String token;
+
+        Encoding(String token) {
+            this.token = token;
+        }
+
+        public String token() {
+            return token;
+        }
+    }
+
+    //请求头Accept-Encoding
+    public static final String ACCEPT_ENCODING = "gzip, deflate";
+    public static final long DEFAULT_THRESHOLD = 1024;
+
+    private final Encoding mEncoding;
+    private final long mThreshold;
+    private final ConcurrentHashMap<String, Counter> mCounters = new ConcurrentHashMap<>();
+
+    public Compression(Encoding encoding, long threshold) {
+        mEncoding = encoding;
+        mThreshold = threshold;
+    }
+
+    public Encoding getEncoding() {
+        return mEncoding;
+    }
+
+    /**
+     * 请求体是否需要压缩 已经声明了Content-Encoding的不再压缩
+     */
+    public boolean shouldCompress(Request request) throws IOException {
+        RequestBody body = request.body();
+        if (body == null || request.header("Content-Encoding") != null) {
+            return false;
+        }
+        long length = body.contentLength();
+        return length < 0 || length >= mThreshold;
+    }
+
+    /**
+     * 换成压缩后的请求体，并加上Content-Encoding
+     */
+    public Request compress(Request request) {
+        return request.newBuilder()
+                .header("Content-Encoding", mEncoding.token())
+                .method(request.method(), new CompressedBody(request.body(), mEncoding, counterOf(request)))
+                .build();
+    }
+
+    /**
+     * 解压响应体 去掉Content-Encoding和Content-Length，不认识的编码原样返回
+     */
+    public Response decompress(Request request, Response response) throws IOException {
+        String encoding = response.header("Content-Encoding");
+        ResponseBody body = response.body();
+        if (encoding == null || body == null || !hasBody(request, response)) {
+            return response;
+        }
+        Counter counter;
+        Source decoded;
+        if ("gzip".equalsIgnoreCase(encoding)) {
+            counter = counterOf(request);
+            decoded = new GzipSource(new CountingSource(body.source(), counter.responseWireBytes));
+        } else if ("deflate".equalsIgnoreCase(encoding)) {
+            counter = counterOf(request);
+            BufferedSource source = Okio.buffer(new CountingSource(body.source(), counter.responseWireBytes));
+            decoded = new InflaterSource(source, new Inflater(!isZlib(source)));
+        } else {
+            return response;
+        }
+        counter.responses.incrementAndGet();
+        MediaType contentType = body.contentType();
+        BufferedSource source = Okio.buffer(new CountingSource(decoded, counter.responseBytes));
+        return response.newBuilder()
+                .removeHeader("Content-Encoding")
+                .removeHeader("Content-Length")
+                .body(ResponseBody.create(contentType, -1, source))
+                .build();
+    }
+
+    /**
+     * 各接口的压缩统计 接口 -> 统计
+     */
+    public Map<String, CompressionStats> getStats() {
+        Map<String, CompressionStats> stats = new HashMap<>();
+        for (Map.Entry<String, Counter> entry : mCounters.entrySet()) {
+            Counter counter = entry.getValue();
+            stats.put(entry.getKey(), new CompressionStats(counter.requests.get(), counter.requestBytes.get(),
+                    counter.requestWireBytes.get(), counter.responses.get(), counter.responseBytes.get(),
+                    counter.responseWireBytes.get()));
+        }
+        return stats;
+    }
+
+    //HEAD、204、304没有响应体，不能按压缩格式读
+    private static boolean hasBody(Request request, Response response) {
+        return !"HEAD".equals(request.method()) && response.code() != 204 && response.code() != 304;
+    }
+
+    //有些服务器的deflate是不带zlib头的裸数据 看前两个字节判断
+    private static boolean isZlib(BufferedSource source) throws IOException {
+        if (!source.request(2)) {
+            return true;
+        }
+        int cmf = source.getBuffer().getByte(0) & 0xff;
+        int flg = source.getBuffer().getByte(1) & 0xff;
+        return (cmf & 0x0f) == 8 && ((cmf << 8) | flg) % 31 == 0;
+    }
+
+    private Counter counterOf(Request request) {
+        String endpoint = NetCallAdapterFactory.endpointOf(request);
+        Counter counter = mCounters.get(endpoint);
+        if (counter == null) {
+            counter = new Counter();
+            Counter previous = mCounters.putIfAbsent(endpoint, counter);
+            if (previous != null) {
+                counter = previous;
+            }
+        }
+        return counter;
+    }
+
+    private static class Counter {
+        final AtomicLong requests = new AtomicLong();
+        final AtomicLong requestBytes = new AtomicLong();
+        final AtomicLong requestWireBytes = new AtomicLong();
+        final AtomicLong responses = new AtomicLong();
+        final AtomicLong responseBytes = new AtomicLong();
+        final AtomicLong responseWireBytes = new AtomicLong();
+    }
+
+    //边写边压缩的请求体 重试时会再写一次，统计按实际发送的算
+    private static class CompressedBody extends RequestBody {
+
+        private final RequestBody mBody;
+        private final Encoding mEncoding;
+        private final Counter mCounter;
+
+        CompressedBody(RequestBody body, Encoding encoding, Counter counter) {
+            mBody = body;
+            mEncoding = encoding;
+            mCounter = counter;
+        }
+
+        @Override
+        public MediaType contentType() {
+            return mBody.contentType();
+        }
+
+        @Override
+        public long contentLength() {
+            return -1;
+        }
+
+        @Override
+        public boolean isOneShot() {
+            return mBody.isOneShot();
+        }
+
+        @Override
+        public void writeTo(@NonNull BufferedSink sink) throws IOException {
+            Sink wire = new CountingSink(sink, mCounter.requestWireBytes);
+            Sink compressor = mEncoding == Encoding.GZIP
+                    ? new GzipSink(wire)
+                    : new DeflaterSink(wire, new Deflater());
+            BufferedSink raw = Okio.buffer(new CountingSink(compressor, mCounter.requestBytes));
+            mBody.writeTo(raw);
+            //close才会写完压缩尾部
+            raw.close();
+            mCounter.requests.incrementAndGet();
+        }
+    }
+
+    private static class CountingSink extends ForwardingSink {
+
+        private final AtomicLong mBytes;
+
+        CountingSink(Sink delegate, AtomicLong bytes) {
+            super(delegate);
+            mBytes = bytes;
+        }
+
+        @Override
+        public void write(@NonNull Buffer source, long byteCount) throws IOException {
+            super.write(source, byteCount);
+            mBytes.addAndGet(byteCount);
+        }
+    }
+
+    private static class CountingSource extends ForwardingSource {
+
+        private final AtomicLong mBytes;
+
+        CountingSource(Source delegate, AtomicLong bytes) {
+            super(delegate);
+            mBytes = bytes;
+        }
+
+        @Override
+        public long read(@NonNull Buffer sink, long byteCount) throws IOException {
+            long read = super.read(sink, byteCount);
+            if (read > 0) {
+                mBytes.addAndGet(read);
+            }
+            return read;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.seaky.netframe.core;
+
+/**
+ *  一个接口的压缩统计快照
+ *
+ *  Created by Seaky
+ */
+
+public class CompressionStats {
+
+    private final long requestCount;
+    private final long requestBytes;
+    private final long requestWireBytes;
+    private final long responseCount;
+    private final long responseBytes;
+    private final long responseWireBytes;
+
+    CompressionStats(long requestCount, long requestBytes, long requestWireBytes,
+                     long responseCount, long responseBytes, long responseWireBytes) {
+        this.requestCount = requestCount;
+        this.requestBytes = requestBytes;
+        this.requestWireBytes = requestWireBytes;
+        this.responseCount = responseCount;
+        this.responseBytes = responseBytes;
+        this.responseWireBytes = responseWireBytes;
+    }
+
+    //压缩发送的请求数
+    public long getRequestCount() {
+        return requestCount;
+    }
+
+    //请求体压缩前的字节数
+    public long getRequestBytes() {
+        return requestBytes;
+    }
+
+    //请求体压缩后实际发送的字节数
+    public long getRequestWireBytes() {
+        return requestWireBytes;
+    }
+
+    //收到压缩响应的次数
+    public long getResponseCount() {
+        return responseCount;
+    }
+
+    //响应体解压后的字节数
+    public long getResponseBytes() {
+        return responseBytes;
+    }
+
+    //响应体实际接收的字节数
+    public long getResponseWireBytes() {
+        return responseWireBytes;
+    }
+
+    //一共省下的流量
+    public long getSavedBytes() {
+        return requestBytes - requestWireBytes + responseBytes - responseWireBytes;
+    }
+
+    @Override
+    public String toString() {
+        return "CompressionStats{request=" + requestCount
+                + ", requestBytes=" + requestBytes
+                + ", requestWireBytes=" + requestWireBytes
+                + ", response=" + responseCount
+                + ", responseBytes=" + responseBytes
+                + ", responseWireBytes=" + responseWireBytes
+                + ", saved=" + getSavedBytes() + "}";
+    }
+}
@@ -0,0 +1,20 @@
+package com.seaky.netframe.core;
+
+import io.reactivex.Observable;
+
+/**
+ *  网络连接状态 离线队列用它判断什么时候重发
+ *  Android上默认用AndroidConnectivity，测试时可以换成自己控制的实现
+ *
+ *  Created by Seaky
+ */
+
+public interface Connectivity {
+
+    boolean isConnected();
+
+    /**
+     * 连接状态变化 订阅时先发一次当前状态
+     */
+    Observable<Boolean> observe();
+}
@@ -0,0 +1,42 @@
+package com.seaky.netframe.core;
+
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+
+import okhttp3.ResponseBody;
+import retrofit2.Converter;
+import retrofit2.Retrofit;
+
+/**
+ *  统计解析耗时
+ *  注册在GsonConverterFactory前面，把解析交给后面的转换器，只负责计时
+ *
+ *  Created by Seaky
+ */
+
+class DecodeTimingConverterFactory extends Converter.Factory {
+
+    private final NetMetrics mMetrics;
+
+    DecodeTimingConverterFactory(NetMetrics metrics) {
+        mMetrics = metrics;
+    }
+
+    @Override
+    public Converter<ResponseBody, ?> responseBodyConverter(Type type, Annotation[] annotations, Retrofit retrofit) {
+        Converter<ResponseBody, ?> delegate = retrofit.nextResponseBodyConverter(this, type, annotations);
+        return new Converter<ResponseBody, Object>() {
+            @Override
+            public Object convert(ResponseBody body) throws IOException {
+                long start = System.nanoTime();
+                try {
+                    return delegate.convert(body);
+                } finally {
+                    //解析和网络请求在同一个线程，当前接口由TimeoutCall设置
+                    mMetrics.record(NetMetrics.current(), NetMetrics.Phase.DECODE, (System.nanoTime() - start) / 1000000);
+                }
+            }
+        };
+    }
+}
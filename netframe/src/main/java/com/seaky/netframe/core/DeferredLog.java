@@ -0,0 +1,232 @@
+package com.seaky.netframe.core;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ *  离线队列的磁盘日志 只追加
+ *
+ *  每条记录：类型(1字节) + 长度(4字节) + 内容 + CRC32(4字节，校验类型和内容)
+ *  ENQ 入队一条请求，内容是DeferredRequest；ACK 这条请求已经处理完，内容是id
+ *  打开时从头读一遍，ENQ了还没ACK的就是待发送的请求
+ *  写到一半崩溃会在末尾留下不完整的记录，读到校验不过的记录就停下，并把文件截断到最后一条完整记录
+ *
+ *  ENQ写完fsync，保证回调了DEFERRED_ERROR的请求一定在盘上；ACK不fsync，丢了最多重发一次，由Idempotency-Key去重
+ *  ACK多了之后由compact把待发送的请求重写到新文件，再rename替换，rename是原子的，中途崩溃旧文件还在
+ *
+ *  Created by Seaky
+ */
+
+final class DeferredLog {
+
+    private static final byte ENQ = 1;
+    private static final byte ACK = 2;
+    //单条记录上限 读到超过的认为是坏数据，所以超过的请求不能入队
+    static final int MAX_RECORD = 16 * 1024 * 1024;
+    //ACK超过这个数并且超过一半记录时压缩
+    private static final int COMPACT_MIN_ACKS = 64;
+
+    private final File mFile;
+    private final LinkedHashMap<Long, DeferredRequest> mPending = new LinkedHashMap<>();
+    //每个接口待发送的请求数
+    private final Map<String, Integer> mPendingByEndpoint = new HashMap<>();
+    private FileOutputStream mOut;
+    private long mNextId = 1;
+    private int mRecords;
+
+    DeferredLog(File file) throws IOException {
+        mFile = file;
+        File dir = file.getParentFile();
+        if (dir != null && !dir.exists() && !dir.mkdirs()) {
+            throw new IOException("can't create " + dir);
+        }
+        load();
+        mOut = new FileOutputStream(mFile, true);
+    }
+
+    /**
+     * 入队 返回分配了id的请求
+     * @throws IOException  超过MAX_RECORD的请求不写入，否则下次打开时会被当成坏数据，连同后面的记录一起截掉
+     */
+    synchronized DeferredRequest append(DeferredRequest request) throws IOException {
+        DeferredRequest entry = request.withId(mNextId);
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        entry.writeTo(new DataOutputStream(payload));
+        if (payload.size() > MAX_RECORD) {
+            throw new IOException("deferred request too large: " + payload.size());
+        }
+        mNextId++;
+        write(ENQ, payload.toByteArray());
+        mOut.getFD().sync();
+        put(entry);
+        return entry;
+    }
+
+    synchronized void ack(long id) throws IOException {
+        if (remove(id) == null) {
+            return;
+        }
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        new DataOutputStream(payload).writeLong(id);
+        write(ACK, payload.toByteArray());
+    }
+
+    //按入队顺序
+    synchronized List<DeferredRequest> pending() {
+        return new ArrayList<>(mPending.values());
+    }
+
+    synchronized int size() {
+        return mPending.size();
+    }
+
+    //这个接口还有多少条没发出去
+    synchronized int size(String endpoint) {
+        Integer count = mPendingByEndpoint.get(endpoint);
+        return count == null ? 0 : count;
+    }
+
+    synchronized boolean needsCompaction() {
+        int acks = mRecords - mPending.size();
+        return acks >= COMPACT_MIN_ACKS && acks * 2 > mRecords;
+    }
+
+    /**
+     * 只保留待发送的请求
+     */
+    synchronized void compact() throws IOException {
+        File temp = new File(mFile.getPath() + ".tmp");
+        FileOutputStream out = new FileOutputStream(temp);
+        try {
+            for (DeferredRequest entry : mPending.values()) {
+                ByteArrayOutputStream payload = new ByteArrayOutputStream();
+                entry.writeTo(new DataOutputStream(payload));
+                out.write(record(ENQ, payload.toByteArray()));
+            }
+            out.getFD().sync();
+        } finally {
+            out.close();
+        }
+        mOut.close();
+        if (!temp.renameTo(mFile)) {
+            mOut = new FileOutputStream(mFile, true);
+            throw new IOException("can't rename " + temp + " to " + mFile);
+        }
+        mOut = new FileOutputStream(mFile, true);
+        mRecords = mPending.size();
+    }
+
+    synchronized void close() throws IOException {
+        mOut.close();
+    }
+
+    synchronized long length() {
+        return mFile.length();
+    }
+
+    private void put(DeferredRequest entry) {
+        mPending.put(entry.id, entry);
+        mPendingByEndpoint.put(entry.endpoint, size(entry.endpoint) + 1);
+    }
+
+    private DeferredRequest remove(long id) {
+        DeferredRequest entry = mPending.remove(id);
+        if (entry != null) {
+            int count = size(entry.endpoint) - 1;
+            if (count <= 0) {
+                mPendingByEndpoint.remove(entry.endpoint);
+            } else {
+                mPendingByEndpoint.put(entry.endpoint, count);
+            }
+        }
+        return entry;
+    }
+
+    private void write(byte type, byte[] payload) throws IOException {
+        mOut.write(record(type, payload));
+        mRecords++;
+    }
+
+    private static byte[] record(byte type, byte[] payload) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(payload.length + 9);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(type);
+        out.writeInt(payload.length);
+        out.write(payload);
+        out.writeInt((int) crcOf(type, payload));
+        return bytes.toByteArray();
+    }
+
+    private static long crcOf(byte type, byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(type);
+        crc.update(payload, 0, payload.length);
+        return crc.getValue();
+    }
+
+    private void load() throws IOException {
+        if (!mFile.exists()) {
+            return;
+        }
+        long valid = 0;
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(mFile)));
+        try {
+            while (true) {
+                byte type;
+                byte[] payload;
+                try {
+                    type = in.readByte();
+                    int length = in.readInt();
+                    if (length < 0 || length > MAX_RECORD) {
+                        break;
+                    }
+                    payload = new byte[length];
+                    in.readFully(payload);
+                    if ((int) crcOf(type, payload) != in.readInt()) {
+                        break;
+                    }
+                } catch (EOFException e) {
+                    break;
+                }
+                DataInputStream record = new DataInputStream(new ByteArrayInputStream(payload));
+                if (type == ENQ) {
+                    DeferredRequest entry = DeferredRequest.readFrom(record);
+                    put(entry);
+                    mNextId = Math.max(mNextId, entry.id + 1);
+                } else if (type == ACK) {
+                    remove(record.readLong());
+                } else {
+                    break;
+                }
+                mRecords++;
+                valid += payload.length + 9;
+            }
+        } finally {
+            in.close();
+        }
+        if (valid < mFile.length()) {
+            //去掉末尾不完整的记录，否则后面追加的记录都读不到
+            RandomAccessFile file = new RandomAccessFile(mFile, "rw");
+            try {
+                file.setLength(valid);
+            } finally {
+                file.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,349 @@
+package com.seaky.netframe.core;
+
+import com.seaky.netframe.annotation.Deferrable;
+import com.seaky.netframe.exception.ApiException;
+import com.seaky.netframe.exception.ExceptionEngine;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import io.reactivex.Observable;
+import io.reactivex.ObservableSource;
+import io.reactivex.Scheduler;
+import io.reactivex.annotations.NonNull;
+import io.reactivex.disposables.Disposable;
+import io.reactivex.functions.Function;
+import io.reactivex.subjects.PublishSubject;
+import io.reactivex.subjects.Subject;
+import okhttp3.HttpUrl;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okio.Buffer;
+
+/**
+ *  离线请求队列
+ *
+ *  标记了@Deferrable的接口，没有网络或者连不上服务器时，请求写入DeferredLog，调用方收到DEFERRED_ERROR
+ *  网络恢复（Connectivity）后在后台重发：
+ *  同一个接口的请求严格按入队顺序一条一条发，不同接口之间并行，最多同时maxConcurrency个接口
+ *  有网时如果这个接口还有没发出去的离线请求，新请求也入队排在它们后面，不会比旧请求先到
+ *  接口声明了batchUrl的，连续的json请求合并成一个请求发送
+ *  2xx算成功；4xx（401、403、408、429除外）重发也不会成功，丢弃；其他失败停下这个接口，稍后再重发
+ *  401、403通常是登录过期，重新登录后重发时headerInterceptor会带上新的凭证
+ *  请求体超过DeferredLog.MAX_RECORD的存不下，按原来的错误回调
+ *  每个请求带固定的Idempotency-Key，服务器可能已经执行过的请求重发时按它去重
+ *
+ *  Created by Seaky
+ */
+
+public class DeferredQueue {
+
+    public static final String IDEMPOTENCY_KEY = "Idempotency-Key";
+    public static final int DEFAULT_CONCURRENCY = 2;
+    //重发失败后多久再试
+    private static final long RETRY_DELAY = TimeUnit.SECONDS.toMillis(30);
+    private static final MediaType JSON = MediaType.parse("application/json; charset=utf-8");
+
+    /**
+     * 一条离线请求的重发结果
+     */
+    public static class DeferredEvent {
+        private final String endpoint;
+        private final String key;
+        private final int code;
+        private final boolean delivered;
+
+        DeferredEvent(String endpoint, String key, int code, boolean delivered) {
+            this.endpoint = endpoint;
+            this.key = key;
+            this.code = code;
+            this.delivered = delivered;
+        }
+
+        public String getEndpoint() {
+            return endpoint;
+        }
+
+        //Idempotency-Key
+        public String getKey() {
+            return key;
+        }
+
+        //HTTP状态码
+        public int getCode() {
+            return code;
+        }
+
+        //false表示服务器拒绝，请求已经丢弃
+        public boolean isDelivered() {
+            return delivered;
+        }
+
+        @Override
+        public String toString() {
+            return "DeferredEvent{" + endpoint + " " + key + ": " + code + (delivered ? " delivered" : " dropped") + "}";
+        }
+    }
+
+    private final File mFile;
+    private final OkHttpClient mClient;
+    private final Connectivity mConnectivity;
+    private final int mMaxConcurrency;
+    private final Scheduler mScheduler;
+    private final Subject<DeferredEvent> mEvents = PublishSubject.<DeferredEvent>create().toSerialized();
+    private final AtomicBoolean mReplaying = new AtomicBoolean();
+    private final AtomicBoolean mRetryScheduled = new AtomicBoolean();
+    private final Disposable mConnectivityDisposable;
+    private volatile boolean mReplayAgain;
+    private DeferredLog mLog;
+
+    /**
+     * @param file             日志文件 放在不会被系统清理的目录
+     * @param client           重发用的OkHttpClient
+     * @param maxConcurrency   最多同时重发几个接口
+     * @param scheduler        重发和压缩日志在这里执行，要允许阻塞
+     */
+    public DeferredQueue(File file, OkHttpClient client, Connectivity connectivity, int maxConcurrency, Scheduler scheduler) {
+        mFile = file;
+        mClient = client;
+        mConnectivity = connectivity;
+        mMaxConcurrency = maxConcurrency;
+        mScheduler = scheduler;
+        mConnectivityDisposable = mConnectivity.observe().subscribe(connected -> {
+            if (connected) {
+                replay();
+            }
+        });
+    }
+
+    /**
+     * 包装接口请求 离线或者这个接口还有离线请求没发完时直接入队，连不上服务器时入队
+     */
+    public <T> Observable<T> defer(Request request, String endpoint, Deferrable deferrable, Observable<T> upstream) {
+        return Observable.defer(() -> {
+            if (!mConnectivity.isConnected()) {
+                return DeferredQueue.this.<T>enqueue(request, endpoint, deferrable, null);
+            }
+            if (pending(endpoint) > 0) {
+                //排在这个接口的离线请求后面，保证顺序
+                Observable<T> queued = enqueue(request, endpoint, deferrable, null);
+                replay();
+                return queued;
+            }
+            return upstream;
+        })
+                .onErrorResumeNext(new Function<Throwable, ObservableSource<T>>() {
+                    @Override
+                    public ObservableSource<T> apply(@NonNull Throwable throwable) {
+                        if (isOffline(throwable)) {
+                            return enqueue(request, endpoint, deferrable, throwable);
+                        }
+                        return Observable.error(throwable);
+                    }
+                });
+    }
+
+    //待发送的请求数
+    public int size() {
+        try {
+            return log().size();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private int pending(String endpoint) {
+        try {
+            return log().size(endpoint);
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * 重发结果 在重发线程回调
+     */
+    public Observable<DeferredEvent> observe() {
+        return mEvents;
+    }
+
+    /**
+     * 开始重发 已经在重发时等这一轮结束后再来一轮
+     */
+    public void replay() {
+        mReplayAgain = true;
+        if (mReplaying.compareAndSet(false, true)) {
+            mScheduler.scheduleDirect(this::drain);
+        }
+    }
+
+    private <T> Observable<T> enqueue(Request request, String endpoint, Deferrable deferrable, Throwable cause) {
+        try {
+            String key = UUID.randomUUID().toString();
+            log().append(DeferredRequest.of(0, key, endpoint, request, deferrable.batchUrl(), deferrable.maxBatch()));
+        } catch (IOException e) {
+            //存不下来就按原来的错误处理
+            return Observable.error(cause != null ? cause : e);
+        }
+        if (mConnectivity.isConnected()) {
+            //有网但是连不上服务器 稍后再试
+            scheduleRetry();
+        }
+        return Observable.error(new ApiException(cause, ExceptionEngine.DEFERRED_ERROR, "网络不可用，已加入离线队列"));
+    }
+
+    private synchronized DeferredLog log() throws IOException {
+        if (null == mLog) {
+            mLog = new DeferredLog(mFile);
+        }
+        return mLog;
+    }
+
+    private void drain() {
+        try {
+            while (mReplayAgain && mConnectivity.isConnected()) {
+                mReplayAgain = false;
+                if (!replayPending()) {
+                    scheduleRetry();
+                    break;
+                }
+            }
+            DeferredLog log = log();
+            if (log.needsCompaction()) {
+                log.compact();
+            }
+        } catch (IOException | RuntimeException e) {
+            scheduleRetry();
+        } finally {
+            mReplaying.set(false);
+        }
+        //结束前又有新的请求入队
+        if (mReplayAgain && mConnectivity.isConnected() && mReplaying.compareAndSet(false, true)) {
+            mScheduler.scheduleDirect(this::drain);
+        }
+    }
+
+    //发一轮 全部成功返回true
+    private boolean replayPending() throws IOException {
+        //按接口分组，组内保持入队顺序
+        Map<String, List<List<DeferredRequest>>> lanes = new LinkedHashMap<>();
+        for (DeferredRequest entry : log().pending()) {
+            List<List<DeferredRequest>> lane = lanes.get(entry.endpoint);
+            if (lane == null) {
+                lane = new ArrayList<>();
+                lanes.put(entry.endpoint, lane);
+            }
+            List<DeferredRequest> last = lane.isEmpty() ? null : lane.get(lane.size() - 1);
+            if (last != null && canBatch(last, entry)) {
+                last.add(entry);
+            } else {
+                List<DeferredRequest> unit = new ArrayList<>();
+                unit.add(entry);
+                lane.add(unit);
+            }
+        }
+        if (lanes.isEmpty()) {
+            return true;
+        }
+        boolean success = true;
+        for (Boolean result : Observable.fromIterable(lanes.values())
+                .flatMap(lane -> Observable.fromCallable(() -> sendLane(lane)).subscribeOn(mScheduler), mMaxConcurrency)
+                .blockingIterable()) {
+            success &= result;
+        }
+        return success;
+    }
+
+    private static boolean canBatch(List<DeferredRequest> unit, DeferredRequest entry) {
+        DeferredRequest first = unit.get(0);
+        return !first.batchUrl.isEmpty() && unit.size() < first.maxBatch && first.isJson() && entry.isJson();
+    }
+
+    private boolean sendLane(List<List<DeferredRequest>> lane) throws IOException {
+        for (List<DeferredRequest> unit : lane) {
+            int code;
+            try {
+                Response response = mClient.newCall(unit.size() == 1 ? unit.get(0).toRequest() : batchOf(unit)).execute();
+                code = response.code();
+                response.close();
+            } catch (IOException e) {
+                return false;
+            }
+            boolean delivered = code >= 200 && code < 300;
+            boolean rejected = code >= 400 && code < 500 && !isRetryable(code);
+            if (!delivered && !rejected) {
+                //服务器暂时不可用 后面的请求也先不发，保持顺序
+                return false;
+            }
+            for (DeferredRequest entry : unit) {
+                log().ack(entry.id);
+                mEvents.onNext(new DeferredEvent(entry.endpoint, entry.key, code, delivered));
+            }
+        }
+        return true;
+    }
+
+    //[{"key":"...","body":...}, ...] 发到batchUrl
+    private static Request batchOf(List<DeferredRequest> unit) {
+        DeferredRequest first = unit.get(0);
+        Buffer body = new Buffer().writeUtf8("[");
+        for (int i = 0; i < unit.size(); i++) {
+            DeferredRequest entry = unit.get(i);
+            if (i > 0) {
+                body.writeUtf8(",");
+            }
+            body.writeUtf8("{\"key\":\"").writeUtf8(entry.key).writeUtf8("\",\"body\":").write(entry.body).writeUtf8("}");
+        }
+        body.writeUtf8("]");
+        HttpUrl url = HttpUrl.get(first.url).resolve(first.batchUrl);
+        if (url == null) {
+            throw new IllegalArgumentException("invalid batch url: " + first.batchUrl);
+        }
+        return new Request.Builder()
+                .url(url)
+                .headers(first.headers)
+                .post(RequestBody.create(JSON, body.readByteString()))
+                .build();
+    }
+
+    //超时、限流和登录过期 过一会儿重发还可能成功
+    static boolean isRetryable(int code) {
+        return code == 401 || code == 403 || code == 408 || code == 429;
+    }
+
+    private void scheduleRetry() {
+        if (mRetryScheduled.compareAndSet(false, true)) {
+            mScheduler.scheduleDirect(() -> {
+                mRetryScheduled.set(false);
+                replay();
+            }, RETRY_DELAY, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    //没有网络或者连不上服务器 请求肯定没有到达服务器
+    static boolean isOffline(Throwable throwable) {
+        return throwable instanceof UnknownHostException
+                || ExceptionEngine.codeOf(throwable) == ExceptionEngine.CONNECT_ERROR;
+    }
+
+    //停止监听网络并关闭日志 测试用
+    void close() throws IOException {
+        mConnectivityDisposable.dispose();
+        synchronized (this) {
+            if (null != mLog) {
+                mLog.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.seaky.netframe.core;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import okhttp3.Headers;
+import okhttp3.MediaType;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okio.Buffer;
+
+/**
+ *  离线队列里的一条请求 请求体已经写成字节，可以存盘
+ *
+ *  Created by Seaky
+ */
+
+final class DeferredRequest {
+
+    final long id;
+    //Idempotency-Key 入队时生成，每次重发都一样
+    final String key;
+    final String endpoint;
+    final String method;
+    final String url;
+    final Headers headers;
+    //没有请求体时为null
+    final String contentType;
+    final byte[] body;
+    final String batchUrl;
+    final int maxBatch;
+
+    DeferredRequest(long id, String key, String endpoint, String method, String url, Headers headers,
+                    String contentType, byte[] body, String batchUrl, int maxBatch) {
+        this.id = id;
+        this.key = key;
+        this.endpoint = endpoint;
+        this.method = method;
+        this.url = url;
+        this.headers = headers;
+        this.contentType = contentType;
+        this.body = body;
+        this.batchUrl = batchUrl;
+        this.maxBatch = maxBatch;
+    }
+
+    static DeferredRequest of(long id, String key, String endpoint, Request request, String batchUrl, int maxBatch)
+            throws IOException {
+        RequestBody requestBody = request.body();
+        String contentType = null;
+        byte[] body = null;
+        if (requestBody != null) {
+            MediaType mediaType = requestBody.contentType();
+            contentType = mediaType != null ? mediaType.toString() : null;
+            if (requestBody.contentLength() > DeferredLog.MAX_RECORD) {
+                //存不下 不用先读进内存
+                throw new IOException("request body too large: " + requestBody.contentLength());
+            }
+            Buffer buffer = new Buffer();
+            requestBody.writeTo(buffer);
+            body = buffer.readByteArray();
+        }
+        return new DeferredRequest(id, key, endpoint, request.method(), request.url().toString(),
+                request.headers(), contentType, body, batchUrl, maxBatch);
+    }
+
+    DeferredRequest withId(long id) {
+        return new DeferredRequest(id, key, endpoint, method, url, headers, contentType, body, batchUrl, maxBatch);
+    }
+
+    boolean isJson() {
+        return contentType != null && contentType.contains("json") && body != null;
+    }
+
+    Request toRequest() {
+        RequestBody requestBody = null;
+        if (body != null) {
+            requestBody = RequestBody.create(contentType != null ? MediaType.parse(contentType) : null, body);
+        }
+        return new Request.Builder()
+                .url(url)
+                .headers(headers)
+                .header(DeferredQueue.IDEMPOTENCY_KEY, key)
+                .method(method, requestBody)
+                .build();
+    }
+
+    void writeTo(DataOutputStream out) throws IOException {
+        out.writeLong(id);
+        out.writeUTF(key);
+        out.writeUTF(endpoint);
+        out.writeUTF(method);
+        out.writeUTF(url);
+        out.writeInt(headers.size());
+        for (int i = 0; i < headers.size(); i++) {
+            out.writeUTF(headers.name(i));
+            out.writeUTF(headers.value(i));
+        }
+        out.writeUTF(contentType != null ? contentType : "");
+        out.writeInt(body != null ? body.length : -1);
+        if (body != null) {
+            out.write(body);
+        }
+        out.writeUTF(batchUrl);
+        out.writeInt(maxBatch);
+    }
+
+    static DeferredRequest readFrom(DataInputStream in) throws IOException {
+        long id = in.readLong();
+        String key = in.readUTF();
+        String endpoint = in.readUTF();
+        String method = in.readUTF();
+        String url = in.readUTF();
+        Headers.Builder headers = new Headers.Builder();
+        for (int i = in.readInt(); i > 0; i--) {
+            headers.add(in.readUTF(), in.readUTF());
+        }
+        String contentType = in.readUTF();
+        int length = in.readInt();
+        byte[] body = null;
+        if (length >= 0) {
+            body = new byte[length];
+            in.readFully(body);
+        }
+        String batchUrl = in.readUTF();
+        int maxBatch = in.readInt();
+        return new DeferredRequest(id, key, endpoint, method, url, headers.build(),
+                contentType.isEmpty() ? null : contentType, body, batchUrl, maxBatch);
+    }
+}
@@ -0,0 +1,291 @@
+package com.seaky.netframe.core;
+
+import android.annotation.SuppressLint;
+
+import java.net.Inet4Address;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.reactivex.Completable;
+import io.reactivex.Single;
+import io.reactivex.SingleEmitter;
+import io.reactivex.SingleOnSubscribe;
+import io.reactivex.annotations.NonNull;
+import io.reactivex.schedulers.Schedulers;
+import okhttp3.Dns;
+
+/**
+ *  进程内DNS缓存
+ *
+ *  每个新连接都要走一次系统DNS，移动网络下第一次请求一个域名经常要多花100~300ms
+ *  1.按TTL缓存解析结果，TTL用掉3/4之后再访问会在后台刷新，正常情况下请求不会等DNS
+ *  2.IPv4地址排在前面；系统解析器一次就返回两个地址族，只解析一次再拆开，
+ *    自定义的解析器（例如HttpDNS）按地址族分开并行解析
+ *  3.可以给域名设置固定地址，不走解析
+ *  4.解析失败时继续使用过期的结果（最多MAX_STALE），网络恢复后再刷新
+ *
+ *  解析器可以替换，例如换成HttpDNS拿到真实的TTL；
+ *  系统解析器拿不到TTL，统一按DEFAULT_TTL缓存
+ *
+ *  Created by Seaky
+ */
+
+public class DnsCache implements Dns {
+
+    //解析器没有给出TTL时使用的缓存时间
+    public static final long DEFAULT_TTL = TimeUnit.SECONDS.toMillis(60);
+    //TTL上下限 太短等于没缓存，太长切换机房时跟不上
+    private static final long MIN_TTL = TimeUnit.SECONDS.toMillis(5);
+    private static final long MAX_TTL = TimeUnit.MINUTES.toMillis(10);
+    //解析失败时过期结果最多继续用多久
+    private static final long MAX_STALE = TimeUnit.HOURS.toMillis(1);
+
+    public enum Family {
+        IPV4, IPV6
+    }
+
+    /**
+     * 解析器 每次只解析一个地址族
+     */
+    public interface Resolver {
+
+        /**
+         * @return  解析结果，没有这个地址族的记录时返回空列表
+         * @throws UnknownHostException  解析失败
+         */
+        Records lookup(String host, Family family) throws UnknownHostException;
+
+        //系统解析器 拿不到TTL，DnsCache使用它时每个域名只调用一次系统解析，见systemLookup
+        Resolver SYSTEM = new Resolver() {
+            @Override
+            public Records lookup(String host, Family family) throws UnknownHostException {
+                return new Records(filter(InetAddress.getAllByName(host), family), -1);
+            }
+        };
+    }
+
+    /**
+     * 一个地址族的解析结果
+     */
+    public static class Records {
+        final List<InetAddress> addresses;
+        final long ttlMillis;
+
+        /**
+         * @param ttlMillis  有效期，不知道时传-1
+         */
+        public Records(List<InetAddress> addresses, long ttlMillis) {
+            this.addresses = addresses;
+            this.ttlMillis = ttlMillis;
+        }
+    }
+
+    //按地址族挑出地址
+    private static List<InetAddress> filter(InetAddress[] all, Family family) {
+        List<InetAddress> addresses = new ArrayList<>();
+        for (InetAddress address : all) {
+            if (family == Family.IPV4 ? address instanceof Inet4Address : address instanceof Inet6Address) {
+                addresses.add(address);
+            }
+        }
+        return addresses;
+    }
+
+    //解析失败的标记
+    private static final Records FAILED = new Records(Collections.<InetAddress>emptyList(), -1);
+
+    private final Resolver mResolver;
+    private final Map<String, Entry> mEntries = new ConcurrentHashMap<>();
+    private final Map<String, List<InetAddress>> mOverrides = new ConcurrentHashMap<>();
+    //正在后台刷新的域名
+    private final Set<String> mRefreshing = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    private final AtomicLong mHitCount = new AtomicLong();
+    private final AtomicLong mStaleHitCount = new AtomicLong();
+    private final AtomicLong mMissCount = new AtomicLong();
+    private final AtomicLong mRefreshCount = new AtomicLong();
+    private final AtomicLong mFailureCount = new AtomicLong();
+    private final AtomicLong mResolveCount = new AtomicLong();
+    private final AtomicLong mResolveMillis = new AtomicLong();
+    private final AtomicLong mMaxResolveMillis = new AtomicLong();
+
+    public DnsCache() {
+        this(Resolver.SYSTEM);
+    }
+
+    public DnsCache(Resolver resolver) {
+        mResolver = resolver;
+    }
+
+    /**
+     * 给域名设置固定地址 不再解析
+     */
+    public void override(String host, InetAddress... addresses) {
+        mOverrides.put(host, Collections.unmodifiableList(new ArrayList<>(Arrays.asList(addresses))));
+    }
+
+    public void removeOverride(String host) {
+        mOverrides.remove(host);
+    }
+
+    //清空缓存 例如网络切换后
+    public void clear() {
+        mEntries.clear();
+    }
+
+    @Override
+    public @NonNull
+    List<InetAddress> lookup(@NonNull String hostname) throws UnknownHostException {
+        List<InetAddress> override = mOverrides.get(hostname);
+        if (override != null) {
+            return override;
+        }
+        long now = now();
+        Entry entry = mEntries.get(hostname);
+        if (entry != null && now < entry.expireAt) {
+            mHitCount.incrementAndGet();
+            if (now >= entry.refreshAt) {
+                refresh(hostname);
+            }
+            return entry.addresses;
+        }
+        try {
+            mMissCount.incrementAndGet();
+            return resolve(hostname).addresses;
+        } catch (UnknownHostException e) {
+            if (entry != null && now - entry.expireAt < MAX_STALE) {
+                //解析失败 用过期的结果顶着
+                mMissCount.decrementAndGet();
+                mStaleHitCount.incrementAndGet();
+                return entry.addresses;
+            }
+            throw e;
+        }
+    }
+
+    //后台刷新 同一个域名同时只刷新一次，失败了保留旧结果
+    @SuppressLint("CheckResult")
+    private void refresh(String host) {
+        if (!mRefreshing.add(host)) {
+            return;
+        }
+        mRefreshCount.incrementAndGet();
+        Completable.fromAction(() -> resolve(host))
+                .subscribeOn(Schedulers.io())
+                .doFinally(() -> mRefreshing.remove(host))
+                .subscribe(() -> {}, throwable -> {});
+    }
+
+    //两个地址族并行解析，有一个成功就算成功
+    private Entry resolve(String host) throws UnknownHostException {
+        long start = now();
+        Records[] results;
+        try {
+            results = mResolver == Resolver.SYSTEM
+                    ? lookupSystem(host)
+                    : Single.zip(lookupFamily(host, Family.IPV4), lookupFamily(host, Family.IPV6),
+                    (ipv4, ipv6) -> new Records[]{ipv4, ipv6}).blockingGet();
+        } catch (RuntimeException e) {
+            //等待时线程被中断
+            UnknownHostException exception = new UnknownHostException(host);
+            exception.initCause(e);
+            throw exception;
+        }
+        record(now() - start);
+
+        List<InetAddress> addresses = new ArrayList<>();
+        long ttl = Long.MAX_VALUE;
+        for (Records records : results) {
+            if (records == FAILED) {
+                continue;
+            }
+            addresses.addAll(records.addresses);
+            ttl = Math.min(ttl, records.ttlMillis > 0 ? records.ttlMillis : DEFAULT_TTL);
+        }
+        if (addresses.isEmpty()) {
+            mFailureCount.incrementAndGet();
+            throw new UnknownHostException(host);
+        }
+        ttl = Math.max(MIN_TTL, Math.min(MAX_TTL, ttl));
+        long now = now();
+        Entry entry = new Entry(Collections.unmodifiableList(addresses), now + ttl * 3 / 4, now + ttl);
+        mEntries.put(host, entry);
+        return entry;
+    }
+
+    //系统解析一次返回所有地址族 再按地址族拆开，不用为每个地址族各查一遍
+    private Records[] lookupSystem(String host) {
+        InetAddress[] all;
+        try {
+            all = systemLookup(host);
+        } catch (UnknownHostException e) {
+            return new Records[]{FAILED, FAILED};
+        }
+        return new Records[]{new Records(filter(all, Family.IPV4), -1), new Records(filter(all, Family.IPV6), -1)};
+    }
+
+    //系统解析 测试时替换
+    InetAddress[] systemLookup(String host) throws UnknownHostException {
+        return InetAddress.getAllByName(host);
+    }
+
+    private Single<Records> lookupFamily(String host, Family family) {
+        return Single.create(new SingleOnSubscribe<Records>() {
+            @Override
+            public void subscribe(@NonNull SingleEmitter<Records> emitter) {
+                try {
+                    Records records = mResolver.lookup(host, family);
+                    emitter.onSuccess(records != null ? records : FAILED);
+                } catch (Throwable e) {
+                    emitter.onSuccess(FAILED);
+                }
+            }
+        }).subscribeOn(Schedulers.io());
+    }
+
+    private void record(long millis) {
+        mResolveCount.incrementAndGet();
+        mResolveMillis.addAndGet(millis);
+        long max;
+        do {
+            max = mMaxResolveMillis.get();
+        } while (millis > max && !mMaxResolveMillis.compareAndSet(max, millis));
+    }
+
+    /**
+     * 统计快照
+     */
+    public DnsStats getStats() {
+        long count = mResolveCount.get();
+        return new DnsStats(mHitCount.get(), mStaleHitCount.get(), mMissCount.get(), mRefreshCount.get(),
+                mFailureCount.get(), count, count == 0 ? 0 : mResolveMillis.get() / count,
+                mMaxResolveMillis.get(), mEntries.size());
+    }
+
+    //单调时钟(ms)
+    long now() {
+        return System.nanoTime() / 1000000;
+    }
+
+    private static class Entry {
+        final List<InetAddress> addresses;
+        final long refreshAt;
+        final long expireAt;
+
+        Entry(List<InetAddress> addresses, long refreshAt, long expireAt) {
+            this.addresses = addresses;
+            this.refreshAt = refreshAt;
+            this.expireAt = expireAt;
+        }
+    }
+}
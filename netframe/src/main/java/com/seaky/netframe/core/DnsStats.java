@@ -0,0 +1,94 @@
+package com.seaky.netframe.core;
+
+/**
+ *  DNS缓存统计快照
+ *
+ *  Created by Seaky
+ */
+
+public class DnsStats {
+
+    private final long hitCount;
+    private final long staleHitCount;
+    private final long missCount;
+    private final long refreshCount;
+    private final long failureCount;
+    private final long resolveCount;
+    private final long averageResolveMillis;
+    private final long maxResolveMillis;
+    private final int size;
+
+    DnsStats(long hitCount, long staleHitCount, long missCount, long refreshCount, long failureCount,
+             long resolveCount, long averageResolveMillis, long maxResolveMillis, int size) {
+        this.hitCount = hitCount;
+        this.staleHitCount = staleHitCount;
+        this.missCount = missCount;
+        this.refreshCount = refreshCount;
+        this.failureCount = failureCount;
+        this.resolveCount = resolveCount;
+        this.averageResolveMillis = averageResolveMillis;
+        this.maxResolveMillis = maxResolveMillis;
+        this.size = size;
+    }
+
+    //命中未过期的缓存
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    //解析失败时用了过期的缓存
+    public long getStaleHitCount() {
+        return staleHitCount;
+    }
+
+    //没有命中，请求等待了解析
+    public long getMissCount() {
+        return missCount;
+    }
+
+    //后台刷新次数
+    public long getRefreshCount() {
+        return refreshCount;
+    }
+
+    //解析失败次数
+    public long getFailureCount() {
+        return failureCount;
+    }
+
+    //实际解析次数（包括后台刷新）
+    public long getResolveCount() {
+        return resolveCount;
+    }
+
+    public long getAverageResolveMillis() {
+        return averageResolveMillis;
+    }
+
+    public long getMaxResolveMillis() {
+        return maxResolveMillis;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    //命中率 过期结果也算命中
+    public float getHitRate() {
+        long total = hitCount + staleHitCount + missCount;
+        return total == 0 ? 0 : (float) (hitCount + staleHitCount) / total;
+    }
+
+    @Override
+    public String toString() {
+        return "DnsStats{hit=" + hitCount
+                + ", staleHit=" + staleHitCount
+                + ", miss=" + missCount
+                + ", refresh=" + refreshCount
+                + ", failure=" + failureCount
+                + ", resolve=" + resolveCount
+                + ", avgResolve=" + averageResolveMillis
+                + "ms, maxResolve=" + maxResolveMillis
+                + "ms, size=" + size + "}";
+    }
+}
@@ -0,0 +1,200 @@
+package com.seaky.netframe.core;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ *  断点续传的检查点
+ *
+ *  以 下载文件名 + .nfdl 的形式和下载文件放在一起，记录：
+ *  下载地址，服务器返回的ETag/Last-Modified，文件总大小，每一段已经落盘的字节数
+ *  下载成功后删除，失败或者取消时保留，下次同一个地址下载到同一个文件时从这里续传
+ *
+ *  Created by Seaky
+ */
+
+class DownloadCheckpoint {
+
+    static final String SUFFIX = ".nfdl";
+
+    private static final String KEY_URL = "url";
+    private static final String KEY_ETAG = "etag";
+    private static final String KEY_LAST_MODIFIED = "lastModified";
+    private static final String KEY_TOTAL = "total";
+    private static final String KEY_SEGMENTS = "segments";
+
+    private final File mFile;
+    private final String mUrl;
+    private final String mETag;
+    private final String mLastModified;
+    private final long mTotal;
+    private final List<Segment> mSegments;
+
+    private DownloadCheckpoint(File file, String url, String eTag, String lastModified, long total, List<Segment> segments) {
+        mFile = file;
+        mUrl = url;
+        mETag = eTag;
+        mLastModified = lastModified;
+        mTotal = total;
+        mSegments = Collections.unmodifiableList(segments);
+    }
+
+    static DownloadCheckpoint create(File target, String url, String eTag, String lastModified, long total, List<long[]> ranges) {
+        List<Segment> segments = new ArrayList<>(ranges.size());
+        for (long[] range : ranges) {
+            segments.add(new Segment(range[0], range[1], 0));
+        }
+        return new DownloadCheckpoint(sidecar(target), url, eTag, lastModified, total, segments);
+    }
+
+    /**
+     * 读取目标文件对应的检查点，不存在或者已损坏返回null
+     */
+    static DownloadCheckpoint load(File target) {
+        File file = sidecar(target);
+        if (!file.exists()) {
+            return null;
+        }
+        Properties properties = new Properties();
+        try {
+            FileInputStream in = new FileInputStream(file);
+            try {
+                properties.load(in);
+            } finally {
+                in.close();
+            }
+            List<Segment> segments = new ArrayList<>();
+            for (String item : properties.getProperty(KEY_SEGMENTS, "").split(",")) {
+                String[] values = item.split("-");
+                segments.add(new Segment(Long.parseLong(values[0]), Long.parseLong(values[1]), Long.parseLong(values[2])));
+            }
+            return new DownloadCheckpoint(file,
+                    properties.getProperty(KEY_URL),
+                    properties.getProperty(KEY_ETAG),
+                    properties.getProperty(KEY_LAST_MODIFIED),
+                    Long.parseLong(properties.getProperty(KEY_TOTAL)),
+                    segments);
+        } catch (IOException | RuntimeException e) {
+            file.delete();
+            return null;
+        }
+    }
+
+    private static File sidecar(File target) {
+        return new File(target.getAbsolutePath() + SUFFIX);
+    }
+
+    /**
+     * 检查点是否属于这次下载 文件已经按总大小分配好才能续传
+     */
+    boolean matches(String url, File target) {
+        return mUrl != null && mUrl.equals(url)
+                && isResumable()
+                && target.exists() && target.length() == mTotal;
+    }
+
+    /**
+     * If-Range只能用强校验，弱ETag（W/开头）就退回用Last-Modified
+     */
+    String getValidator() {
+        if (mETag != null && !mETag.startsWith("W/")) {
+            return mETag;
+        }
+        return mLastModified;
+    }
+
+    //没有校验值就没法确认服务器上的文件有没有变，不做续传
+    boolean isResumable() {
+        return getValidator() != null;
+    }
+
+    long getTotal() {
+        return mTotal;
+    }
+
+    List<Segment> getSegments() {
+        return mSegments;
+    }
+
+    //已经落盘的总字节数
+    long getCommitted() {
+        long committed = 0;
+        for (Segment segment : mSegments) {
+            committed += segment.committed.get();
+        }
+        return committed;
+    }
+
+    /**
+     * 先写临时文件再rename，写到一半崩溃也不会留下损坏的检查点
+     */
+    synchronized void save() throws IOException {
+        if (!isResumable()) {
+            return;
+        }
+        Properties properties = new Properties();
+        properties.setProperty(KEY_URL, mUrl);
+        if (mETag != null) {
+            properties.setProperty(KEY_ETAG, mETag);
+        }
+        if (mLastModified != null) {
+            properties.setProperty(KEY_LAST_MODIFIED, mLastModified);
+        }
+        properties.setProperty(KEY_TOTAL, String.valueOf(mTotal));
+        StringBuilder builder = new StringBuilder();
+        for (Segment segment : mSegments) {
+            if (builder.length() > 0) {
+                builder.append(',');
+            }
+            builder.append(segment.start).append('-').append(segment.end).append('-').append(segment.committed.get());
+        }
+        properties.setProperty(KEY_SEGMENTS, builder.toString());
+
+        File temp = new File(mFile.getAbsolutePath() + ".tmp");
+        FileOutputStream out = new FileOutputStream(temp);
+        try {
+            properties.store(out, null);
+            out.getFD().sync();
+        } finally {
+            out.close();
+        }
+        if (!temp.renameTo(mFile)) {
+            throw new IOException("Failed to save checkpoint " + mFile);
+        }
+    }
+
+    void delete() {
+        mFile.delete();
+    }
+
+
+    /**
+     * 文件中的一段 [start, end]，committed为已经写入的字节数
+     */
+    static class Segment {
+        final long start;
+        final long end;
+        final AtomicLong committed;
+
+        Segment(long start, long end, long committed) {
+            this.start = start;
+            this.end = end;
+            this.committed = new AtomicLong(committed);
+        }
+
+        long position() {
+            return start + committed.get();
+        }
+
+        long remaining() {
+            return end - start + 1 - committed.get();
+        }
+    }
+}
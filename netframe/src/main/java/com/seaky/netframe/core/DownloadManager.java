@@ -0,0 +1,473 @@
+package com.seaky.netframe.core;
+
+import com.seaky.netframe.build.DownloadInfo;
+import com.seaky.netframe.build.DownloadObserver;
+import com.seaky.netframe.exception.ApiException;
+import com.seaky.netframe.exception.ExceptionEngine;
+
+import org.reactivestreams.Subscription;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.reactivex.FlowableSubscriber;
+import io.reactivex.Scheduler;
+import io.reactivex.android.schedulers.AndroidSchedulers;
+import io.reactivex.annotations.NonNull;
+import io.reactivex.disposables.Disposable;
+import io.reactivex.disposables.Disposables;
+import io.reactivex.schedulers.Schedulers;
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+
+/**
+ *  下载队列管理
+ *
+ *  HttpCenter.download每次调用都会马上开始下载，
+ *  几十个资源包同时下载会开几十个连接互相抢带宽，还会挤占普通接口请求
+ *  这里把下载排队执行：
+ *  1.全局和单个域名同时下载的任务数有上限，超出的排队等待
+ *  2.按优先级出队，同优先级先来先下；用户触发的下载在名额满了的时候会暂停一个后台预下载给自己让位
+ *  3.同一个地址下载到同一个文件的任务只会有一个，重复提交直接合并，回调一起通知
+ *  4.可以按id暂停/继续/取消，暂停的任务靠断点续传从断开的地方接着下
+ *    暂停或者被抢占的任务要等原来的下载线程都停下来才会重新开始，不会有两个任务同时写一个文件
+ *    取消回调onFailure，错误码ExceptionEngine.CANCELED_ERROR
+ *  5.失败的任务保留MAX_FAILED个等待resume，再提交同一个下载时替换掉
+ *    observer收到onError就结束了，不会再收到回调，resume时传入新的observer
+ *
+ *  所有回调都在主线程
+ *
+ *  Created by Seaky
+ */
+
+public class DownloadManager {
+
+    //默认全局同时下载数
+    public static final int DEFAULT_MAX_ACTIVE = 3;
+    //默认单域名同时下载数
+    public static final int DEFAULT_MAX_PER_HOST = 2;
+    //最多保留多少个失败的任务等待resume
+    static final int MAX_FAILED = 16;
+
+    /**
+     * 创建下载任务 测试时替换
+     */
+    interface TaskFactory {
+        DownloadTask newDownloadTask(String url, File file, int segmentCount);
+    }
+
+    /**
+     * 下载优先级 从高到低
+     * USER        用户主动触发的下载
+     * NORMAL      普通下载
+     * BACKGROUND  后台预下载
+     */
+    public enum Priority {
+        USER, NORMAL, BACKGROUND
+    }
+
+    public enum State {
+        QUEUED, RUNNING, PAUSED, COMPLETED, FAILED, CANCELED
+    }
+
+    private final TaskFactory mFactory;
+    //回调线程
+    private final Scheduler mMainThread;
+    private final int mMaxActive;
+    private final int mMaxPerHost;
+
+    private int mNextId = 1;
+    private long mNextSeq;
+    private int mActive;
+    private final Map<String, Integer> mActivePerHost = new HashMap<>();
+    //排队中的任务，出队时按优先级和提交顺序挑选
+    private final List<Entry> mQueue = new ArrayList<>();
+    private final Map<Integer, Entry> mEntries = new HashMap<>();
+    //url+文件路径 -> 任务，用于合并重复提交
+    private final Map<String, Entry> mEntriesByKey = new HashMap<>();
+    //失败的任务 按失败顺序
+    private final List<Entry> mFailed = new ArrayList<>();
+    //url+文件路径 -> 已经停止、下载线程还没退出的订阅，退出之前同一个文件不开始新的下载
+    private final Map<String, EntrySubscriber> mStopping = new HashMap<>();
+
+    public DownloadManager(HttpFactory factory, int maxActive, int maxPerHost) {
+        this(factory::newDownloadTask, AndroidSchedulers.mainThread(), maxActive, maxPerHost);
+    }
+
+    DownloadManager(TaskFactory factory, Scheduler mainThread, int maxActive, int maxPerHost) {
+        mFactory = factory;
+        mMainThread = mainThread;
+        mMaxActive = Math.max(1, maxActive);
+        mMaxPerHost = Math.max(1, maxPerHost);
+    }
+
+    /**
+     * 提交下载任务
+     * 同一个地址下载到同一个文件的任务还没结束的话不会重复下载，
+     * observer会加到已有任务上，优先级取两者中更高的那个
+     * @return  任务id
+     */
+    public synchronized int enqueue(String url, String savePath, String fileName, int segmentCount,
+                                    Priority priority, DownloadObserver<DownloadInfo> observer) {
+        File file = new File(savePath + File.separator + fileName);
+        String key = url + "|" + file.getAbsolutePath();
+        Entry entry = mEntriesByKey.get(key);
+        if (entry != null && !entry.isFinished()) {
+            addObserver(entry, observer);
+            if (priority.ordinal() < entry.priority.ordinal()) {
+                entry.priority = priority;
+            }
+            if (entry.state == State.PAUSED) {
+                //有人又要这个下载了，暂停的任务重新排队
+                enqueue(entry);
+            }
+            if (entry.state == State.QUEUED && priority == Priority.USER) {
+                preemptFor(entry);
+            }
+            schedule();
+            return entry.id;
+        }
+        //同一个下载之前失败的任务由新任务代替
+        for (Entry failed : new ArrayList<>(mFailed)) {
+            if (failed.key.equals(key)) {
+                removeFailed(failed);
+            }
+        }
+
+        entry = new Entry(mNextId++, key, url, file, segmentCount, priority);
+        addObserver(entry, observer);
+        mEntries.put(entry.id, entry);
+        mEntriesByKey.put(key, entry);
+        enqueue(entry);
+        if (priority == Priority.USER) {
+            preemptFor(entry);
+        }
+        schedule();
+        return entry.id;
+    }
+
+    /**
+     * 暂停 已下载的部分保留，resume或者再次提交同一个下载后继续，不需要时调用cancel释放
+     */
+    public synchronized void pause(int id) {
+        Entry entry = mEntries.get(id);
+        if (entry == null) {
+            return;
+        }
+        if (entry.state == State.RUNNING) {
+            stop(entry);
+            entry.state = State.PAUSED;
+            schedule();
+        } else if (entry.state == State.QUEUED) {
+            mQueue.remove(entry);
+            entry.state = State.PAUSED;
+        }
+    }
+
+    /**
+     * 继续下载暂停或者失败的任务 重新排队
+     * 失败任务原来的observer已经结束，不会再收到回调，需要结果的用resume(int, DownloadObserver)
+     */
+    public void resume(int id) {
+        resume(id, null);
+    }
+
+    /**
+     * 继续下载暂停或者失败的任务 重新排队，结果通知给新的observer
+     * @param observer  暂停的任务会同时通知原来的observer，失败的任务只通知这个
+     */
+    public synchronized void resume(int id, DownloadObserver<DownloadInfo> observer) {
+        Entry entry = mEntries.get(id);
+        if (entry == null || (entry.state != State.PAUSED && entry.state != State.FAILED)) {
+            return;
+        }
+        if (entry.state == State.FAILED) {
+            mFailed.remove(entry);
+            mEntriesByKey.put(entry.key, entry);
+        }
+        addObserver(entry, observer);
+        enqueue(entry);
+        schedule();
+    }
+
+    /**
+     * 取消下载 删除已下载的部分，回调onFailure，错误码ExceptionEngine.CANCELED_ERROR
+     */
+    public synchronized void cancel(int id) {
+        Entry entry = mEntries.remove(id);
+        if (entry == null) {
+            return;
+        }
+        if (entry.state == State.RUNNING) {
+            stop(entry);
+        }
+        mQueue.remove(entry);
+        mFailed.remove(entry);
+        if (mEntriesByKey.get(entry.key) == entry) {
+            mEntriesByKey.remove(entry.key);
+        }
+        entry.state = State.CANCELED;
+        if (!mStopping.containsKey(entry.key)) {
+            deleteFiles(entry);
+        }
+        List<DownloadObserver<DownloadInfo>> observers = new ArrayList<>(entry.observers);
+        entry.observers.clear();
+        ApiException canceled = new ApiException(ExceptionEngine.CANCELED_ERROR, "下载已取消");
+        mMainThread.scheduleDirect(() -> {
+            for (DownloadObserver<DownloadInfo> observer : observers) {
+                observer.onError(canceled);
+            }
+        });
+        schedule();
+    }
+
+    public synchronized State getState(int id) {
+        Entry entry = mEntries.get(id);
+        return entry == null ? null : entry.state;
+    }
+
+    public synchronized int getActiveCount() {
+        return mActive;
+    }
+
+    public synchronized int getQueuedCount() {
+        return mQueue.size();
+    }
+
+    private void addObserver(Entry entry, DownloadObserver<DownloadInfo> observer) {
+        if (observer == null) {
+            return;
+        }
+        entry.observers.add(observer);
+        subscribe(entry, observer);
+    }
+
+    private void subscribe(Entry entry, DownloadObserver<DownloadInfo> observer) {
+        //observer被dispose后只是不再接收回调，不影响其他人和下载本身
+        Disposable disposable = Disposables.fromAction(() -> {
+            synchronized (DownloadManager.this) {
+                entry.observers.remove(observer);
+            }
+        });
+        mMainThread.scheduleDirect(() -> observer.onSubscribe(disposable));
+    }
+
+    private void enqueue(Entry entry) {
+        entry.state = State.QUEUED;
+        entry.seq = mNextSeq++;
+        mQueue.add(entry);
+    }
+
+    //用户下载来了但名额已满，暂停一个正在运行的后台下载重新排队，断点续传保证不浪费
+    private void preemptFor(Entry entry) {
+        if (mActive < mMaxActive) {
+            return;
+        }
+        Entry victim = null;
+        for (Entry running : mEntries.values()) {
+            if (running.state == State.RUNNING && running.priority == Priority.BACKGROUND
+                    && (victim == null || running.seq > victim.seq)) {
+                victim = running;
+            }
+        }
+        if (victim != null) {
+            stop(victim);
+            enqueue(victim);
+        }
+    }
+
+    //有空闲名额时按优先级启动排队中的任务，跳过域名名额已满的
+    private void schedule() {
+        while (mActive < mMaxActive) {
+            Entry next = null;
+            for (Entry entry : mQueue) {
+                //上一次的下载线程还没停下来
+                if (mStopping.containsKey(entry.key) || activeFor(entry.host) >= mMaxPerHost) {
+                    continue;
+                }
+                if (next == null || entry.priority.ordinal() < next.priority.ordinal()
+                        || (entry.priority == next.priority && entry.seq < next.seq)) {
+                    next = entry;
+                }
+            }
+            if (next == null) {
+                return;
+            }
+            mQueue.remove(next);
+            start(next);
+        }
+    }
+
+    private void start(Entry entry) {
+        entry.state = State.RUNNING;
+        mActive++;
+        mActivePerHost.put(entry.host, activeFor(entry.host) + 1);
+        DownloadTask task = mFactory.newDownloadTask(entry.url, entry.file, entry.segmentCount);
+        entry.subscriber = new EntrySubscriber(entry, task);
+        task.toFlowable(ProgressSampler.DEFAULT_INTERVAL, ProgressSampler.DEFAULT_STEP)
+                .subscribeOn(Schedulers.io())
+                .observeOn(mMainThread, false, 1)
+                .subscribe(entry.subscriber);
+    }
+
+    /**
+     * 停止正在运行的任务，释放名额
+     * 只取消网络请求不取消订阅，等execute返回（所有下载线程都停了）之后EntrySubscriber收到结束通知，
+     * 在这之前这个任务不会重新开始
+     */
+    private void stop(Entry entry) {
+        if (entry.subscriber != null) {
+            mStopping.put(entry.key, entry.subscriber);
+            entry.subscriber.mTask.cancel();
+            entry.subscriber = null;
+        }
+        release(entry);
+    }
+
+    //被停止的下载线程已经退出
+    private synchronized void onStopped(Entry entry, EntrySubscriber subscriber) {
+        if (mStopping.get(entry.key) != subscriber) {
+            return;
+        }
+        mStopping.remove(entry.key);
+        if (entry.state == State.CANCELED) {
+            deleteFiles(entry);
+        }
+        schedule();
+    }
+
+    private static void deleteFiles(Entry entry) {
+        entry.file.delete();
+        new File(entry.file.getAbsolutePath() + DownloadCheckpoint.SUFFIX).delete();
+    }
+
+    private void removeFailed(Entry entry) {
+        mFailed.remove(entry);
+        mEntries.remove(entry.id);
+        entry.observers.clear();
+    }
+
+    private void release(Entry entry) {
+        mActive--;
+        int count = activeFor(entry.host) - 1;
+        if (count <= 0) {
+            mActivePerHost.remove(entry.host);
+        } else {
+            mActivePerHost.put(entry.host, count);
+        }
+    }
+
+    private int activeFor(String host) {
+        Integer count = mActivePerHost.get(host);
+        return count == null ? 0 : count;
+    }
+
+    //下载结束 更新状态释放名额 返回需要通知的observer
+    private synchronized List<DownloadObserver<DownloadInfo>> finish(Entry entry, EntrySubscriber subscriber, State state) {
+        if (entry.subscriber != subscriber) {
+            //已经被暂停或者取消了 下载线程到这里都停了
+            onStopped(entry, subscriber);
+            return new ArrayList<>();
+        }
+        entry.subscriber = null;
+        entry.state = state;
+        release(entry);
+        if (mEntriesByKey.get(entry.key) == entry) {
+            mEntriesByKey.remove(entry.key);
+        }
+        List<DownloadObserver<DownloadInfo>> observers = new ArrayList<>(entry.observers);
+        //收到结束通知的observer不能再回调
+        entry.observers.clear();
+        if (state == State.COMPLETED) {
+            mEntries.remove(entry.id);
+        } else {
+            //失败的任务保留下来等待resume
+            mFailed.add(entry);
+            if (mFailed.size() > MAX_FAILED) {
+                removeFailed(mFailed.get(0));
+            }
+        }
+        schedule();
+        return observers;
+    }
+
+    private synchronized List<DownloadObserver<DownloadInfo>> observersOf(Entry entry, EntrySubscriber subscriber) {
+        if (entry.subscriber != subscriber) {
+            return new ArrayList<>();
+        }
+        return new ArrayList<>(entry.observers);
+    }
+
+
+    private static class Entry {
+        final int id;
+        final String key;
+        final String url;
+        final String host;
+        final File file;
+        final int segmentCount;
+        final List<DownloadObserver<DownloadInfo>> observers = new ArrayList<>();
+        Priority priority;
+        State state;
+        long seq;
+        EntrySubscriber subscriber;
+
+        Entry(int id, String key, String url, File file, int segmentCount, Priority priority) {
+            this.id = id;
+            this.key = key;
+            this.url = url;
+            this.file = file;
+            this.segmentCount = segmentCount;
+            this.priority = priority;
+            HttpUrl httpUrl = HttpUrl.parse(url);
+            this.host = httpUrl == null ? "" : httpUrl.host();
+        }
+
+        boolean isFinished() {
+            return state == State.COMPLETED || state == State.FAILED || state == State.CANCELED;
+        }
+    }
+
+    /**
+     * 一次下载的订阅 在主线程把进度和结果分发给这个任务上的所有observer
+     */
+    private class EntrySubscriber implements FlowableSubscriber<DownloadInfo> {
+
+        private final Entry mEntry;
+        private final DownloadTask mTask;
+
+        EntrySubscriber(Entry entry, DownloadTask task) {
+            mEntry = entry;
+            mTask = task;
+        }
+
+        @Override
+        public void onSubscribe(@NonNull Subscription s) {
+            s.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(DownloadInfo downloadInfo) {
+            List<DownloadObserver<DownloadInfo>> observers = downloadInfo.isFinished()
+                    ? finish(mEntry, this, State.COMPLETED)
+                    : observersOf(mEntry, this);
+            for (DownloadObserver<DownloadInfo> observer : observers) {
+                observer.onNext(downloadInfo);
+            }
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            for (DownloadObserver<DownloadInfo> observer : finish(mEntry, this, State.FAILED)) {
+                observer.onError(ExceptionEngine.handleException(t));
+            }
+        }
+
+        @Override
+        public void onComplete() {
+        }
+    }
+}
@@ -0,0 +1,572 @@
+package com.seaky.netframe.core;
+
+import com.seaky.netframe.build.DownloadInfo;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.reactivex.BackpressureStrategy;
+import io.reactivex.Flowable;
+import io.reactivex.Observable;
+import io.reactivex.exceptions.CompositeException;
+import io.reactivex.schedulers.Schedulers;
+import okhttp3.Call;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.BufferedSource;
+import retrofit2.HttpException;
+
+/**
+ *  分段并行下载 支持断点续传
+ *
+ *  先用 Range: bytes=0-0 探测服务器是否支持断点（206 + Content-Range）
+ *  支持的话按文件大小切成N段，预先分配好文件大小，
+ *  每段单独发一个Range请求，在io线程里并行下载，各自写到文件的对应偏移上
+ *  服务器不支持Range（返回200），就直接用探测请求的响应单线程写完
+ *
+ *  断点续传：
+ *  下载过程中把每一段已经落盘的字节数记在检查点文件里（见DownloadCheckpoint）
+ *  下次下载同一个地址到同一个文件时，每段带上 Range + If-Range 从断开的地方接着下
+ *  服务器上的文件变了（If-Range不匹配返回200），删掉重新下载
+ *
+ *  进度：setProgressListener监听原始进度，或者用toFlowable拿到合并过的进度快照
+ *
+ *  注：execute是阻塞调用，要在工作线程中执行
+ *
+ *  Created by Seaky
+ */
+
+public class DownloadTask {
+
+    //每段最小的大小
+    static final long MIN_SEGMENT_SIZE = 512 * 1024;
+    //每写这么多字节存一次检查点
+    private static final long CHECKPOINT_INTERVAL = 1024 * 1024;
+    //写文件的缓冲区大小
+    private static final int BUFFER_SIZE = 64 * 1024;
+    //内存映射每次映射的窗口大小
+    private static final long MAP_WINDOW = 16 * 1024 * 1024;
+    //主动释放映射窗口，取不到时为null，见unmapper()
+    private static final Unmapper UNMAPPER = unmapper();
+
+    //io线程复用的直接内存缓冲区
+    private static final ThreadLocal<ByteBuffer> BUFFER = new ThreadLocal<ByteBuffer>() {
+        @Override
+        protected ByteBuffer initialValue() {
+            return ByteBuffer.allocateDirect(BUFFER_SIZE);
+        }
+    };
+
+    private final OkHttpClient mClient;
+    private final String mUrl;
+    private final File mFile;
+    private final int mSegmentCount;
+
+    //正在进行的请求，取消的时候一起取消掉
+    private final List<Call> mCalls = new CopyOnWriteArrayList<>();
+    private volatile boolean mCanceled;
+    //某一段失败了，其他段不再发新请求
+    private volatile boolean mAborted;
+
+    //已完成的总字节数和总大小，用于进度通知
+    private final AtomicLong mCompleted = new AtomicLong();
+    private volatile long mTotal = -1;
+    private ProgressListener mProgressListener;
+    private boolean mMemoryMapped;
+
+    public DownloadTask(OkHttpClient client, String url, File file, int segmentCount) {
+        mClient = client;
+        mUrl = url;
+        mFile = file;
+        mSegmentCount = Math.max(1, segmentCount);
+    }
+
+    public String getUrl() {
+        return mUrl;
+    }
+
+    public File getFile() {
+        return mFile;
+    }
+
+    /**
+     * 是否用内存映射写入 只对文件大小已知的分段下载生效
+     * 大文件写入更快，每段同时只映射一个窗口，写完立即释放
+     * 不能主动释放映射的平台上退回普通写入，否则窗口要等GC才会释放，大文件会占满虚拟地址空间
+     */
+    public void setMemoryMapped(boolean memoryMapped) {
+        mMemoryMapped = memoryMapped;
+    }
+
+    /**
+     * 设置进度监听 每写一块数据回调一次，会在多个下载线程中回调
+     */
+    public void setProgressListener(ProgressListener listener) {
+        mProgressListener = listener;
+    }
+
+    /**
+     * 转成带进度的Flowable
+     * 进度按ProgressSampler合并后以DownloadInfo快照发出，最后一个快照isFinished()为true
+     * 下游处理不过来时只保留最新的进度
+     * @param interval   最短通知间隔(ms)
+     * @param step       最小进度增量，总大小的百分比
+     */
+    public Flowable<DownloadInfo> toFlowable(long interval, float step) {
+        return Flowable.create(emitter -> {
+            ProgressSampler sampler = new ProgressSampler(interval, step);
+            emitter.setCancellable(this::cancel);
+            setProgressListener((completed, total) -> {
+                //多个下载线程同时回调，加锁保证按顺序串行发出
+                synchronized (sampler) {
+                    if (sampler.update(completed, total, now()) && !emitter.isCancelled()) {
+                        emitter.onNext(snapshot(completed, total, sampler));
+                    }
+                }
+            });
+            DownloadInfo downloadInfo;
+            try {
+                downloadInfo = execute();
+            } catch (Throwable e) {
+                //取消之后下载线程抛出的异常没人接收，不能再往RxJavaPlugins抛
+                emitter.tryOnError(e);
+                return;
+            }
+            synchronized (sampler) {
+                sampler.update(downloadInfo.getProgress(), downloadInfo.getTotal(), now());
+                downloadInfo.setSpeed(sampler.getSpeed());
+                downloadInfo.setEta(0);
+                downloadInfo.setFinished(true);
+                emitter.onNext(downloadInfo);
+            }
+            emitter.onComplete();
+        }, BackpressureStrategy.LATEST);
+    }
+
+    /**
+     * 执行下载 阻塞直到下载完成或者失败
+     */
+    public DownloadInfo execute() throws IOException {
+        DownloadInfo downloadInfo = new DownloadInfo();
+        downloadInfo.setUrl(mUrl);
+        downloadInfo.setFilePath(mFile.getAbsolutePath());
+
+        DownloadCheckpoint checkpoint = DownloadCheckpoint.load(mFile);
+        if (checkpoint != null && checkpoint.matches(mUrl, mFile)) {
+            long saved = checkpoint.getCommitted();
+            mTotal = checkpoint.getTotal();
+            mCompleted.set(saved);
+            try {
+                downloadSegments(checkpoint);
+                checkpoint.delete();
+                downloadInfo.setTotal(checkpoint.getTotal());
+                downloadInfo.setProgress(checkpoint.getTotal());
+                downloadInfo.setResumed(true);
+                downloadInfo.setSavedBytes(saved);
+                return downloadInfo;
+            } catch (ValidatorChangedException e) {
+                //服务器上的文件已经变了 下面重新下载
+                //失败时其他段被abort了，清掉标记，否则探测请求也会被当成已取消
+                mAborted = false;
+            }
+        }
+        if (checkpoint != null) {
+            checkpoint.delete();
+        }
+        if (mFile.exists()) {
+            mFile.delete();
+        }
+        mCompleted.set(0);
+
+        Response probe = newCall(new Request.Builder().url(mUrl).header("Range", "bytes=0-0").build()).execute();
+        try {
+            if (probe.code() == 416) {
+                //空文件没有0-0这个范围
+                probe.close();
+                probe = newCall(new Request.Builder().url(mUrl).build()).execute();
+            }
+            checkSuccessful(probe);
+            long total = parseTotal(probe);
+            if (probe.code() == 206 && total < 0) {
+                //支持Range但不知道总大小（bytes 0-0/*） 探测响应只有一个字节，不带Range重新请求整个文件
+                probe.close();
+                probe = newCall(new Request.Builder().url(mUrl).build()).execute();
+                checkSuccessful(probe);
+                if (probe.code() == 206) {
+                    throw new IOException("Unexpected partial response without Range");
+                }
+            }
+            if (probe.code() != 206) {
+                //不支持Range，直接用这个响应单线程下载
+                mTotal = probe.body().contentLength();
+                downloadInfo.setTotal(mTotal);
+                downloadInfo.setProgress(downloadSingle(probe.body()));
+                return downloadInfo;
+            }
+            mTotal = total;
+            checkpoint = DownloadCheckpoint.create(mFile, mUrl,
+                    probe.header("ETag"), probe.header("Last-Modified"), total, split(total));
+        } finally {
+            probe.close();
+        }
+
+        downloadSegments(checkpoint);
+        checkpoint.delete();
+        downloadInfo.setTotal(checkpoint.getTotal());
+        downloadInfo.setProgress(checkpoint.getTotal());
+        return downloadInfo;
+    }
+
+    /**
+     * 取消下载 已经下载的部分保留在检查点中
+     */
+    public void cancel() {
+        mCanceled = true;
+        cancelCalls();
+    }
+
+    public boolean isCanceled() {
+        return mCanceled;
+    }
+
+    private void abort() {
+        mAborted = true;
+        cancelCalls();
+    }
+
+    private void cancelCalls() {
+        for (Call call : mCalls) {
+            call.cancel();
+        }
+    }
+
+    //单线程顺序写入
+    private long downloadSingle(ResponseBody body) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(mFile, "rw");
+        try {
+            DownloadCheckpoint.Segment segment = new DownloadCheckpoint.Segment(0, Long.MAX_VALUE - 1, 0);
+            write(body.source(), raf.getChannel(), segment, null);
+            return segment.committed.get();
+        } finally {
+            raf.close();
+        }
+    }
+
+    //分段并行写入 续传时跳过已经完成的部分
+    private void downloadSegments(DownloadCheckpoint checkpoint) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(mFile, "rw");
+        try {
+            FileChannel channel = raf.getChannel();
+            if (raf.length() != checkpoint.getTotal()) {
+                raf.setLength(checkpoint.getTotal());
+            }
+            checkpoint.save();
+            mAborted = false;
+            try {
+                //delayErrors 一段失败后取消其他段，等所有段都停下来再返回，
+                //返回之后不会还有下载线程在写这个文件和检查点
+                Observable.fromIterable(checkpoint.getSegments())
+                        .filter(segment -> segment.remaining() > 0)
+                        .flatMap(segment -> Observable.<Long>create(emitter -> {
+                            try {
+                                emitter.onNext(downloadRange(channel, segment, checkpoint));
+                                emitter.onComplete();
+                            } catch (Throwable e) {
+                                abort();
+                                emitter.tryOnError(e);
+                            }
+                        }).subscribeOn(Schedulers.io()), true)
+                        .ignoreElements()
+                        .blockingAwait();
+            } catch (RuntimeException e) {
+                saveQuietly(checkpoint, channel);
+                //第一个是最先失败的那一段，后面的是被取消的段
+                Throwable error = e instanceof CompositeException
+                        ? ((CompositeException) e).getExceptions().get(0) : e.getCause();
+                //blockingAwait会把受检异常包一层RuntimeException
+                if (error instanceof IOException) {
+                    throw (IOException) error;
+                }
+                throw e;
+            }
+        } finally {
+            raf.close();
+        }
+    }
+
+    //下载一段中还没下载的部分
+    private long downloadRange(FileChannel channel, DownloadCheckpoint.Segment segment, DownloadCheckpoint checkpoint) throws IOException {
+        Request.Builder builder = new Request.Builder()
+                .url(mUrl)
+                .header("Range", "bytes=" + segment.position() + "-" + segment.end);
+        String validator = checkpoint.getValidator();
+        if (validator != null) {
+            builder.header("If-Range", validator);
+        }
+        Response response = newCall(builder.build()).execute();
+        try {
+            checkSuccessful(response);
+            if (response.code() != 206) {
+                if (validator != null) {
+                    throw new ValidatorChangedException();
+                }
+                throw new IOException("Range not satisfied: " + response.code());
+            }
+            long length = segment.remaining();
+            long written = write(response.body().source(), channel, segment, checkpoint);
+            if (written != length) {
+                throw new IOException("Segment " + segment.start + "-" + segment.end + " incomplete: " + written + "/" + length);
+            }
+            return written;
+        } finally {
+            response.close();
+        }
+    }
+
+    /**
+     * 把响应直接写到segment当前的位置，写满这一段为止，定期保存检查点
+     * 从Okio的source读到线程复用的直接内存缓冲区，攒满一块再按偏移写进FileChannel
+     * 整个过程没有byte[]中转，也不会每块分配一次内存
+     */
+    private long write(BufferedSource source, FileChannel channel, DownloadCheckpoint.Segment segment,
+                       DownloadCheckpoint checkpoint) throws IOException {
+        if (mMemoryMapped && checkpoint != null && UNMAPPER != null) {
+            return writeMapped(source, channel, segment, checkpoint);
+        }
+        ByteBuffer buffer = BUFFER.get();
+        long written = 0;
+        long unsaved = 0;
+        boolean exhausted = false;
+        while (segment.remaining() > 0 && !exhausted) {
+            buffer.clear();
+            if (segment.remaining() < buffer.capacity()) {
+                buffer.limit((int) segment.remaining());
+            }
+            //一次read最多给一个Okio segment(8K)，攒满缓冲区再写，减少系统调用
+            while (buffer.hasRemaining()) {
+                if (source.read(buffer) == -1) {
+                    exhausted = true;
+                    break;
+                }
+            }
+            buffer.flip();
+            int length = buffer.remaining();
+            long position = segment.position();
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+            segment.committed.addAndGet(length);
+            written += length;
+            onProgress(length);
+            unsaved += length;
+            if (checkpoint != null && unsaved >= CHECKPOINT_INTERVAL) {
+                //先确保数据落盘再记录检查点
+                channel.force(false);
+                checkpoint.save();
+                unsaved = 0;
+            }
+        }
+        return written;
+    }
+
+    /**
+     * 内存映射写入 文件大小已知时可用
+     * 按窗口把文件映射到内存，source直接读进映射区，省掉write系统调用
+     * 写完一个窗口立即释放再映射下一个，不依赖GC回收
+     */
+    private long writeMapped(BufferedSource source, FileChannel channel, DownloadCheckpoint.Segment segment,
+                             DownloadCheckpoint checkpoint) throws IOException {
+        long written = 0;
+        long unsaved = 0;
+        while (segment.remaining() > 0) {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_WRITE,
+                    segment.position(), Math.min(MAP_WINDOW, segment.remaining()));
+            try {
+                while (mapped.hasRemaining()) {
+                    int length = source.read(mapped);
+                    if (length == -1) {
+                        mapped.force();
+                        return written;
+                    }
+                    segment.committed.addAndGet(length);
+                    written += length;
+                    onProgress(length);
+                    unsaved += length;
+                    if (unsaved >= CHECKPOINT_INTERVAL) {
+                        mapped.force();
+                        checkpoint.save();
+                        unsaved = 0;
+                    }
+                }
+                mapped.force();
+            } finally {
+                //释放之后不能再访问mapped
+                unmap(mapped);
+            }
+        }
+        return written;
+    }
+
+    /**
+     * 释放映射窗口 释放失败时留给GC
+     * @return 是否已经释放
+     */
+    static boolean unmap(MappedByteBuffer buffer) {
+        if (UNMAPPER == null) {
+            return false;
+        }
+        try {
+            UNMAPPER.unmap(buffer);
+            return true;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    //各平台释放直接内存的方法都不是公开API，依次尝试
+    private static Unmapper unmapper() {
+        //Java 9+
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            Field field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            Object unsafe = field.get(null);
+            return buffer -> invokeCleaner.invoke(unsafe, buffer);
+        } catch (Exception ignored) {
+        }
+        //Android
+        try {
+            Method free = Class.forName("java.nio.NioUtils").getMethod("freeDirectBuffer", ByteBuffer.class);
+            return buffer -> free.invoke(null, buffer);
+        } catch (Exception ignored) {
+        }
+        //Java 8
+        try {
+            Method cleaner = Class.forName("sun.nio.ch.DirectBuffer").getMethod("cleaner");
+            Method clean = Class.forName("sun.misc.Cleaner").getMethod("clean");
+            return buffer -> clean.invoke(cleaner.invoke(buffer));
+        } catch (Exception ignored) {
+        }
+        return null;
+    }
+
+    private void onProgress(long length) {
+        long completed = mCompleted.addAndGet(length);
+        ProgressListener listener = mProgressListener;
+        if (listener != null) {
+            listener.onProgress(completed, mTotal);
+        }
+    }
+
+    private DownloadInfo snapshot(long completed, long total, ProgressSampler sampler) {
+        DownloadInfo downloadInfo = new DownloadInfo();
+        downloadInfo.setUrl(mUrl);
+        downloadInfo.setFilePath(mFile.getAbsolutePath());
+        downloadInfo.setTotal(total);
+        downloadInfo.setProgress(completed);
+        downloadInfo.setSpeed(sampler.getSpeed());
+        downloadInfo.setEta(sampler.getEta(completed, total));
+        return downloadInfo;
+    }
+
+    private static long now() {
+        return System.nanoTime() / 1000000;
+    }
+
+    //取消时线程被中断会关掉channel，force失败也要把检查点存下来
+    private static void saveQuietly(DownloadCheckpoint checkpoint, FileChannel channel) {
+        try {
+            channel.force(false);
+        } catch (IOException ignored) {
+        }
+        try {
+            checkpoint.save();
+        } catch (IOException ignored) {
+        }
+    }
+
+    //按段数切分，最后一段包含余数
+    List<long[]> split(long total) {
+        int count = (int) Math.max(1, Math.min(mSegmentCount, total / MIN_SEGMENT_SIZE));
+        long size = total / count;
+        List<long[]> segments = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            long start = i * size;
+            long end = i == count - 1 ? total - 1 : start + size - 1;
+            segments.add(new long[]{start, end});
+        }
+        return segments;
+    }
+
+    private Call newCall(Request request) throws IOException {
+        if (mCanceled || mAborted) {
+            throw new IOException("Canceled");
+        }
+        Call call = mClient.newCall(request);
+        mCalls.add(call);
+        if (mCanceled || mAborted) {
+            //加入列表前刚好被取消
+            call.cancel();
+        }
+        return call;
+    }
+
+    //和Retrofit一样抛HttpException，ExceptionEngine可以正常分类
+    private static void checkSuccessful(Response response) {
+        if (!response.isSuccessful()) {
+            throw new HttpException(retrofit2.Response.error(response.body(), response));
+        }
+    }
+
+    //Content-Range: bytes 0-0/12345
+    private static long parseTotal(Response response) {
+        String contentRange = response.header("Content-Range");
+        if (contentRange == null) {
+            return -1;
+        }
+        int slash = contentRange.lastIndexOf('/');
+        if (slash < 0) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(contentRange.substring(slash + 1).trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * 下载进度监听
+     */
+    public interface ProgressListener {
+        /**
+         * @param completed  已完成的字节数（续传时包括之前下载的部分）
+         * @param total      总字节数，未知时为-1
+         */
+        void onProgress(long completed, long total);
+    }
+
+    private interface Unmapper {
+        void unmap(MappedByteBuffer buffer) throws Exception;
+    }
+
+    //If-Range不匹配 服务器返回了完整的新文件
+    private static class ValidatorChangedException extends IOException {
+        ValidatorChangedException() {
+            super("Remote file changed");
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.seaky.netframe.core;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.BufferedSink;
+
+/**
+ *  从文件流式读取的请求体
+ *
+ *  RequestBody.create(byte[])要把整个文件读进内存，大视频直接OOM
+ *  这里每次发送时打开文件，用FileChannel.transferTo按块写进OkHttp的sink，
+ *  内存占用只有Okio的几个segment，和文件大小无关
+ *  可以只发文件的一段 [offset, offset + length)，用于分片上传
+ *
+ *  OkHttp连接失败重试时会再调用一次writeTo，进度从0重新算，监听方按每次的累计值处理
+ *  也可以直接在ApiService里用：{@code @Part MultipartBody.Part} 包一个FileRequestBody
+ *
+ *  Created by Seaky
+ */
+
+public class FileRequestBody extends RequestBody {
+
+    //每次transferTo的大小 也是进度回调的粒度
+    private static final long TRANSFER_SIZE = 64 * 1024;
+
+    private final File mFile;
+    private final MediaType mContentType;
+    private final long mOffset;
+    private final long mLength;
+    private final ProgressListener mListener;
+
+    public FileRequestBody(File file, MediaType contentType, ProgressListener listener) {
+        this(file, contentType, 0, file.length(), listener);
+    }
+
+    public FileRequestBody(File file, MediaType contentType, long offset, long length, ProgressListener listener) {
+        mFile = file;
+        mContentType = contentType;
+        mOffset = offset;
+        mLength = length;
+        mListener = listener;
+    }
+
+    @Override
+    public MediaType contentType() {
+        return mContentType;
+    }
+
+    @Override
+    public long contentLength() {
+        return mLength;
+    }
+
+    @Override
+    public void writeTo(BufferedSink sink) throws IOException {
+        FileInputStream in = new FileInputStream(mFile);
+        try {
+            FileChannel channel = in.getChannel();
+            long written = 0;
+            while (written < mLength) {
+                long count = channel.transferTo(mOffset + written, Math.min(TRANSFER_SIZE, mLength - written), sink);
+                if (count <= 0) {
+                    //文件在上传过程中被截短了
+                    throw new IOException("Unexpected end of " + mFile + " at " + (mOffset + written));
+                }
+                written += count;
+                if (mListener != null) {
+                    mListener.onProgress(written, mLength);
+                }
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * 上传进度监听 在OkHttp的写线程回调
+     */
+    public interface ProgressListener {
+        /**
+         * @param written  这次writeTo已经写出的字节数
+         * @param length   请求体总长度
+         */
+        void onProgress(long written, long length);
+    }
+}
@@ -0,0 +1,19 @@
+package com.seaky.netframe.core;
+
+/**
+ *  帧时钟 BatchingScheduler用它决定什么时候把攒下的回调一起执行
+ *
+ *  ChoreographerFrameClock 跟随屏幕刷新
+ *  TickFrameClock 固定间隔，也用于没有Choreographer的JVM测试
+ *
+ *  Created by Seaky
+ */
+
+public interface FrameClock {
+
+    /**
+     * 在下一帧执行一次callback
+     * 可以在任意线程调用，callback在主线程（或时钟自己的线程）执行
+     */
+    void postFrameCallback(Runnable callback);
+}
@@ -1,35 +1,68 @@
 package com.seaky.netframe.core;
 
 import android.annotation.SuppressLint;
+import android.content.Context;
+import android.os.SystemClock;
 import android.view.View;
 
 import androidx.lifecycle.LifecycleOwner;
 
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.seaky.netframe.build.CborConverterFactory;
 import com.seaky.netframe.build.DownloadInfo;
 import com.seaky.netframe.build.DownloadObserver;
 import com.seaky.netframe.build.HttpInterceptor;
 import com.seaky.netframe.build.HttpObserver;
 import com.seaky.netframe.build.HttpResponse;
+import com.seaky.netframe.build.HttpResponseAdapterFactory;
+import com.seaky.netframe.build.ProcessObserver;
+import com.seaky.netframe.build.UploadInfo;
+import com.seaky.netframe.build.UploadObserver;
+import com.seaky.netframe.exception.ExceptionEngine;
 import com.seaky.netframe.function.DisposeFunction;
 import com.seaky.netframe.function.ErrorFunction;
 import com.seaky.netframe.function.ServerResultFunction;
 
 import java.io.File;
-import java.io.FileOutputStream;
-import java.io.InputStream;
+import java.io.IOException;
+import java.net.UnknownHostException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 
+import javax.net.SocketFactory;
+
+import io.reactivex.Flowable;
 import io.reactivex.Observable;
 import io.reactivex.ObservableSource;
 import io.reactivex.ObservableTransformer;
 import io.reactivex.Observer;
+import io.reactivex.Scheduler;
+import io.reactivex.Single;
+import io.reactivex.SingleEmitter;
+import io.reactivex.SingleOnSubscribe;
 import io.reactivex.android.schedulers.AndroidSchedulers;
 import io.reactivex.annotations.NonNull;
 import io.reactivex.schedulers.Schedulers;
+import okhttp3.Cache;
+import okhttp3.Call;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.Dns;
+import okhttp3.HttpUrl;
+import okhttp3.Interceptor;
 import okhttp3.OkHttpClient;
+import okhttp3.Request;
 import okhttp3.ResponseBody;
+import okio.BufferedSink;
+import okio.Okio;
 import retrofit2.Retrofit;
-import retrofit2.adapter.rxjava2.RxJava2CallAdapterFactory;
 import retrofit2.converter.gson.GsonConverterFactory;
 
 /**
@@ -43,13 +76,66 @@ public class HttpFactory {
     /**
      * 默认app使用的接口都是统一域名。
      * 如果你们公司真的这么坑，不同接口域名都不一样
-     * 那么有几套域名就需要维护几个Retrofit对象
-     * 共用一个OkHttpClient就行
+     * 用HttpCenter.getApi(baseUrl, api)，每个域名一个Retrofit对象，按域名缓存
+     * 所有Retrofit共用一个OkHttpClient（连接池和线程池也是共用的）
      */
     public static final String BASE_URL = "https://gank.io/";
+    //磁盘缓存目录名
+    private static final String CACHE_DIR = "netframe";
+    private static final String DEFERRED_LOG = "deferred.log";
+    //分片上传检查点目录名
+    private static final String UPLOAD_DIR = "uploads";
     private static volatile HttpFactory mInstance;
+    private static File sCacheDir;
+    //离线队列的存储目录 不放在缓存目录，避免被系统清理
+    private static File sFilesDir;
+    private static Connectivity sConnectivity;
+    private static NetFrameConfig sConfig = NetFrameConfig.defaultConfig();
     private Retrofit mRetrofit;
     private OkHttpClient mOkHttpClient;
+    //上传用的client 和mOkHttpClient共用连接池，不经过熔断器
+    private OkHttpClient mUploadClient;
+    private Gson mGson;
+    private DownloadManager mDownloadManager;
+    private final SingleFlightGroup mSingleFlightGroup = new SingleFlightGroup();
+    private final ResponseCache mResponseCache = new ResponseCache(ResponseCache.DEFAULT_MAX_ENTRIES);
+    private Cache mCache;
+    private NetScheduler mNetScheduler;
+    private RetryPolicy mRetryPolicy;
+    private CircuitBreaker mCircuitBreaker;
+    private AdaptiveTimeout mAdaptiveTimeout;
+    //请求结果回调的线程 开启按帧合并时是BatchingScheduler
+    private Scheduler mDeliveryScheduler;
+    //没有开启压缩时为null
+    private Compression mCompression;
+    //没有调用init时为null
+    private DeferredQueue mDeferredQueue;
+    private final NetMetrics mNetMetrics = new NetMetrics();
+    //域名 -> Retrofit
+    private final Map<String, Retrofit> mRetrofits = new ConcurrentHashMap<>();
+    //域名#接口类名 -> 接口代理实例
+    private final ConcurrentHashMap<String, Object> mServices = new ConcurrentHashMap<>();
+    //运行时切换的域名 原域名 -> 新域名
+    private final Map<String, String> mBaseUrlRedirects = new ConcurrentHashMap<>();
+
+    /**
+     * 初始化 开启磁盘缓存
+     * 在Application.onCreate中调用，要在第一次请求之前
+     */
+    public static void init(Context context) {
+        init(context, NetFrameConfig.defaultConfig());
+    }
+
+    /**
+     * 初始化 开启磁盘缓存并使用自定义的网络配置
+     * 在Application.onCreate中调用，要在第一次请求之前
+     */
+    public static void init(Context context, NetFrameConfig config) {
+        sCacheDir = new File(context.getApplicationContext().getCacheDir(), CACHE_DIR);
+        sFilesDir = new File(context.getApplicationContext().getFilesDir(), CACHE_DIR);
+        sConnectivity = null != config.connectivity ? config.connectivity : new AndroidConnectivity(context);
+        sConfig = config;
+    }
 
     public static HttpFactory getInstance() {
         if(null == mInstance) {
@@ -63,89 +149,368 @@ public class HttpFactory {
     }
 
     private HttpFactory(){
+        mNetScheduler = new NetScheduler(sConfig.schedulerThreads, sConfig.schedulerQueueLimit);
+        mRetryPolicy = new RetryPolicy(sConfig.maxRetries, sConfig.retryBaseDelayMillis, sConfig.retryMaxDelayMillis);
+        mCircuitBreaker = new CircuitBreaker(sConfig.circuitFailureRate, sConfig.circuitSlowCallRate,
+                sConfig.circuitSlowCallMillis, sConfig.circuitOpenMillis);
+        mAdaptiveTimeout = new AdaptiveTimeout(sConfig.timeoutPercentile, sConfig.timeoutMultiplier,
+                sConfig.timeoutFloorMillis, sConfig.timeoutCeilingMillis);
+        mDeliveryScheduler = null != sConfig.deliveryClock
+                ? new BatchingScheduler(sConfig.deliveryClock, AndroidSchedulers.mainThread())
+                : AndroidSchedulers.mainThread();
+        if (null != sConfig.compressionEncoding) {
+            mCompression = new Compression(sConfig.compressionEncoding, sConfig.compressionThreshold);
+        }
         initOkHttpClient();
+        if(null != sFilesDir) {
+            mDeferredQueue = new DeferredQueue(new File(sFilesDir, DEFERRED_LOG), mOkHttpClient, sConnectivity,
+                    sConfig.deferredConcurrency, Schedulers.io());
+        }
     }
 
-    //设置Retrofit
-    private Retrofit initRetrofit() {
+    /**
+     * 预热 在Application.onCreate中调用，要在HttpFactory.init之后
+     * 在后台线程创建OkHttpClient、Gson和Retrofit，并预解析所有已知域名的DNS，
+     * 避免第一次请求时在主线程创建这些对象
+     * @param preconnect   是否预建连接 对每个域名发一个HEAD请求，把握手好的连接留在连接池里，
+     *                     第一次真正的请求就不用再做TCP和TLS握手
+     * @return 各阶段耗时
+     */
+    public static Single<WarmUpReport> warmUp(boolean preconnect) {
+        return Single.create(new SingleOnSubscribe<WarmUpReport>() {
+            @Override
+            public void subscribe(@NonNull SingleEmitter<WarmUpReport> emitter) {
+                try {
+                    long start = SystemClock.elapsedRealtime();
+                    HttpFactory factory = getInstance();
+                    emitter.onSuccess(factory.warmUp(SystemClock.elapsedRealtime() - start, preconnect));
+                } catch (Throwable e) {
+                    emitter.tryOnError(e);
+                }
+            }
+        }).subscribeOn(Schedulers.io());
+    }
+
+    private WarmUpReport warmUp(long clientMillis, boolean preconnect) {
+        long time = SystemClock.elapsedRealtime();
+        initGson();
+        long gsonMillis = SystemClock.elapsedRealtime() - time;
+
+        time = SystemClock.elapsedRealtime();
+        getRetrofit(BASE_URL);
+        long retrofitMillis = SystemClock.elapsedRealtime() - time;
+
+        //已经注册的域名，切换过的按切换后的算
+        Set<HttpUrl> baseUrls = new LinkedHashSet<>();
+        Set<String> hosts = new LinkedHashSet<>();
+        for (String baseUrl : mRetrofits.keySet()) {
+            String target = mBaseUrlRedirects.get(baseUrl);
+            HttpUrl url = HttpUrl.parse(null != target ? target : baseUrl);
+            if(null != url) {
+                baseUrls.add(url);
+                hosts.add(url.host());
+            }
+        }
+
+        time = SystemClock.elapsedRealtime();
+        int resolved = 0;
+        for (String host : hosts) {
+            try {
+                mOkHttpClient.dns().lookup(host);
+                resolved++;
+            } catch (UnknownHostException ignored) {
+                //解析失败不影响启动，真正请求时会再解析
+            }
+        }
+        long dnsMillis = SystemClock.elapsedRealtime() - time;
+
+        time = SystemClock.elapsedRealtime();
+        int connected = 0;
+        if (preconnect) {
+            for (HttpUrl url : baseUrls) {
+                Request request = new Request.Builder().url(url).head().build();
+                try {
+                    //只要连接，响应内容不关心
+                    mOkHttpClient.newCall(request).execute().close();
+                    connected++;
+                } catch (IOException ignored) {
+                }
+            }
+        }
+        long connectMillis = preconnect ? SystemClock.elapsedRealtime() - time : 0;
+        return new WarmUpReport(clientMillis, gsonMillis, retrofitMillis, dnsMillis, connectMillis,
+                hosts.size(), resolved, connected);
+    }
+
+    //设置默认域名的Retrofit 其他域名的Retrofit以它为模板创建
+    private synchronized Retrofit initRetrofit() {
         if(null != mRetrofit) {
             return mRetrofit;
         }
         mRetrofit = new Retrofit.Builder()
                 .baseUrl(BASE_URL)
-                .addConverterFactory(GsonConverterFactory.create())
-                .addCallAdapterFactory(RxJava2CallAdapterFactory.create())
+                .addConverterFactory(new DecodeTimingConverterFactory(mNetMetrics))
+                .addConverterFactory(new BinaryConverterFactory(null != sConfig.binaryConverter
+                        ? sConfig.binaryConverter : CborConverterFactory.create(initGson())))
+                .addConverterFactory(GsonConverterFactory.create(initGson()))
+                .addCallAdapterFactory(new NetCallAdapterFactory(mSingleFlightGroup, mResponseCache, mRetryPolicy, mNetScheduler, mNetMetrics, mAdaptiveTimeout, mDeferredQueue))
                 .client(initOkHttpClient())
                 .build();
         return mRetrofit;
     }
 
+    //设置Gson 注册HttpResponse的流式解析
+    private synchronized Gson initGson() {
+        if(null != mGson) {
+            return mGson;
+        }
+        mGson = new GsonBuilder()
+                .registerTypeAdapterFactory(new HttpResponseAdapterFactory())
+                .create();
+        return mGson;
+    }
+
     //设置okhttp
     private OkHttpClient initOkHttpClient() {
         if(null != mOkHttpClient) {
             return mOkHttpClient;
         }
 
-        mOkHttpClient =  new OkHttpClient.Builder()
-                .connectTimeout(10, TimeUnit.SECONDS)
-                .readTimeout(10,TimeUnit.SECONDS)
-                .writeTimeout(10,TimeUnit.SECONDS)
+        NetFrameConfig config = sConfig;
+        Interceptor circuitBreakerInterceptor = HttpInterceptor.circuitBreakerInterceptor(mCircuitBreaker);
+        //请求都是在NetScheduler的线程里同步execute的，Dispatcher的并发上限只管enqueue，不用设置
+        //并发由NetScheduler的线程数控制
+        OkHttpClient.Builder builder = new OkHttpClient.Builder()
+                .connectionPool(new ConnectionPool(config.maxIdleConnections, config.keepAliveMillis, TimeUnit.MILLISECONDS))
+                .protocols(config.protocols)
+                .dns(config.dns)
+                .eventListenerFactory(new MetricsEventListener.Factory(mNetMetrics))
+                .connectTimeout(config.connectTimeoutMillis, TimeUnit.MILLISECONDS)
+                .readTimeout(config.readTimeoutMillis, TimeUnit.MILLISECONDS)
+                .writeTimeout(config.writeTimeoutMillis, TimeUnit.MILLISECONDS)
+                .addInterceptor(HttpInterceptor.baseUrlInterceptor(mBaseUrlRedirects))
                 .addInterceptor(HttpInterceptor.headerInterceptor())
-                .build();
+                .addInterceptor(HttpInterceptor.binaryInterceptor(config.binaryContentType))
+                .addInterceptor(HttpInterceptor.cacheInterceptor())
+                .addInterceptor(circuitBreakerInterceptor)
+                .addNetworkInterceptor(HttpInterceptor.cacheNetworkInterceptor());
+        if(null != mCompression) {
+            //放在最后，cacheInterceptor退回缓存时读到的响应也会解压
+            builder.addInterceptor(HttpInterceptor.compressionInterceptor(mCompression));
+        }
+        if(config.sendBufferSize > 0 || config.receiveBufferSize > 0) {
+            builder.socketFactory(new BufferedSocketFactory(SocketFactory.getDefault(), config.sendBufferSize, config.receiveBufferSize));
+        }
+        if(null != sCacheDir) {
+            mCache = new Cache(sCacheDir, config.cacheSize);
+            builder.cache(mCache);
+        }
+        mOkHttpClient = builder.build();
+        //上传的耗时主要花在发送请求体上，和服务器健康无关，算进慢调用会把熔断器打开
+        OkHttpClient.Builder uploadBuilder = mOkHttpClient.newBuilder();
+        uploadBuilder.interceptors().remove(circuitBreakerInterceptor);
+        mUploadClient = uploadBuilder.build();
         return mOkHttpClient;
     }
 
 
     /**
      * 线程切换封装
-     * 即请求过程和请求操作都在io工作线程中执行
-     * 订阅后返回操作切换到主线程执行
+     * 即请求过程和请求操作都在网络线程池中按优先级执行
+     * 订阅后返回操作切换到主线程执行，开启batchDelivery时按帧合并回调
+     * 排队的请求太多时直接拒绝低优先级的请求，不再进入线程池
      */
-    private <T> ObservableTransformer<T, T> setThread() {
+    private <T> ObservableTransformer<T, T> setThread(NetScheduler.Priority priority) {
         return new ObservableTransformer<T, T>() {
             @Override
             public @NonNull
             ObservableSource<T> apply(@NonNull Observable<T> upstream) {
-                return upstream.subscribeOn(Schedulers.io())
-                        .unsubscribeOn(Schedulers.io())
-                        .observeOn(AndroidSchedulers.mainThread());
+                return Observable.defer(() -> {
+                    if (!mNetScheduler.admit(priority)) {
+                        return Observable.<T>error(ExceptionEngine.handleException(
+                                new RejectedExecutionException("too many queued requests, priority " + priority)));
+                    }
+                    Scheduler scheduler = mNetScheduler.get(priority);
+                    return upstream.subscribeOn(scheduler)
+                            //取消不能进NetScheduler排队，线程池满的时候正是最需要取消的时候
+                            .unsubscribeOn(Schedulers.io());
+                }).observeOn(mDeliveryScheduler);
             }
         };
     }
 
-    //获取代理接口实例
+    /**
+     * 每个接口当前自动计算的超时 ApiService.method -> 超时(ms)，0表示样本不够还没有设置
+     */
+    public Map<String, Long> getTimeouts() {
+        return mAdaptiveTimeout.getTimeouts();
+    }
+
+    /**
+     * 各接口各阶段的耗时统计
+     */
+    public NetMetrics getNetMetrics() {
+        return mNetMetrics;
+    }
+
+    /**
+     * 按域名熔断 可以订阅状态变化
+     */
+    public CircuitBreaker getCircuitBreaker() {
+        return mCircuitBreaker;
+    }
+
+    /**
+     * 网络线程池的排队和线程使用情况
+     */
+    public SchedulerStats getSchedulerStats() {
+        return mNetScheduler.getStats();
+    }
+
+    /**
+     * 缓存统计 内存和磁盘两级
+     */
+    public CacheStats getCacheStats() {
+        return mResponseCache.getStats(mCache);
+    }
+
+    /**
+     * 请求排队和连接池的使用情况
+     * 排队看的是NetScheduler，正在执行的请求包括下载、上传等直接execute的请求
+     */
+    public PoolStats getPoolStats() {
+        Dispatcher dispatcher = mOkHttpClient.dispatcher();
+        Map<String, Integer> runningByHost = new HashMap<>();
+        for (Call call : dispatcher.runningCalls()) {
+            String host = call.request().url().host();
+            Integer count = runningByHost.get(host);
+            runningByHost.put(host, count == null ? 1 : count + 1);
+        }
+        SchedulerStats scheduler = mNetScheduler.getStats();
+        ConnectionPool pool = mOkHttpClient.connectionPool();
+        return new PoolStats(dispatcher.runningCallsCount(), runningByHost,
+                scheduler.getActiveThreads(), scheduler.getMaxPoolSize(),
+                scheduler.getQueueSize(), scheduler.getQueueLimit(),
+                pool.connectionCount(), pool.idleConnectionCount());
+    }
+
+    /**
+     * DNS缓存统计 配置里换掉了DnsCache时返回null
+     */
+    public DnsStats getDnsStats() {
+        Dns dns = mOkHttpClient.dns();
+        return dns instanceof DnsCache ? ((DnsCache) dns).getStats() : null;
+    }
+
+    /**
+     * 各接口的压缩统计 没有开启压缩时为空
+     */
+    public Map<String, CompressionStats> getCompressionStats() {
+        return null != mCompression ? mCompression.getStats() : Collections.<String, CompressionStats>emptyMap();
+    }
+
+    /**
+     * 标记了@Deferrable的接口离线时存下的请求 没有调用init时为null
+     */
+    public DeferredQueue getDeferredQueue() {
+        return mDeferredQueue;
+    }
+
+    /**
+     * 清空内存缓存
+     */
+    public void clearMemoryCache() {
+        mResponseCache.clear();
+    }
+
+    /**
+     * 相同请求合并的统计
+     */
+    public SingleFlightGroup getSingleFlightGroup() {
+        return mSingleFlightGroup;
+    }
+
+    //获取默认域名的代理接口实例
     public <T> T create(Class<T> api) {
-        return initRetrofit().create(api);
+        return create(BASE_URL, api);
+    }
+
+    /**
+     * 获取指定域名的代理接口实例
+     * 代理实例按 域名 + 接口 缓存，不会每次都重新创建
+     * @param baseUrl   域名，以/结尾
+     * @param api       接口
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T create(String baseUrl, Class<T> api) {
+        String key = baseUrl + "#" + api.getName();
+        Object service = mServices.get(key);
+        if(null == service) {
+            service = getRetrofit(baseUrl).create(api);
+            Object previous = mServices.putIfAbsent(key, service);
+            if(null != previous) {
+                service = previous;
+            }
+        }
+        return (T) service;
+    }
+
+    /**
+     * 获取指定域名的Retrofit
+     * 和默认的Retrofit共用OkHttpClient、Gson和适配器
+     */
+    public Retrofit getRetrofit(String baseUrl) {
+        Retrofit retrofit = mRetrofits.get(baseUrl);
+        if(null != retrofit) {
+            return retrofit;
+        }
+        synchronized (mRetrofits) {
+            retrofit = mRetrofits.get(baseUrl);
+            if(null == retrofit) {
+                retrofit = BASE_URL.equals(baseUrl) ? initRetrofit() : initRetrofit().newBuilder().baseUrl(baseUrl).build();
+                mRetrofits.put(baseUrl, retrofit);
+            }
+            return retrofit;
+        }
+    }
+
+    /**
+     * 运行时切换域名 例如切到测试环境或者备用域名
+     * 已经创建的接口实例不用重新获取，发往baseUrl的请求会被改写到target
+     * @param baseUrl   原域名
+     * @param target    新域名
+     */
+    public void switchBaseUrl(String baseUrl, String target) {
+        mBaseUrlRedirects.put(baseUrl, target);
+    }
+
+    //恢复原域名
+    public void resetBaseUrl(String baseUrl) {
+        mBaseUrlRedirects.remove(baseUrl);
     }
 
     /**
      * 提交http请求
      * @param observable         接口订阅
      * @param lifecycleOwner     当前生命周期引用
+     * @param priority           优先级
      * @param observer           回调
      */
-    @SuppressWarnings("unchecked")
-    public <T> void request(@NonNull Observable<HttpResponse<T>> observable, LifecycleOwner lifecycleOwner, HttpObserver<?> observer) {
-        observable.map(new ServerResultFunction<>())
-                .onErrorResumeNext(new ErrorFunction<>())
-                .as(new DisposeFunction<>(lifecycleOwner))
-                .compose(setThread())
-                .subscribe((Observer<? super Object>) observer);
+    public <T> void request(@NonNull Observable<HttpResponse<T>> observable, LifecycleOwner lifecycleOwner,
+                            NetScheduler.Priority priority, HttpObserver<?> observer) {
+        request(observable, new DisposeFunction<>(lifecycleOwner), priority, observer);
     }
 
     /**
      * 提交http请求
      * @param observable         接口订阅
      * @param mView              当前View
+     * @param priority           优先级
      * @param observer           回调
      */
-    @SuppressWarnings("unchecked")
-    public <T> void request(@NonNull Observable<HttpResponse<T>> observable, View mView, HttpObserver<?> observer) {
-        observable.map(new ServerResultFunction<>())
-                .onErrorResumeNext(new ErrorFunction<>())
-                .as(new DisposeFunction<>(mView))
-                .compose(setThread())
-                .subscribe((Observer<? super Object>) observer);
+    public <T> void request(@NonNull Observable<HttpResponse<T>> observable, View mView,
+                            NetScheduler.Priority priority, HttpObserver<?> observer) {
+        request(observable, new DisposeFunction<>(mView), priority, observer);
     }
 
     /**
@@ -155,17 +520,153 @@ public class HttpFactory {
      * 请求一般在Application中使用
      * 注：此函数不能在短生命周期对象中使用，造成内存泄漏风险。
      * @param observable         接口订阅
+     * @param priority           优先级
      * @param observer           回调
      */
+    public <T> void request(@NonNull Observable<HttpResponse<T>> observable, NetScheduler.Priority priority, HttpObserver<?> observer) {
+        request(observable, (DisposeFunction<Object>) null, priority, observer);
+    }
+
+    public <T> void request(@NonNull Observable<HttpResponse<T>> observable, LifecycleOwner lifecycleOwner, HttpObserver<?> observer) {
+        request(observable, lifecycleOwner, NetScheduler.Priority.NORMAL, observer);
+    }
+
+    public <T> void request(@NonNull Observable<HttpResponse<T>> observable, View mView, HttpObserver<?> observer) {
+        request(observable, mView, NetScheduler.Priority.NORMAL, observer);
+    }
+
+    public <T> void request(@NonNull Observable<HttpResponse<T>> observable, HttpObserver<?> observer) {
+        request(observable, NetScheduler.Priority.NORMAL, observer);
+    }
+
+    //各个request最终都走这里 dispose为null时不绑定生命周期
     @SuppressWarnings("unchecked")
-    public <T> void request(@NonNull Observable<HttpResponse<T>> observable,  HttpObserver<?> observer) {
-        observable.map(new ServerResultFunction<>())
-                .onErrorResumeNext(new ErrorFunction<>())
-                .compose(setThread())
+    private <T> void request(Observable<HttpResponse<T>> observable, DisposeFunction<Object> dispose,
+                             NetScheduler.Priority priority, HttpObserver<?> observer) {
+        RequestTrace trace = new RequestTrace(mNetMetrics, new ServerResultFunction<>());
+        ProcessObserver<Object, Object> processor = observer instanceof ProcessObserver
+                ? (ProcessObserver<Object, Object>) observer : null;
+        Observable<Object> result = observable.map(trace)
+                .onErrorResumeNext(new ErrorFunction<>());
+        if(null != processor) {
+            //先切到computation再检查生命周期，页面销毁时排队等处理的数据直接丢掉
+            result = result.observeOn(Schedulers.computation());
+        }
+        if(null != dispose) {
+            result = result.as(dispose);
+        }
+        if(null != processor) {
+            result = result.map(value -> trace.process(processor, value))
+                    .onErrorResumeNext(new ErrorFunction<>());
+        }
+        result.compose(setThread(priority))
+                .doAfterNext(value -> trace.onDelivered())
                 .subscribe((Observer<? super Object>) observer);
     }
 
 
+    /**
+     * 分段并行下载文件
+     * 服务器支持Range的时候按segmentCount分段并行下载，不支持就退回单线程下载
+     * 下载进度按ProgressSampler的默认值合并后回调DownloadObserver.onProgress
+     * 注：此函数不能在短生命周期对象中使用，造成内存泄漏风险。
+     * @param url            文件下载地址
+     * @param savePath       文件保存路径
+     * @param fileName       文件名
+     * @param segmentCount   分段数
+     * @param observer       下载回调
+     */
+    public void download(String url, String savePath, String fileName, int segmentCount, DownloadObserver<DownloadInfo> observer) {
+        downloadFlowable(url, savePath, fileName, segmentCount, ProgressSampler.DEFAULT_INTERVAL, ProgressSampler.DEFAULT_STEP)
+                //主线程每次只取一个，处理不过来的中间进度直接丢掉，只留最新的
+                .observeOn(AndroidSchedulers.mainThread(), false, 1)
+                .toObservable()
+                .onErrorResumeNext(new ErrorFunction<>())
+                .subscribe(observer);
+    }
+
+    /**
+     * 创建一个下载任务 和普通请求共用同一个OkHttpClient
+     * 需要自己控制下载过程的时候使用，例如开启内存映射写入
+     * @param url            文件下载地址
+     * @param file           保存的文件
+     * @param segmentCount   分段数
+     */
+    public DownloadTask newDownloadTask(String url, File file, int segmentCount) {
+        return new DownloadTask(initOkHttpClient(), url, file, segmentCount);
+    }
+
+    /**
+     * 下载队列 限制同时下载的数量，按优先级排队
+     */
+    public synchronized DownloadManager getDownloadManager() {
+        if(null == mDownloadManager) {
+            mDownloadManager = new DownloadManager(this, DownloadManager.DEFAULT_MAX_ACTIVE, DownloadManager.DEFAULT_MAX_PER_HOST);
+        }
+        return mDownloadManager;
+    }
+
+    /**
+     * 带进度的下载
+     * 返回的Flowable在io线程下载，按时间和字节增量合并后发出DownloadInfo快照
+     * 最后一个快照isFinished()为true
+     * @param url            文件下载地址
+     * @param savePath       文件保存路径
+     * @param fileName       文件名
+     * @param segmentCount   分段数
+     * @param interval       最短通知间隔(ms)
+     * @param step           最小进度增量，总大小的百分比
+     */
+    public Flowable<DownloadInfo> downloadFlowable(String url, String savePath, String fileName, int segmentCount, long interval, float step) {
+        return newDownloadTask(url, new File(savePath + File.separator + fileName), segmentCount)
+                .toFlowable(interval, step)
+                .subscribeOn(Schedulers.io());
+    }
+
+    /**
+     * 流式上传文件 文件边读边发，内存占用和文件大小无关
+     * 上传进度按ProgressSampler的默认值合并后回调UploadObserver.onProgress
+     * 注：此函数不能在短生命周期对象中使用，造成内存泄漏风险。
+     * @param url            上传地址
+     * @param file           要上传的文件
+     * @param contentType    文件类型，可以为null
+     * @param chunkSize      分片大小，<= 0 整个文件一次POST，> 0 分片PUT并支持断点续传，协议见UploadTask
+     * @param parallelism    同时上传的分片数
+     * @param observer       上传回调
+     */
+    public void upload(String url, File file, String contentType, long chunkSize, int parallelism, UploadObserver<UploadInfo> observer) {
+        uploadFlowable(url, file, contentType, chunkSize, parallelism, ProgressSampler.DEFAULT_INTERVAL, ProgressSampler.DEFAULT_STEP)
+                //主线程每次只取一个，处理不过来的中间进度直接丢掉，只留最新的
+                .observeOn(AndroidSchedulers.mainThread(), false, 1)
+                .toObservable()
+                .onErrorResumeNext(new ErrorFunction<>())
+                .subscribe(observer);
+    }
+
+    /**
+     * 创建一个上传任务 和普通请求共用连接池和拦截器，但不经过熔断器
+     * 分片上传的检查点存在应用私有目录，没有调用init时不能跨进程续传
+     */
+    public UploadTask newUploadTask(String url, File file, String contentType, long chunkSize, int parallelism) {
+        initOkHttpClient();
+        return new UploadTask(mUploadClient, url, file, contentType, chunkSize, parallelism,
+                null != sFilesDir ? new File(sFilesDir, UPLOAD_DIR) : null);
+    }
+
+    /**
+     * 带进度的上传
+     * 返回的Flowable在io线程上传，按时间和字节增量合并后发出UploadInfo快照
+     * 最后一个快照isFinished()为true，getResponse()是服务器返回的结果
+     * @param interval       最短通知间隔(ms)
+     * @param step           最小进度增量，总大小的百分比
+     */
+    public Flowable<UploadInfo> uploadFlowable(String url, File file, String contentType, long chunkSize, int parallelism,
+                                               long interval, float step) {
+        return newUploadTask(url, file, contentType, chunkSize, parallelism)
+                .toFlowable(interval, step)
+                .subscribeOn(Schedulers.io());
+    }
+
     /**
      * 下载文件
      * 由代码逻辑触发的下载事件
@@ -196,17 +697,16 @@ public class HttpFactory {
                         file.delete();
                     }
 
-                    InputStream in = responseBody.byteStream();
-                    FileOutputStream fos = new FileOutputStream(file,true);
-                    byte[] buffer = new byte[2048];
-                    int length = 0;
-                    while ((length = in.read(buffer)) != -1) {
-                        fos.write(buffer, 0, length);
-                        // downloadInfo.setProgress(length);
+                    //Okio直接把source的segment挪到文件sink里，不经过byte[]中转
+                    BufferedSink sink = Okio.buffer(Okio.sink(file));
+                    try {
+                        downloadInfo.setProgress(sink.writeAll(responseBody.source()));
+                    } finally {
+                        sink.close();
+                        responseBody.close();
                     }
-                    fos.flush();
-                    fos.close();
-                    in.close();
+                    //DownloadObserver按isFinished区分进度和结果，不设置的话只会回调onProgress，onSuccess永远等不到
+                    downloadInfo.setFinished(true);
 
                     return downloadInfo;
                 })
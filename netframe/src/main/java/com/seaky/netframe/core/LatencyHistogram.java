@@ -0,0 +1,99 @@
+package com.seaky.netframe.core;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ *  耗时直方图
+ *
+ *  按对数分桶，每翻一倍分4个桶，1ms到3分多钟一共72个桶，误差不超过19%
+ *  不保存原始数据，一个接口只占几百字节
+ *  样本数超过MAX_SAMPLES时所有桶减半，让旧数据逐渐失去权重，能跟上接口耗时的变化
+ *  记录不加锁，并发记录时减半和计数是近似的
+ *
+ *  Created by Seaky
+ */
+
+public class LatencyHistogram {
+
+    private static final int BUCKETS_PER_DOUBLING = 4;
+    private static final int BUCKETS = 72;
+    private static final long MAX_SAMPLES = 2048;
+
+    private final AtomicLongArray mCounts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong mTotal = new AtomicLong();
+    private final AtomicBoolean mDecaying = new AtomicBoolean();
+
+    /**
+     * 记录一次耗时
+     */
+    public void record(long millis) {
+        mCounts.incrementAndGet(indexOf(millis));
+        if (mTotal.incrementAndGet() > MAX_SAMPLES) {
+            decay();
+        }
+    }
+
+    //所有桶减半 同时只有一个线程在做
+    private void decay() {
+        if (!mDecaying.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            long total = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                long count;
+                do {
+                    count = mCounts.get(i);
+                } while (!mCounts.compareAndSet(i, count, count >> 1));
+                total += count >> 1;
+            }
+            mTotal.set(total);
+        } finally {
+            mDecaying.set(false);
+        }
+    }
+
+    public long getCount() {
+        return mTotal.get();
+    }
+
+    /**
+     * 分位数
+     * @param percentile  0~1，例如0.99
+     * @return  对应桶的上界(ms)，没有数据时返回-1
+     */
+    public long percentile(float percentile) {
+        long[] counts = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = mCounts.get(i);
+            total += counts[i];
+        }
+        if (total == 0) {
+            return -1;
+        }
+        long target = Math.max(1, (long) Math.ceil(percentile * total));
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            count += counts[i];
+            if (count >= target) {
+                return upperBound(i);
+            }
+        }
+        return upperBound(BUCKETS - 1);
+    }
+
+    static int indexOf(long millis) {
+        if (millis <= 1) {
+            return 0;
+        }
+        int index = (int) Math.ceil(Math.log(millis) / Math.log(2) * BUCKETS_PER_DOUBLING);
+        return Math.min(index, BUCKETS - 1);
+    }
+
+    static long upperBound(int index) {
+        return (long) Math.ceil(Math.pow(2, (double) index / BUCKETS_PER_DOUBLING));
+    }
+}
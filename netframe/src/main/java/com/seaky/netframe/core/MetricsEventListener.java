@@ -0,0 +1,164 @@
+package com.seaky.netframe.core;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.List;
+
+import io.reactivex.annotations.NonNull;
+import okhttp3.Call;
+import okhttp3.Connection;
+import okhttp3.EventListener;
+import okhttp3.Handshake;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import retrofit2.Invocation;
+
+/**
+ *  记录一次请求各个网络阶段的耗时
+ *  每个call一个实例，只统计ApiService发出的请求，下载等直接用OkHttpClient的请求不统计
+ *
+ *  Created by Seaky
+ */
+
+class MetricsEventListener extends EventListener {
+
+    static class Factory implements EventListener.Factory {
+
+        private final NetMetrics mMetrics;
+
+        Factory(NetMetrics metrics) {
+            mMetrics = metrics;
+        }
+
+        @Override
+        public @NonNull
+        EventListener create(@NonNull Call call) {
+            Request request = call.request();
+            if (request.tag(Invocation.class) == null) {
+                return EventListener.NONE;
+            }
+            return new MetricsEventListener(mMetrics, NetCallAdapterFactory.endpointOf(request));
+        }
+    }
+
+    private final NetMetrics mMetrics;
+    private final String mEndpoint;
+
+    private long mCallStart;
+    private boolean mInterceptorsRecorded;
+    private long mDnsStart;
+    private long mConnectStart;
+    private long mSecureConnectStart;
+    private long mRequestStart;
+    private long mRequestEnd;
+    private long mBodyStart;
+
+    private MetricsEventListener(NetMetrics metrics, String endpoint) {
+        mMetrics = metrics;
+        mEndpoint = endpoint;
+    }
+
+    @Override
+    public void callStart(@NonNull Call call) {
+        mCallStart = now();
+    }
+
+    @Override
+    public void dnsStart(@NonNull Call call, @NonNull String domainName) {
+        recordInterceptors();
+        mDnsStart = now();
+    }
+
+    @Override
+    public void dnsEnd(@NonNull Call call, @NonNull String domainName, @NonNull List<InetAddress> inetAddressList) {
+        record(NetMetrics.Phase.DNS, mDnsStart);
+    }
+
+    @Override
+    public void connectStart(@NonNull Call call, @NonNull InetSocketAddress inetSocketAddress, @NonNull Proxy proxy) {
+        recordInterceptors();
+        mConnectStart = now();
+        mSecureConnectStart = 0;
+    }
+
+    @Override
+    public void secureConnectStart(@NonNull Call call) {
+        mSecureConnectStart = now();
+        //TCP连接到此结束
+        record(NetMetrics.Phase.CONNECT, mConnectStart);
+    }
+
+    @Override
+    public void secureConnectEnd(@NonNull Call call, Handshake handshake) {
+        record(NetMetrics.Phase.TLS, mSecureConnectStart);
+    }
+
+    @Override
+    public void connectEnd(@NonNull Call call, @NonNull InetSocketAddress inetSocketAddress, @NonNull Proxy proxy, Protocol protocol) {
+        if (mSecureConnectStart == 0) {
+            //明文连接
+            record(NetMetrics.Phase.CONNECT, mConnectStart);
+        }
+    }
+
+    @Override
+    public void connectionAcquired(@NonNull Call call, @NonNull Connection connection) {
+        recordInterceptors();
+    }
+
+    @Override
+    public void requestHeadersStart(@NonNull Call call) {
+        mRequestStart = now();
+    }
+
+    @Override
+    public void requestHeadersEnd(@NonNull Call call, @NonNull Request request) {
+        mRequestEnd = now();
+    }
+
+    @Override
+    public void requestBodyEnd(@NonNull Call call, long byteCount) {
+        mRequestEnd = now();
+    }
+
+    @Override
+    public void responseHeadersStart(@NonNull Call call) {
+        if (mRequestStart != 0) {
+            record(NetMetrics.Phase.REQUEST, mRequestStart, mRequestEnd);
+            record(NetMetrics.Phase.FIRST_BYTE, mRequestEnd);
+        }
+    }
+
+    @Override
+    public void responseBodyStart(@NonNull Call call) {
+        mBodyStart = now();
+    }
+
+    @Override
+    public void responseBodyEnd(@NonNull Call call, long byteCount) {
+        record(NetMetrics.Phase.BODY, mBodyStart);
+    }
+
+    //第一次有网络动作之前的时间算作拦截器耗时
+    private void recordInterceptors() {
+        if (!mInterceptorsRecorded) {
+            mInterceptorsRecorded = true;
+            record(NetMetrics.Phase.INTERCEPTORS, mCallStart);
+        }
+    }
+
+    private void record(NetMetrics.Phase phase, long start) {
+        record(phase, start, now());
+    }
+
+    private void record(NetMetrics.Phase phase, long start, long end) {
+        if (start != 0) {
+            mMetrics.record(mEndpoint, phase, end - start);
+        }
+    }
+
+    private static long now() {
+        return System.nanoTime() / 1000000;
+    }
+}
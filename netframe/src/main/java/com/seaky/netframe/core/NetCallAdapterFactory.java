@@ -0,0 +1,162 @@
+package com.seaky.netframe.core;
+
+import com.seaky.netframe.annotation.CachePolicy;
+import com.seaky.netframe.annotation.Deferrable;
+import com.seaky.netframe.annotation.SingleFlight;
+import com.seaky.netframe.annotation.Timeout;
+import com.seaky.netframe.function.RetryFunction;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.lang.reflect.Type;
+
+import io.reactivex.Observable;
+import okhttp3.Request;
+import retrofit2.Call;
+import retrofit2.CallAdapter;
+import retrofit2.Invocation;
+import retrofit2.Retrofit;
+import retrofit2.adapter.rxjava2.RxJava2CallAdapterFactory;
+import retrofit2.http.Streaming;
+
+/**
+ *  请求适配层
+ *
+ *  包装RxJava2CallAdapterFactory，在这里能同时拿到ApiService方法上的注解和真正要发出的Request，
+ *  给接口返回的Observable加上额外的处理：
+ *  所有请求都有失败重试，重试要知道请求方法是否幂等，只有这里拿得到
+ *  所有请求按接口设置整体超时，见AdaptiveTimeout和@Timeout
+ *  按注解加上相同请求合并、解析结果缓存、离线延后发送
+ *
+ *  Created by Seaky
+ */
+
+public class NetCallAdapterFactory extends CallAdapter.Factory {
+
+    private final CallAdapter.Factory mDelegate = RxJava2CallAdapterFactory.create();
+    private final SingleFlightGroup mSingleFlightGroup;
+    private final ResponseCache mResponseCache;
+    private final RetryPolicy mRetryPolicy;
+    private final NetScheduler mNetScheduler;
+    private final NetMetrics mNetMetrics;
+    private final AdaptiveTimeout mAdaptiveTimeout;
+    //没有离线队列时为null，@Deferrable不生效
+    private final DeferredQueue mDeferredQueue;
+
+    public NetCallAdapterFactory(SingleFlightGroup singleFlightGroup, ResponseCache responseCache,
+                                 RetryPolicy retryPolicy, NetScheduler netScheduler, NetMetrics netMetrics,
+                                 AdaptiveTimeout adaptiveTimeout, DeferredQueue deferredQueue) {
+        mSingleFlightGroup = singleFlightGroup;
+        mResponseCache = responseCache;
+        mRetryPolicy = retryPolicy;
+        mNetScheduler = netScheduler;
+        mNetMetrics = netMetrics;
+        mAdaptiveTimeout = adaptiveTimeout;
+        mDeferredQueue = deferredQueue;
+    }
+
+    @Override
+    public CallAdapter<?, ?> get(Type returnType, Annotation[] annotations, Retrofit retrofit) {
+        CallAdapter<?, ?> delegate = mDelegate.get(returnType, annotations, retrofit);
+        if (delegate == null || getRawType(returnType) != Observable.class) {
+            return delegate;
+        }
+        boolean singleFlight = find(annotations, SingleFlight.class) != null;
+        CachePolicy cachePolicy = find(annotations, CachePolicy.class);
+        Timeout timeout = find(annotations, Timeout.class);
+        //流式下载的耗时取决于文件大小，不自动计算超时
+        boolean streaming = find(annotations, Streaming.class) != null;
+        Deferrable deferrable = mDeferredQueue != null ? find(annotations, Deferrable.class) : null;
+        return new NetCallAdapter<>(delegate, singleFlight, cachePolicy,
+                timeout != null ? timeout.unit().toMillis(timeout.value()) : 0, streaming, deferrable);
+    }
+
+    static <A extends Annotation> A find(Annotation[] annotations, Class<A> type) {
+        for (Annotation annotation : annotations) {
+            if (type.isInstance(annotation)) {
+                return type.cast(annotation);
+            }
+        }
+        return null;
+    }
+
+
+    private final class NetCallAdapter<R> implements CallAdapter<R, Object> {
+
+        private final CallAdapter<R, Object> mAdapter;
+        private final boolean mSingleFlight;
+        private final CachePolicy mCachePolicy;
+        private final long mFixedTimeout;
+        private final boolean mStreaming;
+        private final Deferrable mDeferrable;
+        //接口名 ApiService.method
+        private volatile String mEndpoint;
+
+        @SuppressWarnings("unchecked")
+        NetCallAdapter(CallAdapter<?, ?> adapter, boolean singleFlight, CachePolicy cachePolicy,
+                       long fixedTimeout, boolean streaming, Deferrable deferrable) {
+            mAdapter = (CallAdapter<R, Object>) adapter;
+            mSingleFlight = singleFlight;
+            mCachePolicy = cachePolicy;
+            mFixedTimeout = fixedTimeout;
+            mStreaming = streaming;
+            mDeferrable = deferrable;
+        }
+
+        @Override
+        public Type responseType() {
+            return mAdapter.responseType();
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public Object adapt(Call<R> call) {
+            Request request = call.request();
+            if (mFixedTimeout > 0 || !mStreaming) {
+                call = new TimeoutCall<>(call, mAdaptiveTimeout, endpointOf(request), mFixedTimeout);
+            }
+            //每次重试都会重新订阅，RxJava2的适配器每次订阅会clone一个新的call
+            Observable<Object> observable = ((Observable<Object>) mAdapter.adapt(call))
+                    .doOnNext(value -> mRetryPolicy.onSuccess())
+                    .retryWhen(new RetryFunction(mRetryPolicy, request.method(), mNetScheduler));
+            //重试完还是连不上 存入离线队列
+            if (mDeferrable != null) {
+                observable = mDeferredQueue.defer(request, endpointOf(request), mDeferrable, observable);
+            }
+            String key = SingleFlightGroup.keyOf(request);
+            //先合并相同的网络请求，缓存未命中时走合并后的请求
+            if (mSingleFlight && SingleFlightGroup.isIdempotent(request)) {
+                observable = mSingleFlightGroup.join(key, observable);
+            }
+            if (mCachePolicy != null && "GET".equals(request.method())) {
+                observable = mResponseCache.apply(key, mCachePolicy, observable);
+            }
+            String endpoint = endpointOf(request);
+            //HttpFactory.request在NetScheduler的线程里订阅，这时能拿到这次请求的排队耗时，重试不会再经过这里
+            //下游的结果分离在同一个线程同步执行，告诉它是哪个接口，用于NetMetrics统计
+            return observable.doOnSubscribe(disposable ->
+                            mNetMetrics.record(endpoint, NetMetrics.Phase.QUEUE, mNetScheduler.currentWaitMillis()))
+                    .doOnNext(value -> NetMetrics.setCurrent(endpoint))
+                    .doAfterNext(value -> NetMetrics.clearCurrent());
+        }
+
+        private String endpointOf(Request request) {
+            if (mEndpoint == null) {
+                mEndpoint = NetCallAdapterFactory.endpointOf(request);
+            }
+            return mEndpoint;
+        }
+    }
+
+    /**
+     * 接口名 ApiService.method，取不到时用请求方法和路径
+     */
+    static String endpointOf(Request request) {
+        Invocation invocation = request.tag(Invocation.class);
+        if (invocation == null) {
+            return request.method() + " " + request.url().encodedPath();
+        }
+        Method method = invocation.method();
+        return method.getDeclaringClass().getSimpleName() + "." + method.getName();
+    }
+}
@@ -0,0 +1,377 @@
+package com.seaky.netframe.core;
+
+import com.seaky.netframe.build.CborConverterFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Dns;
+import okhttp3.Protocol;
+import retrofit2.Converter;
+
+/**
+ *  网络配置
+ *
+ *  用法 ：
+ *       HttpCenter.init(context, new NetFrameConfig.Builder()
+ *               .scheduler(16, 64)
+ *               .connectionPool(10, 5, TimeUnit.MINUTES)
+ *               .build());
+ *
+ *  没有设置的项和OkHttp默认值一致，超时默认10秒
+ *  运行时的排队和连接池使用情况见HttpCenter.getPoolStats，按实际数据调整
+ *
+ *  Created by Seaky
+ */
+
+public class NetFrameConfig {
+
+    final int maxIdleConnections;
+    final long keepAliveMillis;
+    final List<Protocol> protocols;
+    final int sendBufferSize;
+    final int receiveBufferSize;
+    final long connectTimeoutMillis;
+    final long readTimeoutMillis;
+    final long writeTimeoutMillis;
+    final long cacheSize;
+    final Dns dns;
+    final int schedulerThreads;
+    final int schedulerQueueLimit;
+    final int maxRetries;
+    final long retryBaseDelayMillis;
+    final long retryMaxDelayMillis;
+    final float circuitFailureRate;
+    final float circuitSlowCallRate;
+    final long circuitSlowCallMillis;
+    final long circuitOpenMillis;
+    final float timeoutPercentile;
+    final float timeoutMultiplier;
+    final long timeoutFloorMillis;
+    final long timeoutCeilingMillis;
+    final FrameClock deliveryClock;
+    final Compression.Encoding compressionEncoding;
+    final long compressionThreshold;
+    final Converter.Factory binaryConverter;
+    final String binaryContentType;
+    final int deferredConcurrency;
+    final Connectivity connectivity;
+
+    private NetFrameConfig(Builder builder) {
+        maxIdleConnections = builder.maxIdleConnections;
+        keepAliveMillis = builder.keepAliveMillis;
+        protocols = builder.protocols;
+        sendBufferSize = builder.sendBufferSize;
+        receiveBufferSize = builder.receiveBufferSize;
+        connectTimeoutMillis = builder.connectTimeoutMillis;
+        readTimeoutMillis = builder.readTimeoutMillis;
+        writeTimeoutMillis = builder.writeTimeoutMillis;
+        cacheSize = builder.cacheSize;
+        dns = builder.dns != null ? builder.dns : new DnsCache();
+        schedulerThreads = builder.schedulerThreads;
+        schedulerQueueLimit = builder.schedulerQueueLimit;
+        maxRetries = builder.maxRetries;
+        retryBaseDelayMillis = builder.retryBaseDelayMillis;
+        retryMaxDelayMillis = builder.retryMaxDelayMillis;
+        circuitFailureRate = builder.circuitFailureRate;
+        circuitSlowCallRate = builder.circuitSlowCallRate;
+        circuitSlowCallMillis = builder.circuitSlowCallMillis;
+        circuitOpenMillis = builder.circuitOpenMillis;
+        timeoutPercentile = builder.timeoutPercentile;
+        timeoutMultiplier = builder.timeoutMultiplier;
+        timeoutFloorMillis = builder.timeoutFloorMillis;
+        timeoutCeilingMillis = builder.timeoutCeilingMillis;
+        deliveryClock = builder.deliveryClock;
+        compressionEncoding = builder.compressionEncoding;
+        compressionThreshold = builder.compressionThreshold;
+        binaryConverter = builder.binaryConverter;
+        binaryContentType = builder.binaryContentType;
+        deferredConcurrency = builder.deferredConcurrency;
+        connectivity = builder.connectivity;
+    }
+
+    public static NetFrameConfig defaultConfig() {
+        return new Builder().build();
+    }
+
+    public Builder newBuilder() {
+        return new Builder(this);
+    }
+
+    public static class Builder {
+
+        private int maxIdleConnections = 5;
+        private long keepAliveMillis = TimeUnit.MINUTES.toMillis(5);
+        private List<Protocol> protocols = Collections.unmodifiableList(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1));
+        private int sendBufferSize;
+        private int receiveBufferSize;
+        private long connectTimeoutMillis = TimeUnit.SECONDS.toMillis(10);
+        private long readTimeoutMillis = TimeUnit.SECONDS.toMillis(10);
+        private long writeTimeoutMillis = TimeUnit.SECONDS.toMillis(10);
+        private long cacheSize = 20 * 1024 * 1024;
+        private Dns dns;
+        private int schedulerThreads = NetScheduler.DEFAULT_THREADS;
+        private int schedulerQueueLimit = NetScheduler.DEFAULT_QUEUE_LIMIT;
+        private int maxRetries = RetryPolicy.DEFAULT_MAX_RETRIES;
+        private long retryBaseDelayMillis = RetryPolicy.DEFAULT_BASE_DELAY;
+        private long retryMaxDelayMillis = RetryPolicy.DEFAULT_MAX_DELAY;
+        private float circuitFailureRate = CircuitBreaker.DEFAULT_FAILURE_RATE;
+        private float circuitSlowCallRate = CircuitBreaker.DEFAULT_SLOW_CALL_RATE;
+        private long circuitSlowCallMillis = CircuitBreaker.DEFAULT_SLOW_CALL_MILLIS;
+        private long circuitOpenMillis = CircuitBreaker.DEFAULT_OPEN_MILLIS;
+        private float timeoutPercentile = AdaptiveTimeout.DEFAULT_PERCENTILE;
+        private float timeoutMultiplier = AdaptiveTimeout.DEFAULT_MULTIPLIER;
+        private long timeoutFloorMillis = AdaptiveTimeout.DEFAULT_FLOOR;
+        private long timeoutCeilingMillis = AdaptiveTimeout.DEFAULT_CEILING;
+        private FrameClock deliveryClock;
+        private Compression.Encoding compressionEncoding;
+        private long compressionThreshold = Compression.DEFAULT_THRESHOLD;
+        private Converter.Factory binaryConverter;
+        private String binaryContentType = CborConverterFactory.CONTENT_TYPE;
+        private int deferredConcurrency = DeferredQueue.DEFAULT_CONCURRENCY;
+        private Connectivity connectivity;
+
+        public Builder() {
+        }
+
+        Builder(NetFrameConfig config) {
+            maxIdleConnections = config.maxIdleConnections;
+            keepAliveMillis = config.keepAliveMillis;
+            protocols = config.protocols;
+            sendBufferSize = config.sendBufferSize;
+            receiveBufferSize = config.receiveBufferSize;
+            connectTimeoutMillis = config.connectTimeoutMillis;
+            readTimeoutMillis = config.readTimeoutMillis;
+            writeTimeoutMillis = config.writeTimeoutMillis;
+            cacheSize = config.cacheSize;
+            dns = config.dns;
+            schedulerThreads = config.schedulerThreads;
+            schedulerQueueLimit = config.schedulerQueueLimit;
+            maxRetries = config.maxRetries;
+            retryBaseDelayMillis = config.retryBaseDelayMillis;
+            retryMaxDelayMillis = config.retryMaxDelayMillis;
+            circuitFailureRate = config.circuitFailureRate;
+            circuitSlowCallRate = config.circuitSlowCallRate;
+            circuitSlowCallMillis = config.circuitSlowCallMillis;
+            circuitOpenMillis = config.circuitOpenMillis;
+            timeoutPercentile = config.timeoutPercentile;
+            timeoutMultiplier = config.timeoutMultiplier;
+            timeoutFloorMillis = config.timeoutFloorMillis;
+            timeoutCeilingMillis = config.timeoutCeilingMillis;
+            deliveryClock = config.deliveryClock;
+            compressionEncoding = config.compressionEncoding;
+            compressionThreshold = config.compressionThreshold;
+            binaryConverter = config.binaryConverter;
+            binaryContentType = config.binaryContentType;
+            deferredConcurrency = config.deferredConcurrency;
+            connectivity = config.connectivity;
+        }
+
+        /**
+         * 连接池
+         * @param maxIdleConnections   最多保留的空闲连接数
+         * @param keepAlive            空闲连接保留时间
+         */
+        public Builder connectionPool(int maxIdleConnections, long keepAlive, TimeUnit unit) {
+            if (maxIdleConnections < 0 || keepAlive <= 0) {
+                throw new IllegalArgumentException("invalid connection pool: " + maxIdleConnections + ", " + keepAlive);
+            }
+            this.maxIdleConnections = maxIdleConnections;
+            this.keepAliveMillis = unit.toMillis(keepAlive);
+            return this;
+        }
+
+        /**
+         * 协议优先级
+         * 默认 h2 + http/1.1，TLS握手时协商
+         * 明文服务器确定支持h2c的时候只传Protocol.H2_PRIOR_KNOWLEDGE，跳过协商直接用HTTP/2
+         * 只传Protocol.HTTP_1_1则禁用HTTP/2
+         */
+        public Builder protocols(Protocol... protocols) {
+            List<Protocol> list = new ArrayList<>(Arrays.asList(protocols));
+            if (!list.contains(Protocol.H2_PRIOR_KNOWLEDGE) && !list.contains(Protocol.HTTP_1_1)) {
+                throw new IllegalArgumentException("protocols must contain h2_prior_knowledge or http/1.1: " + list);
+            }
+            if (list.contains(Protocol.H2_PRIOR_KNOWLEDGE) && list.size() > 1) {
+                throw new IllegalArgumentException("protocols containing h2_prior_knowledge cannot use other protocols: " + list);
+            }
+            this.protocols = Collections.unmodifiableList(list);
+            return this;
+        }
+
+        /**
+         * socket缓冲区大小(字节)，0表示使用系统默认
+         * 大文件下载、高延迟网络下调大接收缓冲区可以提高吞吐
+         */
+        public Builder socketBufferSize(int sendBufferSize, int receiveBufferSize) {
+            if (sendBufferSize < 0 || receiveBufferSize < 0) {
+                throw new IllegalArgumentException("invalid socket buffer size: " + sendBufferSize + ", " + receiveBufferSize);
+            }
+            this.sendBufferSize = sendBufferSize;
+            this.receiveBufferSize = receiveBufferSize;
+            return this;
+        }
+
+        public Builder connectTimeout(long timeout, TimeUnit unit) {
+            this.connectTimeoutMillis = unit.toMillis(timeout);
+            return this;
+        }
+
+        public Builder readTimeout(long timeout, TimeUnit unit) {
+            this.readTimeoutMillis = unit.toMillis(timeout);
+            return this;
+        }
+
+        public Builder writeTimeout(long timeout, TimeUnit unit) {
+            this.writeTimeoutMillis = unit.toMillis(timeout);
+            return this;
+        }
+
+        //磁盘缓存大小(字节)
+        public Builder cacheSize(long cacheSize) {
+            this.cacheSize = cacheSize;
+            return this;
+        }
+
+        /**
+         * DNS 默认使用系统解析器加DnsCache缓存
+         * 需要HttpDNS或者固定地址时传自己的DnsCache，不想要缓存时传Dns.SYSTEM
+         */
+        public Builder dns(Dns dns) {
+            this.dns = dns;
+            return this;
+        }
+
+        /**
+         * 网络请求线程池
+         * @param threads      线程数
+         * @param queueLimit   排队数上限，达到上限后拒绝NORMAL请求，达到一半拒绝BACKGROUND请求
+         */
+        public Builder scheduler(int threads, int queueLimit) {
+            if (threads < 1 || queueLimit < 1) {
+                throw new IllegalArgumentException("invalid scheduler: " + threads + ", " + queueLimit);
+            }
+            this.schedulerThreads = threads;
+            this.schedulerQueueLimit = queueLimit;
+            return this;
+        }
+
+        /**
+         * 失败重试 规则见RetryPolicy
+         * @param maxRetries   单个请求最多重试次数，0表示不重试
+         * @param baseDelay    第一次重试的退避上限
+         * @param maxDelay     退避上限
+         */
+        public Builder retry(int maxRetries, long baseDelay, long maxDelay, TimeUnit unit) {
+            if (maxRetries < 0 || baseDelay <= 0 || maxDelay < baseDelay) {
+                throw new IllegalArgumentException("invalid retry: " + maxRetries + ", " + baseDelay + ", " + maxDelay);
+            }
+            this.maxRetries = maxRetries;
+            this.retryBaseDelayMillis = unit.toMillis(baseDelay);
+            this.retryMaxDelayMillis = unit.toMillis(maxDelay);
+            return this;
+        }
+
+        /**
+         * 按域名熔断 规则见CircuitBreaker
+         * @param failureRate    失败比例阈值 0~1，大于1表示不按失败率熔断
+         * @param slowCallRate   慢请求比例阈值 0~1，大于1表示不按慢请求熔断
+         * @param slowCall       超过这个耗时算慢请求
+         * @param openDuration   熔断多久之后放探测请求
+         */
+        public Builder circuitBreaker(float failureRate, float slowCallRate, long slowCall, long openDuration, TimeUnit unit) {
+            if (failureRate <= 0 || slowCallRate <= 0 || slowCall <= 0 || openDuration <= 0) {
+                throw new IllegalArgumentException("invalid circuit breaker: " + failureRate + ", " + slowCallRate
+                        + ", " + slowCall + ", " + openDuration);
+            }
+            this.circuitFailureRate = failureRate;
+            this.circuitSlowCallRate = slowCallRate;
+            this.circuitSlowCallMillis = unit.toMillis(slowCall);
+            this.circuitOpenMillis = unit.toMillis(openDuration);
+            return this;
+        }
+
+        /**
+         * 按接口自动计算整体超时 规则见AdaptiveTimeout
+         * @param percentile   取耗时的哪个分位数 0~1
+         * @param multiplier   分位数乘以多少倍作为超时
+         * @param floor        超时下限
+         * @param ceiling      超时上限
+         */
+        public Builder adaptiveTimeout(float percentile, float multiplier, long floor, long ceiling, TimeUnit unit) {
+            if (percentile <= 0 || percentile > 1 || multiplier < 1 || floor <= 0 || ceiling < floor) {
+                throw new IllegalArgumentException("invalid adaptive timeout: " + percentile + ", " + multiplier
+                        + ", " + floor + ", " + ceiling);
+            }
+            this.timeoutPercentile = percentile;
+            this.timeoutMultiplier = multiplier;
+            this.timeoutFloorMillis = unit.toMillis(floor);
+            this.timeoutCeilingMillis = unit.toMillis(ceiling);
+            return this;
+        }
+
+        /**
+         * 主线程回调按帧合并 默认关闭，每个请求的结果单独post到主线程
+         * 开启后同一帧内完成的请求在下一帧一起回调，见BatchingScheduler
+         * @param clock   new ChoreographerFrameClock() 跟随屏幕刷新
+         *                new TickFrameClock(AndroidSchedulers.mainThread(), 32, TimeUnit.MILLISECONDS) 固定间隔
+         *                null 关闭
+         */
+        public Builder batchDelivery(FrameClock clock) {
+            this.deliveryClock = clock;
+            return this;
+        }
+
+        /**
+         * 压缩请求体 默认关闭，要先确认服务器能解压请求体
+         * 开启后同时由框架解压gzip/deflate响应并统计省下的流量，见HttpCenter.getCompressionStats
+         * 个别接口不压缩时标记@NoCompress
+         * @param encoding    压缩格式，null 关闭
+         * @param threshold   请求体长度已知且小于这个值(字节)时不压缩
+         */
+        public Builder compression(Compression.Encoding encoding, long threshold) {
+            if (threshold < 0) {
+                throw new IllegalArgumentException("threshold < 0: " + threshold);
+            }
+            this.compressionEncoding = encoding;
+            this.compressionThreshold = threshold;
+            return this;
+        }
+
+        /**
+         * 标记了@Binary的接口使用的转换器 默认是CborConverterFactory
+         * 换成Protobuf等其他格式时，HttpResponse的外层结构要由转换器自己处理
+         * @param factory       转换器
+         * @param contentType   对应的Content-Type，用于Accept，例如application/x-protobuf
+         */
+        public Builder binaryConverter(Converter.Factory factory, String contentType) {
+            if (factory == null || contentType == null) {
+                throw new IllegalArgumentException("binary converter and content type must not be null");
+            }
+            this.binaryConverter = factory;
+            this.binaryContentType = contentType;
+            return this;
+        }
+
+        /**
+         * 离线队列 规则见DeferredQueue和@Deferrable
+         * @param maxConcurrency   网络恢复后最多同时重发几个接口
+         * @param connectivity     网络状态，null 使用系统的网络状态
+         */
+        public Builder deferredQueue(int maxConcurrency, Connectivity connectivity) {
+            if (maxConcurrency < 1) {
+                throw new IllegalArgumentException("maxConcurrency < 1: " + maxConcurrency);
+            }
+            this.deferredConcurrency = maxConcurrency;
+            this.connectivity = connectivity;
+            return this;
+        }
+
+        public NetFrameConfig build() {
+            return new NetFrameConfig(this);
+        }
+    }
+}
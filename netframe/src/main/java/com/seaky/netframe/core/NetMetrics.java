@@ -0,0 +1,152 @@
+package com.seaky.netframe.core;
+
+import com.google.gson.Gson;
+
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ *  请求各阶段耗时统计
+ *
+ *  按接口（ApiService.method）分别统计，每个阶段一个LatencyHistogram
+ *  网络阶段由MetricsEventListener记录，解析、结果分离、主线程回调由HttpFactory记录
+ *  线程池排队耗时由NetCallAdapterFactory在NetScheduler的线程里订阅时记录
+ *
+ *  Created by Seaky
+ */
+
+public class NetMetrics {
+
+    public enum Phase {
+        //NetScheduler排队 从提交到线程池到开始执行，不经过HttpFactory.request的请求没有
+        QUEUE,
+        //从OkHttp开始执行到开始DNS/建连/复用连接，主要是拦截器（熔断、缓存、压缩）的耗时
+        INTERCEPTORS,
+        DNS,
+        //TCP连接
+        CONNECT,
+        TLS,
+        //写请求头和请求体
+        REQUEST,
+        //请求写完到收到响应头
+        FIRST_BYTE,
+        //读响应体
+        BODY,
+        //Gson解析
+        DECODE,
+        //ServerResultFunction结果分离
+        MAPPING,
+        //ProcessObserver.onProcess后台处理
+        PROCESS,
+        //从结果分离（或后台处理）完到主线程回调结束，包括切换线程的等待
+        DELIVERY
+    }
+
+    private static final int PHASES = Phase.values().length;
+
+    //当前线程正在处理的接口 解析和结果分离和网络请求在同一个线程，靠它知道是哪个接口
+    private static final ThreadLocal<String> sCurrent = new ThreadLocal<>();
+
+    private final ConcurrentHashMap<String, LatencyHistogram[]> mEndpoints = new ConcurrentHashMap<>();
+
+    public void record(String endpoint, Phase phase, long millis) {
+        if (endpoint == null || millis < 0) {
+            return;
+        }
+        LatencyHistogram[] histograms = mEndpoints.get(endpoint);
+        if (histograms == null) {
+            histograms = new LatencyHistogram[PHASES];
+            for (int i = 0; i < PHASES; i++) {
+                histograms[i] = new LatencyHistogram();
+            }
+            LatencyHistogram[] previous = mEndpoints.putIfAbsent(endpoint, histograms);
+            if (previous != null) {
+                histograms = previous;
+            }
+        }
+        histograms[phase.ordinal()].record(millis);
+    }
+
+    static void setCurrent(String endpoint) {
+        sCurrent.set(endpoint);
+    }
+
+    static String current() {
+        return sCurrent.get();
+    }
+
+    static void clearCurrent() {
+        sCurrent.remove();
+    }
+
+    /**
+     * 快照 接口 -> 阶段 -> 统计，没有数据的阶段不包含
+     */
+    public Map<String, Map<Phase, PhaseStats>> snapshot() {
+        Map<String, Map<Phase, PhaseStats>> snapshot = new HashMap<>();
+        for (Map.Entry<String, LatencyHistogram[]> entry : mEndpoints.entrySet()) {
+            Map<Phase, PhaseStats> phases = new EnumMap<>(Phase.class);
+            for (Phase phase : Phase.values()) {
+                LatencyHistogram histogram = entry.getValue()[phase.ordinal()];
+                if (histogram.getCount() > 0) {
+                    phases.put(phase, new PhaseStats(histogram.getCount(), histogram.percentile(0.5f),
+                            histogram.percentile(0.9f), histogram.percentile(0.99f)));
+                }
+            }
+            snapshot.put(entry.getKey(), phases);
+        }
+        return snapshot;
+    }
+
+    /**
+     * 导出成json 方便上报
+     */
+    public String export() {
+        return new Gson().toJson(snapshot());
+    }
+
+    public void clear() {
+        mEndpoints.clear();
+    }
+
+    /**
+     * 一个阶段的统计
+     */
+    public static class PhaseStats {
+        private final long samples;
+        private final long p50;
+        private final long p90;
+        private final long p99;
+
+        PhaseStats(long samples, long p50, long p90, long p99) {
+            this.samples = samples;
+            this.p50 = p50;
+            this.p90 = p90;
+            this.p99 = p99;
+        }
+
+        //样本数 旧数据会衰减，不等于总次数
+        public long getSamples() {
+            return samples;
+        }
+
+        public long getP50() {
+            return p50;
+        }
+
+        public long getP90() {
+            return p90;
+        }
+
+        public long getP99() {
+            return p99;
+        }
+
+        @Override
+        public String toString() {
+            return "{samples=" + samples + ", p50=" + p50 + "ms, p90=" + p90 + "ms, p99=" + p99 + "ms}";
+        }
+    }
+}
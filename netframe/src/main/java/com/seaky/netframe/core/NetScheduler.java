@@ -0,0 +1,210 @@
+package com.seaky.netframe.core;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import io.reactivex.Scheduler;
+import io.reactivex.annotations.NonNull;
+import io.reactivex.schedulers.Schedulers;
+
+/**
+ *  网络请求线程池
+ *
+ *  Schedulers.io()没有线程数上限，一堆后台同步同时发出去会开几十个线程，
+ *  用户正在等的请求反而排在后面
+ *  这里用固定大小的线程池，排队的请求按优先级出队：
+ *  INTERACTIVE  用户正在等结果的请求，排在最前面，不会被拒绝
+ *  NORMAL       普通请求，排队数达到上限时拒绝
+ *  BACKGROUND   后台同步、预加载，排队数达到上限的一半就拒绝，给前两种留位置
+ *  被拒绝的请求回调onFailure，错误码ExceptionEngine.REJECTED_ERROR
+ *
+ *  Created by Seaky
+ */
+
+public class NetScheduler {
+
+    public static final int DEFAULT_THREADS = 8;
+    public static final int DEFAULT_QUEUE_LIMIT = 64;
+
+    public enum Priority {
+        INTERACTIVE, NORMAL, BACKGROUND
+    }
+
+    private final ThreadPoolExecutor mExecutor;
+    private final int mQueueLimit;
+    private final Scheduler[] mSchedulers = new Scheduler[Priority.values().length];
+    private final AtomicLong mSequence = new AtomicLong();
+    //当前线程正在执行的任务的优先级
+    private final ThreadLocal<Priority> mCurrent = new ThreadLocal<>();
+    //当前线程正在执行的任务的排队耗时
+    private final ThreadLocal<Long> mCurrentWait = new ThreadLocal<>();
+
+    //按优先级统计 执行数、排队总耗时、最长排队耗时、拒绝数
+    private final AtomicLongArray mExecutedCount = new AtomicLongArray(Priority.values().length);
+    private final AtomicLongArray mWaitMillis = new AtomicLongArray(Priority.values().length);
+    private final AtomicLongArray mMaxWaitMillis = new AtomicLongArray(Priority.values().length);
+    private final AtomicLongArray mRejectedCount = new AtomicLongArray(Priority.values().length);
+
+    public NetScheduler(int threads, int queueLimit) {
+        mQueueLimit = Math.max(1, queueLimit);
+        mExecutor = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS,
+                new PriorityBlockingQueue<Runnable>(), new NetThreadFactory());
+        mExecutor.allowCoreThreadTimeOut(true);
+        for (Priority priority : Priority.values()) {
+            mSchedulers[priority.ordinal()] = Schedulers.from(new LaneExecutor(priority));
+        }
+    }
+
+    /**
+     * 对应优先级的Scheduler
+     */
+    public Scheduler get(Priority priority) {
+        return mSchedulers[priority.ordinal()];
+    }
+
+    /**
+     * 当前线程所在通道的Scheduler 不是在这个线程池里时返回null
+     * 重试等后续操作用它回到原来的通道
+     */
+    public Scheduler current() {
+        Priority priority = mCurrent.get();
+        return priority == null ? null : get(priority);
+    }
+
+    /**
+     * 当前线程正在执行的任务在线程池里排队的时间(ms) 不是在这个线程池里时返回-1
+     * NetCallAdapterFactory在订阅时用它按接口记录排队耗时
+     */
+    public long currentWaitMillis() {
+        Long wait = mCurrentWait.get();
+        return wait == null ? -1 : wait;
+    }
+
+    /**
+     * 准入检查 排队数达到上限时拒绝低优先级的请求
+     * @return false表示应该拒绝
+     */
+    public boolean admit(Priority priority) {
+        int queued = mExecutor.getQueue().size();
+        boolean admitted;
+        switch (priority) {
+            case INTERACTIVE:
+                admitted = true;
+                break;
+            case NORMAL:
+                admitted = queued < mQueueLimit;
+                break;
+            case BACKGROUND:
+            default:
+                admitted = queued < mQueueLimit / 2;
+                break;
+        }
+        if (!admitted) {
+            mRejectedCount.incrementAndGet(priority.ordinal());
+        }
+        return admitted;
+    }
+
+    /**
+     * 统计快照
+     */
+    public SchedulerStats getStats() {
+        int lanes = Priority.values().length;
+        long[] executed = new long[lanes];
+        long[] averageWait = new long[lanes];
+        long[] maxWait = new long[lanes];
+        long[] rejected = new long[lanes];
+        for (int i = 0; i < lanes; i++) {
+            executed[i] = mExecutedCount.get(i);
+            averageWait[i] = executed[i] == 0 ? 0 : mWaitMillis.get(i) / executed[i];
+            maxWait[i] = mMaxWaitMillis.get(i);
+            rejected[i] = mRejectedCount.get(i);
+        }
+        return new SchedulerStats(mExecutor.getActiveCount(), mExecutor.getPoolSize(), mExecutor.getMaximumPoolSize(),
+                mExecutor.getQueue().size(), mQueueLimit, executed, averageWait, maxWait, rejected);
+    }
+
+    private void record(Priority priority, long waitMillis) {
+        int lane = priority.ordinal();
+        mExecutedCount.incrementAndGet(lane);
+        mWaitMillis.addAndGet(lane, waitMillis);
+        long max;
+        do {
+            max = mMaxWaitMillis.get(lane);
+        } while (waitMillis > max && !mMaxWaitMillis.compareAndSet(lane, max, waitMillis));
+    }
+
+    /**
+     * 一个优先级通道 提交的任务带上优先级进入共用的线程池
+     */
+    private class LaneExecutor implements Executor {
+
+        private final Priority mPriority;
+
+        LaneExecutor(Priority priority) {
+            mPriority = priority;
+        }
+
+        @Override
+        public void execute(@NonNull Runnable command) {
+            mExecutor.execute(new PriorityTask(command, mPriority, mSequence.getAndIncrement()));
+        }
+    }
+
+    /**
+     * 按优先级排序，同优先级先来先执行
+     */
+    private class PriorityTask implements Runnable, Comparable<PriorityTask> {
+
+        private final Runnable mCommand;
+        private final Priority mPriority;
+        private final long mSequence;
+        private final long mEnqueueTime = System.nanoTime();
+
+        PriorityTask(Runnable command, Priority priority, long sequence) {
+            mCommand = command;
+            mPriority = priority;
+            mSequence = sequence;
+        }
+
+        @Override
+        public void run() {
+            long wait = (System.nanoTime() - mEnqueueTime) / 1000000;
+            record(mPriority, wait);
+            mCurrent.set(mPriority);
+            mCurrentWait.set(wait);
+            try {
+                mCommand.run();
+            } finally {
+                mCurrent.remove();
+                mCurrentWait.remove();
+            }
+        }
+
+        @Override
+        public int compareTo(PriorityTask other) {
+            if (mPriority != other.mPriority) {
+                return mPriority.ordinal() < other.mPriority.ordinal() ? -1 : 1;
+            }
+            return mSequence < other.mSequence ? -1 : (mSequence == other.mSequence ? 0 : 1);
+        }
+    }
+
+    private static class NetThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger mCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(@NonNull Runnable runnable) {
+            Thread thread = new Thread(runnable, "NetFrame-" + mCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
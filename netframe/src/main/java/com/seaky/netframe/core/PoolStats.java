@@ -0,0 +1,86 @@
+package com.seaky.netframe.core;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ *  请求调度和连接池使用情况快照
+ *  请求都在NetScheduler的线程里同步执行，activeThreads一直等于maxThreads、queuedTasks长期大于0
+ *  说明线程不够用，调大NetFrameConfig.scheduler；按getRunningByHost看是不是集中在某个域名
+ *
+ *  Created by Seaky
+ */
+
+public class PoolStats {
+
+    private final int runningCalls;
+    private final Map<String, Integer> runningByHost;
+    private final int activeThreads;
+    private final int maxThreads;
+    private final int queuedTasks;
+    private final int queueLimit;
+    private final int connectionCount;
+    private final int idleConnectionCount;
+
+    PoolStats(int runningCalls, Map<String, Integer> runningByHost, int activeThreads, int maxThreads,
+              int queuedTasks, int queueLimit, int connectionCount, int idleConnectionCount) {
+        this.runningCalls = runningCalls;
+        this.runningByHost = Collections.unmodifiableMap(runningByHost);
+        this.activeThreads = activeThreads;
+        this.maxThreads = maxThreads;
+        this.queuedTasks = queuedTasks;
+        this.queueLimit = queueLimit;
+        this.connectionCount = connectionCount;
+        this.idleConnectionCount = idleConnectionCount;
+    }
+
+    //正在执行的请求数 包括下载、上传
+    public int getRunningCalls() {
+        return runningCalls;
+    }
+
+    //域名 -> 正在执行的请求数
+    public Map<String, Integer> getRunningByHost() {
+        return runningByHost;
+    }
+
+    //网络线程池中正在执行请求的线程数
+    public int getActiveThreads() {
+        return activeThreads;
+    }
+
+    public int getMaxThreads() {
+        return maxThreads;
+    }
+
+    //在网络线程池中排队的请求数
+    public int getQueuedTasks() {
+        return queuedTasks;
+    }
+
+    public int getQueueLimit() {
+        return queueLimit;
+    }
+
+    //连接池中的连接总数
+    public int getConnectionCount() {
+        return connectionCount;
+    }
+
+    //其中空闲的连接数
+    public int getIdleConnectionCount() {
+        return idleConnectionCount;
+    }
+
+    @Override
+    public String toString() {
+        return "PoolStats{running=" + runningCalls
+                + ", runningByHost=" + runningByHost
+                + ", activeThreads=" + activeThreads
+                + ", maxThreads=" + maxThreads
+                + ", queued=" + queuedTasks
+                + ", queueLimit=" + queueLimit
+                + ", connections=" + connectionCount
+                + ", idleConnections=" + idleConnectionCount + "}";
+    }
+}
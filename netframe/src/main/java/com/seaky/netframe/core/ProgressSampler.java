@@ -0,0 +1,128 @@
+package com.seaky.netframe.core;
+
+/**
+ *  进度采样
+ *
+ *  网速很快的时候每写8K就回调一次进度，一秒几千次切主线程，UI根本刷不过来
+ *  这里按时间和字节增量合并进度：
+ *  距离上次通知不到interval不通知；
+ *  到了interval还要进度涨够step（总大小的百分比）才通知，
+ *  涨得太慢的话最多每秒通知一次，保证网速和剩余时间能刷新
+ *
+ *  网速按最近几秒的滑动窗口计算，不会因为开头的慢启动一直偏低
+ *
+ *  Created by Seaky
+ */
+
+public class ProgressSampler {
+
+    //默认最多100ms通知一次
+    public static final long DEFAULT_INTERVAL = 100;
+    //默认进度每涨1%通知一次
+    public static final float DEFAULT_STEP = 0.01f;
+
+    //进度涨得慢的时候，最长隔这么久也要通知一次
+    private static final long HEARTBEAT = 1000;
+    //计算网速的滑动窗口
+    private static final long WINDOW = 3000;
+    private static final int MAX_SAMPLES = 30;
+
+    private final long mInterval;
+    private final float mStep;
+
+    //滑动窗口的环形缓冲 时间(ms)和对应的字节数
+    private final long[] mTimes = new long[MAX_SAMPLES];
+    private final long[] mBytes = new long[MAX_SAMPLES];
+    private int mHead = -1;
+    private int mSize;
+    //最新的进度
+    private long mLatestTime;
+    private long mLatestBytes;
+
+    private long mLastNotifyTime = -1;
+    private long mLastNotifyBytes;
+
+    public ProgressSampler() {
+        this(DEFAULT_INTERVAL, DEFAULT_STEP);
+    }
+
+    public ProgressSampler(long interval, float step) {
+        mInterval = interval;
+        mStep = step;
+    }
+
+    /**
+     * 记录一次进度
+     * @param bytes   已完成字节数
+     * @param total   总字节数，未知时传-1
+     * @param now     当前时间(ms)，单调递增
+     * @return        需要通知进度时返回true
+     */
+    public synchronized boolean update(long bytes, long total, long now) {
+        record(bytes, now);
+        if (mLastNotifyTime < 0) {
+            //第一次直接通知
+            notifyAt(bytes, now);
+            return true;
+        }
+        long elapsed = now - mLastNotifyTime;
+        if (elapsed < mInterval) {
+            return false;
+        }
+        boolean stepReached = total <= 0 || bytes - mLastNotifyBytes >= (long) (total * mStep);
+        if (stepReached || elapsed >= HEARTBEAT) {
+            notifyAt(bytes, now);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 滑动窗口内的平均速度 字节/秒
+     */
+    public synchronized long getSpeed() {
+        if (mSize == 0) {
+            return 0;
+        }
+        int oldest = (mHead - mSize + 1 + MAX_SAMPLES) % MAX_SAMPLES;
+        long time = mLatestTime - mTimes[oldest];
+        if (time <= 0) {
+            return 0;
+        }
+        return (mLatestBytes - mBytes[oldest]) * 1000 / time;
+    }
+
+    /**
+     * 按当前速度估算的剩余时间(ms)，无法估算时返回-1
+     */
+    public synchronized long getEta(long bytes, long total) {
+        long speed = getSpeed();
+        if (total <= 0 || speed <= 0) {
+            return -1;
+        }
+        return Math.max(0, total - bytes) * 1000 / speed;
+    }
+
+    private void notifyAt(long bytes, long now) {
+        mLastNotifyTime = now;
+        mLastNotifyBytes = bytes;
+    }
+
+    //每隔 WINDOW/MAX_SAMPLES 记一个采样点，丢掉窗口外的点
+    private void record(long bytes, long now) {
+        mLatestTime = now;
+        mLatestBytes = bytes;
+        if (mSize > 0 && now - mTimes[mHead] < WINDOW / MAX_SAMPLES) {
+            return;
+        }
+        mHead = (mHead + 1) % MAX_SAMPLES;
+        mTimes[mHead] = now;
+        mBytes[mHead] = bytes;
+        if (mSize < MAX_SAMPLES) {
+            mSize++;
+        }
+        while (mSize > 1 && now - mTimes[(mHead - mSize + 1 + MAX_SAMPLES) % MAX_SAMPLES] > WINDOW) {
+            mSize--;
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.seaky.netframe.core;
+
+import com.seaky.netframe.build.HttpResponse;
+import com.seaky.netframe.build.ProcessObserver;
+
+import io.reactivex.annotations.NonNull;
+import io.reactivex.functions.Function;
+
+/**
+ *  一次request的结果分离、后台处理和主线程回调耗时
+ *  每次request新建一个，结果分离时记下是哪个接口，主线程回调完再用同一个接口记录
+ *
+ *  Created by Seaky
+ */
+
+class RequestTrace implements Function<HttpResponse<?>, Object> {
+
+    private final NetMetrics mMetrics;
+    private final Function<HttpResponse<?>, ?> mMapper;
+    private volatile String mEndpoint;
+    private volatile long mMappedAt;
+
+    RequestTrace(NetMetrics metrics, Function<HttpResponse<?>, ?> mapper) {
+        mMetrics = metrics;
+        mMapper = mapper;
+    }
+
+    @Override
+    public Object apply(@NonNull HttpResponse<?> response) throws Exception {
+        //和网络请求在同一个线程，当前接口由NetCallAdapterFactory设置
+        mEndpoint = NetMetrics.current();
+        long start = System.nanoTime();
+        Object result = mMapper.apply(response);
+        mMappedAt = System.nanoTime();
+        mMetrics.record(mEndpoint, NetMetrics.Phase.MAPPING, (mMappedAt - start) / 1000000);
+        return result;
+    }
+
+    //ProcessObserver的后台处理 DELIVERY从处理完开始算
+    <T, R> R process(ProcessObserver<T, R> processor, T value) throws Exception {
+        long start = System.nanoTime();
+        R result = processor.process(value);
+        mMappedAt = System.nanoTime();
+        mMetrics.record(mEndpoint, NetMetrics.Phase.PROCESS, (mMappedAt - start) / 1000000);
+        return result;
+    }
+
+    //主线程回调结束
+    void onDelivered() {
+        if (mMappedAt != 0) {
+            mMetrics.record(mEndpoint, NetMetrics.Phase.DELIVERY, (System.nanoTime() - mMappedAt) / 1000000);
+        }
+    }
+}
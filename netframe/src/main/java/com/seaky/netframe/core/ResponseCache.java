@@ -0,0 +1,176 @@
+package com.seaky.netframe.core;
+
+import android.annotation.SuppressLint;
+
+import com.seaky.netframe.annotation.CachePolicy;
+import com.seaky.netframe.build.HttpResponse;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import io.reactivex.Observable;
+import io.reactivex.ObservableSource;
+import io.reactivex.functions.Function;
+import io.reactivex.schedulers.Schedulers;
+import okhttp3.Cache;
+
+/**
+ *  解析结果的内存缓存
+ *
+ *  按请求（方法 + 地址 + header）缓存解析好的对象，LRU淘汰，条数有上限
+ *  只缓存成功的结果，HttpResponse的status不是成功码的不缓存
+ *  具体策略见CachePolicy
+ *
+ *  Created by Seaky
+ */
+
+public class ResponseCache {
+
+    public static final int DEFAULT_MAX_ENTRIES = 64;
+
+    private final int mMaxEntries;
+    private final LinkedHashMap<String, Entry> mEntries = new LinkedHashMap<>(16, 0.75f, true);
+    //正在后台刷新的key，避免重复刷新
+    private final Set<String> mRevalidating = new HashSet<>();
+
+    private long mHitCount;
+    private long mStaleHitCount;
+    private long mMissCount;
+    private long mEvictionCount;
+
+    public ResponseCache(int maxEntries) {
+        mMaxEntries = Math.max(1, maxEntries);
+    }
+
+    /**
+     * 按缓存策略包装网络请求
+     * @param key       请求的key
+     * @param policy    缓存策略
+     * @param network   网络请求
+     */
+    <T> Observable<T> apply(String key, CachePolicy policy, Observable<T> network) {
+        long maxAge = policy.maxAge() * 1000;
+        Observable<T> fetch = network.doOnNext(value -> put(key, value));
+        switch (policy.mode()) {
+            case NETWORK_FIRST:
+                return fetch.onErrorResumeNext(new Function<Throwable, ObservableSource<T>>() {
+                    @Override
+                    public ObservableSource<T> apply(Throwable throwable) {
+                        T cached = get(key, Long.MAX_VALUE);
+                        if (cached != null) {
+                            count(null, cached);
+                        }
+                        return cached != null ? Observable.just(cached) : Observable.<T>error(throwable);
+                    }
+                });
+            case STALE_WHILE_REVALIDATE:
+                return Observable.defer(() -> {
+                    T fresh = get(key, maxAge);
+                    T stale = fresh == null ? get(key, Long.MAX_VALUE) : null;
+                    count(fresh, stale);
+                    if (fresh != null) {
+                        return Observable.just(fresh);
+                    }
+                    if (stale == null) {
+                        return fetch;
+                    }
+                    revalidate(key, fetch);
+                    return Observable.just(stale);
+                });
+            case CACHE_FIRST:
+            default:
+                return Observable.defer(() -> {
+                    T fresh = get(key, maxAge);
+                    count(fresh, null);
+                    return fresh != null ? Observable.just(fresh) : fetch;
+                });
+        }
+    }
+
+    //后台刷新缓存 同一个key同时只刷新一次
+    @SuppressLint("CheckResult")
+    private <T> void revalidate(String key, Observable<T> fetch) {
+        synchronized (this) {
+            if (!mRevalidating.add(key)) {
+                return;
+            }
+        }
+        fetch.subscribeOn(Schedulers.io())
+                .doFinally(() -> {
+                    synchronized (ResponseCache.this) {
+                        mRevalidating.remove(key);
+                    }
+                })
+                .subscribe(value -> {}, throwable -> {});
+    }
+
+    /**
+     * 读取缓存
+     * @param maxAge   可以接受的最大缓存时间(ms)，Long.MAX_VALUE表示过期数据也要
+     */
+    @SuppressWarnings("unchecked")
+    private synchronized <T> T get(String key, long maxAge) {
+        Entry entry = mEntries.get(key);
+        if (entry == null || now() - entry.time > maxAge) {
+            return null;
+        }
+        return (T) entry.value;
+    }
+
+    //统计 命中/命中过期数据/未命中
+    private synchronized void count(Object fresh, Object stale) {
+        if (fresh != null) {
+            mHitCount++;
+        } else if (stale != null) {
+            mStaleHitCount++;
+        } else {
+            mMissCount++;
+        }
+    }
+
+    private synchronized void put(String key, Object value) {
+        if (value instanceof HttpResponse && ((HttpResponse<?>) value).getCode() != HttpResponse.SUCCESS_CODE) {
+            return;
+        }
+        mEntries.put(key, new Entry(value, now()));
+        Iterator<Map.Entry<String, Entry>> iterator = mEntries.entrySet().iterator();
+        while (mEntries.size() > mMaxEntries && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+            mEvictionCount++;
+        }
+    }
+
+    public synchronized void clear() {
+        mEntries.clear();
+    }
+
+    /**
+     * 统计快照
+     * @param disk   磁盘缓存，没有开启时传null
+     */
+    synchronized CacheStats getStats(Cache disk) {
+        return new CacheStats(mHitCount, mStaleHitCount, mMissCount, mEvictionCount, mEntries.size(),
+                disk == null ? 0 : disk.requestCount(),
+                disk == null ? 0 : disk.hitCount(),
+                disk == null ? 0 : disk.networkCount());
+    }
+
+    //单调时钟(ms)
+    long now() {
+        return System.nanoTime() / 1000000;
+    }
+
+    private static class Entry {
+        final Object value;
+        final long time;
+
+        Entry(Object value, long time) {
+            this.value = value;
+            this.time = time;
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package com.seaky.netframe.core;
+
+import com.seaky.netframe.exception.ExceptionEngine;
+
+import java.util.Date;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import retrofit2.HttpException;
+import retrofit2.Response;
+
+/**
+ *  重试策略
+ *
+ *  1.哪些错误重试：按ExceptionEngine的分类
+ *    CONNECT_ERROR     连接失败，请求没有发出去，任何方法都可以重试
+ *    TIME_OUT_ERROR    超时，只重试幂等方法
+ *    408/429/502/503/504  只重试幂等方法，服务器给了Retry-After的按它等待
+ *  2.等多久：指数退避加全抖动 random(0, min(maxDelay, baseDelay * 2^n))，避免所有客户端同一时刻重试
+ *  3.重试预算：全局令牌桶，每次重试消耗一个令牌，每次成功补充tokenRatio个，
+ *    服务器整体故障时令牌很快用完，不再重试，避免重试把流量放大几倍
+ *
+ *  Created by Seaky
+ */
+
+public class RetryPolicy {
+
+    public static final int DEFAULT_MAX_RETRIES = 2;
+    public static final long DEFAULT_BASE_DELAY = 200;
+    public static final long DEFAULT_MAX_DELAY = 5000;
+    //令牌桶容量和每次成功补充的令牌数 成功率低于1/(1+ratio)时预算会耗尽
+    private static final int MAX_TOKENS = 10;
+    private static final float TOKEN_RATIO = 0.1f;
+    //令牌按千分之一计数
+    private static final int TOKEN = 1000;
+
+    private static final Random sRandom = new Random();
+
+    private final int mMaxRetries;
+    private final long mBaseDelay;
+    private final long mMaxDelay;
+    private final AtomicInteger mTokens = new AtomicInteger(MAX_TOKENS * TOKEN);
+
+    private final AtomicLong mRetryCount = new AtomicLong();
+    private final AtomicLong mBudgetExhaustedCount = new AtomicLong();
+
+    /**
+     * @param maxRetries   单个请求最多重试次数，0表示不重试
+     * @param baseDelay    第一次重试的退避上限(ms)
+     * @param maxDelay     退避上限(ms)，Retry-After超过它的不再重试
+     */
+    public RetryPolicy(int maxRetries, long baseDelay, long maxDelay) {
+        mMaxRetries = Math.max(0, maxRetries);
+        mBaseDelay = Math.max(1, baseDelay);
+        mMaxDelay = Math.max(mBaseDelay, maxDelay);
+    }
+
+    /**
+     * 计算下一次重试前的等待时间
+     * @param throwable   本次失败的异常
+     * @param attempt     第几次重试，从1开始
+     * @param method      请求方法
+     * @return            等待时间(ms)，-1表示不重试
+     */
+    public long delayFor(Throwable throwable, int attempt, String method) {
+        if (attempt > mMaxRetries) {
+            return -1;
+        }
+        int code = ExceptionEngine.codeOf(throwable);
+        boolean idempotent = isIdempotent(method);
+        long retryAfter = -1;
+        switch (code) {
+            case ExceptionEngine.CONNECT_ERROR:
+                break;
+            case ExceptionEngine.TIME_OUT_ERROR:
+            case 408:
+            case 502:
+            case 504:
+                if (!idempotent) {
+                    return -1;
+                }
+                break;
+            case 429:
+            case 503:
+                if (!idempotent) {
+                    return -1;
+                }
+                retryAfter = retryAfter(throwable);
+                if (retryAfter > mMaxDelay) {
+                    //服务器要求等太久，不如直接失败
+                    return -1;
+                }
+                break;
+            default:
+                return -1;
+        }
+        if (!acquireToken()) {
+            mBudgetExhaustedCount.incrementAndGet();
+            return -1;
+        }
+        mRetryCount.incrementAndGet();
+        if (retryAfter >= 0) {
+            return retryAfter;
+        }
+        long ceiling = Math.min(mMaxDelay, mBaseDelay << Math.min(attempt - 1, 20));
+        return (long) (sRandom.nextDouble() * ceiling);
+    }
+
+    /**
+     * 请求成功 补充令牌
+     */
+    public void onSuccess() {
+        int add = (int) (TOKEN_RATIO * TOKEN);
+        int tokens;
+        do {
+            tokens = mTokens.get();
+            if (tokens >= MAX_TOKENS * TOKEN) {
+                return;
+            }
+        } while (!mTokens.compareAndSet(tokens, Math.min(MAX_TOKENS * TOKEN, tokens + add)));
+    }
+
+    private boolean acquireToken() {
+        int tokens;
+        do {
+            tokens = mTokens.get();
+            if (tokens < TOKEN) {
+                return false;
+            }
+        } while (!mTokens.compareAndSet(tokens, tokens - TOKEN));
+        return true;
+    }
+
+    //Retry-After 秒数或者HTTP日期，没有时返回-1
+    private static long retryAfter(Throwable throwable) {
+        if (!(throwable instanceof HttpException)) {
+            return -1;
+        }
+        Response<?> response = ((HttpException) throwable).response();
+        if (response == null) {
+            return -1;
+        }
+        String value = response.headers().get("Retry-After");
+        if (value == null) {
+            return -1;
+        }
+        try {
+            return TimeUnit.SECONDS.toMillis(Math.max(0, Long.parseLong(value.trim())));
+        } catch (NumberFormatException e) {
+            Date date = response.headers().getDate("Retry-After");
+            return date == null ? -1 : Math.max(0, date.getTime() - System.currentTimeMillis());
+        }
+    }
+
+    static boolean isIdempotent(String method) {
+        return "GET".equals(method) || "HEAD".equals(method) || "PUT".equals(method)
+                || "DELETE".equals(method) || "OPTIONS".equals(method);
+    }
+
+    //实际重试次数
+    public long getRetryCount() {
+        return mRetryCount.get();
+    }
+
+    //因为预算耗尽放弃的重试次数
+    public long getBudgetExhaustedCount() {
+        return mBudgetExhaustedCount.get();
+    }
+
+    //剩余令牌数
+    public float getBudget() {
+        return (float) mTokens.get() / TOKEN;
+    }
+}
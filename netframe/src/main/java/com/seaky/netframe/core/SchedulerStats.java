@@ -0,0 +1,90 @@
+package com.seaky.netframe.core;
+
+import java.util.Arrays;
+
+/**
+ *  网络线程池统计快照
+ *  按优先级统计的数组下标为NetScheduler.Priority.ordinal()
+ *
+ *  Created by Seaky
+ */
+
+public class SchedulerStats {
+
+    private final int activeThreads;
+    private final int poolSize;
+    private final int maxPoolSize;
+    private final int queueSize;
+    private final int queueLimit;
+    private final long[] executedCount;
+    private final long[] averageWaitMillis;
+    private final long[] maxWaitMillis;
+    private final long[] rejectedCount;
+
+    SchedulerStats(int activeThreads, int poolSize, int maxPoolSize, int queueSize, int queueLimit,
+                   long[] executedCount, long[] averageWaitMillis, long[] maxWaitMillis, long[] rejectedCount) {
+        this.activeThreads = activeThreads;
+        this.poolSize = poolSize;
+        this.maxPoolSize = maxPoolSize;
+        this.queueSize = queueSize;
+        this.queueLimit = queueLimit;
+        this.executedCount = executedCount;
+        this.averageWaitMillis = averageWaitMillis;
+        this.maxWaitMillis = maxWaitMillis;
+        this.rejectedCount = rejectedCount;
+    }
+
+    //正在执行任务的线程数
+    public int getActiveThreads() {
+        return activeThreads;
+    }
+
+    //当前线程数
+    public int getPoolSize() {
+        return poolSize;
+    }
+
+    public int getMaxPoolSize() {
+        return maxPoolSize;
+    }
+
+    //排队中的任务数
+    public int getQueueSize() {
+        return queueSize;
+    }
+
+    public int getQueueLimit() {
+        return queueLimit;
+    }
+
+    public long getExecutedCount(NetScheduler.Priority priority) {
+        return executedCount[priority.ordinal()];
+    }
+
+    //平均排队耗时(ms)
+    public long getAverageWaitMillis(NetScheduler.Priority priority) {
+        return averageWaitMillis[priority.ordinal()];
+    }
+
+    //最长排队耗时(ms)
+    public long getMaxWaitMillis(NetScheduler.Priority priority) {
+        return maxWaitMillis[priority.ordinal()];
+    }
+
+    public long getRejectedCount(NetScheduler.Priority priority) {
+        return rejectedCount[priority.ordinal()];
+    }
+
+    @Override
+    public String toString() {
+        return "SchedulerStats{active=" + activeThreads
+                + ", poolSize=" + poolSize
+                + ", maxPoolSize=" + maxPoolSize
+                + ", queue=" + queueSize
+                + ", queueLimit=" + queueLimit
+                + ", executed=" + Arrays.toString(executedCount)
+                + ", avgWait=" + Arrays.toString(averageWaitMillis)
+                + ", maxWait=" + Arrays.toString(maxWaitMillis)
+                + ", rejected=" + Arrays.toString(rejectedCount) + "}";
+    }
+}
@@ -0,0 +1,82 @@
+package com.seaky.netframe.core;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import io.reactivex.Observable;
+import okhttp3.Request;
+
+/**
+ *  相同请求合并
+ *
+ *  以 方法 + 地址 + header 作为key，同一个key正在请求中时，后来的订阅者直接加入这次请求
+ *  共享的请求用replay(1).refCount()：
+ *  加入时结果已经回来了也能拿到，最后一个订阅者取消时上游请求也一起取消
+ *  请求结束（成功、失败或取消）就从表里移除，之后的请求重新发起，不做缓存
+ *
+ *  只合并GET/HEAD这种幂等请求
+ *
+ *  Created by Seaky
+ */
+
+public class SingleFlightGroup {
+
+    private final Map<String, Observable<?>> mInFlight = new HashMap<>();
+    private final AtomicLong mRequestCount = new AtomicLong();
+    private final AtomicLong mSavedCount = new AtomicLong();
+
+    static boolean isIdempotent(Request request) {
+        return "GET".equals(request.method()) || "HEAD".equals(request.method());
+    }
+
+    static String keyOf(Request request) {
+        return request.method() + " " + request.url() + "\n" + request.headers();
+    }
+
+    /**
+     * 订阅时如果同一个key正在请求就加入，否则发起新的共享请求
+     */
+    @SuppressWarnings("unchecked")
+    <T> Observable<T> join(String key, Observable<T> upstream) {
+        return Observable.defer(() -> {
+            mRequestCount.incrementAndGet();
+            synchronized (mInFlight) {
+                Observable<T> shared = (Observable<T>) mInFlight.get(key);
+                if (shared != null) {
+                    mSavedCount.incrementAndGet();
+                    return shared;
+                }
+                AtomicReference<Observable<T>> self = new AtomicReference<>();
+                shared = upstream
+                        .doFinally(() -> {
+                            synchronized (mInFlight) {
+                                if (mInFlight.get(key) == self.get()) {
+                                    mInFlight.remove(key);
+                                }
+                            }
+                        })
+                        .replay(1)
+                        .refCount();
+                self.set(shared);
+                mInFlight.put(key, shared);
+                return shared;
+            }
+        });
+    }
+
+    /**
+     * 经过合并的请求总数
+     */
+    public long getRequestCount() {
+        return mRequestCount.get();
+    }
+
+    /**
+     * 加入已有请求、省掉的网络请求数
+     */
+    public long getSavedCount() {
+        return mSavedCount.get();
+    }
+}
@@ -0,0 +1,35 @@
+package com.seaky.netframe.core;
+
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.Scheduler;
+
+/**
+ *  固定间隔的帧时钟
+ *
+ *  回调对齐到间隔的整数倍时刻，而不是从第一次post开始计时，
+ *  连续的几批回调之间间隔稳定，不会因为到达时间不同而漂移
+ *  在主线程使用时传AndroidSchedulers.mainThread()
+ *
+ *  Created by Seaky
+ */
+
+public class TickFrameClock implements FrameClock {
+
+    private final Scheduler mScheduler;
+    private final long mIntervalMillis;
+
+    public TickFrameClock(Scheduler scheduler, long interval, TimeUnit unit) {
+        if (interval <= 0) {
+            throw new IllegalArgumentException("interval <= 0: " + interval);
+        }
+        mScheduler = scheduler;
+        mIntervalMillis = unit.toMillis(interval);
+    }
+
+    @Override
+    public void postFrameCallback(Runnable callback) {
+        long now = mScheduler.now(TimeUnit.MILLISECONDS);
+        mScheduler.scheduleDirect(callback, mIntervalMillis - now % mIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+}
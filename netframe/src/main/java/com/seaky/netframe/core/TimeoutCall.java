@@ -0,0 +1,121 @@
+package com.seaky.netframe.core;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Request;
+import okio.Timeout;
+import retrofit2.Call;
+import retrofit2.Callback;
+import retrofit2.Response;
+
+/**
+ *  给一次调用设置整体超时，并记录耗时
+ *  同步执行时标记当前接口，用于统计解析耗时
+ *  RxJava2的适配器每次订阅都会clone，clone出来的call同样带超时
+ *
+ *  Created by Seaky
+ */
+
+final class TimeoutCall<R> implements Call<R> {
+
+    private final Call<R> mDelegate;
+    private final AdaptiveTimeout mAdaptiveTimeout;
+    private final String mEndpoint;
+    //注解指定的超时(ms)，0表示自动计算
+    private final long mFixedTimeout;
+
+    TimeoutCall(Call<R> delegate, AdaptiveTimeout adaptiveTimeout, String endpoint, long fixedTimeout) {
+        mDelegate = delegate;
+        mAdaptiveTimeout = adaptiveTimeout;
+        mEndpoint = endpoint;
+        mFixedTimeout = fixedTimeout;
+    }
+
+    @Override
+    public Response<R> execute() throws IOException {
+        applyTimeout();
+        long start = System.nanoTime();
+        //解析在execute里同步执行，DecodeTimingConverterFactory靠它知道是哪个接口
+        NetMetrics.setCurrent(mEndpoint);
+        try {
+            Response<R> response = mDelegate.execute();
+            record(start);
+            return response;
+        } catch (InterruptedIOException e) {
+            //超时也要记下来，不然接口变慢之后超时永远不会变大
+            if (!mDelegate.isCanceled()) {
+                record(start);
+            }
+            throw e;
+        } finally {
+            NetMetrics.clearCurrent();
+        }
+    }
+
+    @Override
+    public void enqueue(Callback<R> callback) {
+        applyTimeout();
+        long start = System.nanoTime();
+        mDelegate.enqueue(new Callback<R>() {
+            @Override
+            public void onResponse(Call<R> call, Response<R> response) {
+                record(start);
+                callback.onResponse(TimeoutCall.this, response);
+            }
+
+            @Override
+            public void onFailure(Call<R> call, Throwable t) {
+                if (t instanceof InterruptedIOException && !call.isCanceled()) {
+                    record(start);
+                }
+                callback.onFailure(TimeoutCall.this, t);
+            }
+        });
+    }
+
+    private void applyTimeout() {
+        long timeout = mFixedTimeout > 0 ? mFixedTimeout : mAdaptiveTimeout.timeoutOf(mEndpoint);
+        if (timeout > 0) {
+            mDelegate.timeout().timeout(timeout, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void record(long start) {
+        if (mFixedTimeout == 0) {
+            mAdaptiveTimeout.record(mEndpoint, (System.nanoTime() - start) / 1000000);
+        }
+    }
+
+    @Override
+    public boolean isExecuted() {
+        return mDelegate.isExecuted();
+    }
+
+    @Override
+    public void cancel() {
+        mDelegate.cancel();
+    }
+
+    @Override
+    public boolean isCanceled() {
+        return mDelegate.isCanceled();
+    }
+
+    @SuppressWarnings("MethodDoesntCallSuperMethod")
+    @Override
+    public Call<R> clone() {
+        return new TimeoutCall<>(mDelegate.clone(), mAdaptiveTimeout, mEndpoint, mFixedTimeout);
+    }
+
+    @Override
+    public Request request() {
+        return mDelegate.request();
+    }
+
+    @Override
+    public Timeout timeout() {
+        return mDelegate.timeout();
+    }
+}
@@ -0,0 +1,142 @@
+package com.seaky.netframe.core;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Properties;
+import java.util.UUID;
+
+/**
+ *  分片上传的检查点
+ *
+ *  要上传的文件不一定有写权限，检查点放在单独的目录里，按 上传地址 + 文件路径 命名，记录：
+ *  上传地址，文件路径、大小和修改时间，上传会话id（Upload-Id）
+ *  服务器收到了哪些字节不记在本地，续传时向服务器查询，以服务器确认的为准
+ *  上传成功后删除，失败或者取消时保留
+ *
+ *  Created by Seaky
+ */
+
+class UploadCheckpoint {
+
+    static final String SUFFIX = ".nful";
+
+    private static final String KEY_URL = "url";
+    private static final String KEY_PATH = "path";
+    private static final String KEY_LENGTH = "length";
+    private static final String KEY_LAST_MODIFIED = "lastModified";
+    private static final String KEY_UPLOAD_ID = "uploadId";
+
+    private final File mFile;
+    private final String mUrl;
+    private final String mPath;
+    private final long mLength;
+    private final long mLastModified;
+    private final String mUploadId;
+
+    private UploadCheckpoint(File file, String url, String path, long length, long lastModified, String uploadId) {
+        mFile = file;
+        mUrl = url;
+        mPath = path;
+        mLength = length;
+        mLastModified = lastModified;
+        mUploadId = uploadId;
+    }
+
+    /**
+     * 新的上传会话
+     * @param dir   检查点目录，null表示不保存
+     */
+    static UploadCheckpoint create(File dir, String url, File source) {
+        return new UploadCheckpoint(sidecar(dir, url, source), url, source.getAbsolutePath(),
+                source.length(), source.lastModified(), UUID.randomUUID().toString());
+    }
+
+    /**
+     * 读取这次上传对应的检查点，不存在、已损坏或者文件已经变了返回null
+     */
+    static UploadCheckpoint load(File dir, String url, File source) {
+        File file = sidecar(dir, url, source);
+        if (file == null || !file.exists()) {
+            return null;
+        }
+        Properties properties = new Properties();
+        try {
+            FileInputStream in = new FileInputStream(file);
+            try {
+                properties.load(in);
+            } finally {
+                in.close();
+            }
+            UploadCheckpoint checkpoint = new UploadCheckpoint(file,
+                    properties.getProperty(KEY_URL),
+                    properties.getProperty(KEY_PATH),
+                    Long.parseLong(properties.getProperty(KEY_LENGTH)),
+                    Long.parseLong(properties.getProperty(KEY_LAST_MODIFIED)),
+                    properties.getProperty(KEY_UPLOAD_ID));
+            if (checkpoint.matches(url, source)) {
+                return checkpoint;
+            }
+        } catch (IOException | RuntimeException ignored) {
+        }
+        file.delete();
+        return null;
+    }
+
+    private static File sidecar(File dir, String url, File source) {
+        if (dir == null) {
+            return null;
+        }
+        String key = url + '\n' + source.getAbsolutePath();
+        return new File(dir, Integer.toHexString(key.hashCode()) + SUFFIX);
+    }
+
+    //文件被改过就不能接着传
+    private boolean matches(String url, File source) {
+        return url.equals(mUrl) && source.getAbsolutePath().equals(mPath)
+                && source.length() == mLength && source.lastModified() == mLastModified
+                && mUploadId != null;
+    }
+
+    String getUploadId() {
+        return mUploadId;
+    }
+
+    /**
+     * 先写临时文件再rename，写到一半崩溃也不会留下损坏的检查点
+     */
+    void save() throws IOException {
+        if (mFile == null) {
+            return;
+        }
+        File dir = mFile.getParentFile();
+        if (dir != null && !dir.exists() && !dir.mkdirs()) {
+            throw new IOException("can't create " + dir);
+        }
+        Properties properties = new Properties();
+        properties.setProperty(KEY_URL, mUrl);
+        properties.setProperty(KEY_PATH, mPath);
+        properties.setProperty(KEY_LENGTH, String.valueOf(mLength));
+        properties.setProperty(KEY_LAST_MODIFIED, String.valueOf(mLastModified));
+        properties.setProperty(KEY_UPLOAD_ID, mUploadId);
+
+        File temp = new File(mFile.getAbsolutePath() + ".tmp");
+        FileOutputStream out = new FileOutputStream(temp);
+        try {
+            properties.store(out, null);
+            out.getFD().sync();
+        } finally {
+            out.close();
+        }
+        if (!temp.renameTo(mFile)) {
+            throw new IOException("Failed to save checkpoint " + mFile);
+        }
+    }
+
+    void delete() {
+        if (mFile != null) {
+            mFile.delete();
+        }
+    }
+}
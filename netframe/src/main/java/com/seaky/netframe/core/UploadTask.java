@@ -0,0 +1,447 @@
+package com.seaky.netframe.core;
+
+import com.seaky.netframe.build.UploadInfo;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.reactivex.BackpressureStrategy;
+import io.reactivex.Flowable;
+import io.reactivex.Observable;
+import io.reactivex.schedulers.Schedulers;
+import okhttp3.Call;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import retrofit2.HttpException;
+
+/**
+ *  流式上传 支持分片、断点续传和分片并行
+ *
+ *  请求体是FileRequestBody，边读文件边发，内存占用和文件大小无关
+ *
+ *  chunkSize <= 0 时整个文件一次POST到url
+ *  chunkSize > 0 时按固定大小分片，每片一个PUT：
+ *      Upload-Id: 上传会话id          Content-Range: bytes 起始-结束/总大小
+ *  服务器收下这一片但文件还没收全返回308，收全了返回2xx和最终结果
+ *  续传时先发一个空的PUT查询：
+ *      Upload-Id: 上传会话id          Content-Range: bytes {@literal *}/总大小
+ *  服务器返回308 + Range: bytes=0-1048575,2097152-3145727 表示已经收到的部分（可以没有Range），
+ *  返回2xx表示已经收全，返回404/410表示会话已经过期，重新开始
+ *  只补传服务器没确认的部分，本地只记会话id（见UploadCheckpoint）
+ *
+ *  parallelism > 1 时多个分片同时上传，服务器要能按Content-Range乱序拼装
+ *  并行上传的最后一片不一定是返回2xx的那一片，全部传完还没拿到2xx就再查询一次
+ *
+ *  进度：setProgressListener监听原始进度，或者用toFlowable拿到合并过的进度快照
+ *
+ *  注：execute是阻塞调用，要在工作线程中执行
+ *
+ *  Created by Seaky
+ */
+
+public class UploadTask {
+
+    public static final String UPLOAD_ID = "Upload-Id";
+    //默认分片大小 服务器一般要求是256K的整数倍
+    public static final long DEFAULT_CHUNK_SIZE = 2 * 1024 * 1024;
+    //Resume Incomplete 这一片收到了，文件还没收全
+    private static final int RESUME_INCOMPLETE = 308;
+
+    private final OkHttpClient mClient;
+    private final String mUrl;
+    private final File mFile;
+    private final MediaType mContentType;
+    private final long mChunkSize;
+    private final int mParallelism;
+    private final File mCheckpointDir;
+
+    //正在进行的请求，取消的时候一起取消掉
+    private final List<Call> mCalls = new CopyOnWriteArrayList<>();
+    private volatile boolean mCanceled;
+
+    //已完成的总字节数和总大小，用于进度通知
+    private final AtomicLong mCompleted = new AtomicLong();
+    private volatile long mTotal = -1;
+    private ProgressListener mProgressListener;
+    //服务器收全之后返回的响应体
+    private volatile String mResult;
+
+    /**
+     * @param contentType     文件的类型，可以为null
+     * @param chunkSize       分片大小，<= 0 不分片
+     * @param parallelism     同时上传的分片数
+     * @param checkpointDir   检查点目录，null时不能跨进程续传
+     */
+    public UploadTask(OkHttpClient client, String url, File file, String contentType,
+                      long chunkSize, int parallelism, File checkpointDir) {
+        mClient = client;
+        mUrl = url;
+        mFile = file;
+        mContentType = contentType != null ? MediaType.parse(contentType) : null;
+        mChunkSize = chunkSize;
+        mParallelism = Math.max(1, parallelism);
+        mCheckpointDir = checkpointDir;
+    }
+
+    public String getUrl() {
+        return mUrl;
+    }
+
+    public File getFile() {
+        return mFile;
+    }
+
+    /**
+     * 设置进度监听 每发出一块数据回调一次，并行上传时会在多个线程中回调
+     */
+    public void setProgressListener(ProgressListener listener) {
+        mProgressListener = listener;
+    }
+
+    /**
+     * 转成带进度的Flowable
+     * 进度按ProgressSampler合并后以UploadInfo快照发出，最后一个快照isFinished()为true
+     * 下游处理不过来时只保留最新的进度
+     * @param interval   最短通知间隔(ms)
+     * @param step       最小进度增量，总大小的百分比
+     */
+    public Flowable<UploadInfo> toFlowable(long interval, float step) {
+        return Flowable.create(emitter -> {
+            ProgressSampler sampler = new ProgressSampler(interval, step);
+            emitter.setCancellable(this::cancel);
+            setProgressListener((completed, total) -> {
+                //多个上传线程同时回调，加锁保证按顺序串行发出
+                synchronized (sampler) {
+                    if (sampler.update(completed, total, now()) && !emitter.isCancelled()) {
+                        emitter.onNext(snapshot(completed, total, sampler));
+                    }
+                }
+            });
+            UploadInfo uploadInfo;
+            try {
+                uploadInfo = execute();
+            } catch (Throwable e) {
+                //取消之后上传线程抛出的异常没人接收，不能再往RxJavaPlugins抛
+                emitter.tryOnError(e);
+                return;
+            }
+            synchronized (sampler) {
+                sampler.update(uploadInfo.getProgress(), uploadInfo.getTotal(), now());
+                uploadInfo.setSpeed(sampler.getSpeed());
+                uploadInfo.setEta(0);
+                uploadInfo.setFinished(true);
+                emitter.onNext(uploadInfo);
+            }
+            emitter.onComplete();
+        }, BackpressureStrategy.LATEST);
+    }
+
+    /**
+     * 执行上传 阻塞直到上传完成或者失败
+     */
+    public UploadInfo execute() throws IOException {
+        if (!mFile.isFile()) {
+            throw new FileNotFoundException(mFile.getAbsolutePath());
+        }
+        UploadInfo uploadInfo = new UploadInfo();
+        uploadInfo.setUrl(mUrl);
+        uploadInfo.setFilePath(mFile.getAbsolutePath());
+        long total = mFile.length();
+        mTotal = total;
+        mResult = null;
+        mCompleted.set(0);
+        uploadInfo.setTotal(total);
+
+        if (mChunkSize <= 0 || total == 0) {
+            uploadInfo.setResponse(uploadSingle());
+            uploadInfo.setProgress(total);
+            return uploadInfo;
+        }
+
+        UploadCheckpoint checkpoint = UploadCheckpoint.load(mCheckpointDir, mUrl, mFile);
+        List<long[]> gaps = null;
+        if (checkpoint != null) {
+            gaps = query(checkpoint.getUploadId(), total);
+            if (gaps == null) {
+                //会话过期 重新开始
+                checkpoint.delete();
+                checkpoint = null;
+            }
+        }
+        boolean resumed = checkpoint != null;
+        if (checkpoint == null) {
+            checkpoint = UploadCheckpoint.create(mCheckpointDir, mUrl, mFile);
+            checkpoint.save();
+            gaps = new ArrayList<>();
+            gaps.add(new long[]{0, total - 1});
+        }
+        long saved = total - sizeOf(gaps);
+        mCompleted.set(saved);
+
+        if (mResult == null) {
+            uploadParts(checkpoint.getUploadId(), split(gaps), total);
+        }
+        if (mResult == null) {
+            List<long[]> missing = query(checkpoint.getUploadId(), total);
+            if (mResult == null) {
+                throw new IOException("Upload incomplete: " + (missing != null ? sizeOf(missing) : total) + " bytes missing");
+            }
+        }
+        checkpoint.delete();
+        uploadInfo.setProgress(total);
+        uploadInfo.setResumed(resumed);
+        uploadInfo.setSavedBytes(saved);
+        uploadInfo.setResponse(mResult);
+        return uploadInfo;
+    }
+
+    /**
+     * 取消上传 服务器已经确认的部分下次续传时跳过
+     */
+    public void cancel() {
+        mCanceled = true;
+        cancelCalls();
+    }
+
+    public boolean isCanceled() {
+        return mCanceled;
+    }
+
+    private void cancelCalls() {
+        for (Call call : mCalls) {
+            call.cancel();
+        }
+    }
+
+    //不分片 整个文件一个请求
+    private String uploadSingle() throws IOException {
+        Request request = new Request.Builder()
+                .url(mUrl)
+                .post(body(0, mTotal))
+                .build();
+        Response response = execute(request);
+        try {
+            checkSuccessful(response);
+            return response.body().string();
+        } finally {
+            response.close();
+        }
+    }
+
+    //并行上传各个分片 parallelism为1时严格按顺序
+    private void uploadParts(String uploadId, List<long[]> parts, long total) throws IOException {
+        try {
+            Observable.fromIterable(parts)
+                    .flatMap(part -> Observable.<Long>create(emitter -> {
+                        try {
+                            emitter.onNext(uploadPart(uploadId, part, total));
+                            emitter.onComplete();
+                        } catch (Throwable e) {
+                            //某一片失败后其他片会被取消，它们的异常直接丢弃
+                            emitter.tryOnError(e);
+                        }
+                    }).subscribeOn(Schedulers.io()), mParallelism)
+                    .ignoreElements()
+                    .doOnError(throwable -> cancelCalls())
+                    .blockingAwait();
+        } catch (RuntimeException e) {
+            //blockingAwait会把受检异常包一层RuntimeException
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private long uploadPart(String uploadId, long[] part, long total) throws IOException {
+        long length = part[1] - part[0] + 1;
+        Request request = new Request.Builder()
+                .url(mUrl)
+                .header(UPLOAD_ID, uploadId)
+                .header("Content-Range", "bytes " + part[0] + "-" + part[1] + "/" + total)
+                .put(body(part[0], length))
+                .build();
+        Response response = execute(request);
+        try {
+            checkAccepted(response);
+            if (response.isSuccessful()) {
+                mResult = response.body().string();
+            }
+            return length;
+        } finally {
+            response.close();
+        }
+    }
+
+    /**
+     * 查询服务器还缺哪些部分
+     * @return 缺少的区间，已经收全时为空（mResult为服务器的结果），会话不存在时为null
+     */
+    private List<long[]> query(String uploadId, long total) throws IOException {
+        Request request = new Request.Builder()
+                .url(mUrl)
+                .header(UPLOAD_ID, uploadId)
+                .header("Content-Range", "bytes */" + total)
+                .put(RequestBody.create(null, new byte[0]))
+                .build();
+        Response response = execute(request);
+        try {
+            if (response.code() == 404 || response.code() == 410) {
+                return null;
+            }
+            checkAccepted(response);
+            if (response.isSuccessful()) {
+                mResult = response.body().string();
+                return new ArrayList<>();
+            }
+            return gaps(parseRanges(response.header("Range")), total);
+        } finally {
+            response.close();
+        }
+    }
+
+    //每次发送都重新从0算，连接失败重发时进度会退回去
+    private FileRequestBody body(long offset, long length) {
+        AtomicLong sent = new AtomicLong();
+        return new FileRequestBody(mFile, mContentType, offset, length,
+                (written, l) -> onProgress(written - sent.getAndSet(written)));
+    }
+
+    private void onProgress(long length) {
+        long completed = mCompleted.addAndGet(length);
+        ProgressListener listener = mProgressListener;
+        if (listener != null) {
+            listener.onProgress(completed, mTotal);
+        }
+    }
+
+    private UploadInfo snapshot(long completed, long total, ProgressSampler sampler) {
+        UploadInfo uploadInfo = new UploadInfo();
+        uploadInfo.setUrl(mUrl);
+        uploadInfo.setFilePath(mFile.getAbsolutePath());
+        uploadInfo.setTotal(total);
+        uploadInfo.setProgress(completed);
+        uploadInfo.setSpeed(sampler.getSpeed());
+        uploadInfo.setEta(sampler.getEta(completed, total));
+        return uploadInfo;
+    }
+
+    private static long now() {
+        return System.nanoTime() / 1000000;
+    }
+
+    //缺少的区间按分片大小切开
+    List<long[]> split(List<long[]> gaps) {
+        List<long[]> parts = new ArrayList<>();
+        for (long[] gap : gaps) {
+            for (long start = gap[0]; start <= gap[1]; start += mChunkSize) {
+                parts.add(new long[]{start, Math.min(gap[1], start + mChunkSize - 1)});
+            }
+        }
+        return parts;
+    }
+
+    //Range: bytes=0-1023,2048-4095 解析失败当作什么都没收到
+    static List<long[]> parseRanges(String header) {
+        List<long[]> ranges = new ArrayList<>();
+        if (header == null || !header.startsWith("bytes=")) {
+            return ranges;
+        }
+        try {
+            for (String item : header.substring(6).split(",")) {
+                int dash = item.indexOf('-');
+                ranges.add(new long[]{Long.parseLong(item.substring(0, dash).trim()),
+                        Long.parseLong(item.substring(dash + 1).trim())});
+            }
+        } catch (RuntimeException e) {
+            ranges.clear();
+        }
+        return ranges;
+    }
+
+    //[0, total) 中没有被received覆盖的区间
+    static List<long[]> gaps(List<long[]> received, long total) {
+        Collections.sort(received, new Comparator<long[]>() {
+            @Override
+            public int compare(long[] a, long[] b) {
+                return a[0] < b[0] ? -1 : (a[0] == b[0] ? 0 : 1);
+            }
+        });
+        List<long[]> gaps = new ArrayList<>();
+        long position = 0;
+        for (long[] range : received) {
+            if (range[0] > position) {
+                gaps.add(new long[]{position, Math.min(range[0], total) - 1});
+            }
+            position = Math.max(position, range[1] + 1);
+            if (position >= total) {
+                break;
+            }
+        }
+        if (position < total) {
+            gaps.add(new long[]{position, total - 1});
+        }
+        return gaps;
+    }
+
+    private static long sizeOf(List<long[]> ranges) {
+        long size = 0;
+        for (long[] range : ranges) {
+            size += range[1] - range[0] + 1;
+        }
+        return size;
+    }
+
+    //请求结束后从mCalls移除，长时间上传很多分片时列表不会一直变大
+    private Response execute(Request request) throws IOException {
+        if (mCanceled) {
+            throw new IOException("Canceled");
+        }
+        Call call = mClient.newCall(request);
+        mCalls.add(call);
+        try {
+            if (mCanceled) {
+                //加入列表前刚好被取消
+                call.cancel();
+            }
+            return call.execute();
+        } finally {
+            mCalls.remove(call);
+        }
+    }
+
+    //308是分片收到了，不算失败
+    private static void checkAccepted(Response response) {
+        if (response.code() != RESUME_INCOMPLETE) {
+            checkSuccessful(response);
+        }
+    }
+
+    //和Retrofit一样抛HttpException，ExceptionEngine可以正常分类
+    private static void checkSuccessful(Response response) {
+        if (!response.isSuccessful()) {
+            throw new HttpException(retrofit2.Response.error(response.body(), response));
+        }
+    }
+
+    /**
+     * 上传进度监听
+     */
+    public interface ProgressListener {
+        /**
+         * @param completed  已完成的字节数（续传时包括服务器之前收到的部分）
+         * @param total      总字节数
+         */
+        void onProgress(long completed, long total);
+    }
+}
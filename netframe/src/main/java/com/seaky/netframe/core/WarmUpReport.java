@@ -0,0 +1,86 @@
+package com.seaky.netframe.core;
+
+/**
+ *  预热结果 各阶段耗时(ms)
+ *
+ *  Created by Seaky
+ */
+
+public class WarmUpReport {
+
+    private final long clientMillis;
+    private final long gsonMillis;
+    private final long retrofitMillis;
+    private final long dnsMillis;
+    private final long connectMillis;
+    private final int hostCount;
+    private final int resolvedCount;
+    private final int connectedCount;
+
+    WarmUpReport(long clientMillis, long gsonMillis, long retrofitMillis, long dnsMillis, long connectMillis,
+                 int hostCount, int resolvedCount, int connectedCount) {
+        this.clientMillis = clientMillis;
+        this.gsonMillis = gsonMillis;
+        this.retrofitMillis = retrofitMillis;
+        this.dnsMillis = dnsMillis;
+        this.connectMillis = connectMillis;
+        this.hostCount = hostCount;
+        this.resolvedCount = resolvedCount;
+        this.connectedCount = connectedCount;
+    }
+
+    //创建OkHttpClient
+    public long getClientMillis() {
+        return clientMillis;
+    }
+
+    //创建Gson
+    public long getGsonMillis() {
+        return gsonMillis;
+    }
+
+    //创建Retrofit
+    public long getRetrofitMillis() {
+        return retrofitMillis;
+    }
+
+    //预解析DNS
+    public long getDnsMillis() {
+        return dnsMillis;
+    }
+
+    //预建连接，没有开启时为0
+    public long getConnectMillis() {
+        return connectMillis;
+    }
+
+    public long getTotalMillis() {
+        return clientMillis + gsonMillis + retrofitMillis + dnsMillis + connectMillis;
+    }
+
+    public int getHostCount() {
+        return hostCount;
+    }
+
+    //DNS解析成功的域名数
+    public int getResolvedCount() {
+        return resolvedCount;
+    }
+
+    //连接成功放入连接池的域名数
+    public int getConnectedCount() {
+        return connectedCount;
+    }
+
+    @Override
+    public String toString() {
+        return "WarmUpReport{client=" + clientMillis
+                + "ms, gson=" + gsonMillis
+                + "ms, retrofit=" + retrofitMillis
+                + "ms, dns=" + dnsMillis
+                + "ms, connect=" + connectMillis
+                + "ms, hosts=" + hostCount
+                + ", resolved=" + resolvedCount
+                + ", connected=" + connectedCount + "}";
+    }
+}
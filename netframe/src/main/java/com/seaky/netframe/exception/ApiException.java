@@ -3,6 +3,7 @@ package com.seaky.netframe.exception;
 
 /**
  * Http请求异常的封装类
+ * 由ExceptionEngine分类生成，不带堆栈，出错位置看cause
  *
  * Created by Seaky
  */
@@ -17,11 +18,25 @@ public class ApiException extends Exception {
         this.code = code;
     }
 
+    public ApiException(Throwable throwable, int code, String msg) {
+        //不用super(throwable)，它会调用cause.toString()拼出message
+        super(msg, throwable);
+        this.code = code;
+        this.msg = msg;
+    }
+
     public ApiException(int code, String msg) {
+        super(msg);
         this.code = code;
         this.msg = msg;
     }
 
+    //堆栈只是ExceptionEngine和Rx操作符，没有意义，省掉每次失败的堆栈采集
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+        return this;
+    }
+
     public int getCode() {
         return code;
     }
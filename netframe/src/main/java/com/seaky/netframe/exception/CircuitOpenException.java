@@ -0,0 +1,30 @@
+package com.seaky.netframe.exception;
+
+import java.io.IOException;
+
+/**
+ * 域名熔断中，请求没有发出去
+ * 继承IOException，可以从OkHttp的拦截器里直接抛出
+ * 熔断期间每个请求都会抛，不带堆栈
+ *
+ * Created by Seaky
+ */
+
+public class CircuitOpenException extends IOException {
+
+    private final String host;
+
+    public CircuitOpenException(String host) {
+        super("circuit open: " + host);
+        this.host = host;
+    }
+
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+        return this;
+    }
+
+    public String getHost() {
+        return host;
+    }
+}
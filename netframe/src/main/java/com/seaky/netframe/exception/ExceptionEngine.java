@@ -6,16 +6,24 @@ import com.google.gson.JsonParseException;
 
 import org.json.JSONException;
 
+import java.io.InterruptedIOException;
 import java.net.ConnectException;
 import java.net.SocketTimeoutException;
 import java.text.ParseException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
 
 import retrofit2.HttpException;
 
 
 /**
  * 自定义异常错误分类工具类
- * 可根据app自身的项目情况按需修改
+ * 可根据app自身的项目情况按需修改，或者用register添加自己的异常类型
+ *
+ * 按异常的类查表分类，没有登记的类沿着父类往上找，找到的结果按具体类缓存，
+ * 同一种异常第二次分类只要一次查表
+ * 请求失败时这里是热点路径，生成的ApiException不带堆栈，原始异常作为cause保留
  *
  * Created by Seaky
  */
@@ -27,38 +35,127 @@ public class ExceptionEngine {
     public static final int ANALYTIC_ERROR = 1002;   //解析(服务器)数据错误
     public static final int CONNECT_ERROR = 1003;    //网络连接错误
     public static final int TIME_OUT_ERROR = 1004;    //网络连接超时
+    public static final int REJECTED_ERROR = 1005;    //请求排队过多被拒绝
+    public static final int CIRCUIT_OPEN_ERROR = 1006;    //域名熔断中
+    public static final int DEFERRED_ERROR = 1007;    //网络不可用，请求已加入离线队列 见@Deferrable
+    public static final int CANCELED_ERROR = 1008;    //下载任务被取消 见DownloadManager.cancel
+
+    private static final Rule UNKNOWN = new Rule(UN_KNOWN_ERROR, "未知错误");
+
+    //登记的分类规则
+    private static final Map<Class<?>, Rule> sRules = new ConcurrentHashMap<>();
+    //具体类 -> 沿父类找到的规则
+    private static final Map<Class<?>, Rule> sResolved = new ConcurrentHashMap<>();
+
+    static {
+        //HTTP错误 错误码就是HTTP状态码
+        sRules.put(HttpException.class, new Rule(0, "网络错误") {
+            @Override
+            int codeOf(Throwable e) {
+                return ((HttpException) e).code();
+            }
+        });
+        //服务器返回的错误
+        sRules.put(ServerException.class, new Rule(0, null) {
+            @Override
+            int codeOf(Throwable e) {
+                return ((ServerException) e).getCode();
+            }
+
+            @Override
+            String msgOf(Throwable e) {
+                return ((ServerException) e).getMsg();
+            }
+        });
+        //解析数据错误
+        Rule analytic = new Rule(ANALYTIC_ERROR, "解析错误");
+        sRules.put(JsonParseException.class, analytic);
+        sRules.put(JSONException.class, analytic);
+        sRules.put(ParseException.class, analytic);
+        sRules.put(MalformedJsonException.class, analytic);
+        //连接网络错误
+        sRules.put(ConnectException.class, new Rule(CONNECT_ERROR, "连接失败"));
+        //网络超时
+        Rule timeout = new Rule(TIME_OUT_ERROR, "网络超时");
+        sRules.put(SocketTimeoutException.class, timeout);
+        //整体超时 OkHttp抛出的是message为timeout的InterruptedIOException，其他的算未知错误
+        sRules.put(InterruptedIOException.class, new Rule(TIME_OUT_ERROR, "网络超时") {
+            @Override
+            int codeOf(Throwable e) {
+                return "timeout".equals(e.getMessage()) ? TIME_OUT_ERROR : UN_KNOWN_ERROR;
+            }
+
+            @Override
+            String msgOf(Throwable e) {
+                return "timeout".equals(e.getMessage()) ? "网络超时" : UNKNOWN.msg;
+            }
+        });
+        //熔断中 快速失败
+        sRules.put(CircuitOpenException.class, new Rule(CIRCUIT_OPEN_ERROR, "服务暂不可用"));
+        //请求排队过多
+        sRules.put(RejectedExecutionException.class, new Rule(REJECTED_ERROR, "请求繁忙"));
+    }
 
+    /**
+     * 添加或替换一种异常的分类 子类没有单独登记的也按这个分类
+     */
+    public static void register(Class<? extends Throwable> type, int code, String msg) {
+        sRules.put(type, new Rule(code, msg));
+        sResolved.clear();
+    }
 
     public static ApiException handleException(Throwable e) {
-        ApiException ex;
-        if (e instanceof HttpException) {             //HTTP错误
-            HttpException httpExc = (HttpException) e;
-            ex = new ApiException(e, httpExc.code());
-            ex.setMsg("网络错误");
-            return ex;
-        } else if (e instanceof ServerException) {    //服务器返回的错误
-            ServerException serverExc = (ServerException) e;
-            ex = new ApiException(serverExc, Integer.parseInt(serverExc.getCode()));
-            ex.setMsg(serverExc.getMsg());
-            return ex;
-        } else if (e instanceof JsonParseException
-                || e instanceof JSONException
-                || e instanceof ParseException || e instanceof MalformedJsonException) {  //解析数据错误
-            ex = new ApiException(e, ANALYTIC_ERROR);
-            ex.setMsg("解析错误");
-            return ex;
-        } else if (e instanceof ConnectException) {//连接网络错误
-            ex = new ApiException(e, CONNECT_ERROR);
-            ex.setMsg("连接失败");
-            return ex;
-        } else if (e instanceof SocketTimeoutException) {//网络超时
-            ex = new ApiException(e, TIME_OUT_ERROR);
-            ex.setMsg("网络超时");
-            return ex;
-        } else {
-            ex = new ApiException(e, UN_KNOWN_ERROR);
-            ex.setMsg("未知错误");
-            return ex;
+        if (e instanceof ApiException) {             //已经分类过的 例如后台处理阶段之前的请求错误
+            return (ApiException) e;
+        }
+        Rule rule = ruleOf(e);
+        return new ApiException(e, rule.codeOf(e), rule.msgOf(e));
+    }
+
+    /**
+     * 只取错误码 不创建ApiException，重试和熔断判断用
+     */
+    public static int codeOf(Throwable e) {
+        if (e instanceof ApiException) {
+            return ((ApiException) e).getCode();
+        }
+        return ruleOf(e).codeOf(e);
+    }
+
+    private static Rule ruleOf(Throwable e) {
+        Class<?> type = e.getClass();
+        Rule rule = sResolved.get(type);
+        if (null != rule) {
+            return rule;
+        }
+        rule = UNKNOWN;
+        for (Class<?> c = type; c != null && c != Throwable.class; c = c.getSuperclass()) {
+            Rule registered = sRules.get(c);
+            if (null != registered) {
+                rule = registered;
+                break;
+            }
+        }
+        sResolved.put(type, rule);
+        return rule;
+    }
+
+    private static class Rule {
+
+        final int code;
+        final String msg;
+
+        Rule(int code, String msg) {
+            this.code = code;
+            this.msg = msg;
+        }
+
+        int codeOf(Throwable e) {
+            return code;
+        }
+
+        String msgOf(Throwable e) {
+            return msg;
         }
     }
 }
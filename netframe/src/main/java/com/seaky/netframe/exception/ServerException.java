@@ -2,21 +2,28 @@ package com.seaky.netframe.exception;
 
 /**
  * 服务器的异常封装
+ * 接口返回了错误码，是正常的业务结果，不带堆栈
  *
  * Created by Seaky
  */
 
 public class ServerException extends RuntimeException {
 
-    private String code;
-    private String msg;
+    private final int code;
+    private final String msg;
 
-    public ServerException(String code, String msg) {
+    public ServerException(int code, String msg) {
+        super(msg);
         this.code = code;
         this.msg = msg;
     }
 
-    public String getCode() {
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+        return this;
+    }
+
+    public int getCode() {
         return code;
     }
 
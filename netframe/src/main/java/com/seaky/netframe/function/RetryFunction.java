@@ -0,0 +1,49 @@
+package com.seaky.netframe.function;
+
+import com.seaky.netframe.core.NetScheduler;
+import com.seaky.netframe.core.RetryPolicy;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.reactivex.Observable;
+import io.reactivex.ObservableSource;
+import io.reactivex.Scheduler;
+import io.reactivex.annotations.NonNull;
+import io.reactivex.functions.Function;
+import io.reactivex.schedulers.Schedulers;
+
+/**
+ * 请求失败重试 配合retryWhen使用
+ * 是否重试和等多久见RetryPolicy
+ * 重试的请求回到原来的网络线程通道执行，不占用其他线程池
+ *
+ * Created by Seaky
+ */
+
+public class RetryFunction implements Function<Observable<Throwable>, ObservableSource<?>> {
+
+    private final RetryPolicy mPolicy;
+    private final String mMethod;
+    private final NetScheduler mNetScheduler;
+
+    public RetryFunction(RetryPolicy policy, String method, NetScheduler netScheduler) {
+        mPolicy = policy;
+        mMethod = method;
+        mNetScheduler = netScheduler;
+    }
+
+    @Override
+    public ObservableSource<?> apply(@NonNull Observable<Throwable> errors) throws Exception {
+        //每次订阅单独计数
+        AtomicInteger attempt = new AtomicInteger();
+        return errors.flatMap(throwable -> {
+            long delay = mPolicy.delayFor(throwable, attempt.incrementAndGet(), mMethod);
+            if (delay < 0) {
+                return Observable.error(throwable);
+            }
+            Scheduler scheduler = mNetScheduler.current();
+            return Observable.timer(delay, TimeUnit.MILLISECONDS, scheduler != null ? scheduler : Schedulers.io());
+        });
+    }
+}
@@ -8,7 +8,8 @@ import io.reactivex.functions.Function;
 
 /**
  *  接口请求结果分离
- *  100为样例接口的请求成功code状态码 按需修改自己接口的成功码
+ *  成功码见HttpResponse.SUCCESS_CODE 按需修改自己接口的成功码
+ *  失败时抛出带错误码的ServerException，由ExceptionEngine转成ApiException
  *
  *  Created by Seaky
  */
@@ -18,15 +19,9 @@ public class ServerResultFunction<T> implements Function<HttpResponse<?>,T> {
     @SuppressWarnings("unchecked")
     @Override
     public T apply(@NonNull HttpResponse<?> httpResponse) throws Exception {
-        try {
-            if(100 == httpResponse.getCode()) {
-                return (T)httpResponse.getData();
-            } else {
-                throw new ServerException(String.valueOf(httpResponse.getCode()),"");
-            }
-        } catch (Exception e) {
-            e.printStackTrace();
-            throw new ServerException("-1",e.getMessage());
+        if(HttpResponse.SUCCESS_CODE == httpResponse.getCode()) {
+            return (T)httpResponse.getData();
         }
+        throw new ServerException(httpResponse.getCode(),"");
     }
 }
@@ -0,0 +1,225 @@
+package com.seaky.netframe.build;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.math.BigInteger;
+
+import okio.Buffer;
+import okio.ByteString;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * CBOR编解码测试 用例取自RFC 8949附录A
+ */
+public class CborTest {
+
+    @Test
+    public void readsIntegers() throws IOException {
+        assertEquals(0, read("00").getAsLong());
+        assertEquals(23, read("17").getAsLong());
+        assertEquals(24, read("1818").getAsLong());
+        assertEquals(1000000, read("1a000f4240").getAsLong());
+        assertEquals(1000000000000L, read("1b000000e8d4a51000").getAsLong());
+        assertEquals(-1, read("20").getAsLong());
+        assertEquals(-1000, read("3903e7").getAsLong());
+    }
+
+    @Test
+    public void readsIntegersBeyondLong() throws IOException {
+        assertEquals(new BigInteger("9223372036854775808"), read("1b8000000000000000").getAsBigInteger());
+        assertEquals(new BigInteger("18446744073709551615"), read("1bffffffffffffffff").getAsBigInteger());
+        assertEquals(Long.MIN_VALUE, read("3b7fffffffffffffff").getAsLong());
+        assertEquals(new BigInteger("-9223372036854775809"), read("3b8000000000000000").getAsBigInteger());
+        assertEquals(new BigInteger("-18446744073709551616"), read("3bffffffffffffffff").getAsBigInteger());
+    }
+
+    @Test
+    public void readsHalfFloats() throws IOException {
+        assertEquals(0.0f, read("f90000").getAsFloat(), 0);
+        assertEquals(Float.floatToIntBits(-0.0f), Float.floatToIntBits(read("f98000").getAsFloat()));
+        assertEquals(1.0f, read("f93c00").getAsFloat(), 0);
+        assertEquals(1.5f, read("f93e00").getAsFloat(), 0);
+        assertEquals(65504.0f, read("f97bff").getAsFloat(), 0);
+        assertEquals(-4.0f, read("f9c400").getAsFloat(), 0);
+        //最小的非规格化数
+        assertEquals(5.960464477539063e-8f, read("f90001").getAsFloat(), 0);
+        assertEquals(0.00006103515625f, read("f90400").getAsFloat(), 0);
+        assertEquals(Float.POSITIVE_INFINITY, read("f97c00").getAsFloat(), 0);
+        assertEquals(Float.NEGATIVE_INFINITY, read("f9fc00").getAsFloat(), 0);
+        assertTrue(Float.isNaN(read("f97e00").getAsFloat()));
+    }
+
+    @Test
+    public void readsFloatsAndSimpleValues() throws IOException {
+        assertEquals(100000.0f, read("fa47c35000").getAsFloat(), 0);
+        assertEquals(1.1, read("fb3ff199999999999a").getAsDouble(), 0);
+        assertEquals(-4.1, read("fbc010666666666666").getAsDouble(), 0);
+        assertEquals(new JsonPrimitive(false), read("f4"));
+        assertEquals(new JsonPrimitive(true), read("f5"));
+        assertEquals(JsonNull.INSTANCE, read("f6"));
+        assertEquals(JsonNull.INSTANCE, read("f7"));
+    }
+
+    @Test
+    public void readsStrings() throws IOException {
+        assertEquals("", read("60").getAsString());
+        assertEquals("IETF", read("6449455446").getAsString());
+        assertEquals("ü", read("62c3bc").getAsString());
+        assertEquals("水", read("63e6b0b4").getAsString());
+        assertEquals(bytes(1, 2, 3, 4), read("4401020304"));
+    }
+
+    @Test
+    public void readsIndefiniteLengthStrings() throws IOException {
+        assertEquals(bytes(1, 2, 3, 4, 5), read("5f42010243030405ff"));
+        assertEquals("streaming", read("7f657374726561646d696e67ff").getAsString());
+        assertEquals("", read("7fff").getAsString());
+    }
+
+    @Test
+    public void rejectsMismatchedChunks() throws IOException {
+        //字节串里混了字符串
+        assertInvalid("5f4201026161ff");
+        //字符串里混了字节串
+        assertInvalid("7f6161420102ff");
+        //不定长串不能嵌套
+        assertInvalid("7f7f6161ffff");
+        //段里不能是整数
+        assertInvalid("5f01ff");
+    }
+
+    @Test
+    public void readsArraysAndMaps() throws IOException {
+        assertEquals(json("[]"), read("80"));
+        assertEquals(json("[1,[2,3],[4,5]]"), read("8301820203820405"));
+        assertEquals(json("{\"a\":1,\"b\":[2,3]}"), read("a26161016162820203"));
+        assertEquals(json("[\"a\",{\"b\":\"c\"}]"), read("826161a161626163"));
+        //数字key转成字符串
+        assertEquals(json("{\"1\":2,\"3\":4}"), read("a201020304"));
+    }
+
+    @Test
+    public void readsIndefiniteLengthArraysAndMaps() throws IOException {
+        assertEquals(json("[]"), read("9fff"));
+        assertEquals(json("[1,[2,3],[4,5]]"), read("9f018202039f0405ffff"));
+        assertEquals(json("[1,[2,3],[4,5]]"), read("83018202039f0405ff"));
+        assertEquals(json("{\"a\":1,\"b\":[2,3]}"), read("bf61610161629f0203ffff"));
+        assertEquals(json("[\"a\",{\"b\":\"c\"}]"), read("826161bf61626163ff"));
+        assertEquals(json("{\"Fun\":true,\"Amt\":-2}"), read("bf6346756ef563416d7421ff"));
+    }
+
+    @Test
+    public void tagsAreSkipped() throws IOException {
+        assertEquals("2013-03-21T20:04:00Z", read("c074323031332d30332d32315432303a30343a30305a").getAsString());
+        assertEquals(1363896240, read("c11a514b67b0").getAsLong());
+        assertEquals("http://www.example.com", read("d82076687474703a2f2f7777772e6578616d706c652e636f6d").getAsString());
+        //tag套tag
+        assertEquals(1, read("d818d81801").getAsLong());
+    }
+
+    @Test
+    public void rejectsUnexpectedBreak() throws IOException {
+        assertInvalid("ff");
+        assertInvalid("81ff");
+        assertInvalid("bf6161ff");
+    }
+
+    @Test
+    public void writesShortestHeaders() throws IOException {
+        assertEquals("17", write(new JsonPrimitive(23)));
+        assertEquals("1818", write(new JsonPrimitive(24)));
+        assertEquals("190100", write(new JsonPrimitive(256)));
+        assertEquals("1a000f4240", write(new JsonPrimitive(1000000)));
+        assertEquals("1b000000e8d4a51000", write(new JsonPrimitive(1000000000000L)));
+        assertEquals("20", write(new JsonPrimitive(-1)));
+        assertEquals("3903e7", write(new JsonPrimitive(-1000)));
+        assertEquals("3b7fffffffffffffff", write(new JsonPrimitive(Long.MIN_VALUE)));
+        assertEquals("f6", write(JsonNull.INSTANCE));
+        assertEquals("6449455446", write(new JsonPrimitive("IETF")));
+    }
+
+    @Test
+    public void roundTripsJsonTrees() throws IOException {
+        String[] documents = {
+                "{\"code\":200,\"msg\":\"ok\",\"data\":[{\"id\":1,\"name\":\"水\",\"price\":9.5,\"tags\":[]}]}",
+                "[-1,-24,-25,-256,-257,-65536,-65537,-4294967296,-4294967297,9223372036854775807]",
+                "[true,false,null,\"\",{},[[]],1.0E300,-0.5]",
+                "{\"nested\":{\"deeper\":{\"deepest\":[1,2,{\"k\":\"v\"}]}}}",
+        };
+        for (String document : documents) {
+            JsonElement element = json(document);
+            Buffer buffer = new Buffer();
+            Cbor.write(element, buffer);
+
+            assertEquals(document, element, Cbor.read(buffer));
+            assertEquals(document, 0, buffer.size());
+        }
+    }
+
+    @Test
+    public void largeIntegersAreWrittenAsDoubles() throws IOException {
+        Buffer buffer = new Buffer();
+        Cbor.write(json("18446744073709551615"), buffer);
+
+        assertEquals(0xfb, buffer.readByte() & 0xff);
+        assertEquals(1.8446744073709552E19, Double.longBitsToDouble(buffer.readLong()), 0);
+    }
+
+    @Test
+    public void objectsRoundTripThroughGson() throws IOException {
+        JsonObject object = new JsonObject();
+        object.addProperty("count", 3);
+        object.addProperty("ratio", 0.25f);
+        object.add("bytes", bytes(-1, 0, 127));
+        Buffer buffer = new Buffer();
+
+        Cbor.write(object, buffer);
+
+        assertEquals(object, Cbor.read(buffer));
+    }
+
+    private static JsonElement read(String hex) throws IOException {
+        Buffer buffer = new Buffer().write(ByteString.decodeHex(hex));
+        JsonElement element = Cbor.read(buffer);
+        assertEquals("trailing bytes in " + hex, 0, buffer.size());
+        return element;
+    }
+
+    private static String write(JsonElement element) throws IOException {
+        Buffer buffer = new Buffer();
+        Cbor.write(element, buffer);
+        return buffer.readByteString().hex();
+    }
+
+    private static void assertInvalid(String hex) throws IOException {
+        try {
+            Cbor.read(new Buffer().write(ByteString.decodeHex(hex)));
+            fail(hex);
+        } catch (JsonParseException expected) {
+        }
+    }
+
+    private static JsonElement json(String json) {
+        return new JsonParser().parse(json);
+    }
+
+    private static JsonArray bytes(int... values) {
+        JsonArray array = new JsonArray();
+        for (int value : values) {
+            array.add(new JsonPrimitive((byte) value));
+        }
+        return array;
+    }
+}
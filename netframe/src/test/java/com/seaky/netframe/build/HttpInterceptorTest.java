@@ -0,0 +1,113 @@
+package com.seaky.netframe.build;
+
+import com.seaky.netframe.core.CircuitBreaker;
+import com.seaky.netframe.exception.CircuitOpenException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+
+import okhttp3.Cache;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+/**
+ * 熔断拦截器和磁盘缓存一起工作的测试 本地MockWebServer
+ */
+public class HttpInterceptorTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private MockWebServer server;
+    private CircuitBreaker breaker;
+    private OkHttpClient client;
+    private String host;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new MockWebServer();
+        server.start();
+        host = server.getHostName();
+        breaker = new CircuitBreaker(CircuitBreaker.DEFAULT_FAILURE_RATE, CircuitBreaker.DEFAULT_SLOW_CALL_RATE,
+                CircuitBreaker.DEFAULT_SLOW_CALL_MILLIS, CircuitBreaker.DEFAULT_OPEN_MILLIS);
+        client = new OkHttpClient.Builder()
+                .addInterceptor(HttpInterceptor.circuitBreakerInterceptor(breaker))
+                .cache(new Cache(folder.newFolder("cache"), 1024 * 1024))
+                .build();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.shutdown();
+    }
+
+    @Test
+    public void cacheHitsAreNotCounted() throws Exception {
+        server.enqueue(cacheable("cached"));
+        get("/cached").close();
+        for (int i = 0; i < 9; i++) {
+            assertNull(get("/cached").networkResponse());
+        }
+        //算上缓存命中是9/19，不到一半
+        for (int i = 0; i < 9; i++) {
+            server.enqueue(new MockResponse().setResponseCode(503));
+            get("/failing").close();
+        }
+
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState(host));
+    }
+
+    @Test
+    public void openCircuitStillServesFreshCache() throws Exception {
+        server.enqueue(cacheable("cached"));
+        get("/cached").close();
+        trip();
+        int requests = server.getRequestCount();
+
+        Response response = get("/cached");
+
+        assertEquals("cached", response.body().string());
+        assertEquals(requests, server.getRequestCount());
+    }
+
+    @Test
+    public void openCircuitFailsWithoutCache() throws Exception {
+        trip();
+        int requests = server.getRequestCount();
+
+        try {
+            get("/missing");
+            fail();
+        } catch (CircuitOpenException expected) {
+            assertEquals(host, expected.getHost());
+        }
+        assertEquals(requests, server.getRequestCount());
+    }
+
+    private void trip() throws IOException {
+        while (breaker.getState(host) != CircuitBreaker.State.OPEN) {
+            server.enqueue(new MockResponse().setResponseCode(503));
+            get("/failing").close();
+        }
+    }
+
+    private Response get(String path) throws IOException {
+        return client.newCall(new Request.Builder().url(server.url(path)).build()).execute();
+    }
+
+    private static MockResponse cacheable(String body) {
+        return new MockResponse().setHeader("Cache-Control", "max-age=60").setBody(body);
+    }
+}
@@ -0,0 +1,157 @@
+package com.seaky.netframe.build;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.TypeAdapter;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * HttpResponse流式解析测试 data用计数的TypeAdapter，看有没有真的解析
+ */
+public class HttpResponseAdapterFactoryTest {
+
+    private static final Type BEAN_RESPONSE = new TypeToken<HttpResponse<Bean>>() {}.getType();
+
+    static class Bean {
+        String name;
+    }
+
+    private int decoded;
+    private Gson gson;
+
+    @Before
+    public void setUp() {
+        decoded = 0;
+        gson = new GsonBuilder()
+                .registerTypeAdapterFactory(new HttpResponseAdapterFactory())
+                .registerTypeAdapter(Bean.class, new TypeAdapter<Bean>() {
+                    @Override
+                    public void write(JsonWriter out, Bean value) throws IOException {
+                        out.beginObject().name("name").value(value.name).endObject();
+                    }
+
+                    @Override
+                    public Bean read(JsonReader in) throws IOException {
+                        decoded++;
+                        if (in.peek() == JsonToken.NULL) {
+                            in.nextNull();
+                            return null;
+                        }
+                        Bean bean = new Bean();
+                        in.beginObject();
+                        in.nextName();
+                        bean.name = in.nextString();
+                        in.endObject();
+                        return bean;
+                    }
+                })
+                .create();
+    }
+
+    @Test
+    public void readsDataAfterSuccessStatus() {
+        HttpResponse<Bean> response = read("{\"status\":100,\"data\":{\"name\":\"seaky\"}}");
+
+        assertEquals(HttpResponse.SUCCESS_CODE, response.getCode());
+        assertEquals("seaky", ((Bean) response.getData()).name);
+        assertEquals(1, decoded);
+    }
+
+    @Test
+    public void skipsDataAfterErrorStatus() {
+        //data不是Bean的格式，解析的话会失败
+        HttpResponse<Bean> response = read("{\"status\":500,\"data\":[1,2,{\"big\":\"payload\"}]}");
+
+        assertEquals(500, response.getCode());
+        assertNull(response.getData());
+        assertEquals(0, decoded);
+    }
+
+    @Test
+    public void buffersDataBeforeStatus() {
+        HttpResponse<Bean> response = read("{\"data\":{\"name\":\"seaky\"},\"status\":100}");
+
+        assertEquals(HttpResponse.SUCCESS_CODE, response.getCode());
+        assertEquals("seaky", ((Bean) response.getData()).name);
+        assertEquals(1, decoded);
+    }
+
+    @Test
+    public void dropsBufferedDataOnErrorStatus() {
+        HttpResponse<Bean> response = read("{\"data\":[1,2,3],\"status\":500}");
+
+        assertEquals(500, response.getCode());
+        assertNull(response.getData());
+        assertEquals(0, decoded);
+    }
+
+    @Test
+    public void nullDataIsAllowed() {
+        HttpResponse<Bean> after = read("{\"status\":100,\"data\":null}");
+        HttpResponse<Bean> before = read("{\"data\":null,\"status\":100}");
+
+        assertEquals(HttpResponse.SUCCESS_CODE, after.getCode());
+        assertNull(after.getData());
+        assertEquals(HttpResponse.SUCCESS_CODE, before.getCode());
+        assertNull(before.getData());
+    }
+
+    @Test
+    public void unknownFieldsAreSkipped() {
+        HttpResponse<Bean> response = read("{\"msg\":\"ok\",\"status\":100,\"extra\":{\"a\":[1,{}]},"
+                + "\"data\":{\"name\":\"seaky\"},\"time\":1}");
+
+        assertEquals(HttpResponse.SUCCESS_CODE, response.getCode());
+        assertEquals("seaky", ((Bean) response.getData()).name);
+    }
+
+    @Test
+    public void missingStatusLeavesDataUnparsed() {
+        HttpResponse<Bean> response = read("{\"data\":{\"name\":\"seaky\"}}");
+
+        //status为0 ServerResultFunction按接口错误处理
+        assertEquals(0, response.getCode());
+        assertNull(response.getData());
+        assertEquals(0, decoded);
+    }
+
+    @Test
+    public void nullResponseIsNull() {
+        assertNull(read("null"));
+    }
+
+    @Test
+    public void rawResponseKeepsGenericData() {
+        HttpResponse<?> response = gson.fromJson("{\"status\":100,\"data\":[1,2]}", HttpResponse.class);
+
+        assertEquals(2, ((List<?>) response.getData()).size());
+    }
+
+    @Test
+    public void writesStatusAndData() {
+        HttpResponse<Bean> response = new HttpResponse<>();
+        response.setCode(HttpResponse.SUCCESS_CODE);
+        Bean bean = new Bean();
+        bean.name = "seaky";
+        response.setData(bean);
+
+        assertEquals("{\"status\":100,\"data\":{\"name\":\"seaky\"}}", gson.toJson(response, BEAN_RESPONSE));
+    }
+
+    private HttpResponse<Bean> read(String json) {
+        return gson.fromJson(json, BEAN_RESPONSE);
+    }
+}
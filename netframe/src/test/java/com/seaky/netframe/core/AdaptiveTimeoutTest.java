@@ -0,0 +1,69 @@
+package com.seaky.netframe.core;
+
+import org.junit.Test;
+
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * 按接口自动超时测试 样本门槛、倍数和上下限
+ */
+public class AdaptiveTimeoutTest {
+
+    @Test
+    public void noTimeoutUntilEnoughSamples() {
+        AdaptiveTimeout timeout = new AdaptiveTimeout(0.99f, 2f, 10, 30000);
+        for (int i = 0; i < 19; i++) {
+            timeout.record("Api.config", 100);
+        }
+
+        assertEquals(0, timeout.timeoutOf("Api.config"));
+        assertEquals(0, timeout.timeoutOf("Api.unknown"));
+
+        timeout.record("Api.config", 100);
+
+        assertEquals(bound(100) * 2, timeout.timeoutOf("Api.config"));
+    }
+
+    @Test
+    public void timeoutIsClampedToFloorAndCeiling() {
+        AdaptiveTimeout timeout = new AdaptiveTimeout(0.99f, 2f, 1000, 30000);
+        for (int i = 0; i < 20; i++) {
+            timeout.record("Api.config", 50);
+            timeout.record("Api.report", 20000);
+        }
+
+        assertEquals(1000, timeout.timeoutOf("Api.config"));
+        assertEquals(30000, timeout.timeoutOf("Api.report"));
+    }
+
+    @Test
+    public void ceilingBelowFloorUsesFloor() {
+        AdaptiveTimeout timeout = new AdaptiveTimeout(0.99f, 2f, 5000, 1000);
+        for (int i = 0; i < 20; i++) {
+            timeout.record("Api.report", 20000);
+        }
+
+        assertEquals(5000, timeout.timeoutOf("Api.report"));
+    }
+
+    @Test
+    public void timeoutsCoverEveryEndpoint() {
+        AdaptiveTimeout timeout = new AdaptiveTimeout(0.99f, 2f, 10, 30000);
+        for (int i = 0; i < 20; i++) {
+            timeout.record("Api.config", 100);
+        }
+        timeout.record("Api.report", 100);
+
+        Map<String, Long> timeouts = timeout.getTimeouts();
+
+        assertEquals(2, timeouts.size());
+        assertEquals(bound(100) * 2, (long) timeouts.get("Api.config"));
+        assertEquals(0, (long) timeouts.get("Api.report"));
+    }
+
+    private static long bound(long millis) {
+        return LatencyHistogram.upperBound(LatencyHistogram.indexOf(millis));
+    }
+}
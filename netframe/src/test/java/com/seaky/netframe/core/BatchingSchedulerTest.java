@@ -0,0 +1,148 @@
+package com.seaky.netframe.core;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.Scheduler;
+import io.reactivex.disposables.Disposable;
+import io.reactivex.schedulers.TestScheduler;
+import io.reactivex.subjects.PublishSubject;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 按帧合并回调测试 手动控制的帧时钟，不需要Choreographer
+ */
+public class BatchingSchedulerTest {
+
+    private ManualFrameClock clock;
+    private TestScheduler delegate;
+    private BatchingScheduler scheduler;
+    private List<String> log;
+
+    @Before
+    public void setUp() {
+        clock = new ManualFrameClock();
+        delegate = new TestScheduler();
+        scheduler = new BatchingScheduler(clock, delegate);
+        log = new ArrayList<>();
+    }
+
+    @Test
+    public void deliversTasksFromAllWorkersInOneFrame() {
+        for (int i = 0; i < 20; i++) {
+            String name = "r" + i;
+            scheduler.createWorker().schedule(() -> log.add(name));
+        }
+        assertTrue(log.isEmpty());
+        //20个任务只post了一次帧回调
+        assertEquals(1, clock.pending.size());
+
+        clock.frame();
+
+        assertEquals(20, log.size());
+        assertEquals("r0", log.get(0));
+        assertEquals("r19", log.get(19));
+        assertEquals(1, scheduler.getFrameCount());
+        assertEquals(20, scheduler.getTaskCount());
+    }
+
+    @Test
+    public void tasksScheduledDuringFrameRunInNextFrame() {
+        Scheduler.Worker worker = scheduler.createWorker();
+        worker.schedule(() -> {
+            log.add("first");
+            worker.schedule(() -> log.add("second"));
+        });
+
+        clock.frame();
+        assertEquals(1, log.size());
+
+        clock.frame();
+        assertEquals(2, log.size());
+        assertEquals("second", log.get(1));
+    }
+
+    @Test
+    public void disposedTasksAreSkipped() {
+        Scheduler.Worker worker = scheduler.createWorker();
+        Disposable task = worker.schedule(() -> log.add("task"));
+        Scheduler.Worker other = scheduler.createWorker();
+        other.schedule(() -> log.add("other"));
+        task.dispose();
+        other.dispose();
+
+        clock.frame();
+
+        assertTrue(log.isEmpty());
+        assertEquals(0, scheduler.getTaskCount());
+    }
+
+    @Test
+    public void delayedTasksWaitForDelegateThenFrame() {
+        scheduler.createWorker().schedule(() -> log.add("delayed"), 100, TimeUnit.MILLISECONDS);
+        assertTrue(clock.pending.isEmpty());
+
+        delegate.advanceTimeBy(100, TimeUnit.MILLISECONDS);
+        assertTrue(log.isEmpty());
+
+        clock.frame();
+        assertEquals(1, log.size());
+    }
+
+    @Test
+    public void observeOnDeliversConcurrentResultsTogether() {
+        List<PublishSubject<String>> requests = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            PublishSubject<String> request = PublishSubject.create();
+            request.observeOn(scheduler).subscribe(log::add);
+            requests.add(request);
+        }
+        for (int i = 0; i < requests.size(); i++) {
+            requests.get(i).onNext("result" + i);
+        }
+        assertTrue(log.isEmpty());
+
+        clock.frame();
+
+        assertEquals(5, log.size());
+        assertEquals(1, scheduler.getFrameCount());
+    }
+
+    @Test
+    public void tickClockAlignsToInterval() {
+        TestScheduler main = new TestScheduler();
+        TickFrameClock tick = new TickFrameClock(main, 16, TimeUnit.MILLISECONDS);
+        main.advanceTimeBy(5, TimeUnit.MILLISECONDS);
+        tick.postFrameCallback(() -> log.add("tick"));
+
+        main.advanceTimeBy(10, TimeUnit.MILLISECONDS);
+        assertTrue(log.isEmpty());
+        //对齐到16ms，不是5 + 16
+        main.advanceTimeBy(1, TimeUnit.MILLISECONDS);
+        assertEquals(1, log.size());
+    }
+
+    private static class ManualFrameClock implements FrameClock {
+
+        final List<Runnable> pending = new ArrayList<>();
+
+        @Override
+        public void postFrameCallback(Runnable callback) {
+            pending.add(callback);
+        }
+
+        void frame() {
+            List<Runnable> callbacks = new ArrayList<>(pending);
+            pending.clear();
+            for (Runnable callback : callbacks) {
+                callback.run();
+            }
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.seaky.netframe.core;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.seaky.netframe.annotation.Binary;
+import com.seaky.netframe.build.Cbor;
+import com.seaky.netframe.build.CborConverterFactory;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import retrofit2.Converter;
+import retrofit2.Retrofit;
+import retrofit2.converter.gson.GsonConverterFactory;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * 二进制转换器选择测试 @Binary走CBOR，服务器返回json时退回Gson
+ */
+public class BinaryConverterFactoryTest {
+
+    private static final MediaType CBOR = MediaType.parse(CborConverterFactory.CONTENT_TYPE);
+    private static final MediaType JSON = MediaType.parse("application/json; charset=utf-8");
+
+    interface Api {
+        @Binary
+        void binary();
+
+        void json();
+    }
+
+    static class Point {
+        int x;
+        String name;
+    }
+
+    private Retrofit retrofit;
+
+    @Before
+    public void setUp() {
+        Gson gson = new Gson();
+        retrofit = new Retrofit.Builder()
+                .baseUrl("http://localhost/")
+                .addConverterFactory(new BinaryConverterFactory(CborConverterFactory.create(gson)))
+                .addConverterFactory(GsonConverterFactory.create(gson))
+                .build();
+    }
+
+    @Test
+    public void binaryMethodReadsCbor() throws IOException {
+        Point point = response("binary").convert(ResponseBody.create(CBOR, cbor("{\"x\":3,\"name\":\"a\"}")));
+
+        assertEquals(3, point.x);
+        assertEquals("a", point.name);
+    }
+
+    @Test
+    public void binaryMethodFallsBackToJson() throws IOException {
+        Point point = response("binary").convert(ResponseBody.create(JSON, "{\"x\":4,\"name\":\"b\"}"));
+
+        assertEquals(4, point.x);
+        assertEquals("b", point.name);
+    }
+
+    @Test
+    public void otherMethodsUseJson() throws IOException {
+        Point point = response("json").convert(ResponseBody.create(JSON, "{\"x\":5}"));
+
+        assertEquals(5, point.x);
+    }
+
+    @Test
+    public void binaryMethodWritesCbor() throws IOException {
+        Point point = new Point();
+        point.x = 6;
+        point.name = "c";
+
+        RequestBody body = request("binary").convert(point);
+
+        assertEquals(CBOR, body.contentType());
+        Buffer buffer = new Buffer();
+        body.writeTo(buffer);
+        JsonObject object = Cbor.read(buffer).getAsJsonObject();
+        assertEquals(6, object.get("x").getAsInt());
+        assertEquals("c", object.get("name").getAsString());
+    }
+
+    @Test
+    public void otherMethodsWriteJson() throws IOException {
+        RequestBody body = request("json").convert(new Point());
+
+        assertEquals("json", body.contentType().subtype());
+    }
+
+    private Converter<ResponseBody, Point> response(String method) {
+        return retrofit.responseBodyConverter(Point.class, annotationsOf(method));
+    }
+
+    private Converter<Point, RequestBody> request(String method) {
+        return retrofit.requestBodyConverter(Point.class, new Annotation[0], annotationsOf(method));
+    }
+
+    private static Annotation[] annotationsOf(String method) {
+        try {
+            return Api.class.getDeclaredMethod(method).getAnnotations();
+        } catch (NoSuchMethodException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private static byte[] cbor(String json) throws IOException {
+        Buffer buffer = new Buffer();
+        Cbor.write(new JsonParser().parse(json), buffer);
+        return buffer.readByteArray();
+    }
+}
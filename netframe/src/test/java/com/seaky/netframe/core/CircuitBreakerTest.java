@@ -0,0 +1,231 @@
+package com.seaky.netframe.core;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import io.reactivex.observers.TestObserver;
+import io.reactivex.subjects.Subject;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * 熔断状态机测试 时间用now()手动推进
+ */
+public class CircuitBreakerTest {
+
+    private static final String HOST = "api.example.com";
+    private static final long OPEN_MILLIS = 10000;
+
+    private ManualBreaker breaker;
+
+    @Before
+    public void setUp() {
+        breaker = new ManualBreaker();
+    }
+
+    @Test
+    public void staysClosedBelowMinimumCalls() {
+        for (int i = 0; i < 9; i++) {
+            fail();
+        }
+
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState(HOST));
+    }
+
+    @Test
+    public void tripsOnFailureRate() {
+        TestObserver<CircuitBreaker.StateEvent> events = breaker.observe().test();
+        for (int i = 0; i < 5; i++) {
+            succeed();
+        }
+        for (int i = 0; i < 4; i++) {
+            fail();
+        }
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState(HOST));
+
+        fail();
+
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState(HOST));
+        assertNull(breaker.tryAcquire(HOST));
+        events.assertValueCount(1);
+        assertEquals(CircuitBreaker.State.CLOSED, events.values().get(0).getFrom());
+        assertEquals(CircuitBreaker.State.OPEN, events.values().get(0).getTo());
+    }
+
+    @Test
+    public void tripsOnSlowCalls() {
+        for (int i = 0; i < 10; i++) {
+            breaker.onResult(breaker.tryAcquire(HOST), null, 200, CircuitBreaker.DEFAULT_SLOW_CALL_MILLIS);
+        }
+
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState(HOST));
+    }
+
+    @Test
+    public void clientErrorsAreNotFailures() {
+        for (int i = 0; i < 20; i++) {
+            breaker.onResult(breaker.tryAcquire(HOST), null, 404, 10);
+        }
+
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState(HOST));
+    }
+
+    @Test
+    public void oldResultsLeaveTheWindow() {
+        for (int i = 0; i < 4; i++) {
+            fail();
+        }
+        //窗口20次 之前的失败被挤出去
+        for (int i = 0; i < 20; i++) {
+            succeed();
+        }
+        for (int i = 0; i < 9; i++) {
+            fail();
+        }
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState(HOST));
+
+        fail();
+
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState(HOST));
+    }
+
+    @Test
+    public void halfOpenAdmitsLimitedProbesAfterOpenMillis() {
+        trip();
+        breaker.time += OPEN_MILLIS - 1;
+        assertNull(breaker.tryAcquire(HOST));
+
+        breaker.time += 1;
+
+        for (int i = 0; i < 3; i++) {
+            CircuitBreaker.Permit probe = breaker.tryAcquire(HOST);
+            assertNotNull(probe);
+            assertEquals(CircuitBreaker.State.HALF_OPEN, probe.getState());
+        }
+        assertNull(breaker.tryAcquire(HOST));
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState(HOST));
+    }
+
+    @Test
+    public void recoversWhenProbesSucceed() {
+        trip();
+        breaker.time += OPEN_MILLIS;
+        TestObserver<CircuitBreaker.StateEvent> events = breaker.observe().test();
+
+        for (int i = 0; i < 3; i++) {
+            succeed();
+        }
+
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState(HOST));
+        events.assertValueCount(2);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, events.values().get(1).getFrom());
+        assertEquals(CircuitBreaker.State.CLOSED, events.values().get(1).getTo());
+        //恢复后重新统计 之前的失败不算
+        for (int i = 0; i < 9; i++) {
+            fail();
+        }
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState(HOST));
+    }
+
+    @Test
+    public void failedProbeReopens() {
+        trip();
+        breaker.time += OPEN_MILLIS;
+        succeed();
+
+        fail();
+
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState(HOST));
+        assertNull(breaker.tryAcquire(HOST));
+        breaker.time += OPEN_MILLIS;
+        assertNotNull(breaker.tryAcquire(HOST));
+    }
+
+    @Test
+    public void callsAdmittedWhileClosedAreNotProbes() {
+        CircuitBreaker.Permit slow = breaker.tryAcquire(HOST);
+        trip();
+        breaker.time += OPEN_MILLIS;
+        CircuitBreaker.Permit probe = breaker.tryAcquire(HOST);
+
+        //熔断前放行的请求现在才失败
+        breaker.onResult(slow, null, 503, 20000);
+
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState(HOST));
+        breaker.onResult(probe, null, 200, 10);
+        succeed();
+        succeed();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState(HOST));
+    }
+
+    @Test
+    public void staleSuccessDoesNotCountAsProbe() {
+        CircuitBreaker.Permit early = breaker.tryAcquire(HOST);
+        trip();
+        breaker.time += OPEN_MILLIS;
+        succeed();
+        succeed();
+
+        breaker.onResult(early, null, 200, 10);
+
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState(HOST));
+    }
+
+    @Test
+    public void canceledProbeReturnsItsSlot() {
+        trip();
+        breaker.time += OPEN_MILLIS;
+        CircuitBreaker.Permit first = breaker.tryAcquire(HOST);
+        breaker.tryAcquire(HOST);
+        breaker.tryAcquire(HOST);
+        assertNull(breaker.tryAcquire(HOST));
+
+        breaker.onCancel(first);
+
+        assertNotNull(breaker.tryAcquire(HOST));
+    }
+
+    @Test
+    public void hostsAreIndependent() {
+        trip();
+
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState("cdn.example.com"));
+        assertNotNull(breaker.tryAcquire("cdn.example.com"));
+    }
+
+    @Test
+    public void eventsCannotBeFedFromOutside() {
+        assertFalse(breaker.observe() instanceof Subject);
+    }
+
+    private void trip() {
+        for (int i = 0; i < 10; i++) {
+            fail();
+        }
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState(HOST));
+    }
+
+    private void succeed() {
+        breaker.onResult(breaker.tryAcquire(HOST), null, 200, 10);
+    }
+
+    private void fail() {
+        breaker.onResult(breaker.tryAcquire(HOST), null, 503, 10);
+    }
+
+    private static class ManualBreaker extends CircuitBreaker {
+        long time = 1000;
+
+        ManualBreaker() {
+            super(DEFAULT_FAILURE_RATE, DEFAULT_SLOW_CALL_RATE, DEFAULT_SLOW_CALL_MILLIS, OPEN_MILLIS);
+        }
+
+        @Override
+        long now() {
+            return time;
+        }
+    }
+}
@@ -0,0 +1,282 @@
+package com.seaky.netframe.core;
+
+import com.seaky.netframe.annotation.NoCompress;
+import com.seaky.netframe.build.HttpInterceptor;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
+import okio.GzipSink;
+import okio.GzipSource;
+import okio.Okio;
+import retrofit2.Invocation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * 请求体压缩和响应解压测试 本地MockWebServer，请求带上Retrofit的Invocation
+ */
+public class CompressionTest {
+
+    private static final MediaType TEXT = MediaType.parse("text/plain; charset=utf-8");
+    private static final long THRESHOLD = 1024;
+
+    interface Api {
+        void upload();
+
+        @NoCompress
+        void image();
+
+        void get();
+    }
+
+    private MockWebServer server;
+    private Compression compression;
+    private OkHttpClient client;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new MockWebServer();
+        server.start();
+        newClient(Compression.Encoding.GZIP);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.shutdown();
+    }
+
+    @Test
+    public void compressesLargeRequestBodyWithGzip() throws Exception {
+        String body = text(4096);
+        server.enqueue(new MockResponse());
+
+        call(post("upload", body));
+
+        RecordedRequest request = server.takeRequest();
+        assertEquals("gzip", request.getHeader("Content-Encoding"));
+        assertEquals("chunked", request.getHeader("Transfer-Encoding"));
+        assertEquals(body, gunzip(request.getBody()).readUtf8());
+    }
+
+    @Test
+    public void compressesLargeRequestBodyWithDeflate() throws Exception {
+        newClient(Compression.Encoding.DEFLATE);
+        String body = text(4096);
+        server.enqueue(new MockResponse());
+
+        call(post("upload", body));
+
+        RecordedRequest request = server.takeRequest();
+        assertEquals("deflate", request.getHeader("Content-Encoding"));
+        assertEquals(body, new String(inflate(request.getBody().readByteArray()), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void leavesSmallRequestBodyAlone() throws Exception {
+        String body = text((int) THRESHOLD - 1);
+        server.enqueue(new MockResponse());
+
+        call(post("upload", body));
+
+        RecordedRequest request = server.takeRequest();
+        assertNull(request.getHeader("Content-Encoding"));
+        assertEquals(body, request.getBody().readUtf8());
+    }
+
+    @Test
+    public void noCompressMethodIsUntouched() throws Exception {
+        String body = text(4096);
+        server.enqueue(new MockResponse());
+
+        call(post("image", body));
+
+        RecordedRequest request = server.takeRequest();
+        assertNull(request.getHeader("Content-Encoding"));
+        //交给OkHttp默认的gzip处理
+        assertEquals("gzip", request.getHeader("Accept-Encoding"));
+        assertEquals(body, request.getBody().readUtf8());
+        assertEquals(Collections.emptyMap(), compression.getStats());
+    }
+
+    @Test
+    public void decodesGzipResponse() throws Exception {
+        String body = text(4096);
+        server.enqueue(new MockResponse().setHeader("Content-Encoding", "gzip").setBody(gzip(body)));
+
+        Response response = call(get());
+
+        assertEquals(Compression.ACCEPT_ENCODING, server.takeRequest().getHeader("Accept-Encoding"));
+        assertNull(response.header("Content-Encoding"));
+        assertNull(response.header("Content-Length"));
+        assertEquals(body, response.body().string());
+    }
+
+    @Test
+    public void decodesZlibDeflateResponse() throws Exception {
+        String body = text(4096);
+        server.enqueue(new MockResponse().setHeader("Content-Encoding", "deflate")
+                .setBody(new Buffer().write(deflate(body, false))));
+
+        assertEquals(body, call(get()).body().string());
+    }
+
+    @Test
+    public void decodesRawDeflateResponse() throws Exception {
+        String body = text(4096);
+        server.enqueue(new MockResponse().setHeader("Content-Encoding", "deflate")
+                .setBody(new Buffer().write(deflate(body, true))));
+
+        assertEquals(body, call(get()).body().string());
+    }
+
+    @Test
+    public void leavesUnknownEncodingAlone() throws Exception {
+        server.enqueue(new MockResponse().setHeader("Content-Encoding", "br").setBody("opaque"));
+
+        Response response = call(get());
+
+        assertEquals("br", response.header("Content-Encoding"));
+        assertEquals("opaque", response.body().string());
+    }
+
+    @Test
+    public void responsesWithoutBodyPassThrough() throws Exception {
+        server.enqueue(new MockResponse().setHeader("Content-Encoding", "gzip").setHeader("Content-Length", 20));
+        server.enqueue(new MockResponse().setResponseCode(204).setHeader("Content-Encoding", "gzip"));
+        server.enqueue(new MockResponse().setResponseCode(304).setHeader("Content-Encoding", "gzip"));
+
+        //按gzip读空的响应体会抛EOFException
+        Response head = call(get().newBuilder().head().build());
+        assertEquals("gzip", head.header("Content-Encoding"));
+        assertEquals("", head.body().string());
+        Response noContent = call(get());
+        assertEquals(204, noContent.code());
+        assertEquals("", noContent.body().string());
+        Response notModified = call(get());
+        assertEquals(304, notModified.code());
+        assertEquals("", notModified.body().string());
+        assertEquals(Collections.emptyMap(), compression.getStats());
+    }
+
+    @Test
+    public void countsBytesPerEndpoint() throws Exception {
+        String request = text(8192);
+        String response = text(4096);
+        Buffer gzipped = gzip(response);
+        long responseWire = gzipped.size();
+        server.enqueue(new MockResponse().setHeader("Content-Encoding", "gzip").setBody(gzipped));
+
+        call(post("upload", request)).body().string();
+
+        long requestWire = server.takeRequest().getBodySize();
+        CompressionStats stats = compression.getStats().get("Api.upload");
+        assertEquals(1, stats.getRequestCount());
+        assertEquals(request.length(), stats.getRequestBytes());
+        assertEquals(requestWire, stats.getRequestWireBytes());
+        assertEquals(1, stats.getResponseCount());
+        assertEquals(response.length(), stats.getResponseBytes());
+        assertEquals(responseWire, stats.getResponseWireBytes());
+        assertEquals(request.length() - requestWire + response.length() - responseWire, stats.getSavedBytes());
+    }
+
+    private void newClient(Compression.Encoding encoding) {
+        compression = new Compression(encoding, THRESHOLD);
+        client = new OkHttpClient.Builder()
+                .addInterceptor(HttpInterceptor.compressionInterceptor(compression))
+                .build();
+    }
+
+    private Response call(Request request) throws IOException {
+        return client.newCall(request).execute();
+    }
+
+    private Request post(String method, String body) {
+        return new Request.Builder()
+                .url(server.url("/" + method))
+                .post(RequestBody.create(TEXT, body))
+                .tag(Invocation.class, invocation(method))
+                .build();
+    }
+
+    private Request get() {
+        return new Request.Builder()
+                .url(server.url("/get"))
+                .tag(Invocation.class, invocation("get"))
+                .build();
+    }
+
+    private static Invocation invocation(String method) {
+        try {
+            return Invocation.of(Api.class.getDeclaredMethod(method), Collections.emptyList());
+        } catch (NoSuchMethodException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    //容易压缩的文本
+    private static String text(int length) {
+        StringBuilder builder = new StringBuilder(length);
+        while (builder.length() < length) {
+            builder.append("netframe ").append(builder.length() % 97).append('\n');
+        }
+        return builder.substring(0, length);
+    }
+
+    private static Buffer gzip(String text) throws IOException {
+        Buffer buffer = new Buffer();
+        GzipSink sink = new GzipSink(buffer);
+        sink.write(new Buffer().writeUtf8(text), text.length());
+        sink.close();
+        return buffer;
+    }
+
+    private static Buffer gunzip(Buffer gzipped) throws IOException {
+        Buffer buffer = new Buffer();
+        Okio.buffer(new GzipSource(gzipped)).readAll(buffer);
+        return buffer;
+    }
+
+    private static byte[] deflate(String text, boolean raw) {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, raw);
+        deflater.setInput(text.getBytes(StandardCharsets.UTF_8));
+        deflater.finish();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] chunk = new byte[1024];
+        while (!deflater.finished()) {
+            out.write(chunk, 0, deflater.deflate(chunk));
+        }
+        deflater.end();
+        return out.toByteArray();
+    }
+
+    private static byte[] inflate(byte[] data) throws Exception {
+        Inflater inflater = new Inflater();
+        inflater.setInput(data);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] chunk = new byte[1024];
+        while (!inflater.finished()) {
+            out.write(chunk, 0, inflater.inflate(chunk));
+        }
+        inflater.end();
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,315 @@
+package com.seaky.netframe.core;
+
+import com.seaky.netframe.annotation.Deferrable;
+import com.seaky.netframe.exception.ApiException;
+import com.seaky.netframe.exception.ExceptionEngine;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.Observable;
+import io.reactivex.observers.TestObserver;
+import io.reactivex.schedulers.Schedulers;
+import io.reactivex.subjects.BehaviorSubject;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 离线队列测试 本地MockWebServer，网络状态手动切换
+ */
+public class DeferredQueueTest {
+
+    private static final MediaType JSON = MediaType.parse("application/json; charset=utf-8");
+
+    interface Api {
+        @Deferrable
+        void single();
+
+        @Deferrable(batchUrl = "batch", maxBatch = 2)
+        void batched();
+    }
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private MockWebServer server;
+    private FakeConnectivity connectivity;
+    private OkHttpClient client;
+    private File file;
+    private DeferredQueue queue;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new MockWebServer();
+        server.start();
+        connectivity = new FakeConnectivity();
+        client = new OkHttpClient();
+        file = new File(folder.getRoot(), "deferred.log");
+        queue = newQueue();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        queue.close();
+        server.shutdown();
+    }
+
+    @Test
+    public void offlineRequestsReplayInOrderWithIdempotencyKey() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            TestObserver<Object> observer = defer("single", "{\"n\":" + i + "}").test();
+            observer.assertError(e -> e instanceof ApiException
+                    && ((ApiException) e).getCode() == ExceptionEngine.DEFERRED_ERROR);
+        }
+        assertEquals(3, queue.size());
+        for (int i = 0; i < 3; i++) {
+            server.enqueue(new MockResponse());
+        }
+        TestObserver<DeferredQueue.DeferredEvent> events = queue.observe().test();
+
+        connectivity.set(true);
+
+        events.awaitCount(3);
+        events.assertValueCount(3);
+        Set<String> keys = new HashSet<>();
+        for (int i = 0; i < 3; i++) {
+            RecordedRequest request = server.takeRequest(1, TimeUnit.SECONDS);
+            assertEquals("{\"n\":" + i + "}", request.getBody().readUtf8());
+            assertNotNull(request.getHeader(DeferredQueue.IDEMPOTENCY_KEY));
+            keys.add(request.getHeader(DeferredQueue.IDEMPOTENCY_KEY));
+        }
+        assertEquals(3, keys.size());
+        assertEquals(0, queue.size());
+    }
+
+    @Test
+    public void connectFailureIsQueued() {
+        connectivity.set(true);
+        Request request = post("single", "{}");
+        Observable<Object> upstream = Observable.error(new ConnectException("refused"));
+
+        queue.defer(request, "Api.single", deferrable("single"), upstream).test()
+                .assertError(e -> ((ApiException) e).getCode() == ExceptionEngine.DEFERRED_ERROR);
+
+        assertEquals(1, queue.size());
+    }
+
+    @Test
+    public void serverErrorIsNotQueued() {
+        connectivity.set(true);
+        Observable<Object> upstream = Observable.error(new ApiException(500, "server"));
+
+        queue.defer(post("single", "{}"), "Api.single", deferrable("single"), upstream).test()
+                .assertError(e -> ((ApiException) e).getCode() == 500);
+
+        assertEquals(0, queue.size());
+    }
+
+    @Test
+    public void pendingRequestsSurviveRestart() throws Exception {
+        defer("single", "{\"n\":1}").test();
+        defer("single", "{\"n\":2}").test();
+        queue.close();
+
+        queue = newQueue();
+
+        assertEquals(2, queue.size());
+    }
+
+    @Test
+    public void tornTailIsTruncated() throws Exception {
+        defer("single", "{\"n\":1}").test();
+        defer("single", "{\"n\":2}").test();
+        queue.close();
+        long valid = file.length();
+        //写到一半断电 只留下类型和一半长度
+        FileOutputStream out = new FileOutputStream(file, true);
+        out.write(new byte[]{1, 0, 0});
+        out.close();
+
+        queue = newQueue();
+        assertEquals(2, queue.size());
+        assertEquals(valid, file.length());
+
+        defer("single", "{\"n\":3}").test();
+        queue.close();
+        queue = newQueue();
+        assertEquals(3, queue.size());
+    }
+
+    @Test
+    public void jsonRequestsAreBatched() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            defer("batched", "{\"n\":" + i + "}").test();
+        }
+        server.enqueue(new MockResponse());
+        server.enqueue(new MockResponse());
+        TestObserver<DeferredQueue.DeferredEvent> events = queue.observe().test();
+
+        connectivity.set(true);
+
+        events.awaitCount(3);
+        events.assertValueCount(3);
+        //maxBatch = 2 三条请求分两次发
+        RecordedRequest first = server.takeRequest(1, TimeUnit.SECONDS);
+        assertEquals("/batch", first.getPath());
+        String body = first.getBody().readUtf8();
+        assertTrue(body, body.startsWith("[{\"key\":\""));
+        assertTrue(body, body.contains("\"body\":{\"n\":0}}") && body.contains("\"body\":{\"n\":1}}"));
+        assertTrue(server.takeRequest(1, TimeUnit.SECONDS).getBody().readUtf8().contains("{\"n\":2}"));
+        assertEquals(2, server.getRequestCount());
+    }
+
+    @Test
+    public void rejectedRequestsAreDropped() {
+        defer("single", "{}").test();
+        server.enqueue(new MockResponse().setResponseCode(400));
+        TestObserver<DeferredQueue.DeferredEvent> events = queue.observe().test();
+
+        connectivity.set(true);
+
+        events.awaitCount(1);
+        assertFalse(events.values().get(0).isDelivered());
+        assertEquals(400, events.values().get(0).getCode());
+        assertEquals(0, queue.size());
+    }
+
+    @Test
+    public void unauthorizedRequestsAreKept() {
+        defer("single", "{}").test();
+        server.enqueue(new MockResponse().setResponseCode(401));
+        TestObserver<DeferredQueue.DeferredEvent> events = queue.observe().test();
+
+        connectivity.set(true);
+
+        events.awaitDone(500, TimeUnit.MILLISECONDS);
+        events.assertNoValues();
+        assertEquals(1, server.getRequestCount());
+        assertEquals(1, queue.size());
+    }
+
+    @Test
+    public void liveRequestQueuesBehindPendingOnes() throws Exception {
+        defer("single", "{\"n\":1}").test();
+        //第一次重发服务器不可用，离线请求还留在队列里
+        server.enqueue(new MockResponse().setResponseCode(503));
+        server.enqueue(new MockResponse());
+        server.enqueue(new MockResponse());
+        TestObserver<DeferredQueue.DeferredEvent> events = queue.observe().test();
+        connectivity.set(true);
+        assertEquals("{\"n\":1}", server.takeRequest(1, TimeUnit.SECONDS).getBody().readUtf8());
+
+        defer("single", "{\"n\":2}").test()
+                .assertError(e -> ((ApiException) e).getCode() == ExceptionEngine.DEFERRED_ERROR);
+
+        events.awaitCount(2);
+        assertEquals("{\"n\":1}", server.takeRequest(1, TimeUnit.SECONDS).getBody().readUtf8());
+        assertEquals("{\"n\":2}", server.takeRequest(1, TimeUnit.SECONDS).getBody().readUtf8());
+        assertEquals(0, queue.size());
+    }
+
+    @Test
+    public void oversizedRequestFallsBackToOriginalError() {
+        connectivity.set(true);
+        ConnectException refused = new ConnectException("refused");
+        Request request = new Request.Builder()
+                .url(server.url("/single"))
+                .post(RequestBody.create(JSON, new byte[DeferredLog.MAX_RECORD + 1]))
+                .build();
+
+        queue.defer(request, "Api.single", deferrable("single"), Observable.error(refused)).test()
+                .assertError(refused);
+
+        assertEquals(0, queue.size());
+    }
+
+    @Test
+    public void compactionKeepsOnlyPending() throws Exception {
+        queue.close();
+        DeferredLog log = new DeferredLog(file);
+        DeferredRequest request = DeferredRequest.of(0, "k", "Api.single", post("single", "{}"), "", 20);
+        for (int i = 0; i < 100; i++) {
+            log.append(request);
+        }
+        for (long id = 1; id <= 80; id++) {
+            log.ack(id);
+        }
+        assertTrue(log.needsCompaction());
+        long before = log.length();
+
+        log.compact();
+
+        assertTrue(log.length() < before);
+        assertFalse(log.needsCompaction());
+        log.close();
+        log = new DeferredLog(file);
+        assertEquals(20, log.size());
+        assertEquals(81, log.pending().get(0).id);
+        log.close();
+        queue = newQueue();
+    }
+
+    private DeferredQueue newQueue() {
+        return new DeferredQueue(file, client, connectivity, DeferredQueue.DEFAULT_CONCURRENCY, Schedulers.io());
+    }
+
+    private Observable<Object> defer(String method, String json) {
+        //离线时不会订阅上游
+        return queue.defer(post(method, json), "Api." + method, deferrable(method),
+                Observable.error(new AssertionError("upstream subscribed")));
+    }
+
+    private Request post(String method, String json) {
+        return new Request.Builder()
+                .url(server.url("/" + method))
+                .post(RequestBody.create(JSON, json))
+                .build();
+    }
+
+    private static Deferrable deferrable(String method) {
+        try {
+            return Api.class.getDeclaredMethod(method).getAnnotation(Deferrable.class);
+        } catch (NoSuchMethodException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private static class FakeConnectivity implements Connectivity {
+        private final BehaviorSubject<Boolean> mState = BehaviorSubject.createDefault(false);
+
+        void set(boolean connected) {
+            mState.onNext(connected);
+        }
+
+        @Override
+        public boolean isConnected() {
+            return mState.getValue();
+        }
+
+        @Override
+        public Observable<Boolean> observe() {
+            return mState;
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package com.seaky.netframe.core;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ *  DnsCache 使用假的解析器和时钟
+ *
+ *  Created by Seaky
+ */
+
+public class DnsCacheTest {
+
+    private static final long TTL = 20000;
+
+    private StubResolver mResolver;
+    private long mNow;
+    private DnsCache mDns;
+
+    private InetAddress mIpv4;
+    private InetAddress mIpv6;
+
+    @Before
+    public void setUp() throws Exception {
+        mIpv4 = InetAddress.getByAddress("example.com", new byte[]{1, 2, 3, 4});
+        mIpv6 = InetAddress.getByAddress("example.com", new byte[]{0x20, 1, 0x0d, (byte) 0xb8, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 1});
+        mResolver = new StubResolver();
+        mNow = 1000;
+        mDns = new DnsCache(mResolver) {
+            @Override
+            long now() {
+                return mNow;
+            }
+        };
+    }
+
+    @Test
+    public void cachesUntilTtlExpires() throws Exception {
+        List<InetAddress> addresses = mDns.lookup("example.com");
+        assertEquals(2, addresses.size());
+        //IPv4在前
+        assertEquals(mIpv4, addresses.get(0));
+        assertEquals(mIpv6, addresses.get(1));
+        assertEquals(2, mResolver.calls.get());
+
+        mNow += TTL / 2;
+        mDns.lookup("example.com");
+        assertEquals(2, mResolver.calls.get());
+
+        mNow += TTL;
+        mDns.lookup("example.com");
+        assertEquals(4, mResolver.calls.get());
+
+        DnsStats stats = mDns.getStats();
+        assertEquals(1, stats.getHitCount());
+        assertEquals(2, stats.getMissCount());
+        assertEquals(2, stats.getResolveCount());
+    }
+
+    @Test
+    public void refreshesInBackgroundBeforeExpiry() throws Exception {
+        mDns.lookup("example.com");
+        mResolver.latch = new CountDownLatch(2);
+
+        //TTL用掉3/4之后
+        mNow += TTL * 4 / 5;
+        List<InetAddress> addresses = mDns.lookup("example.com");
+        assertEquals(2, addresses.size());
+        assertTrue(mResolver.latch.await(5, TimeUnit.SECONDS));
+        assertEquals(1, mDns.getStats().getRefreshCount());
+        assertEquals(1, mDns.getStats().getHitCount());
+    }
+
+    @Test
+    public void servesStaleWhenResolverFails() throws Exception {
+        mDns.lookup("example.com");
+        mResolver.failing = true;
+
+        mNow += TTL * 2;
+        List<InetAddress> addresses = mDns.lookup("example.com");
+        assertEquals(2, addresses.size());
+        assertEquals(1, mDns.getStats().getStaleHitCount());
+        assertEquals(1, mDns.getStats().getFailureCount());
+
+        //超过MAX_STALE就不再使用
+        mNow += TimeUnit.HOURS.toMillis(2);
+        try {
+            mDns.lookup("example.com");
+            fail();
+        } catch (UnknownHostException expected) {
+        }
+    }
+
+    @Test
+    public void usesOneFamilyWhenTheOtherFails() throws Exception {
+        mResolver.failingFamily = DnsCache.Family.IPV6;
+        List<InetAddress> addresses = mDns.lookup("example.com");
+        assertEquals(Collections.singletonList(mIpv4), addresses);
+    }
+
+    @Test
+    public void resolvesFamiliesInParallel() throws Exception {
+        //两个地址族互相等待，串行解析的话会超时失败
+        mResolver.barrier = new CountDownLatch(2);
+        List<InetAddress> addresses = mDns.lookup("example.com");
+        assertEquals(2, addresses.size());
+    }
+
+    @Test
+    public void systemResolverLooksUpOncePerHost() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        DnsCache dns = new DnsCache() {
+            @Override
+            InetAddress[] systemLookup(String host) {
+                calls.incrementAndGet();
+                return new InetAddress[]{mIpv6, mIpv4};
+            }
+        };
+
+        List<InetAddress> addresses = dns.lookup("example.com");
+
+        assertEquals(1, calls.get());
+        //两个地址族都从这一次的结果里拆出来 IPv4在前
+        assertEquals(2, addresses.size());
+        assertEquals(mIpv4, addresses.get(0));
+        assertEquals(mIpv6, addresses.get(1));
+    }
+
+    @Test
+    public void overridesSkipResolver() throws Exception {
+        InetAddress fixed = InetAddress.getByAddress("example.com", new byte[]{10, 0, 0, 1});
+        mDns.override("example.com", fixed);
+        assertEquals(Collections.singletonList(fixed), mDns.lookup("example.com"));
+        assertEquals(0, mResolver.calls.get());
+
+        mDns.removeOverride("example.com");
+        assertEquals(2, mDns.lookup("example.com").size());
+        assertEquals(2, mResolver.calls.get());
+    }
+
+    private class StubResolver implements DnsCache.Resolver {
+
+        final AtomicInteger calls = new AtomicInteger();
+        volatile boolean failing;
+        volatile DnsCache.Family failingFamily;
+        volatile CountDownLatch latch;
+        volatile CountDownLatch barrier;
+
+        @Override
+        public DnsCache.Records lookup(String host, DnsCache.Family family) throws UnknownHostException {
+            calls.incrementAndGet();
+            try {
+                if (barrier != null) {
+                    barrier.countDown();
+                    if (!barrier.await(2, TimeUnit.SECONDS)) {
+                        throw new UnknownHostException("timeout");
+                    }
+                }
+                if (failing || family == failingFamily) {
+                    throw new UnknownHostException(host);
+                }
+                return new DnsCache.Records(Collections.singletonList(family == DnsCache.Family.IPV4 ? mIpv4 : mIpv6), TTL);
+            } catch (InterruptedException e) {
+                throw new UnknownHostException(host);
+            } finally {
+                if (latch != null) {
+                    latch.countDown();
+                }
+            }
+        }
+    }
+}
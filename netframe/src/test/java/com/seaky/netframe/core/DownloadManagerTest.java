@@ -0,0 +1,312 @@
+package com.seaky.netframe.core;
+
+import com.seaky.netframe.build.DownloadInfo;
+import com.seaky.netframe.build.DownloadObserver;
+import com.seaky.netframe.exception.ApiException;
+import com.seaky.netframe.exception.ExceptionEngine;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.reactivex.schedulers.Schedulers;
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 下载队列状态机测试 回调直接在下载线程执行，服务器可以挂起或者让某个地址失败一次
+ */
+public class DownloadManagerTest {
+
+    private static final String BODY = "netframe download";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private MockWebServer server;
+    private HoldDispatcher dispatcher;
+    private OkHttpClient client;
+    private String dir;
+    //正在execute的任务数和同一时间的最大值
+    private final AtomicInteger running = new AtomicInteger();
+    private final AtomicInteger overlap = new AtomicInteger();
+    private volatile long stopDelay;
+
+    @Before
+    public void setUp() throws Exception {
+        dispatcher = new HoldDispatcher();
+        server = new MockWebServer();
+        server.setDispatcher(dispatcher);
+        server.start();
+        client = new OkHttpClient();
+        dir = folder.getRoot().getAbsolutePath();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        dispatcher.release();
+        server.shutdown();
+    }
+
+    @Test
+    public void limitsActiveDownloadsPerHost() throws Exception {
+        dispatcher.hold();
+        DownloadManager manager = newManager(3, 1);
+
+        int first = manager.enqueue(url("/a"), dir, "a", 1, DownloadManager.Priority.NORMAL, new Recorder());
+        int second = manager.enqueue(url("/b"), dir, "b", 1, DownloadManager.Priority.NORMAL, new Recorder());
+
+        assertEquals(DownloadManager.State.RUNNING, manager.getState(first));
+        assertEquals(DownloadManager.State.QUEUED, manager.getState(second));
+        assertEquals(1, manager.getActiveCount());
+        assertEquals(1, manager.getQueuedCount());
+    }
+
+    @Test
+    public void userDownloadsRunBeforeBackground() throws Exception {
+        dispatcher.hold();
+        DownloadManager manager = newManager(1, 1);
+        manager.enqueue(url("/a"), dir, "a", 1, DownloadManager.Priority.NORMAL, new Recorder());
+        Recorder background = new Recorder();
+        manager.enqueue(url("/b"), dir, "b", 1, DownloadManager.Priority.BACKGROUND, background);
+        manager.enqueue(url("/c"), dir, "c", 1, DownloadManager.Priority.USER, new Recorder());
+
+        dispatcher.release();
+
+        background.await();
+        assertEquals("/a", server.takeRequest().getPath());
+        assertEquals("/c", server.takeRequest().getPath());
+        assertEquals("/b", server.takeRequest().getPath());
+    }
+
+    @Test
+    public void mergesDuplicateSubmissions() throws Exception {
+        DownloadManager manager = newManager(3, 2);
+        Recorder first = new Recorder();
+        Recorder second = new Recorder();
+        dispatcher.hold();
+
+        int id = manager.enqueue(url("/a"), dir, "a", 1, DownloadManager.Priority.NORMAL, first);
+        assertEquals(id, manager.enqueue(url("/a"), dir, "a", 1, DownloadManager.Priority.NORMAL, second));
+        dispatcher.release();
+
+        first.await();
+        second.await();
+        assertEquals(1, first.successes.get());
+        assertEquals(1, second.successes.get());
+        assertNull(manager.getState(id));
+    }
+
+    @Test
+    public void joiningPausedDownloadRequeuesIt() throws Exception {
+        dispatcher.hold();
+        DownloadManager manager = newManager(3, 2);
+        int id = manager.enqueue(url("/a"), dir, "a", 1, DownloadManager.Priority.NORMAL, new Recorder());
+        //等请求发到服务器再暂停，建连过程中取消的话OkHttp可能把关闭的连接放回连接池
+        dispatcher.awaitHeld();
+        manager.pause(id);
+        assertEquals(DownloadManager.State.PAUSED, manager.getState(id));
+        dispatcher.release();
+
+        Recorder joined = new Recorder();
+        assertEquals(id, manager.enqueue(url("/a"), dir, "a", 1, DownloadManager.Priority.NORMAL, joined));
+
+        joined.await();
+        assertEquals(1, joined.successes.get());
+    }
+
+    @Test
+    public void resumeWaitsForPausedTaskToStop() throws Exception {
+        dispatcher.hold();
+        stopDelay = 300;
+        DownloadManager manager = newManager(3, 2);
+        Recorder recorder = new Recorder();
+        int id = manager.enqueue(url("/a"), dir, "a", 1, DownloadManager.Priority.NORMAL, recorder);
+        dispatcher.awaitHeld();
+
+        manager.pause(id);
+        dispatcher.release();
+        manager.resume(id);
+
+        recorder.await();
+        assertEquals(1, recorder.successes.get());
+        //新任务在旧任务的execute返回之后才开始
+        assertEquals(1, overlap.get());
+    }
+
+    @Test
+    public void cancelNotifiesFailure() throws Exception {
+        dispatcher.hold();
+        DownloadManager manager = newManager(3, 2);
+        Recorder recorder = new Recorder();
+        int id = manager.enqueue(url("/a"), dir, "a", 1, DownloadManager.Priority.NORMAL, recorder);
+
+        manager.cancel(id);
+
+        recorder.await();
+        assertEquals(ExceptionEngine.CANCELED_ERROR, recorder.failure.getCode());
+        assertNull(manager.getState(id));
+        assertEquals(0, manager.getActiveCount());
+    }
+
+    @Test
+    public void resumedFailedDownloadNotifiesOnlyNewObserver() throws Exception {
+        dispatcher.failOnce("/a");
+        DownloadManager manager = newManager(3, 2);
+        Recorder failed = new Recorder();
+        int id = manager.enqueue(url("/a"), dir, "a", 1, DownloadManager.Priority.NORMAL, failed);
+        failed.await();
+        assertEquals(500, failed.failure.getCode());
+        assertEquals(DownloadManager.State.FAILED, manager.getState(id));
+
+        Recorder resumed = new Recorder();
+        manager.resume(id, resumed);
+
+        resumed.await();
+        assertEquals(1, resumed.successes.get());
+        //onError之后不再有任何回调
+        assertEquals(1, failed.starts.get());
+        assertEquals(0, failed.successes.get());
+    }
+
+    @Test
+    public void newSubmissionReplacesFailedDownload() throws Exception {
+        dispatcher.failOnce("/a");
+        DownloadManager manager = newManager(3, 2);
+        Recorder failed = new Recorder();
+        int oldId = manager.enqueue(url("/a"), dir, "a", 1, DownloadManager.Priority.NORMAL, failed);
+        failed.await();
+        dispatcher.hold();
+
+        int newId = manager.enqueue(url("/a"), dir, "a", 1, DownloadManager.Priority.NORMAL, new Recorder());
+        manager.resume(oldId);
+
+        assertNotEquals(oldId, newId);
+        assertNull(manager.getState(oldId));
+        assertEquals(1, manager.getActiveCount());
+        assertEquals(0, manager.getQueuedCount());
+    }
+
+    @Test
+    public void keepsBoundedNumberOfFailedDownloads() throws Exception {
+        DownloadManager manager = newManager(DownloadManager.MAX_FAILED + 1, DownloadManager.MAX_FAILED + 1);
+        int first = -1;
+        for (int i = 0; i <= DownloadManager.MAX_FAILED; i++) {
+            dispatcher.failOnce("/f" + i);
+            Recorder recorder = new Recorder();
+            int id = manager.enqueue(url("/f" + i), dir, "f" + i, 1, DownloadManager.Priority.NORMAL, recorder);
+            recorder.await();
+            if (i == 0) {
+                first = id;
+            }
+        }
+        assertNull(manager.getState(first));
+        assertEquals(DownloadManager.State.FAILED, manager.getState(first + 1));
+    }
+
+    private DownloadManager newManager(int maxActive, int maxPerHost) {
+        DownloadManager.TaskFactory factory = (url, file, segmentCount) -> new DownloadTask(client, url, file, segmentCount) {
+            @Override
+            public DownloadInfo execute() throws IOException {
+                overlap.set(Math.max(overlap.get(), running.incrementAndGet()));
+                try {
+                    return super.execute();
+                } finally {
+                    if (stopDelay > 0) {
+                        //模拟下载线程退出得慢
+                        try {
+                            Thread.sleep(stopDelay);
+                        } catch (InterruptedException ignored) {
+                        }
+                    }
+                    running.decrementAndGet();
+                }
+            }
+        };
+        return new DownloadManager(factory, Schedulers.trampoline(), maxActive, maxPerHost);
+    }
+
+    private String url(String path) {
+        return server.url(path).toString();
+    }
+
+    private static class Recorder extends DownloadObserver<DownloadInfo> {
+        final AtomicInteger starts = new AtomicInteger();
+        final AtomicInteger successes = new AtomicInteger();
+        volatile ApiException failure;
+        private final CountDownLatch mDone = new CountDownLatch(1);
+
+        @Override
+        protected void onStart() {
+            starts.incrementAndGet();
+        }
+
+        @Override
+        protected void onFailure(ApiException e) {
+            failure = e;
+            mDone.countDown();
+        }
+
+        @Override
+        protected void onSuccess(DownloadInfo downloadInfo) {
+            successes.incrementAndGet();
+            mDone.countDown();
+        }
+
+        void await() throws InterruptedException {
+            assertTrue("timeout", mDone.await(5, TimeUnit.SECONDS));
+        }
+    }
+
+    /**
+     * 不支持Range的服务器 hold时请求挂起直到release，failOnce的地址第一次返回500
+     */
+    private static class HoldDispatcher extends Dispatcher {
+        private volatile CountDownLatch mGate = new CountDownLatch(0);
+        private final CountDownLatch mHeld = new CountDownLatch(1);
+        private final Set<String> mFailOnce = ConcurrentHashMap.newKeySet();
+
+        void hold() {
+            mGate = new CountDownLatch(1);
+        }
+
+        void release() {
+            mGate.countDown();
+        }
+
+        void awaitHeld() throws InterruptedException {
+            assertTrue(mHeld.await(5, TimeUnit.SECONDS));
+        }
+
+        void failOnce(String path) {
+            mFailOnce.add(path);
+        }
+
+        @Override
+        public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+            if (mFailOnce.remove(request.getPath())) {
+                return new MockResponse().setResponseCode(500);
+            }
+            mHeld.countDown();
+            mGate.await(5, TimeUnit.SECONDS);
+            return new MockResponse().setBody(BODY);
+        }
+    }
+}
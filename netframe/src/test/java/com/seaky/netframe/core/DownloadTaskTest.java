@@ -0,0 +1,228 @@
+package com.seaky.netframe.core;
+
+import com.seaky.netframe.build.DownloadInfo;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 分段下载和断点续传测试 本地MockWebServer模拟支持/不支持Range的服务器
+ */
+public class DownloadTaskTest {
+
+    private static final String ETAG = "\"v1\"";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private MockWebServer server;
+    private byte[] content;
+
+    @Before
+    public void setUp() throws Exception {
+        content = new byte[(int) (DownloadTask.MIN_SEGMENT_SIZE * 5 + 123)];
+        new Random(42).nextBytes(content);
+        server = new MockWebServer();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.shutdown();
+    }
+
+    @Test
+    public void downloadsInParallelRanges() throws Exception {
+        server.setDispatcher(new RangeDispatcher(true));
+        server.start();
+
+        File file = folder.newFile("range.bin");
+        DownloadInfo info = new DownloadTask(new OkHttpClient(), server.url("/file").toString(), file, 4).execute();
+
+        assertEquals(content.length, info.getTotal());
+        assertArrayEquals(content, readAll(file));
+        //1次探测 + 4段
+        assertEquals(5, server.getRequestCount());
+    }
+
+    @Test
+    public void downloadsIntoMemoryMappedFile() throws Exception {
+        server.setDispatcher(new RangeDispatcher(true));
+        server.start();
+
+        File file = folder.newFile("mapped.bin");
+        DownloadTask task = new DownloadTask(new OkHttpClient(), server.url("/file").toString(), file, 4);
+        task.setMemoryMapped(true);
+        task.execute();
+
+        assertArrayEquals(content, readAll(file));
+    }
+
+    @Test
+    public void releasesMappedWindowWithoutGc() throws Exception {
+        RandomAccessFile raf = new RandomAccessFile(folder.newFile("window.bin"), "rw");
+        try {
+            MappedByteBuffer mapped = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, 4096);
+            mapped.put((byte) 1);
+
+            assertTrue(DownloadTask.unmap(mapped));
+            assertEquals(1, raf.read());
+        } finally {
+            raf.close();
+        }
+    }
+
+    @Test
+    public void refetchesWholeFileWhenTotalIsUnknown() throws Exception {
+        server.setDispatcher(new RangeDispatcher(true, false));
+        server.start();
+
+        File file = folder.newFile("unknown.bin");
+        DownloadInfo info = new DownloadTask(new OkHttpClient(), server.url("/file").toString(), file, 4).execute();
+
+        assertArrayEquals(content, readAll(file));
+        assertEquals(content.length, info.getProgress());
+        //探测请求的206只有一个字节，第二次不带Range
+        assertEquals(2, server.getRequestCount());
+        assertEquals("bytes=0-0", server.takeRequest().getHeader("Range"));
+        assertNull(server.takeRequest().getHeader("Range"));
+    }
+
+    @Test
+    public void fallsBackToSingleStreamWithoutRanges() throws Exception {
+        server.setDispatcher(new RangeDispatcher(false));
+        server.start();
+
+        File file = folder.newFile("plain.bin");
+        DownloadInfo info = new DownloadTask(new OkHttpClient(), server.url("/file").toString(), file, 4).execute();
+
+        assertEquals(content.length, info.getTotal());
+        assertArrayEquals(content, readAll(file));
+        assertEquals(1, server.getRequestCount());
+    }
+
+    @Test
+    public void resumesFromCheckpoint() throws Exception {
+        server.setDispatcher(new RangeDispatcher(true));
+        server.start();
+        String url = server.url("/file").toString();
+        File file = folder.newFile("resume.bin");
+        DownloadTask task = new DownloadTask(new OkHttpClient(), url, file, 4);
+
+        //模拟上次下载到一半断开：第一段下完，第二段下了一半
+        DownloadCheckpoint checkpoint = DownloadCheckpoint.create(file, url, ETAG, null, content.length, task.split(content.length));
+        DownloadCheckpoint.Segment first = checkpoint.getSegments().get(0);
+        DownloadCheckpoint.Segment second = checkpoint.getSegments().get(1);
+        long half = (second.end - second.start + 1) / 2;
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.setLength(content.length);
+        raf.write(content, 0, (int) (second.start + half));
+        raf.close();
+        first.committed.set(first.end - first.start + 1);
+        second.committed.set(half);
+        checkpoint.save();
+
+        DownloadInfo info = task.execute();
+
+        assertTrue(info.isResumed());
+        assertEquals(second.start + half, info.getSavedBytes());
+        assertArrayEquals(content, readAll(file));
+        assertFalse(new File(file.getAbsolutePath() + DownloadCheckpoint.SUFFIX).exists());
+        //不用再探测，第一段已完成，只请求剩下的三段
+        assertEquals(3, server.getRequestCount());
+        Set<String> ranges = new HashSet<>();
+        for (int i = 0; i < 3; i++) {
+            ranges.add(server.takeRequest().getHeader("Range"));
+        }
+        assertTrue(ranges.contains("bytes=" + (second.start + half) + "-" + second.end));
+    }
+
+    @Test
+    public void restartsWhenValidatorChanged() throws Exception {
+        server.setDispatcher(new RangeDispatcher(true));
+        server.start();
+        String url = server.url("/file").toString();
+        File file = folder.newFile("changed.bin");
+        DownloadTask task = new DownloadTask(new OkHttpClient(), url, file, 4);
+
+        DownloadCheckpoint checkpoint = DownloadCheckpoint.create(file, url, "\"old\"", null, content.length, task.split(content.length));
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.setLength(content.length);
+        raf.close();
+        checkpoint.getSegments().get(0).committed.set(100);
+        checkpoint.save();
+
+        DownloadInfo info = task.execute();
+
+        assertFalse(info.isResumed());
+        assertArrayEquals(content, readAll(file));
+    }
+
+    private static byte[] readAll(File file) throws Exception {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            byte[] bytes = new byte[(int) raf.length()];
+            raf.readFully(bytes);
+            return bytes;
+        } finally {
+            raf.close();
+        }
+    }
+
+    private class RangeDispatcher extends Dispatcher {
+
+        private final boolean supportRange;
+        //false时Content-Range的总大小为*
+        private final boolean knownTotal;
+
+        RangeDispatcher(boolean supportRange) {
+            this(supportRange, true);
+        }
+
+        RangeDispatcher(boolean supportRange, boolean knownTotal) {
+            this.supportRange = supportRange;
+            this.knownTotal = knownTotal;
+        }
+
+        @Override
+        public MockResponse dispatch(RecordedRequest request) {
+            String range = request.getHeader("Range");
+            String ifRange = request.getHeader("If-Range");
+            if (!supportRange || range == null || (ifRange != null && !ETAG.equals(ifRange))) {
+                return new MockResponse().setHeader("ETag", ETAG).setBody(new Buffer().write(content));
+            }
+            String[] bounds = range.substring("bytes=".length()).split("-");
+            int start = Integer.parseInt(bounds[0]);
+            int end = bounds.length > 1 ? Integer.parseInt(bounds[1]) : content.length - 1;
+            return new MockResponse()
+                    .setResponseCode(206)
+                    .setHeader("Accept-Ranges", "bytes")
+                    .setHeader("ETag", ETAG)
+                    .setHeader("Content-Range", "bytes " + start + "-" + end + "/" + (knownTotal ? String.valueOf(content.length) : "*"))
+                    .setBody(new Buffer().write(content, start, end - start + 1));
+        }
+    }
+}
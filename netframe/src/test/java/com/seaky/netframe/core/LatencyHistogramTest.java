@@ -0,0 +1,83 @@
+package com.seaky.netframe.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 耗时直方图测试 分桶精度、分位数和衰减
+ */
+public class LatencyHistogramTest {
+
+    @Test
+    public void emptyHistogramHasNoPercentile() {
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        assertEquals(0, histogram.getCount());
+        assertEquals(-1, histogram.percentile(0.99f));
+    }
+
+    @Test
+    public void bucketUpperBoundIsWithinOneStep() {
+        for (long millis = 2; millis < 200000; millis = millis * 3 / 2 + 1) {
+            long bound = LatencyHistogram.upperBound(LatencyHistogram.indexOf(millis));
+            assertTrue(millis + " -> " + bound, bound >= millis);
+            //每翻一倍4个桶 上界最多比实际大2^(1/4)倍，取整再多1ms
+            assertTrue(millis + " -> " + bound, bound <= millis * 1.19 + 1);
+        }
+        assertEquals(0, LatencyHistogram.indexOf(0));
+        assertEquals(0, LatencyHistogram.indexOf(1));
+    }
+
+    @Test
+    public void veryLongLatenciesGoToLastBucket() {
+        assertEquals(LatencyHistogram.indexOf(Long.MAX_VALUE), LatencyHistogram.indexOf(60 * 60 * 1000L));
+    }
+
+    @Test
+    public void percentileFindsTail() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 99; i++) {
+            histogram.record(10);
+        }
+        histogram.record(1000);
+
+        assertEquals(100, histogram.getCount());
+        assertEquals(bound(10), histogram.percentile(0.5f));
+        assertEquals(bound(10), histogram.percentile(0.99f));
+        assertEquals(bound(1000), histogram.percentile(1f));
+    }
+
+    @Test
+    public void countsDecayPastMaxSamples() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 2048; i++) {
+            histogram.record(50);
+        }
+        assertEquals(2048, histogram.getCount());
+
+        histogram.record(50);
+
+        assertEquals(2049 / 2, histogram.getCount());
+        assertEquals(bound(50), histogram.percentile(0.99f));
+    }
+
+    @Test
+    public void followsLatencyShiftAfterDecay() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 2049; i++) {
+            histogram.record(20);
+        }
+        //衰减后旧数据只剩一半权重，新的耗时很快成为多数
+        for (int i = 0; i < 2000; i++) {
+            histogram.record(400);
+        }
+
+        assertEquals(bound(400), histogram.percentile(0.5f));
+    }
+
+    private static long bound(long millis) {
+        return LatencyHistogram.upperBound(LatencyHistogram.indexOf(millis));
+    }
+}
@@ -0,0 +1,49 @@
+package com.seaky.netframe.core;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.reactivex.Observable;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 网络线程池排队耗时测试 单线程，第一个任务占住线程让第二个排队
+ */
+public class NetSchedulerTest {
+
+    @Test
+    public void currentWaitIsUnknownOutsideThePool() {
+        NetScheduler scheduler = new NetScheduler(1, NetScheduler.DEFAULT_QUEUE_LIMIT);
+
+        assertEquals(-1, scheduler.currentWaitMillis());
+    }
+
+    @Test
+    public void currentWaitCoversTimeSpentQueued() throws Exception {
+        NetScheduler scheduler = new NetScheduler(1, NetScheduler.DEFAULT_QUEUE_LIMIT);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicLong wait = new AtomicLong(-2);
+        CountDownLatch done = new CountDownLatch(1);
+
+        Observable.fromCallable(() -> release.await(5, TimeUnit.SECONDS))
+                .subscribeOn(scheduler.get(NetScheduler.Priority.NORMAL))
+                .subscribe();
+        Observable.fromCallable(scheduler::currentWaitMillis)
+                .subscribeOn(scheduler.get(NetScheduler.Priority.INTERACTIVE))
+                .subscribe(value -> {
+                    wait.set(value);
+                    done.countDown();
+                });
+        Thread.sleep(100);
+        release.countDown();
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertTrue(wait.get() >= 100);
+        assertEquals(wait.get(), scheduler.getStats().getMaxWaitMillis(NetScheduler.Priority.INTERACTIVE));
+    }
+}
@@ -0,0 +1,91 @@
+package com.seaky.netframe.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 进度采样测试 按时间和百分比合并通知，滑动窗口网速
+ */
+public class ProgressSamplerTest {
+
+    private static final long TOTAL = 10000;
+
+    @Test
+    public void firstUpdateAlwaysNotifies() {
+        ProgressSampler sampler = new ProgressSampler(100, 0.01f);
+
+        assertTrue(sampler.update(0, TOTAL, 0));
+    }
+
+    @Test
+    public void coalescesWithinInterval() {
+        ProgressSampler sampler = new ProgressSampler(100, 0.01f);
+        sampler.update(0, TOTAL, 0);
+
+        assertFalse(sampler.update(5000, TOTAL, 50));
+        assertFalse(sampler.update(6000, TOTAL, 99));
+        assertTrue(sampler.update(6000, TOTAL, 100));
+    }
+
+    @Test
+    public void coalescesUntilStepReached() {
+        ProgressSampler sampler = new ProgressSampler(100, 0.01f);
+        sampler.update(0, TOTAL, 0);
+
+        //1% = 100字节
+        assertFalse(sampler.update(50, TOTAL, 200));
+        assertFalse(sampler.update(99, TOTAL, 500));
+        assertTrue(sampler.update(100, TOTAL, 600));
+        //从上次通知的位置重新算
+        assertFalse(sampler.update(150, TOTAL, 800));
+    }
+
+    @Test
+    public void slowProgressStillNotifiesEverySecond() {
+        ProgressSampler sampler = new ProgressSampler(100, 0.01f);
+        sampler.update(0, TOTAL, 0);
+
+        assertFalse(sampler.update(10, TOTAL, 999));
+        assertTrue(sampler.update(20, TOTAL, 1000));
+        assertFalse(sampler.update(30, TOTAL, 1999));
+        assertTrue(sampler.update(30, TOTAL, 2000));
+    }
+
+    @Test
+    public void unknownTotalNotifiesEveryInterval() {
+        ProgressSampler sampler = new ProgressSampler(100, 0.01f);
+        sampler.update(0, -1, 0);
+
+        assertFalse(sampler.update(1, -1, 50));
+        assertTrue(sampler.update(2, -1, 100));
+    }
+
+    @Test
+    public void speedUsesRecentWindow() {
+        ProgressSampler sampler = new ProgressSampler();
+        assertEquals(0, sampler.getSpeed());
+        //前3秒1字节/ms慢启动，之后10字节/ms
+        for (long t = 0; t <= 9000; t += 50) {
+            long bytes = t <= 3000 ? t : 3000 + (t - 3000) * 10;
+            sampler.update(bytes, -1, t);
+        }
+
+        assertEquals(10000, sampler.getSpeed());
+    }
+
+    @Test
+    public void etaFollowsSpeed() {
+        ProgressSampler sampler = new ProgressSampler();
+        assertEquals(-1, sampler.getEta(0, 70000));
+        for (long t = 0; t <= 2000; t += 100) {
+            sampler.update(t * 10, 70000, t);
+        }
+
+        assertEquals(10000, sampler.getSpeed());
+        assertEquals(5000, sampler.getEta(20000, 70000));
+        assertEquals(-1, sampler.getEta(20000, -1));
+    }
+}
@@ -0,0 +1,177 @@
+package com.seaky.netframe.core;
+
+import com.seaky.netframe.annotation.CachePolicy;
+import com.seaky.netframe.build.HttpResponse;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.reactivex.Observable;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 解析结果内存缓存测试 时间用now()手动推进
+ */
+public class ResponseCacheTest {
+
+    interface Api {
+        @CachePolicy(maxAge = 60)
+        void cacheFirst();
+
+        @CachePolicy(mode = CachePolicy.Mode.NETWORK_FIRST, maxAge = 60)
+        void networkFirst();
+
+        @CachePolicy(mode = CachePolicy.Mode.STALE_WHILE_REVALIDATE, maxAge = 60)
+        void staleWhileRevalidate();
+    }
+
+    private long now;
+    private ResponseCache cache;
+    private AtomicInteger calls;
+
+    @Before
+    public void setUp() {
+        now = 1000000;
+        calls = new AtomicInteger();
+        cache = newCache(ResponseCache.DEFAULT_MAX_ENTRIES);
+    }
+
+    @Test
+    public void cacheFirstServesFreshEntryWithoutNetwork() {
+        Observable<HttpResponse<String>> network = network(HttpResponse.SUCCESS_CODE);
+
+        HttpResponse<String> first = cache.apply("a", policy("cacheFirst"), network).blockingFirst();
+        now += 59000;
+        HttpResponse<String> second = cache.apply("a", policy("cacheFirst"), network).blockingFirst();
+
+        assertSame(first, second);
+        assertEquals(1, calls.get());
+        CacheStats stats = cache.getStats(null);
+        assertEquals(1, stats.getMemoryHitCount());
+        assertEquals(1, stats.getMemoryMissCount());
+    }
+
+    @Test
+    public void cacheFirstRefetchesAfterMaxAge() {
+        Observable<HttpResponse<String>> network = network(HttpResponse.SUCCESS_CODE);
+        HttpResponse<String> first = cache.apply("a", policy("cacheFirst"), network).blockingFirst();
+
+        now += 60001;
+        HttpResponse<String> second = cache.apply("a", policy("cacheFirst"), network).blockingFirst();
+
+        assertTrue(first != second);
+        assertEquals(2, calls.get());
+        assertEquals(2, cache.getStats(null).getMemoryMissCount());
+    }
+
+    @Test
+    public void failedStatusIsNotCached() {
+        Observable<HttpResponse<String>> network = network(HttpResponse.SUCCESS_CODE + 1);
+
+        cache.apply("a", policy("cacheFirst"), network).blockingFirst();
+        cache.apply("a", policy("cacheFirst"), network).blockingFirst();
+
+        assertEquals(2, calls.get());
+        assertEquals(0, cache.getStats(null).getMemorySize());
+    }
+
+    @Test
+    public void networkFirstPrefersNetwork() {
+        Observable<HttpResponse<String>> network = network(HttpResponse.SUCCESS_CODE);
+
+        HttpResponse<String> first = cache.apply("a", policy("networkFirst"), network).blockingFirst();
+        HttpResponse<String> second = cache.apply("a", policy("networkFirst"), network).blockingFirst();
+
+        assertTrue(first != second);
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    public void networkFirstFallsBackToExpiredEntry() {
+        HttpResponse<String> cached = cache.apply("a", policy("networkFirst"), network(HttpResponse.SUCCESS_CODE))
+                .blockingFirst();
+        now += 3600000;
+
+        HttpResponse<String> fallback = cache.apply("a", policy("networkFirst"),
+                Observable.<HttpResponse<String>>error(new IOException("offline"))).blockingFirst();
+
+        assertSame(cached, fallback);
+        assertEquals(1, cache.getStats(null).getMemoryStaleHitCount());
+    }
+
+    @Test
+    public void networkFirstWithoutEntryFails() {
+        cache.apply("a", policy("networkFirst"), Observable.<HttpResponse<String>>error(new IOException("offline")))
+                .test()
+                .assertError(IOException.class);
+    }
+
+    @Test
+    public void staleEntryIsServedWhileRevalidating() throws Exception {
+        Observable<HttpResponse<String>> network = network(HttpResponse.SUCCESS_CODE);
+        HttpResponse<String> first = cache.apply("a", policy("staleWhileRevalidate"), network).blockingFirst();
+        now += 60001;
+        CountDownLatch refreshed = new CountDownLatch(1);
+
+        HttpResponse<String> stale = cache.apply("a", policy("staleWhileRevalidate"),
+                network.doOnNext(value -> refreshed.countDown())).blockingFirst();
+
+        assertSame(first, stale);
+        assertTrue(refreshed.await(5, TimeUnit.SECONDS));
+        assertEquals(2, calls.get());
+        assertEquals(1, cache.getStats(null).getMemoryStaleHitCount());
+    }
+
+    @Test
+    public void leastRecentlyUsedEntryIsEvicted() {
+        cache = newCache(2);
+        Observable<HttpResponse<String>> network = network(HttpResponse.SUCCESS_CODE);
+        cache.apply("a", policy("cacheFirst"), network).blockingFirst();
+        cache.apply("b", policy("cacheFirst"), network).blockingFirst();
+        //访问a之后b最久没用
+        cache.apply("a", policy("cacheFirst"), network).blockingFirst();
+
+        cache.apply("c", policy("cacheFirst"), network).blockingFirst();
+        cache.apply("a", policy("cacheFirst"), network).blockingFirst();
+        cache.apply("b", policy("cacheFirst"), network).blockingFirst();
+
+        assertEquals(4, calls.get());
+        assertEquals(2, cache.getStats(null).getMemoryEvictionCount());
+    }
+
+    private ResponseCache newCache(int maxEntries) {
+        return new ResponseCache(maxEntries) {
+            @Override
+            long now() {
+                return now;
+            }
+        };
+    }
+
+    //每次请求返回一个新的HttpResponse
+    private Observable<HttpResponse<String>> network(int code) {
+        return Observable.fromCallable(() -> {
+            calls.incrementAndGet();
+            HttpResponse<String> response = new HttpResponse<>();
+            response.setCode(code);
+            response.setData("data");
+            return response;
+        });
+    }
+
+    private static CachePolicy policy(String method) {
+        try {
+            return Api.class.getDeclaredMethod(method).getAnnotation(CachePolicy.class);
+        } catch (NoSuchMethodException e) {
+            throw new AssertionError(e);
+        }
+    }
+}
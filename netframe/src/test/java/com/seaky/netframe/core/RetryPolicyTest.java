@@ -0,0 +1,235 @@
+package com.seaky.netframe.core;
+
+import com.seaky.netframe.function.RetryFunction;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+import io.reactivex.Observable;
+import io.reactivex.observers.TestObserver;
+import okhttp3.MediaType;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.ResponseBody;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import retrofit2.HttpException;
+import retrofit2.Response;
+import retrofit2.Retrofit;
+import retrofit2.adapter.rxjava2.RxJava2CallAdapterFactory;
+import retrofit2.http.GET;
+import retrofit2.http.POST;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 重试策略测试 哪些错误重试、Retry-After、重试预算和退避抖动，带Retry-After的用本地MockWebServer
+ */
+public class RetryPolicyTest {
+
+    interface Api {
+        @GET("/resource")
+        Observable<ResponseBody> get();
+
+        @POST("/resource")
+        Observable<ResponseBody> post();
+    }
+
+    private MockWebServer server;
+    private Api api;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new MockWebServer();
+        server.start();
+        api = new Retrofit.Builder()
+                .baseUrl(server.url("/"))
+                .addCallAdapterFactory(RxJava2CallAdapterFactory.create())
+                .build()
+                .create(Api.class);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.shutdown();
+    }
+
+    @Test
+    public void connectFailureIsRetriedForAnyMethod() {
+        RetryPolicy policy = new RetryPolicy(2, 100, 1000);
+
+        assertTrue(policy.delayFor(new ConnectException(), 1, "POST") >= 0);
+        assertTrue(policy.delayFor(new ConnectException(), 1, "GET") >= 0);
+    }
+
+    @Test
+    public void timeoutAndGatewayErrorsAreRetriedOnlyForIdempotentMethods() {
+        RetryPolicy policy = new RetryPolicy(2, 100, 1000);
+        Throwable[] errors = {new SocketTimeoutException(), http(408), http(502), http(504)};
+
+        for (Throwable error : errors) {
+            assertTrue(policy.delayFor(error, 1, "GET") >= 0);
+            assertTrue(policy.delayFor(error, 1, "PUT") >= 0);
+            assertEquals(-1, policy.delayFor(error, 1, "POST"));
+            assertEquals(-1, policy.delayFor(error, 1, "PATCH"));
+        }
+        assertEquals(8, policy.getRetryCount());
+    }
+
+    @Test
+    public void otherErrorsAreNotRetried() {
+        RetryPolicy policy = new RetryPolicy(2, 100, 1000);
+
+        assertEquals(-1, policy.delayFor(http(400), 1, "GET"));
+        assertEquals(-1, policy.delayFor(http(500), 1, "GET"));
+        assertEquals(-1, policy.delayFor(new IOException(), 1, "GET"));
+        assertEquals(0, policy.getRetryCount());
+    }
+
+    @Test
+    public void stopsAfterMaxRetries() {
+        RetryPolicy policy = new RetryPolicy(2, 100, 1000);
+
+        assertTrue(policy.delayFor(new ConnectException(), 2, "GET") >= 0);
+        assertEquals(-1, policy.delayFor(new ConnectException(), 3, "GET"));
+    }
+
+    @Test
+    public void retryAfterSecondsIsHonoured() {
+        RetryPolicy policy = new RetryPolicy(2, 100, 5000);
+
+        assertEquals(2000, policy.delayFor(http(503, "2"), 1, "GET"));
+        assertEquals(0, policy.delayFor(http(429, "0"), 1, "GET"));
+    }
+
+    @Test
+    public void retryAfterDateIsHonoured() {
+        RetryPolicy policy = new RetryPolicy(2, 100, 5000);
+        SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("GMT"));
+        String date = format.format(new Date(System.currentTimeMillis() + 3000));
+
+        long delay = policy.delayFor(http(503, date), 1, "GET");
+
+        //HTTP日期只精确到秒
+        assertTrue(delay > 1000 && delay <= 3000);
+    }
+
+    @Test
+    public void retryAfterBeyondMaxDelayGivesUp() {
+        RetryPolicy policy = new RetryPolicy(2, 100, 5000);
+
+        assertEquals(-1, policy.delayFor(http(503, "10"), 1, "GET"));
+        assertEquals(0, policy.getRetryCount());
+    }
+
+    @Test
+    public void retryAfterIsFollowedForIdempotentRequest() throws Exception {
+        RetryPolicy policy = new RetryPolicy(2, 100, 5000);
+        server.enqueue(new MockResponse().setResponseCode(503).setHeader("Retry-After", "1"));
+        server.enqueue(new MockResponse().setBody("ok"));
+
+        long start = System.nanoTime();
+        TestObserver<ResponseBody> observer = api.get()
+                .retryWhen(new RetryFunction(policy, "GET", new NetScheduler(1, 1)))
+                .test();
+        observer.awaitTerminalEvent();
+
+        observer.assertValueCount(1);
+        assertEquals("ok", observer.values().get(0).string());
+        assertEquals(2, server.getRequestCount());
+        assertTrue((System.nanoTime() - start) / 1000000 >= 1000);
+    }
+
+    @Test
+    public void nonIdempotentRequestIsNotRetried() throws Exception {
+        RetryPolicy policy = new RetryPolicy(2, 100, 5000);
+        server.enqueue(new MockResponse().setResponseCode(429).setHeader("Retry-After", "0"));
+        server.enqueue(new MockResponse().setBody("ok"));
+
+        TestObserver<ResponseBody> observer = api.post()
+                .retryWhen(new RetryFunction(policy, "POST", new NetScheduler(1, 1)))
+                .test();
+        observer.awaitTerminalEvent();
+
+        observer.assertError(HttpException.class);
+        assertEquals(1, server.getRequestCount());
+        assertEquals(0, policy.getRetryCount());
+    }
+
+    @Test
+    public void budgetIsExhaustedAndRefilledBySuccesses() {
+        RetryPolicy policy = new RetryPolicy(2, 100, 1000);
+        for (int i = 0; i < 10; i++) {
+            assertTrue(policy.delayFor(new ConnectException(), 1, "GET") >= 0);
+        }
+
+        assertEquals(-1, policy.delayFor(new ConnectException(), 1, "GET"));
+        assertEquals(1, policy.getBudgetExhaustedCount());
+        assertEquals(0f, policy.getBudget(), 0.001f);
+
+        //每次成功补充0.1个
+        for (int i = 0; i < 9; i++) {
+            policy.onSuccess();
+        }
+        assertEquals(0.9f, policy.getBudget(), 0.001f);
+        assertEquals(-1, policy.delayFor(new ConnectException(), 1, "GET"));
+
+        policy.onSuccess();
+        assertTrue(policy.delayFor(new ConnectException(), 1, "GET") >= 0);
+        assertEquals(11, policy.getRetryCount());
+        assertEquals(2, policy.getBudgetExhaustedCount());
+    }
+
+    @Test
+    public void budgetDoesNotGrowPastCapacity() {
+        RetryPolicy policy = new RetryPolicy(2, 100, 1000);
+        for (int i = 0; i < 100; i++) {
+            policy.onSuccess();
+        }
+
+        assertEquals(10f, policy.getBudget(), 0.001f);
+    }
+
+    @Test
+    public void jitterStaysWithinExponentialCeiling() {
+        long[] ceilings = {100, 200, 400, 800, 1000, 1000};
+        for (int attempt = 1; attempt <= ceilings.length; attempt++) {
+            long max = 0;
+            for (int i = 0; i < 200; i++) {
+                //每次新建 不受重试预算影响
+                RetryPolicy policy = new RetryPolicy(10, 100, 1000);
+                long delay = policy.delayFor(new ConnectException(), attempt, "GET");
+                assertTrue(delay >= 0 && delay < ceilings[attempt - 1]);
+                max = Math.max(max, delay);
+            }
+            //全抖动 200次里应该能取到上限附近
+            assertTrue(max >= ceilings[attempt - 1] / 2);
+        }
+    }
+
+    private static HttpException http(int code) {
+        return new HttpException(Response.error(code, ResponseBody.create(MediaType.parse("text/plain"), "")));
+    }
+
+    private static HttpException http(int code, String retryAfter) {
+        okhttp3.Response raw = new okhttp3.Response.Builder()
+                .request(new Request.Builder().url("http://localhost/").build())
+                .protocol(Protocol.HTTP_1_1)
+                .code(code)
+                .message("error")
+                .header("Retry-After", retryAfter)
+                .build();
+        return new HttpException(Response.error(ResponseBody.create(MediaType.parse("text/plain"), ""), raw));
+    }
+}
@@ -0,0 +1,128 @@
+package com.seaky.netframe.core;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import io.reactivex.Observable;
+import io.reactivex.observers.TestObserver;
+import io.reactivex.subjects.PublishSubject;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 相同请求合并测试 每次订阅上游都新建一个PublishSubject，用它的个数看发了几次请求
+ */
+public class SingleFlightGroupTest {
+
+    private SingleFlightGroup group;
+    private List<PublishSubject<String>> requests;
+    private Observable<String> upstream;
+
+    @Before
+    public void setUp() {
+        group = new SingleFlightGroup();
+        requests = new ArrayList<>();
+        upstream = Observable.defer(() -> {
+            PublishSubject<String> request = PublishSubject.create();
+            requests.add(request);
+            return request;
+        });
+    }
+
+    @Test
+    public void concurrentJoinersShareOneRequest() {
+        TestObserver<String> first = group.join("a", upstream).test();
+        TestObserver<String> second = group.join("a", upstream).test();
+
+        assertEquals(1, requests.size());
+        requests.get(0).onNext("result");
+        requests.get(0).onComplete();
+
+        first.assertResult("result");
+        second.assertResult("result");
+        assertEquals(2, group.getRequestCount());
+        assertEquals(1, group.getSavedCount());
+    }
+
+    @Test
+    public void lateJoinerGetsReplayedResult() {
+        TestObserver<String> first = group.join("a", upstream).test();
+        requests.get(0).onNext("result");
+
+        TestObserver<String> late = group.join("a", upstream).test();
+
+        assertEquals(1, requests.size());
+        late.assertValue("result");
+        requests.get(0).onComplete();
+        first.assertResult("result");
+        late.assertResult("result");
+    }
+
+    @Test
+    public void differentKeysAreNotShared() {
+        group.join("a", upstream).test();
+        group.join("b", upstream).test();
+
+        assertEquals(2, requests.size());
+        assertEquals(0, group.getSavedCount());
+    }
+
+    @Test
+    public void oneJoinerDisposingKeepsRequestForOthers() {
+        TestObserver<String> first = group.join("a", upstream).test();
+        TestObserver<String> second = group.join("a", upstream).test();
+
+        first.dispose();
+
+        assertTrue(requests.get(0).hasObservers());
+        requests.get(0).onNext("result");
+        requests.get(0).onComplete();
+        second.assertResult("result");
+        first.assertEmpty();
+    }
+
+    @Test
+    public void lastJoinerDisposingCancelsRequestAndRemovesKey() {
+        TestObserver<String> first = group.join("a", upstream).test();
+        TestObserver<String> second = group.join("a", upstream).test();
+
+        first.dispose();
+        second.dispose();
+
+        assertFalse(requests.get(0).hasObservers());
+        group.join("a", upstream).test();
+        assertEquals(2, requests.size());
+    }
+
+    @Test
+    public void keyIsRemovedAfterCompletion() {
+        group.join("a", upstream).test();
+        requests.get(0).onNext("result");
+        requests.get(0).onComplete();
+
+        TestObserver<String> next = group.join("a", upstream).test();
+
+        //不做缓存 重新发起请求
+        assertEquals(2, requests.size());
+        next.assertEmpty();
+    }
+
+    @Test
+    public void keyIsRemovedAfterError() {
+        TestObserver<String> failed = group.join("a", upstream).test();
+        requests.get(0).onError(new IOException("boom"));
+
+        failed.assertError(IOException.class);
+        TestObserver<String> next = group.join("a", upstream).test();
+        assertEquals(2, requests.size());
+        requests.get(1).onNext("result");
+        requests.get(1).onComplete();
+        next.assertResult("result");
+    }
+}
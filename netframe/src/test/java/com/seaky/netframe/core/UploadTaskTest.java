@@ -0,0 +1,222 @@
+package com.seaky.netframe.core;
+
+import com.seaky.netframe.build.UploadInfo;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * 流式上传和分片续传测试 本地MockWebServer按UploadTask的协议拼装文件
+ */
+public class UploadTaskTest {
+
+    private static final long CHUNK = 64 * 1024;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private MockWebServer server;
+    private UploadDispatcher dispatcher;
+    private byte[] content;
+    private File file;
+    private File checkpoints;
+
+    @Before
+    public void setUp() throws Exception {
+        content = new byte[(int) (CHUNK * 5 + 123)];
+        new Random(42).nextBytes(content);
+        file = folder.newFile("video.bin");
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(content);
+        out.close();
+        checkpoints = folder.newFolder("uploads");
+        dispatcher = new UploadDispatcher();
+        server = new MockWebServer();
+        server.setDispatcher(dispatcher);
+        server.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.shutdown();
+    }
+
+    @Test
+    public void streamsWholeFileInOneRequest() throws Exception {
+        List<Long> progress = new ArrayList<>();
+        UploadTask task = newTask(0, 1);
+        task.setProgressListener((completed, total) -> progress.add(completed));
+
+        UploadInfo info = task.execute();
+
+        assertEquals(1, server.getRequestCount());
+        assertArrayEquals(content, dispatcher.posted);
+        assertEquals("ok", info.getResponse());
+        assertEquals(content.length, info.getProgress());
+        assertEquals(content.length, (long) progress.get(progress.size() - 1));
+    }
+
+    @Test
+    public void uploadsChunksInOrder() throws Exception {
+        UploadInfo info = newTask(CHUNK, 1).execute();
+
+        assertArrayEquals(content, dispatcher.assembled());
+        assertEquals(6, server.getRequestCount());
+        assertEquals("bytes 0-" + (CHUNK - 1) + "/" + content.length, dispatcher.ranges.get(0));
+        assertEquals("bytes " + CHUNK * 5 + "-" + (content.length - 1) + "/" + content.length, dispatcher.ranges.get(5));
+        assertEquals("done", info.getResponse());
+        assertFalse(info.isResumed());
+        assertEquals(0, checkpoints.list().length);
+    }
+
+    @Test
+    public void uploadsChunksInParallel() throws Exception {
+        UploadInfo info = newTask(CHUNK, 3).execute();
+
+        assertArrayEquals(content, dispatcher.assembled());
+        assertEquals("done", info.getResponse());
+    }
+
+    @Test
+    public void resumesFromServerAcknowledgedRanges() throws Exception {
+        dispatcher.failAt = CHUNK * 3;
+        try {
+            newTask(CHUNK, 1).execute();
+            fail();
+        } catch (Exception expected) {
+        }
+        assertEquals(1, checkpoints.list().length);
+        int before = server.getRequestCount();
+
+        UploadInfo info = newTask(CHUNK, 1).execute();
+
+        assertArrayEquals(content, dispatcher.assembled());
+        assertTrue(info.isResumed());
+        assertEquals(CHUNK * 3, info.getSavedBytes());
+        //1次查询 + 剩下的3片
+        assertEquals(4, server.getRequestCount() - before);
+        assertEquals(0, checkpoints.list().length);
+    }
+
+    @Test
+    public void restartsWhenSessionExpired() throws Exception {
+        dispatcher.failAt = CHUNK * 2;
+        try {
+            newTask(CHUNK, 1).execute();
+            fail();
+        } catch (Exception expected) {
+        }
+        dispatcher.sessions.clear();
+
+        UploadInfo info = newTask(CHUNK, 1).execute();
+
+        assertArrayEquals(content, dispatcher.assembled());
+        assertFalse(info.isResumed());
+        assertEquals(0, info.getSavedBytes());
+    }
+
+    @Test
+    public void computesMissingRanges() {
+        List<long[]> gaps = UploadTask.gaps(UploadTask.parseRanges("bytes=100-199,0-49"), 300);
+
+        assertEquals(2, gaps.size());
+        assertArrayEquals(new long[]{50, 99}, gaps.get(0));
+        assertArrayEquals(new long[]{200, 299}, gaps.get(1));
+        assertEquals(1, UploadTask.gaps(UploadTask.parseRanges("garbage"), 300).size());
+    }
+
+    private UploadTask newTask(long chunkSize, int parallelism) {
+        return new UploadTask(new OkHttpClient(), server.url("/upload").toString(), file,
+                "video/mp4", chunkSize, parallelism, checkpoints);
+    }
+
+    /**
+     * 按Upload-Id拼装分片的服务器 failAt处的分片第一次返回500
+     */
+    private class UploadDispatcher extends Dispatcher {
+        final Map<String, byte[]> sessions = new HashMap<>();
+        final Map<String, List<long[]>> received = new HashMap<>();
+        final List<String> ranges = new ArrayList<>();
+        volatile byte[] posted;
+        volatile long failAt = -1;
+        private byte[] mLast;
+
+        @Override
+        public synchronized MockResponse dispatch(RecordedRequest request) {
+            if ("POST".equals(request.getMethod())) {
+                posted = request.getBody().readByteArray();
+                return new MockResponse().setBody("ok");
+            }
+            String id = request.getHeader(UploadTask.UPLOAD_ID);
+            String contentRange = request.getHeader("Content-Range");
+            ranges.add(contentRange);
+            String spec = contentRange.substring("bytes ".length(), contentRange.indexOf('/'));
+            int total = Integer.parseInt(contentRange.substring(contentRange.indexOf('/') + 1));
+            if ("*".equals(spec)) {
+                if (!sessions.containsKey(id)) {
+                    return new MockResponse().setResponseCode(404);
+                }
+                return progress(id, total);
+            }
+            long start = Long.parseLong(spec.substring(0, spec.indexOf('-')));
+            long end = Long.parseLong(spec.substring(spec.indexOf('-') + 1));
+            if (start == failAt) {
+                failAt = -1;
+                return new MockResponse().setResponseCode(500);
+            }
+            byte[] data = sessions.get(id);
+            if (data == null) {
+                data = new byte[total];
+                sessions.put(id, data);
+                received.put(id, new ArrayList<>());
+            }
+            byte[] part = request.getBody().readByteArray();
+            System.arraycopy(part, 0, data, (int) start, part.length);
+            received.get(id).add(new long[]{start, end});
+            mLast = data;
+            return progress(id, total);
+        }
+
+        private MockResponse progress(String id, long total) {
+            List<long[]> gaps = UploadTask.gaps(new ArrayList<>(received.get(id)), total);
+            if (gaps.isEmpty()) {
+                return new MockResponse().setBody("done");
+            }
+            StringBuilder builder = new StringBuilder("bytes=");
+            for (long[] range : received.get(id)) {
+                if (builder.length() > 6) {
+                    builder.append(',');
+                }
+                builder.append(range[0]).append('-').append(range[1]);
+            }
+            return new MockResponse().setResponseCode(308).setHeader("Range", builder.toString());
+        }
+
+        synchronized byte[] assembled() {
+            return mLast;
+        }
+    }
+}